@@ -68,6 +68,9 @@ public class StepBuilder {
     /** 前置条件表达式 */
     private String precondition;
     
+    /** 函数形式的前置条件 */
+    private Predicate<Map<String, Object>> preconditionFunction;
+    
     /** 下一步骤ID */
     private String nextStepId;
     
@@ -235,15 +238,15 @@ public class StepBuilder {
     /**
      * 使用函数式接口设置前置条件
      * 
-     * 这种方式提供了类型安全的条件设置。
+     * 这种方式提供了类型安全的条件设置。函数在步骤执行前以实例上下文为参数调用，
+     * 与条件表达式同时设置时两者都满足才执行步骤。函数不参与序列化，
+     * 需要持久化的工作流定义应使用条件表达式。
      * 
      * @param condition 条件判断函数
      * @return 当前构建器实例，支持链式调用
      */
     public StepBuilder precondition(Predicate<Map<String, Object>> condition) {
-        // 将函数式条件转换为表达式字符串
-        // 在实际实现中，可以使用表达式引擎如SpEL或自定义解析器
-        this.precondition = condition.toString();
+        this.preconditionFunction = condition;
         return this;
     }
     
@@ -773,6 +776,7 @@ public class StepBuilder {
             .executorClass(executorClass)
             .configuration(new HashMap<>(configuration)) // 创建副本确保不可变性
             .precondition(precondition)
+            .precondition(preconditionFunction != null ? preconditionFunction::test : null)
             .nextStepId(nextStepId)
             .errorStepId(errorStepId)
             .optional(optional)
@@ -799,6 +803,7 @@ public class StepBuilder {
         cloned.executorClass = this.executorClass;
         cloned.configuration.putAll(this.configuration);
         cloned.precondition = this.precondition;
+        cloned.preconditionFunction = this.preconditionFunction;
         cloned.nextStepId = this.nextStepId;
         cloned.errorStepId = this.errorStepId;
         cloned.optional = this.optional;
@@ -824,6 +829,7 @@ public class StepBuilder {
         this.executorClass = null;
         this.configuration.clear();
         this.precondition = null;
+        this.preconditionFunction = null;
         this.nextStepId = null;
         this.errorStepId = null;
         this.optional = false;
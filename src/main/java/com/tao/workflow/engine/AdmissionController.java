@@ -0,0 +1,233 @@
+package com.tao.workflow.engine;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * 工作流启动准入控制
+ *
+ * 在 startWorkflow 入口处对新实例做限流和背压，过载时有序地拒绝或延后启动，
+ * 而不是让异步线程池的队列无限增长。
+ *
+ * 准入检查按以下顺序进行：
+ * 1. 按工作流ID的令牌桶限流，令牌不足时直接拒绝
+ * 2. 异步线程池队列深度水位，超过水位时按过载策略拒绝或延后
+ * 3. 全局在途启动数量上限，超过上限时按过载策略拒绝或延后
+ *
+ * 被拒绝的调用抛出 {@link WorkflowException.WorkflowErrorType#OVERLOAD_ERROR} 类型的异常，
+ * 错误码说明具体原因，调用方可以据此退避重试。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class AdmissionController {
+
+    /** 错误码：工作流启动速率超过限制 */
+    public static final String RATE_LIMITED = "RATE_LIMITED";
+
+    /** 错误码：在途启动数量超过上限 */
+    public static final String IN_FLIGHT_LIMIT = "IN_FLIGHT_LIMIT";
+
+    /** 错误码：异步队列积压超过水位 */
+    public static final String QUEUE_OVERLOADED = "QUEUE_OVERLOADED";
+
+    /** 错误码：延后启动队列已满 */
+    public static final String DEFER_QUEUE_FULL = "DEFER_QUEUE_FULL";
+
+    /**
+     * 过载策略
+     */
+    public enum OverloadPolicy {
+        /** 立即拒绝 */
+        REJECT,
+        /** 创建实例但延后启动，待负载回落后再执行 */
+        DEFER
+    }
+
+    /**
+     * 准入结果
+     */
+    public enum Decision {
+        /** 立即启动，调用方执行完成后必须调用 {@link #release()} */
+        ADMIT,
+        /** 延后启动 */
+        DEFER
+    }
+
+    private final double defaultPermitsPerSecond;
+    private final int defaultBurst;
+    private final OverloadPolicy overloadPolicy;
+    private final int queueHighWatermark;
+    private final int maxInFlight;
+    private final IntSupplier queueDepth;
+
+    /** 在途启动许可，未限制时为null */
+    private final Semaphore inFlight;
+
+    /** 工作流ID -> 令牌桶 */
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    /** 工作流ID -> 单独配置的限流参数 */
+    private final Map<String, double[]> overrides = new ConcurrentHashMap<>();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * 构造函数
+     *
+     * @param defaultPermitsPerSecond 每个工作流的默认启动速率（每秒），小于等于0表示不限速
+     * @param defaultBurst 令牌桶容量（允许的突发启动数量）
+     * @param maxInFlight 全局在途启动数量上限，小于等于0表示不限制
+     * @param queueHighWatermark 异步队列深度水位，小于等于0表示不检查
+     * @param overloadPolicy 超过在途上限或队列水位时的处理策略
+     * @param queueDepth 异步队列深度
+     */
+    public AdmissionController(double defaultPermitsPerSecond, int defaultBurst, int maxInFlight,
+                               int queueHighWatermark, OverloadPolicy overloadPolicy, IntSupplier queueDepth) {
+        this.defaultPermitsPerSecond = defaultPermitsPerSecond;
+        this.defaultBurst = Math.max(1, defaultBurst);
+        this.maxInFlight = maxInFlight;
+        this.inFlight = maxInFlight > 0 ? new Semaphore(maxInFlight) : null;
+        this.queueHighWatermark = queueHighWatermark;
+        this.overloadPolicy = Objects.requireNonNull(overloadPolicy, "过载策略不能为空");
+        this.queueDepth = Objects.requireNonNull(queueDepth, "队列深度不能为空");
+    }
+
+    /**
+     * 为指定工作流单独设置启动速率
+     *
+     * @param workflowId 工作流ID
+     * @param permitsPerSecond 每秒启动数量，小于等于0表示不限速
+     * @param burst 令牌桶容量
+     */
+    public void setRateLimit(String workflowId, double permitsPerSecond, int burst) {
+        Objects.requireNonNull(workflowId, "工作流ID不能为空");
+        overrides.put(workflowId, new double[] {permitsPerSecond, Math.max(1, burst)});
+        buckets.remove(workflowId);
+    }
+
+    /**
+     * 准入检查
+     *
+     * @param workflowId 工作流ID
+     * @return 准入结果
+     * @throws WorkflowException 被限流或过载拒绝时抛出
+     */
+    public Decision admit(String workflowId) throws WorkflowException {
+        TokenBucket bucket = bucketOf(workflowId);
+        if (bucket != null && !bucket.tryAcquire(System.nanoTime())) {
+            rejected.increment();
+            throw WorkflowException.overloadError("工作流启动速率超过限制: " + workflowId, RATE_LIMITED);
+        }
+
+        if (queueHighWatermark > 0 && queueDepth.getAsInt() >= queueHighWatermark) {
+            return overloaded("异步队列积压超过水位: " + queueHighWatermark, QUEUE_OVERLOADED);
+        }
+        if (inFlight != null && !inFlight.tryAcquire()) {
+            return overloaded("在途启动数量超过上限: " + maxInFlight, IN_FLIGHT_LIMIT);
+        }
+
+        admitted.increment();
+        return Decision.ADMIT;
+    }
+
+    /**
+     * 为延后启动的实例获取执行许可（不消耗令牌）
+     *
+     * @return 负载已回落并取得许可时返回true，调用方执行完成后必须调用 {@link #release()}
+     */
+    public boolean tryAdmitDeferred() {
+        if (queueHighWatermark > 0 && queueDepth.getAsInt() >= queueHighWatermark) {
+            return false;
+        }
+        if (inFlight != null && !inFlight.tryAcquire()) {
+            return false;
+        }
+        admitted.increment();
+        return true;
+    }
+
+    /**
+     * 释放在途许可
+     */
+    public void release() {
+        if (inFlight != null) {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * 记录一次拒绝（延后队列已满等由调用方判定的拒绝）
+     */
+    void recordRejected() {
+        rejected.increment();
+    }
+
+    /** 已准入的启动数量 */
+    public long getAdmittedCount() { return admitted.sum(); }
+
+    /** 被延后的启动数量 */
+    public long getDeferredCount() { return deferred.sum(); }
+
+    /** 被拒绝的启动数量 */
+    public long getRejectedCount() { return rejected.sum(); }
+
+    /** 可用的在途许可数量，未限制时为 {@link Integer#MAX_VALUE} */
+    public int getAvailableInFlight() {
+        return inFlight != null ? inFlight.availablePermits() : Integer.MAX_VALUE;
+    }
+
+    private Decision overloaded(String message, String errorCode) throws WorkflowException {
+        if (overloadPolicy == OverloadPolicy.DEFER) {
+            deferred.increment();
+            return Decision.DEFER;
+        }
+        rejected.increment();
+        throw WorkflowException.overloadError(message, errorCode);
+    }
+
+    private TokenBucket bucketOf(String workflowId) {
+        double[] override = overrides.get(workflowId);
+        double rate = override != null ? override[0] : defaultPermitsPerSecond;
+        if (rate <= 0) {
+            return null;
+        }
+        int burst = override != null ? (int) override[1] : defaultBurst;
+        return buckets.computeIfAbsent(workflowId, k -> new TokenBucket(rate, burst));
+    }
+
+    /**
+     * 令牌桶
+     *
+     * 按时间差惰性补充令牌，不需要后台线程。
+     */
+    private static final class TokenBucket {
+        private final double permitsPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double permitsPerSecond, int capacity) {
+            this.permitsPerNano = permitsPerSecond / 1_000_000_000d;
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+            lastRefill = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.tao.workflow.engine;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量操作句柄
+ *
+ * 表示一个正在后台分块并行执行的批量操作。执行过程中可以随时查询进度、
+ * 获取截至当前的部分结果，或取消尚未开始的分块。
+ *
+ * 使用方式：
+ * 1. 通过 {@link DefaultWorkflowEngine#submitBatchOperation} 提交，立即返回句柄
+ * 2. 通过 {@link #getProcessedCount()} / {@link #getProgress()} 观察进度
+ * 3. 通过 {@link #getPartialResult()} 获取部分结果，{@link #await()} 等待最终结果
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class BatchOperationHandle {
+
+    private final WorkflowOperation operation;
+    private final String userId;
+    private final int totalCount;
+    private final LocalDateTime startTime = LocalDateTime.now();
+
+    /** 成功的实例ID */
+    private final Queue<String> successfulIds = new ConcurrentLinkedQueue<>();
+
+    /** 失败明细 */
+    private final Queue<BatchOperationResult.FailureDetail> failures = new ConcurrentLinkedQueue<>();
+
+    /** 跳过明细 */
+    private final Queue<BatchOperationResult.SkippedDetail> skipped = new ConcurrentLinkedQueue<>();
+
+    /** 已处理数量 */
+    private final AtomicInteger processedCount = new AtomicInteger();
+
+    /** 尚未结束的工作线程数 */
+    private final AtomicInteger remainingWorkers;
+
+    /** 全部工作线程结束后释放 */
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /** 取消标记 */
+    private volatile boolean cancelled;
+
+    /** 结束时间 */
+    private volatile LocalDateTime endTime;
+
+    BatchOperationHandle(WorkflowOperation operation, String userId, int totalCount, int workerCount) {
+        this.operation = operation;
+        this.userId = userId;
+        this.totalCount = totalCount;
+        this.remainingWorkers = new AtomicInteger(workerCount);
+        if (workerCount == 0) {
+            this.endTime = startTime;
+            done.countDown();
+        }
+    }
+
+    void recordSuccess(String instanceId) {
+        successfulIds.add(instanceId);
+        processedCount.incrementAndGet();
+    }
+
+    void recordFailure(String instanceId, Exception e) {
+        failures.add(new BatchOperationResult.FailureDetail(instanceId, e.getMessage(), e.getClass().getSimpleName()));
+        processedCount.incrementAndGet();
+    }
+
+    void recordSkipped(String instanceId, String reason) {
+        skipped.add(new BatchOperationResult.SkippedDetail(instanceId, reason));
+        processedCount.incrementAndGet();
+    }
+
+    void workerFinished() {
+        // 只有最后一个结束的工作线程会把计数减到0，结束时间在释放等待方之前写入
+        if (remainingWorkers.decrementAndGet() == 0) {
+            endTime = LocalDateTime.now();
+            done.countDown();
+        }
+    }
+
+    /**
+     * 取消批量操作
+     *
+     * 正在处理的实例会完成当前操作，之后的实例不再处理。
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 是否已取消
+     * @return 已取消返回true
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 是否已结束（全部处理完毕或取消后全部工作线程退出）
+     * @return 已结束返回true
+     */
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * 获取实例总数
+     * @return 实例总数
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * 获取已处理数量
+     * @return 已处理数量
+     */
+    public int getProcessedCount() {
+        return processedCount.get();
+    }
+
+    /**
+     * 获取处理进度
+     * @return 进度（0.0 - 1.0）
+     */
+    public double getProgress() {
+        return totalCount == 0 ? 1.0 : (double) processedCount.get() / totalCount;
+    }
+
+    /**
+     * 获取截至当前的部分结果
+     * @return 批量操作结果
+     */
+    public BatchOperationResult getPartialResult() {
+        BatchOperationResult result = new BatchOperationResult();
+        result.setOperation(operation);
+        result.setUserId(userId);
+        result.setStartTime(startTime);
+        result.setTotalCount(totalCount);
+
+        for (String instanceId : new ArrayList<>(successfulIds)) {
+            result.addSuccessfulInstanceId(instanceId);
+        }
+        for (BatchOperationResult.FailureDetail failure : new ArrayList<>(failures)) {
+            result.addFailureDetail(failure);
+        }
+        for (BatchOperationResult.SkippedDetail detail : new ArrayList<>(skipped)) {
+            result.addSkippedDetail(detail);
+        }
+
+        result.setEndTime(endTime);
+        result.calculateStatistics();
+        return result;
+    }
+
+    /**
+     * 等待批量操作结束
+     *
+     * @return 最终结果
+     * @throws InterruptedException 如果等待被中断
+     */
+    public BatchOperationResult await() throws InterruptedException {
+        done.await();
+        return getPartialResult();
+    }
+
+    /**
+     * 限时等待批量操作结束
+     *
+     * @param timeout 等待时间
+     * @param unit 时间单位
+     * @return 如果在超时前结束返回true
+     * @throws InterruptedException 如果等待被中断
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    /**
+     * 获取未处理的实例数量（取消后剩余的部分）
+     * @return 未处理数量
+     */
+    public int getRemainingCount() {
+        return totalCount - processedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        List<String> parts = new ArrayList<>();
+        parts.add("operation=" + operation);
+        parts.add("processed=" + processedCount.get() + "/" + totalCount);
+        parts.add("failed=" + failures.size());
+        parts.add("skipped=" + skipped.size());
+        parts.add("cancelled=" + cancelled);
+        return "BatchOperationHandle{" + String.join(", ", parts) + "}";
+    }
+}
@@ -0,0 +1,538 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.InstanceStatus;
+import com.tao.workflow.model.WorkflowInstance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑二进制实例编解码器
+ *
+ * 格式特点：
+ * 1. 文件头包含魔数和格式版本，读取时校验版本
+ * 2. 整数使用变长编码（有符号数先做ZigZag变换），常见的小数值只占1个字节
+ * 3. 工作流ID、步骤ID、状态名、上下文键等重复出现的字符串进入流内字典，
+ *    第二次出现起只写字典序号；字典大小有上限，写满后按普通字符串写出。
+ *    实例ID每条记录各不相同，按普通字符串写出，不占用字典容量（版本1曾写入字典，读取时兼容）
+ * 4. 上下文等动态值按类型标记编码，无法识别的类型按字符串保存
+ * 5. Map和列表以结束标记收尾而不预先写出元素个数，编码并发修改中的上下文时不会出现个数与内容不一致
+ *
+ * 流结构：魔数(4) 版本(varint) { 1 记录 }* 0
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public final class BinaryInstanceCodec implements InstanceCodec {
+
+    /** 编解码器名称 */
+    public static final String NAME = "binary";
+
+    /** 共享实例（编码状态保存在每个写入器/读取器中） */
+    public static final BinaryInstanceCodec INSTANCE = new BinaryInstanceCodec();
+
+    private static final int MAGIC = 0x57464249;
+    private static final int VERSION = 2;
+
+    /** 实例ID写入字典的旧版本 */
+    private static final int VERSION_SYMBOL_ID = 1;
+
+    /** 每个流的字典容量上限 */
+    private static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    private static final int TAG_END = 0;
+    private static final int TAG_RECORD = 1;
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_STRING = 1;
+    private static final int TYPE_INTEGER = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_DOUBLE = 4;
+    private static final int TYPE_TRUE = 5;
+    private static final int TYPE_FALSE = 6;
+    private static final int TYPE_MAP = 7;
+    private static final int TYPE_LIST = 8;
+    private static final int TYPE_DATE_TIME = 9;
+    private static final int TYPE_END = 10;
+
+    private BinaryInstanceCodec() {
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public RecordWriter newWriter(OutputStream out) throws IOException {
+        return new BinaryWriter(out);
+    }
+
+    @Override
+    public RecordReader newReader(InputStream in) throws IOException {
+        return new BinaryReader(in);
+    }
+
+    // ==================== 写入 ====================
+
+    private static final class BinaryWriter implements RecordWriter {
+        private final DataOutputStream out;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private boolean closed;
+
+        BinaryWriter(OutputStream target) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new NonClosingOutputStream(target), 1 << 16));
+            out.writeInt(MAGIC);
+            writeVarInt(VERSION);
+        }
+
+        @Override
+        public void write(InstanceRecord record) throws IOException {
+            out.writeByte(TAG_RECORD);
+            WorkflowInstance instance = record.getInstance();
+            writeString(instance.getId());
+            writeSymbol(instance.getWorkflowId());
+            writeString(instance.getName());
+            writeSymbol(instance.getStatus().name());
+            writeSymbol(instance.getCurrentStepId());
+            writeVarInt(zigZag(instance.getCurrentStepOrder()));
+            writeMap(instance.getContext());
+            writeMap(instance.getConfig());
+            writeSymbol(instance.getStartUserId());
+            writeSymbol(instance.getCurrentUserId());
+            writeString(instance.getBusinessKey());
+            writeVarInt(zigZag(instance.getPriority()));
+            writeDateTime(instance.getCreateTime());
+            writeDateTime(instance.getStartTime());
+            writeDateTime(instance.getEndTime());
+            writeDateTime(instance.getUpdateTime());
+            writeString(instance.getErrorMessage());
+
+            writeVarInt(record.getHistory().size());
+            for (StepExecutionResult result : record.getHistory()) {
+                writeSymbol(result.getStatus().name());
+                writeString(result.getMessage());
+                writeMap(result.getOutputData());
+                writeSymbol(result.getNextStepId());
+                writeString(result.getErrorMessage());
+                writeVarLong(zigZag(result.getStartTime()));
+                writeVarLong(zigZag(result.getEndTime() - result.getStartTime()));
+                writeVarInt(result.getRetryCount());
+                writeSymbol(result.getExecutorName());
+            }
+
+            writeVarInt(record.getUserTasks().size());
+            for (DefaultWorkflowEngine.UserTask task : record.getUserTasks()) {
+                writeString(task.getId());
+                writeSymbol(task.getStepId());
+                writeString(task.getName());
+                writeString(task.getDescription());
+                writeMap(task.getData());
+                writeDateTime(task.getCreateTime());
+                writeDateTime(task.getCompleteTime());
+                writeSymbol(task.getStatus());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                out.writeByte(TAG_END);
+                out.close();
+            }
+        }
+
+        /**
+         * 写入字典字符串：0表示null；奇数为字典引用；偶数为字面量长度
+         */
+        private void writeSymbol(String value) throws IOException {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer index = dictionary.get(value);
+            if (index != null) {
+                writeVarInt((index << 1) | 1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt((bytes.length + 1) << 1);
+            out.write(bytes);
+            if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+                dictionary.put(value, dictionary.size());
+            }
+        }
+
+        /**
+         * 写入普通字符串：长度加1的变长整数（0表示null）+ UTF-8字节
+         */
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            out.write(bytes);
+        }
+
+        private void writeDateTime(LocalDateTime value) throws IOException {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            writeVarLong(zigZag(value.toEpochSecond(ZoneOffset.UTC)) + 1);
+            writeVarInt(value.getNano());
+        }
+
+        /**
+         * 写入Map：0表示null，1表示开始；之后是键值对，以null键结束
+         */
+        private void writeMap(Map<String, Object> map) throws IOException {
+            if (map == null) {
+                writeVarInt(0);
+                return;
+            }
+            writeVarInt(1);
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                if (entry.getKey() != null) {
+                    writeSymbol(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            }
+            writeSymbol(null);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void writeValue(Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(TYPE_NULL);
+            } else if (value instanceof String) {
+                out.writeByte(TYPE_STRING);
+                writeString((String) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(TYPE_INTEGER);
+                writeVarInt(zigZag((Integer) value));
+            } else if (value instanceof Long) {
+                out.writeByte(TYPE_LONG);
+                writeVarLong(zigZag((Long) value));
+            } else if (value instanceof Double) {
+                out.writeByte(TYPE_DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+            } else if (value instanceof Map) {
+                out.writeByte(TYPE_MAP);
+                writeMap((Map<String, Object>) value);
+            } else if (value instanceof Collection) {
+                out.writeByte(TYPE_LIST);
+                for (Object element : (Collection<Object>) value) {
+                    writeValue(element);
+                }
+                out.writeByte(TYPE_END);
+            } else if (value instanceof LocalDateTime) {
+                out.writeByte(TYPE_DATE_TIME);
+                writeDateTime((LocalDateTime) value);
+            } else {
+                out.writeByte(TYPE_STRING);
+                writeString(value.toString());
+            }
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte(((int) value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+    }
+
+    // ==================== 读取 ====================
+
+    private static final class BinaryReader implements RecordReader {
+        private final DataInputStream in;
+        private final List<String> dictionary = new ArrayList<>();
+        private final int version;
+        private boolean finished;
+
+        BinaryReader(InputStream source) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new NonClosingInputStream(source), 1 << 16));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是二进制实例格式");
+            }
+            this.version = readVarInt();
+            if (version != VERSION && version != VERSION_SYMBOL_ID) {
+                throw new IOException("不支持的二进制实例格式版本: " + version);
+            }
+        }
+
+        @Override
+        public InstanceRecord read() throws IOException {
+            if (finished) {
+                return null;
+            }
+            int tag;
+            try {
+                tag = in.readUnsignedByte();
+            } catch (EOFException e) {
+                throw new IOException("二进制实例流不完整：缺少结束标记", e);
+            }
+            if (tag == TAG_END) {
+                finished = true;
+                return null;
+            }
+            if (tag != TAG_RECORD) {
+                throw new IOException("未知的记录标记: " + tag);
+            }
+
+            String instanceId = version == VERSION_SYMBOL_ID ? readSymbol() : readString();
+            WorkflowInstance instance = WorkflowInstance.builder()
+                .id(instanceId)
+                .workflowId(readSymbol())
+                .name(readString())
+                .status(InstanceStatus.valueOf(readSymbol()))
+                .currentStep(readSymbol(), unZigZag(readVarInt()))
+                .context(readMap())
+                .config(readMap())
+                .startUserId(readSymbol())
+                .currentUserId(readSymbol())
+                .businessKey(readString())
+                .priority(unZigZag(readVarInt()))
+                .createTime(readDateTime())
+                .startTime(readDateTime())
+                .endTime(readDateTime())
+                .updateTime(readDateTime())
+                .errorMessage(readString())
+                .build();
+
+            int historySize = readVarInt();
+            List<StepExecutionResult> history = new ArrayList<>(historySize);
+            for (int i = 0; i < historySize; i++) {
+                StepExecutionResult.Builder builder = StepExecutionResult.builder(StepExecutionResult.Status.valueOf(readSymbol()))
+                    .message(readString())
+                    .outputData(readMap())
+                    .nextStepId(readSymbol())
+                    .errorMessage(readString());
+                long startTime = unZigZag(readVarLong());
+                history.add(builder
+                    .startTime(startTime)
+                    .endTime(startTime + unZigZag(readVarLong()))
+                    .retryCount(readVarInt())
+                    .executorName(readSymbol())
+                    .build());
+            }
+
+            int taskCount = readVarInt();
+            List<DefaultWorkflowEngine.UserTask> userTasks = new ArrayList<>(taskCount);
+            for (int i = 0; i < taskCount; i++) {
+                userTasks.add(new DefaultWorkflowEngine.UserTask(
+                    readString(),
+                    instanceId,
+                    readSymbol(),
+                    readString(),
+                    readString(),
+                    readMap(),
+                    readDateTime(),
+                    readDateTime(),
+                    readSymbol()));
+            }
+
+            return new InstanceRecord(instance, history, userTasks);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private String readSymbol() throws IOException {
+            int header = readVarInt();
+            if (header == 0) {
+                return null;
+            }
+            if ((header & 1) == 1) {
+                int index = header >>> 1;
+                if (index >= dictionary.size()) {
+                    throw new IOException("无效的字典引用: " + index);
+                }
+                return dictionary.get(index);
+            }
+            String value = readUtf8((header >>> 1) - 1);
+            if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+                dictionary.add(value);
+            }
+            return value;
+        }
+
+        private String readString() throws IOException {
+            int length = readVarInt();
+            return length == 0 ? null : readUtf8(length - 1);
+        }
+
+        private String readUtf8(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private LocalDateTime readDateTime() throws IOException {
+            long seconds = readVarLong();
+            if (seconds == 0) {
+                return null;
+            }
+            return LocalDateTime.ofEpochSecond(unZigZag(seconds - 1), readVarInt(), ZoneOffset.UTC);
+        }
+
+        private Map<String, Object> readMap() throws IOException {
+            if (readVarInt() == 0) {
+                return null;
+            }
+            Map<String, Object> map = new HashMap<>();
+            String key;
+            while ((key = readSymbol()) != null) {
+                Object value = readValue();
+                // 实例上下文不允许null值，空值项直接丢弃
+                if (value != null) {
+                    map.put(key, value);
+                }
+            }
+            return map;
+        }
+
+        private Object readValue() throws IOException {
+            return readValue(in.readUnsignedByte());
+        }
+
+        private Object readValue(int type) throws IOException {
+            switch (type) {
+                case TYPE_NULL:
+                    return null;
+                case TYPE_STRING:
+                    return readString();
+                case TYPE_INTEGER:
+                    return unZigZag(readVarInt());
+                case TYPE_LONG:
+                    return unZigZag(readVarLong());
+                case TYPE_DOUBLE:
+                    return in.readDouble();
+                case TYPE_TRUE:
+                    return Boolean.TRUE;
+                case TYPE_FALSE:
+                    return Boolean.FALSE;
+                case TYPE_MAP:
+                    return readMap();
+                case TYPE_LIST:
+                    List<Object> list = new ArrayList<>();
+                    int elementType;
+                    while ((elementType = in.readUnsignedByte()) != TYPE_END) {
+                        list.add(readValue(elementType));
+                    }
+                    return list;
+                case TYPE_DATE_TIME:
+                    return readDateTime();
+                default:
+                    throw new IOException("未知的值类型标记: " + type);
+            }
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("变长整数格式错误");
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("变长整数格式错误");
+        }
+    }
+
+    /**
+     * 关闭时只刷新、不关闭调用方的输出流
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * 关闭时不关闭调用方的输入流
+     */
+    private static final class NonClosingInputStream extends FilterInputStream {
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // ==================== ZigZag ====================
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
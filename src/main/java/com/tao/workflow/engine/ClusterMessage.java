@@ -0,0 +1,123 @@
+package com.tao.workflow.engine;
+
+import java.util.Map;
+
+/**
+ * 集群节点间的请求消息
+ *
+ * 路由到实例归属节点的引擎调用和分区移交都封装为消息，由 {@link ClusterTransport} 投递。
+ * 跨进程的传输实现负责消息的编码，分区移交的实例数据已经由 {@link InstanceCodec} 编码为字节。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public final class ClusterMessage {
+
+    /**
+     * 消息类型
+     */
+    public enum Type {
+        /** 继续执行工作流（包括完成用户任务后推进） */
+        CONTINUE_WORKFLOW,
+        /** 执行指定步骤 */
+        EXECUTE_STEP,
+        /** 暂停实例 */
+        SUSPEND_WORKFLOW,
+        /** 恢复实例 */
+        RESUME_WORKFLOW,
+        /** 终止实例 */
+        TERMINATE_WORKFLOW,
+        /** 取消实例 */
+        CANCEL_WORKFLOW,
+        /** 查询实例 */
+        GET_INSTANCE,
+        /** 分区移交：接收方导入消息携带的实例 */
+        HANDOFF
+    }
+
+    private final Type type;
+    private final String instanceId;
+    private final String stepId;
+    private final String userId;
+    private final String reason;
+    private final Map<String, Object> data;
+    private final byte[] payload;
+    private final boolean forwarded;
+
+    private ClusterMessage(Type type, String instanceId, String stepId, String userId, String reason,
+                           Map<String, Object> data, byte[] payload, boolean forwarded) {
+        this.type = type;
+        this.instanceId = instanceId;
+        this.stepId = stepId;
+        this.userId = userId;
+        this.reason = reason;
+        this.data = data;
+        this.payload = payload;
+        this.forwarded = forwarded;
+    }
+
+    /**
+     * 针对单个实例的请求
+     *
+     * @param type 消息类型
+     * @param instanceId 实例ID
+     * @param stepId 步骤ID，不需要时为null
+     * @param userId 操作用户ID
+     * @param reason 操作原因，不需要时为null
+     * @param data 步骤结果或步骤上下文，不需要时为null
+     * @return 消息
+     */
+    public static ClusterMessage request(Type type, String instanceId, String stepId, String userId,
+                                         String reason, Map<String, Object> data) {
+        return new ClusterMessage(type, instanceId, stepId, userId, reason, data, null, false);
+    }
+
+    /**
+     * 分区移交
+     *
+     * @param fromNodeId 移交方节点ID
+     * @param payload 编码后的实例记录
+     * @return 消息
+     */
+    public static ClusterMessage handoff(String fromNodeId, byte[] payload) {
+        return new ClusterMessage(Type.HANDOFF, null, null, fromNodeId, null, null, payload, false);
+    }
+
+    /**
+     * 转发副本（接收方本地找不到实例，转给实例可能所在的节点）
+     *
+     * 转发过的消息不再继续转发，避免在节点间循环。
+     *
+     * @return 标记为已转发的消息副本
+     */
+    public ClusterMessage forward() {
+        return new ClusterMessage(type, instanceId, stepId, userId, reason, data, payload, true);
+    }
+
+    public Type getType() { return type; }
+
+    public String getInstanceId() { return instanceId; }
+
+    public String getStepId() { return stepId; }
+
+    /** 操作用户ID；分区移交消息中为移交方节点ID */
+    public String getUserId() { return userId; }
+
+    public String getReason() { return reason; }
+
+    public Map<String, Object> getData() { return data; }
+
+    /** 分区移交的实例数据 */
+    public byte[] getPayload() { return payload; }
+
+    /** 是否是转发的消息 */
+    public boolean isForwarded() { return forwarded; }
+
+    @Override
+    public String toString() {
+        return type == Type.HANDOFF
+            ? String.format("ClusterMessage{type=%s, from='%s', bytes=%d}", type, userId, payload.length)
+            : String.format("ClusterMessage{type=%s, instanceId='%s', stepId='%s', forwarded=%s}",
+                            type, instanceId, stepId, forwarded);
+    }
+}
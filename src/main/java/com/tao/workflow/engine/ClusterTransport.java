@@ -0,0 +1,96 @@
+package com.tao.workflow.engine;
+
+import java.util.Set;
+
+/**
+ * 集群传输
+ *
+ * 负责节点成员管理和节点间的请求投递，{@link ClusteredWorkflowEngine} 通过它把调用
+ * 路由到实例的归属节点，并在成员变化时移交分区。
+ *
+ * 实现约定：
+ * 1. {@link #invoke(String, ClusterMessage)} 同步返回目标节点处理器的结果，
+ *    处理器抛出的 {@link WorkflowException} 原样抛给调用方
+ * 2. 目标节点不可达时抛出 {@link WorkflowException.WorkflowErrorType#NETWORK_ERROR} 类型的异常
+ * 3. 成员变化后通知所有已注册的监听器，监听器收到的是完整的成员集合
+ *
+ * 内置实现 {@link InJvmClusterTransport} 在同一个JVM内连接多个节点，用于测试和单机压测。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public interface ClusterTransport {
+
+    /**
+     * 节点加入集群
+     *
+     * @param nodeId 节点ID
+     * @param handler 本节点的请求处理器
+     */
+    void join(String nodeId, RequestHandler handler);
+
+    /**
+     * 节点离开集群
+     *
+     * @param nodeId 节点ID
+     */
+    void leave(String nodeId);
+
+    /**
+     * 获取当前成员
+     * @return 节点ID集合
+     */
+    Set<String> getMembers();
+
+    /**
+     * 向目标节点发送请求并等待结果
+     *
+     * @param targetNodeId 目标节点ID
+     * @param message 请求消息
+     * @return 处理结果
+     * @throws WorkflowException 处理失败或目标节点不可达时抛出
+     */
+    Object invoke(String targetNodeId, ClusterMessage message) throws WorkflowException;
+
+    /**
+     * 注册成员变化监听器
+     *
+     * @param listener 监听器
+     */
+    void addMembershipListener(MembershipListener listener);
+
+    /**
+     * 移除成员变化监听器
+     *
+     * @param listener 监听器
+     */
+    void removeMembershipListener(MembershipListener listener);
+
+    /**
+     * 请求处理器
+     */
+    @FunctionalInterface
+    interface RequestHandler {
+        /**
+         * 处理请求
+         *
+         * @param message 请求消息
+         * @return 处理结果
+         * @throws WorkflowException 处理失败时抛出
+         */
+        Object handle(ClusterMessage message) throws WorkflowException;
+    }
+
+    /**
+     * 成员变化监听器
+     */
+    @FunctionalInterface
+    interface MembershipListener {
+        /**
+         * 成员已变化
+         *
+         * @param members 变化后的全部成员
+         */
+        void membershipChanged(Set<String> members);
+    }
+}
@@ -0,0 +1,464 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.Workflow;
+import com.tao.workflow.model.WorkflowInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 集群模式的工作流引擎节点
+ *
+ * 每个节点持有一个本地的 {@link DefaultWorkflowEngine}，实例ID通过一致性哈希环映射到节点，
+ * 针对已有实例的调用（继续执行、执行步骤、暂停、恢复、终止、取消、查询）路由到归属节点执行。
+ *
+ * 主要机制：
+ * 1. 实例归属：新实例在接收启动请求的节点上创建，ID生成器只分配归属本节点的ID
+ * 2. 调用路由：通过 {@link ClusterTransport} 把调用发往归属节点，本节点归属的调用直接执行
+ * 3. 分区移交：成员变化后，各节点把不再归属自己的实例编码后移交给新的归属节点；
+ *    等待重试退避的实例取消本地重试后移交，由归属节点重新调度；
+ *    正在执行步骤或等待TIMER步骤定时器的实例留在原节点，之后定期重试移交
+ * 4. 移交期间的查找：归属节点本地找不到实例时，把请求转发一次给实例可能所在的节点
+ *    （成员变化前的归属节点），转发过的请求不再转发
+ *
+ * 所有节点必须注册相同的工作流定义和步骤执行器，接收移交时缺少定义的批次会被拒绝并留在移交方。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class ClusteredWorkflowEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusteredWorkflowEngine.class);
+
+    /** 生成归属本节点的实例ID时的最大尝试次数（每个节点） */
+    private static final int ID_ATTEMPTS_PER_NODE = 64;
+
+    private final String nodeId;
+    private final ClusterTransport transport;
+    private final InstanceCodec codec;
+    private final DefaultWorkflowEngine localEngine;
+    private final ScheduledExecutorService rebalanceExecutor;
+    private final ClusterTransport.MembershipListener membershipListener = this::onMembershipChanged;
+
+    /** 当前哈希环 */
+    private volatile ConsistentHashRing ring;
+
+    /** 成员变化前的哈希环，用于查找移交中的实例 */
+    private volatile ConsistentHashRing previousRing;
+
+    /** 是否有待移交的实例 */
+    private volatile boolean handoffPending;
+
+    /** 是否正在离开集群 */
+    private volatile boolean leaving;
+
+    private final LongAdder remoteCalls = new LongAdder();
+    private final LongAdder forwardedCalls = new LongAdder();
+    private final LongAdder handedOff = new LongAdder();
+    private final LongAdder received = new LongAdder();
+
+    /**
+     * 构造函数，创建本地引擎并加入集群
+     *
+     * @param nodeId 节点ID，集群内唯一
+     * @param transport 集群传输
+     * @param configuration 本地引擎配置。构造函数不修改该对象，本地引擎使用它的副本：
+     *                      ID生成器包装为只分配归属本节点ID的生成器，配置了数据目录时
+     *                      变更日志写入其下以节点ID命名的子目录，同一配置可用于创建多个节点
+     */
+    public ClusteredWorkflowEngine(String nodeId, ClusterTransport transport,
+                                   DefaultWorkflowEngine.EngineConfiguration configuration) {
+        this.nodeId = Objects.requireNonNull(nodeId, "节点ID不能为空");
+        this.transport = Objects.requireNonNull(transport, "集群传输不能为空");
+        Objects.requireNonNull(configuration, "引擎配置不能为空");
+        this.codec = configuration.getSnapshotCodec();
+
+        Set<String> members = new TreeSet<>(transport.getMembers());
+        members.add(nodeId);
+        this.ring = new ConsistentHashRing(members, configuration.getClusterVirtualNodes());
+        this.previousRing = ring;
+
+        DefaultWorkflowEngine.EngineConfiguration localConfiguration = configuration.copy();
+        IdGenerator baseGenerator = configuration.getIdGenerator() != null
+            ? configuration.getIdGenerator()
+            : new SnowflakeIdGenerator(configuration.getNodeId() >= 0
+                ? configuration.getNodeId() : SnowflakeIdGenerator.defaultNodeId());
+        localConfiguration.setIdGenerator(new OwnedIdGenerator(baseGenerator));
+        if (configuration.getJournalDirectory() != null) {
+            localConfiguration.setJournalDirectory(Paths.get(configuration.getJournalDirectory(), nodeId).toString());
+        }
+        this.localEngine = new DefaultWorkflowEngine(localConfiguration);
+
+        this.rebalanceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "workflow-cluster-" + nodeId);
+            t.setDaemon(true);
+            return t;
+        });
+        rebalanceExecutor.scheduleWithFixedDelay(this::rebalance,
+            configuration.getClusterRebalanceIntervalMillis(),
+            configuration.getClusterRebalanceIntervalMillis(),
+            TimeUnit.MILLISECONDS);
+
+        transport.addMembershipListener(membershipListener);
+        transport.join(nodeId, this::handle);
+    }
+
+    /**
+     * 注册工作流定义（各节点需注册相同的定义）
+     */
+    public void registerWorkflow(Workflow workflow) {
+        localEngine.registerWorkflow(workflow);
+    }
+
+    /**
+     * 注册步骤执行器（各节点需注册相同的执行器）
+     */
+    public void registerExecutor(String stepType, StepExecutor executor) {
+        localEngine.registerExecutor(stepType, executor);
+    }
+
+    /**
+     * 启动工作流，实例在本节点创建并归属本节点
+     */
+    public WorkflowInstance startWorkflow(String workflowId, String startUserId, Map<String, Object> initialContext) throws Exception {
+        return localEngine.startWorkflow(workflowId, startUserId, initialContext);
+    }
+
+    /**
+     * 继续执行工作流（包括完成用户任务后推进流程），在实例归属节点执行
+     */
+    public WorkflowInstance continueWorkflow(String instanceId, String userId, Map<String, Object> stepResult) throws WorkflowException {
+        return (WorkflowInstance) route(ClusterMessage.request(
+            ClusterMessage.Type.CONTINUE_WORKFLOW, instanceId, null, userId, null, stepResult));
+    }
+
+    /**
+     * 执行指定步骤，在实例归属节点执行
+     */
+    public StepExecutionResult executeStep(String instanceId, String stepId, String userId, Map<String, Object> stepContext) throws WorkflowException {
+        return (StepExecutionResult) route(ClusterMessage.request(
+            ClusterMessage.Type.EXECUTE_STEP, instanceId, stepId, userId, null, stepContext));
+    }
+
+    /**
+     * 暂停工作流，在实例归属节点执行
+     */
+    public WorkflowInstance suspendWorkflow(String instanceId, String userId, String reason) throws WorkflowException {
+        return (WorkflowInstance) route(ClusterMessage.request(
+            ClusterMessage.Type.SUSPEND_WORKFLOW, instanceId, null, userId, reason, null));
+    }
+
+    /**
+     * 恢复工作流，在实例归属节点执行
+     */
+    public WorkflowInstance resumeWorkflow(String instanceId, String userId) throws WorkflowException {
+        return (WorkflowInstance) route(ClusterMessage.request(
+            ClusterMessage.Type.RESUME_WORKFLOW, instanceId, null, userId, null, null));
+    }
+
+    /**
+     * 终止工作流，在实例归属节点执行
+     */
+    public WorkflowInstance terminateWorkflow(String instanceId, String userId, String reason) throws WorkflowException {
+        return (WorkflowInstance) route(ClusterMessage.request(
+            ClusterMessage.Type.TERMINATE_WORKFLOW, instanceId, null, userId, reason, null));
+    }
+
+    /**
+     * 取消工作流，在实例归属节点执行
+     */
+    public WorkflowInstance cancelWorkflow(String instanceId, String userId, String reason) throws WorkflowException {
+        return (WorkflowInstance) route(ClusterMessage.request(
+            ClusterMessage.Type.CANCEL_WORKFLOW, instanceId, null, userId, reason, null));
+    }
+
+    /**
+     * 查询实例，在实例归属节点执行
+     *
+     * @return 工作流实例，不存在时返回null
+     */
+    public WorkflowInstance getWorkflowInstance(String instanceId) throws WorkflowException {
+        return (WorkflowInstance) route(ClusterMessage.request(
+            ClusterMessage.Type.GET_INSTANCE, instanceId, null, null, null, null));
+    }
+
+    /**
+     * 查找实例的归属节点
+     *
+     * @param instanceId 实例ID
+     * @return 节点ID
+     */
+    public String ownerOf(String instanceId) {
+        String owner = ring.ownerOf(instanceId);
+        return owner != null ? owner : nodeId;
+    }
+
+    /**
+     * 离开集群
+     *
+     * 先把本节点移出哈希环并移交全部可移交的实例，等待正在执行的实例结束后继续移交，
+     * 直到全部移交或超时，然后退出集群成员并停止本地引擎。
+     *
+     * @param timeout 等待移交完成的时间
+     * @param unit 时间单位
+     */
+    public void leave(long timeout, TimeUnit unit) {
+        leaving = true;
+        onMembershipChanged(transport.getMembers());
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            while (true) {
+                rebalanceExecutor.submit(this::rebalance).get(Math.max(1, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (!handoffPending || ring.getMembers().isEmpty() || System.nanoTime() >= deadline) {
+                    break;
+                }
+                Thread.sleep(50);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("离开集群前移交实例未完成: {}", nodeId, e);
+        }
+        if (handoffPending && !ring.getMembers().isEmpty()) {
+            logger.warn("离开集群时仍有实例未能移交: {}", nodeId);
+        }
+
+        transport.removeMembershipListener(membershipListener);
+        transport.leave(nodeId);
+        rebalanceExecutor.shutdownNow();
+        localEngine.stop();
+    }
+
+    /** 节点ID */
+    public String getNodeId() { return nodeId; }
+
+    /** 本地引擎 */
+    public DefaultWorkflowEngine getLocalEngine() { return localEngine; }
+
+    /** 当前哈希环 */
+    public ConsistentHashRing getRing() { return ring; }
+
+    /** 路由到其它节点的调用次数 */
+    public long getRemoteCallCount() { return remoteCalls.sum(); }
+
+    /** 因本地找不到实例而转发的请求次数 */
+    public long getForwardedCallCount() { return forwardedCalls.sum(); }
+
+    /** 移交出去的实例数量 */
+    public long getHandedOffCount() { return handedOff.sum(); }
+
+    /** 接收的实例数量 */
+    public long getReceivedCount() { return received.sum(); }
+
+    /**
+     * 把调用发往实例的归属节点
+     */
+    private Object route(ClusterMessage message) throws WorkflowException {
+        Objects.requireNonNull(message.getInstanceId(), "实例ID不能为空");
+        String owner = ownerOf(message.getInstanceId());
+        if (owner.equals(nodeId)) {
+            return handle(message);
+        }
+        remoteCalls.increment();
+        return transport.invoke(owner, message);
+    }
+
+    /**
+     * 处理本节点收到的请求
+     */
+    private Object handle(ClusterMessage message) throws WorkflowException {
+        if (message.getType() == ClusterMessage.Type.HANDOFF) {
+            long count = localEngine.attachInstances(new ByteArrayInputStream(message.getPayload()), codec);
+            received.add(count);
+            logger.info("已接管实例: {} 个 (来自: {})", count, message.getUserId());
+            return count;
+        }
+
+        String instanceId = message.getInstanceId();
+        if (!message.isForwarded() && localEngine.getWorkflowInstance(instanceId) == null) {
+            String holder = locateElsewhere(instanceId);
+            if (holder != null) {
+                forwardedCalls.increment();
+                return transport.invoke(holder, message.forward());
+            }
+        }
+        return executeLocally(message);
+    }
+
+    /**
+     * 查找本地没有的实例可能所在的节点：当前归属节点或成员变化前的归属节点
+     */
+    private String locateElsewhere(String instanceId) {
+        String owner = ring.ownerOf(instanceId);
+        if (owner != null && !owner.equals(nodeId)) {
+            return owner;
+        }
+        String previousOwner = previousRing.ownerOf(instanceId);
+        if (previousOwner != null && !previousOwner.equals(nodeId) && transport.getMembers().contains(previousOwner)) {
+            return previousOwner;
+        }
+        return null;
+    }
+
+    private Object executeLocally(ClusterMessage message) throws WorkflowException {
+        String instanceId = message.getInstanceId();
+        switch (message.getType()) {
+            case CONTINUE_WORKFLOW:
+                return localEngine.continueWorkflow(instanceId, message.getUserId(), message.getData());
+            case EXECUTE_STEP:
+                return localEngine.executeStep(instanceId, message.getStepId(), message.getUserId(), message.getData());
+            case SUSPEND_WORKFLOW:
+                return localEngine.suspendWorkflow(instanceId, message.getUserId(), message.getReason());
+            case RESUME_WORKFLOW:
+                return localEngine.resumeWorkflow(instanceId, message.getUserId());
+            case TERMINATE_WORKFLOW:
+                return localEngine.terminateWorkflow(instanceId, message.getUserId(), message.getReason());
+            case CANCEL_WORKFLOW:
+                return localEngine.cancelWorkflow(instanceId, message.getUserId(), message.getReason());
+            case GET_INSTANCE:
+                return localEngine.getWorkflowInstance(instanceId);
+            default:
+                throw new WorkflowException("不支持的集群消息类型: " + message.getType(),
+                                          WorkflowException.WorkflowErrorType.SYSTEM_ERROR);
+        }
+    }
+
+    /**
+     * 成员变化：立即切换哈希环，移交在后台进行
+     */
+    private synchronized void onMembershipChanged(Set<String> members) {
+        Set<String> next = new TreeSet<>(members);
+        if (leaving) {
+            next.remove(nodeId);
+        } else {
+            next.add(nodeId);
+        }
+        if (next.equals(ring.getMembers())) {
+            return;
+        }
+        previousRing = ring;
+        ring = ring.withMembers(next);
+        handoffPending = true;
+        logger.info("集群成员已变化: {} (节点: {})", next, nodeId);
+        if (!rebalanceExecutor.isShutdown()) {
+            rebalanceExecutor.execute(this::rebalance);
+        }
+    }
+
+    /**
+     * 把不再归属本节点的实例移交给归属节点
+     *
+     * 每个目标节点一批，移交失败的批次重新接管回本节点；暂不可移交的实例留到下一轮。
+     */
+    private void rebalance() {
+        if (!handoffPending) {
+            return;
+        }
+        handoffPending = false;
+
+        ConsistentHashRing current = ring;
+        long remaining = 0;
+        for (String member : current.getMembers()) {
+            if (member.equals(nodeId)) {
+                continue;
+            }
+            long[] selected = new long[1];
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long moved;
+            try {
+                moved = localEngine.detachInstances(id -> {
+                    if (member.equals(current.ownerOf(id))) {
+                        selected[0]++;
+                        return true;
+                    }
+                    return false;
+                }, out, codec);
+            } catch (WorkflowException e) {
+                logger.error("分离待移交实例失败: {} -> {}", nodeId, member, e);
+                remaining++;
+                continue;
+            }
+            remaining += selected[0] - moved;
+            if (moved == 0) {
+                continue;
+            }
+
+            byte[] payload = out.toByteArray();
+            try {
+                transport.invoke(member, ClusterMessage.handoff(nodeId, payload));
+                handedOff.add(moved);
+                logger.info("已移交实例: {} 个 ({} -> {})", moved, nodeId, member);
+            } catch (WorkflowException e) {
+                logger.warn("移交实例失败，实例保留在本节点: {} 个 ({} -> {}): {}", moved, nodeId, member, e.getMessage());
+                remaining += moved;
+                try {
+                    localEngine.attachInstances(new ByteArrayInputStream(payload), codec);
+                } catch (WorkflowException restoreError) {
+                    logger.error("移交失败后重新接管实例失败: {} 个", moved, restoreError);
+                }
+            }
+        }
+
+        if (remaining > 0 || ring != current) {
+            handoffPending = true;
+        }
+    }
+
+    /**
+     * 只分配归属本节点的实例ID
+     *
+     * 引擎的实例ID为前缀加ID字符串，生成器跳过哈希到其它节点的候选ID。
+     * 多次尝试仍未命中时（成员很多且运气不佳）返回最后一个候选，该实例会在下一轮移交中迁往归属节点。
+     * 用户任务、定时器等其它ID不参与归属判断，直接使用底层生成器。
+     */
+    private final class OwnedIdGenerator implements IdGenerator {
+        private final IdGenerator delegate;
+
+        OwnedIdGenerator(IdGenerator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public long nextId() {
+            return delegate.nextId();
+        }
+
+        @Override
+        public String nextIdString() {
+            return delegate.nextIdString();
+        }
+
+        @Override
+        public String nextInstanceIdString() {
+            ConsistentHashRing current = ring;
+            int attempts = ID_ATTEMPTS_PER_NODE * Math.max(1, current.getMembers().size());
+            String candidate = delegate.nextInstanceIdString();
+            for (int i = 1; i < attempts && !owns(current, candidate); i++) {
+                candidate = delegate.nextInstanceIdString();
+            }
+            if (!owns(current, candidate)) {
+                handoffPending = true;
+            }
+            return candidate;
+        }
+
+        private boolean owns(ConsistentHashRing current, String candidate) {
+            String owner = current.ownerOf(DefaultWorkflowEngine.INSTANCE_ID_PREFIX + candidate);
+            return owner == null || owner.equals(nodeId);
+        }
+    }
+}
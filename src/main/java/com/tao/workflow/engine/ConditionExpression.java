@@ -0,0 +1,627 @@
+package com.tao.workflow.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 条件表达式
+ *
+ * 步骤前置条件使用的小型表达式语言。表达式在注册工作流定义时解析并编译为节点树，
+ * 运行时直接在实例上下文上求值：变量路径预先拆分，数字字面量预先装箱，
+ * 求值过程不创建任何对象，也不会抛出异常（类型不匹配的比较结果为false）。
+ *
+ * 语法（优先级从低到高）：
+ * 1. 逻辑或：{@code a || b}、{@code a or b}
+ * 2. 逻辑与：{@code a && b}、{@code a and b}
+ * 3. 逻辑非：{@code !a}、{@code not a}
+ * 4. 比较：{@code == != < <= > >=}，集合判断：{@code x in [1, 2]}、{@code x not in ['a', 'b']}
+ * 5. 操作数：数字、字符串（单引号或双引号）、true、false、null、变量路径（{@code order.amount}）、
+ *    函数 {@code exists(path)}、{@code empty(path)}，以及括号
+ *
+ * 求值规则：
+ * 1. 数字之间按数值比较，与具体的Number类型无关
+ * 2. 字符串之间按字典序比较，字符串与枚举值按枚举名称判断相等
+ * 3. 单独的操作数按"真值"判断：null、false、0、空字符串、空集合为假
+ * 4. 变量路径中间节点不是Map或不存在时，取值为null
+ *
+ * 示例：{@code amount >= 1000 && (level == 'VIP' || region in ['EU', 'US']) && !exists(approvedBy)}
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public final class ConditionExpression {
+
+    /** 表达式源码 */
+    private final String source;
+
+    /** 编译后的根节点 */
+    private final Node root;
+
+    private ConditionExpression(String source, Node root) {
+        this.source = source;
+        this.root = root;
+    }
+
+    /**
+     * 编译表达式
+     *
+     * @param source 表达式源码
+     * @return 编译后的表达式
+     * @throws IllegalArgumentException 如果表达式语法错误
+     */
+    public static ConditionExpression compile(String source) {
+        Objects.requireNonNull(source, "表达式不能为空");
+        Parser parser = new Parser(source);
+        Node root = parser.parseExpression();
+        parser.expectEnd();
+        return new ConditionExpression(source, root);
+    }
+
+    /**
+     * 在变量上下文上求值
+     *
+     * @param variables 变量上下文（可以为null）
+     * @return 条件成立返回true
+     */
+    public boolean evaluate(Map<String, ?> variables) {
+        return root.test(variables != null ? variables : Collections.emptyMap());
+    }
+
+    /**
+     * 获取表达式源码
+     * @return 表达式源码
+     */
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return "ConditionExpression{" + source + "}";
+    }
+
+    // ==================== 求值辅助 ====================
+
+    /** 不可比较 */
+    private static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+    private static boolean truthy(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue() != 0;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() > 0;
+        }
+        if (value instanceof Collection) {
+            return !((Collection<?>) value).isEmpty();
+        }
+        if (value instanceof Map) {
+            return !((Map<?, ?>) value).isEmpty();
+        }
+        return true;
+    }
+
+    private static boolean valueEquals(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue()) == 0;
+        }
+        if (a instanceof Enum && b instanceof String) {
+            return ((Enum<?>) a).name().equals(b);
+        }
+        if (a instanceof String && b instanceof Enum) {
+            return ((Enum<?>) b).name().equals(a);
+        }
+        return a.equals(b);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return INCOMPARABLE;
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a instanceof String && b instanceof String) {
+            return Integer.signum(((String) a).compareTo((String) b));
+        }
+        if (a instanceof Comparable && a.getClass() == b.getClass()) {
+            return Integer.signum(((Comparable) a).compareTo(b));
+        }
+        return INCOMPARABLE;
+    }
+
+    // ==================== 节点 ====================
+
+    /**
+     * 表达式节点
+     */
+    private abstract static class Node {
+        /** 取值 */
+        abstract Object value(Map<String, ?> variables);
+
+        /** 按真值判断 */
+        boolean test(Map<String, ?> variables) {
+            return truthy(value(variables));
+        }
+    }
+
+    /**
+     * 布尔节点，取值返回Boolean常量
+     */
+    private abstract static class BooleanNode extends Node {
+        @Override
+        final Object value(Map<String, ?> variables) {
+            return test(variables) ? Boolean.TRUE : Boolean.FALSE;
+        }
+
+        @Override
+        abstract boolean test(Map<String, ?> variables);
+    }
+
+    private static final class Literal extends Node {
+        private final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object value(Map<String, ?> variables) {
+            return value;
+        }
+    }
+
+    private static final class Path extends Node {
+        private final String[] segments;
+
+        Path(String[] segments) {
+            this.segments = segments;
+        }
+
+        @Override
+        Object value(Map<String, ?> variables) {
+            Object current = variables.get(segments[0]);
+            for (int i = 1; i < segments.length && current != null; i++) {
+                current = current instanceof Map ? ((Map<?, ?>) current).get(segments[i]) : null;
+            }
+            return current;
+        }
+    }
+
+    private static final class And extends BooleanNode {
+        private final Node[] operands;
+
+        And(Node[] operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        boolean test(Map<String, ?> variables) {
+            for (Node operand : operands) {
+                if (!operand.test(variables)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Or extends BooleanNode {
+        private final Node[] operands;
+
+        Or(Node[] operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        boolean test(Map<String, ?> variables) {
+            for (Node operand : operands) {
+                if (operand.test(variables)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Not extends BooleanNode {
+        private final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean test(Map<String, ?> variables) {
+            return !operand.test(variables);
+        }
+    }
+
+    private enum Operator {
+        EQ, NE, LT, LE, GT, GE
+    }
+
+    private static final class Compare extends BooleanNode {
+        private final Operator operator;
+        private final Node left;
+        private final Node right;
+
+        Compare(Operator operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean test(Map<String, ?> variables) {
+            Object a = left.value(variables);
+            Object b = right.value(variables);
+            switch (operator) {
+                case EQ:
+                    return valueEquals(a, b);
+                case NE:
+                    return !valueEquals(a, b);
+                default:
+                    int result = compareValues(a, b);
+                    if (result == INCOMPARABLE) {
+                        return false;
+                    }
+                    switch (operator) {
+                        case LT: return result < 0;
+                        case LE: return result <= 0;
+                        case GT: return result > 0;
+                        default: return result >= 0;
+                    }
+            }
+        }
+    }
+
+    private static final class In extends BooleanNode {
+        private final Node operand;
+        private final Object[] candidates;
+        private final boolean negated;
+
+        In(Node operand, Object[] candidates, boolean negated) {
+            this.operand = operand;
+            this.candidates = candidates;
+            this.negated = negated;
+        }
+
+        @Override
+        boolean test(Map<String, ?> variables) {
+            Object value = operand.value(variables);
+            for (Object candidate : candidates) {
+                if (valueEquals(value, candidate)) {
+                    return !negated;
+                }
+            }
+            return negated;
+        }
+    }
+
+    private static final class Exists extends BooleanNode {
+        private final Node operand;
+
+        Exists(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean test(Map<String, ?> variables) {
+            return operand.value(variables) != null;
+        }
+    }
+
+    private static final class Empty extends BooleanNode {
+        private final Node operand;
+
+        Empty(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean test(Map<String, ?> variables) {
+            Object value = operand.value(variables);
+            return value == null
+                || (value instanceof CharSequence && ((CharSequence) value).length() == 0)
+                || (value instanceof Collection && ((Collection<?>) value).isEmpty())
+                || (value instanceof Map && ((Map<?, ?>) value).isEmpty());
+        }
+    }
+
+    // ==================== 解析 ====================
+
+    /**
+     * 递归下降解析器
+     */
+    private static final class Parser {
+        private final String source;
+        private int pos;
+
+        Parser(String source) {
+            this.source = source;
+        }
+
+        Node parseExpression() {
+            return parseOr();
+        }
+
+        void expectEnd() {
+            skipWhitespace();
+            if (pos < source.length()) {
+                throw error("无法识别的内容");
+            }
+        }
+
+        private Node parseOr() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while (acceptSymbol("||") || acceptKeyword("or")) {
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands.toArray(new Node[0]));
+        }
+
+        private Node parseAnd() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseNot());
+            while (acceptSymbol("&&") || acceptKeyword("and")) {
+                operands.add(parseNot());
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands.toArray(new Node[0]));
+        }
+
+        private Node parseNot() {
+            if (peekSymbol("!=")) {
+                throw error("缺少左操作数");
+            }
+            if (acceptSymbol("!") || acceptKeyword("not")) {
+                return new Not(parseNot());
+            }
+            return parseComparison();
+        }
+
+        private Node parseComparison() {
+            Node left = parseOperand();
+            Operator operator = acceptOperator();
+            if (operator != null) {
+                return new Compare(operator, left, parseOperand());
+            }
+            int mark = pos;
+            boolean negated = acceptKeyword("not");
+            if (acceptKeyword("in")) {
+                return new In(left, parseList(), negated);
+            }
+            pos = mark;
+            return left;
+        }
+
+        private Operator acceptOperator() {
+            if (acceptSymbol("==")) {
+                return Operator.EQ;
+            }
+            if (acceptSymbol("!=")) {
+                return Operator.NE;
+            }
+            if (acceptSymbol("<=")) {
+                return Operator.LE;
+            }
+            if (acceptSymbol(">=")) {
+                return Operator.GE;
+            }
+            if (acceptSymbol("<")) {
+                return Operator.LT;
+            }
+            if (acceptSymbol(">")) {
+                return Operator.GT;
+            }
+            return null;
+        }
+
+        private Object[] parseList() {
+            expectSymbol("[");
+            List<Object> values = new ArrayList<>();
+            if (!acceptSymbol("]")) {
+                do {
+                    values.add(parseLiteral());
+                } while (acceptSymbol(","));
+                expectSymbol("]");
+            }
+            return values.toArray();
+        }
+
+        private Node parseOperand() {
+            skipWhitespace();
+            if (acceptSymbol("(")) {
+                Node inner = parseOr();
+                expectSymbol(")");
+                return inner;
+            }
+            if (pos < source.length() && isIdentifierStart(source.charAt(pos))) {
+                int start = pos;
+                String name = readIdentifier();
+                switch (name) {
+                    case "true":
+                        return new Literal(Boolean.TRUE);
+                    case "false":
+                        return new Literal(Boolean.FALSE);
+                    case "null":
+                        return new Literal(null);
+                    case "exists":
+                    case "empty":
+                        if (acceptSymbol("(")) {
+                            Node path = parsePath(readIdentifierOrFail());
+                            expectSymbol(")");
+                            return "exists".equals(name) ? new Exists(path) : new Empty(path);
+                        }
+                        break;
+                    case "and":
+                    case "or":
+                    case "not":
+                    case "in":
+                        pos = start;
+                        throw error("缺少操作数");
+                    default:
+                        break;
+                }
+                return parsePath(name);
+            }
+            return new Literal(parseLiteral());
+        }
+
+        private Node parsePath(String first) {
+            List<String> segments = new ArrayList<>();
+            segments.add(first);
+            while (pos < source.length() && source.charAt(pos) == '.') {
+                pos++;
+                segments.add(readIdentifierOrFail());
+            }
+            return new Path(segments.toArray(new String[0]));
+        }
+
+        private Object parseLiteral() {
+            skipWhitespace();
+            if (pos >= source.length()) {
+                throw error("缺少操作数");
+            }
+            char c = source.charAt(pos);
+            if (c == '\'' || c == '"') {
+                return readString(c);
+            }
+            if (c == '-' || Character.isDigit(c)) {
+                return readNumber();
+            }
+            if (isIdentifierStart(c)) {
+                int start = pos;
+                String name = readIdentifier();
+                switch (name) {
+                    case "true":
+                        return Boolean.TRUE;
+                    case "false":
+                        return Boolean.FALSE;
+                    case "null":
+                        return null;
+                    default:
+                        pos = start;
+                        throw error("这里只能使用字面量");
+                }
+            }
+            throw error("缺少操作数");
+        }
+
+        private Double readNumber() {
+            int start = pos;
+            if (source.charAt(pos) == '-') {
+                pos++;
+            }
+            while (pos < source.length() && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '.')) {
+                pos++;
+            }
+            try {
+                return Double.valueOf(source.substring(start, pos));
+            } catch (NumberFormatException e) {
+                pos = start;
+                throw error("无效的数字");
+            }
+        }
+
+        private String readString(char quote) {
+            int start = pos++;
+            StringBuilder sb = new StringBuilder();
+            while (pos < source.length()) {
+                char c = source.charAt(pos++);
+                if (c == quote) {
+                    return sb.toString();
+                }
+                if (c == '\\' && pos < source.length()) {
+                    c = source.charAt(pos++);
+                }
+                sb.append(c);
+            }
+            pos = start;
+            throw error("字符串没有结束");
+        }
+
+        private String readIdentifier() {
+            int start = pos;
+            while (pos < source.length() && Character.isJavaIdentifierPart(source.charAt(pos))) {
+                pos++;
+            }
+            return source.substring(start, pos);
+        }
+
+        private String readIdentifierOrFail() {
+            skipWhitespace();
+            if (pos >= source.length() || !isIdentifierStart(source.charAt(pos))) {
+                throw error("缺少变量名");
+            }
+            return readIdentifier();
+        }
+
+        private static boolean isIdentifierStart(char c) {
+            return Character.isJavaIdentifierStart(c);
+        }
+
+        private boolean peekSymbol(String symbol) {
+            skipWhitespace();
+            return source.startsWith(symbol, pos);
+        }
+
+        private boolean acceptSymbol(String symbol) {
+            if (peekSymbol(symbol)) {
+                // "!" 不能吞掉 "!="，"<"、">" 不能吞掉 "<="、">="
+                if (symbol.length() == 1 && (symbol.equals("!") || symbol.equals("<") || symbol.equals(">"))
+                    && source.startsWith("=", pos + 1)) {
+                    return false;
+                }
+                pos += symbol.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void expectSymbol(String symbol) {
+            if (!acceptSymbol(symbol)) {
+                throw error("缺少 '" + symbol + "'");
+            }
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            skipWhitespace();
+            int end = pos + keyword.length();
+            if (source.startsWith(keyword, pos)
+                && (end >= source.length() || !Character.isJavaIdentifierPart(source.charAt(end)))) {
+                pos = end;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(String.format("条件表达式无效: %s（位置 %d）: %s", message, pos, source));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.tao.workflow.engine;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 一致性哈希环
+ *
+ * 把实例ID映射到集群节点。每个节点在环上放置若干虚拟节点，使实例在节点间均匀分布；
+ * 节点加入或离开时只有相邻区间的实例改变归属，其余实例留在原节点。
+ *
+ * 哈希环不可变，成员变化时通过 {@link #withMembers(Collection)} 生成新的环，
+ * 查找时不需要加锁。虚拟节点的哈希值保存在有序数组中，查找为一次二分查找。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public final class ConsistentHashRing {
+
+    /** 默认每个节点的虚拟节点数量 */
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final Set<String> members;
+    private final int virtualNodes;
+    private final long[] hashes;
+    private final String[] owners;
+
+    /**
+     * 构造函数
+     *
+     * @param members 节点ID集合
+     * @param virtualNodes 每个节点的虚拟节点数量
+     */
+    public ConsistentHashRing(Collection<String> members, int virtualNodes) {
+        Objects.requireNonNull(members, "节点集合不能为空");
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("虚拟节点数量必须大于0");
+        }
+        this.members = Collections.unmodifiableSet(new TreeSet<>(members));
+        this.virtualNodes = virtualNodes;
+
+        int size = this.members.size() * virtualNodes;
+        long[] points = new long[size];
+        String[] pointOwners = new String[size];
+        int i = 0;
+        for (String member : this.members) {
+            for (int v = 0; v < virtualNodes; v++) {
+                points[i] = hash(member + "#" + v);
+                pointOwners[i] = member;
+                i++;
+            }
+        }
+
+        // 按哈希值排序，哈希冲突时按节点ID排序保证各节点计算出的环一致
+        Integer[] order = new Integer[size];
+        for (int k = 0; k < size; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = Long.compare(points[a], points[b]);
+            return c != 0 ? c : pointOwners[a].compareTo(pointOwners[b]);
+        });
+        this.hashes = new long[size];
+        this.owners = new String[size];
+        for (int k = 0; k < size; k++) {
+            hashes[k] = points[order[k]];
+            owners[k] = pointOwners[order[k]];
+        }
+    }
+
+    /**
+     * 以新的成员集合生成哈希环，虚拟节点数量不变
+     *
+     * @param newMembers 节点ID集合
+     * @return 新的哈希环
+     */
+    public ConsistentHashRing withMembers(Collection<String> newMembers) {
+        return new ConsistentHashRing(newMembers, virtualNodes);
+    }
+
+    /**
+     * 查找键的归属节点
+     *
+     * @param key 键（实例ID）
+     * @return 节点ID，环为空时返回null
+     */
+    public String ownerOf(String key) {
+        if (hashes.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(hashes, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == hashes.length ? 0 : index];
+    }
+
+    /**
+     * 获取节点ID集合
+     * @return 节点ID集合（有序、只读）
+     */
+    public Set<String> getMembers() {
+        return members;
+    }
+
+    /**
+     * 是否包含节点
+     * @param nodeId 节点ID
+     * @return 包含返回true
+     */
+    public boolean contains(String nodeId) {
+        return members.contains(nodeId);
+    }
+
+    /**
+     * 64位哈希（FNV-1a，再经过murmur3的混合函数打散低位）
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsistentHashRing{members=" + members + ", virtualNodes=" + virtualNodes + "}";
+    }
+}
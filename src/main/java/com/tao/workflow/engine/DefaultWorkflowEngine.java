@@ -4,9 +4,15 @@ import com.tao.workflow.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -29,27 +35,98 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
     
     private static final Logger logger = LoggerFactory.getLogger(DefaultWorkflowEngine.class);
     
+    /** 全部终止状态 */
+    private static final List<InstanceStatus> FINAL_STATUSES = Arrays.stream(InstanceStatus.values())
+        .filter(InstanceStatus::isFinalState)
+        .collect(Collectors.toList());
+    
+    /** 实例ID前缀 */
+    static final String INSTANCE_ID_PREFIX = "WF_";
+    
     /** 步骤执行器注册表 */
     private final Map<String, StepExecutor> executorRegistry = new ConcurrentHashMap<>();
     
     /** 工作流实例存储 */
     private final Map<String, WorkflowInstance> instanceStorage = new ConcurrentHashMap<>();
     
+    /** 工作流实例二级索引（状态、工作流ID、业务键） */
+    private final InstanceIndex instanceIndex = new InstanceIndex();
+    
     /** 工作流定义存储 */
     private final Map<String, Workflow> workflowStorage = new ConcurrentHashMap<>();
     
+    /** 工作流执行计划存储（注册时编译） */
+    private final Map<String, WorkflowExecutionPlan> planStorage = new ConcurrentHashMap<>();
+    
     /** 异步执行线程池 */
     private final ExecutorService asyncExecutor;
     
+    /** 异步执行线程池的有界任务队列 */
+    private final BlockingQueue<Runnable> asyncQueue;
+    
+    /** 异步步骤优先级调度器（未启用优先级调度时为null） */
+    private final PriorityStepScheduler priorityScheduler;
+    
+    /** 按步骤类型隔离的线程池 */
+    private final StepBulkheads stepBulkheads;
+    
+    /** 启动准入控制（限流与背压） */
+    private final AdmissionController admissionController;
+    
+    /** 延后启动的实例ID（过载时进入，负载回落后按先后顺序启动） */
+    private final BlockingDeque<String> deferredStarts;
+    
+    /** 延后启动队列的名额，创建实例前预留，实例交给线程池启动后归还 */
+    private final Semaphore deferredStartSlots;
+    
     /** 定时任务调度器 */
     private final ScheduledExecutorService scheduler;
     
+    /** 批量操作线程池 */
+    private final ExecutorService batchExecutor;
+    
+    /** 时间轮定时服务（步骤重试、TIMER步骤、步骤超时看门狗） */
+    private final TimingWheelTimer timerService;
+    
+    /** 定时任务执行线程池（与异步线程池分开，避免调用方执行策略阻塞时间轮） */
+    private final ExecutorService timerExecutor;
+    
+    /** 定时器持久化存储（可以为null） */
+    private final TimerStore timerStore;
+    
+    /** 等待重试退避的实例（实例ID -> 重试定时器），集群移交时据此取消本地定时 */
+    private final Map<String, PendingRetry> pendingRetries = new ConcurrentHashMap<>();
+    
+    /** 步骤超时看门狗（共享时间轮） */
+    private final StepWatchdog stepWatchdog;
+    
+    /** 生命周期事件总线（订阅者在各自线程上批量消费） */
+    private final EngineEventBus eventBus;
+    
+    /** 实例执行通道（串行执行模式下启用，否则为null） */
+    private final InstanceExecutionLanes executionLanes;
+    
     /** 执行历史记录 */
     private final Map<String, List<StepExecutionResult>> executionHistory = new ConcurrentHashMap<>();
     
     /** 用户任务存储 */
     private final Map<String, List<UserTask>> userTaskStorage = new ConcurrentHashMap<>();
     
+    /** 待办任务收件箱索引（按处理人、候选组排序） */
+    private final TaskInbox taskInbox = new TaskInbox();
+    
+    /** 终止实例过期队列（按结束时间分桶，供清理任务增量弹出） */
+    private final InstanceExpiryQueue expiryQueue;
+    
+    /** 步骤连续失败计数（重试判定与退避） */
+    private final StepRetryTracker retryTracker = new StepRetryTracker();
+    
+    /** 引擎状态持久化（变更日志 + 快照，未配置数据目录时为null） */
+    private final EngineStateStore stateStore;
+    
+    /** 实例和用户任务ID生成器 */
+    private final IdGenerator idGenerator;
+    
     /** 引擎配置 */
     private final EngineConfiguration configuration;
     
@@ -72,14 +149,19 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
     public DefaultWorkflowEngine(EngineConfiguration configuration) {
         this.configuration = configuration;
         
-        // 初始化线程池
-        this.asyncExecutor = Executors.newFixedThreadPool(
+        // 初始化线程池，队列有界，队列满时由提交线程执行，对内部提交方形成背压
+        this.asyncQueue = new LinkedBlockingQueue<>(configuration.getAsyncQueueCapacity());
+        this.asyncExecutor = new ThreadPoolExecutor(
+            configuration.getAsyncThreadPoolSize(),
             configuration.getAsyncThreadPoolSize(),
+            0L, TimeUnit.MILLISECONDS,
+            asyncQueue,
             r -> {
                 Thread t = new Thread(r, "workflow-async-" + System.currentTimeMillis());
                 t.setDaemon(true);
                 return t;
-            }
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy()
 
      @Override
     public WorkflowInstance rollbackToStep(String instanceId, String targetStepId, String userId, String reason) throws WorkflowException {
@@ -96,17 +178,17 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
              throw new WorkflowException("已完成或已取消的工作流实例不能回滚", WorkflowException.ErrorType.INVALID_STATE);
          }
          
-         // 获取工作流定义
-         Workflow workflow = workflowStorage.get(instance.getWorkflowId());
-         if (workflow == null) {
+         // 获取执行计划
+         WorkflowExecutionPlan plan = planStorage.get(instance.getWorkflowId());
+         if (plan == null) {
              throw new WorkflowException("工作流定义不存在: " + instance.getWorkflowId(), WorkflowException.ErrorType.WORKFLOW_NOT_FOUND);
          }
          
          // 验证目标步骤存在
-         WorkflowStep targetStep = workflow.getSteps().stream()
-                 .filter(step -> targetStepId.equals(step.getId()))
-                 .findFirst()
-                 .orElseThrow(() -> new WorkflowException("目标步骤不存在: " + targetStepId, WorkflowException.ErrorType.STEP_NOT_FOUND));
+         WorkflowStep targetStep = plan.getStep(targetStepId);
+         if (targetStep == null) {
+             throw new WorkflowException("目标步骤不存在: " + targetStepId, WorkflowException.ErrorType.STEP_NOT_FOUND);
+         }
          
          // 检查是否可以回滚到目标步骤（目标步骤必须在当前步骤之前）
          List<ExecutionHistory> histories = getExecutionHistory(instanceId);
@@ -123,9 +205,9 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
          }
          
          // 执行回滚操作
-         instance.setCurrentStepId(targetStepId);
-         instance.setStatus("RUNNING");
-         instance.setUpdateTime(LocalDateTime.now());
+         if (!enterStep(instance, targetStep)) {
+             throw new WorkflowException("工作流实例状态不允许回滚: " + instance.getStatus(), WorkflowException.ErrorType.INVALID_STATE);
+         }
          
          // 记录回滚操作
         recordExecutionResult(instance, targetStep, "ROLLBACK", "回滚到步骤: " + targetStepId + ", 原因: " + reason, null);
@@ -133,6 +215,9 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
          // 清理目标步骤之后的执行历史和用户任务
          cleanupAfterRollback(instanceId, targetStepId);
          
+         // 回滚后的步骤重新计算重试次数
+         retryTracker.resetInstance(instanceId);
+         
          return instance;
      }
 
@@ -198,152 +283,127 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
 
      @Override
     public BatchOperationResult batchOperation(List<String> instanceIds, WorkflowOperation operation, String userId, Map<String, Object> parameters) throws WorkflowException {
-         Objects.requireNonNull(instanceIds, "实例ID列表不能为空");
-        Objects.requireNonNull(operation, "操作不能为空");
-        Objects.requireNonNull(userId, "用户ID不能为空");
-        Objects.requireNonNull(parameters, "操作参数不能为空");
-         
-         BatchOperationResult result = new BatchOperationResult();
-         result.setOperation(operation);
-         result.setUserId(userId);
-         result.setStartTime(LocalDateTime.now());
-         result.setTotalCount(instanceIds.size());
-         
-         for (String instanceId : instanceIds) {
-             try {
-                 // 检查操作是否可用
-                 if (!canPerformOperation(instanceId, operation)) {
-                     result.addSkippedDetail(new BatchOperationResult.SkippedDetail(
-                         instanceId, "操作不可用: " + operation.getDisplayName()));
-                     continue;
-                 }
-                 
-                 // 执行操作
-                 switch (operation) {
-                     case SUSPEND:
-                         suspendWorkflow(instanceId);
-                         break;
-                     case RESUME:
-                         resumeWorkflow(instanceId);
-                         break;
-                     case TERMINATE:
-                         terminateWorkflow(instanceId, "批量终止操作");
-                         break;
-                     case CANCEL:
-                         cancelWorkflow(instanceId, "批量取消操作");
-                         break;
-                     default:
-                         result.addSkippedDetail(new BatchOperationResult.SkippedDetail(
-                             instanceId, "不支持的批量操作: " + operation.getDisplayName()));
-                         continue;
-                 }
-                 
-                 result.addSuccessfulInstanceId(instanceId);
-                 
-             } catch (Exception e) {
-                 result.addFailureDetail(new BatchOperationResult.FailureDetail(
-                     instanceId, e.getMessage(), e.getClass().getSimpleName()));
-             }
+         BatchOperationHandle handle = submitBatchOperation(instanceIds, operation, userId, parameters);
+         try {
+             return handle.await();
+         } catch (InterruptedException e) {
+             Thread.currentThread().interrupt();
+             handle.cancel();
+             return handle.getPartialResult();
          }
-         
-         result.setEndTime(LocalDateTime.now());
-         result.calculateStatistics();
-         
-         return result;
       }
-
-      @Override
-      public WorkflowEngineStatistics getStatistics() {
-          WorkflowEngineStatistics stats = new WorkflowEngineStatistics();
+      
+      /**
+       * 提交批量操作
+       * 
+       * 实例列表按批量分块大小切分，由至多batchParallelism个工作线程并行领取分块执行。
+       * 不同实例之间的操作互不依赖，同一实例的状态转换仍由实例自身的CAS保证原子性。
+       * 方法立即返回句柄，调用方可以观察进度、获取部分结果或取消剩余分块。
+       * 
+       * @param instanceIds 实例ID列表
+       * @param operation 操作类型
+       * @param userId 操作用户
+       * @param parameters 操作参数（reason：操作原因）
+       * @return 批量操作句柄
+       */
+      public BatchOperationHandle submitBatchOperation(List<String> instanceIds, WorkflowOperation operation, String userId, Map<String, Object> parameters) {
+          Objects.requireNonNull(instanceIds, "实例ID列表不能为空");
+          Objects.requireNonNull(operation, "操作不能为空");
+          Objects.requireNonNull(userId, "用户ID不能为空");
+          Objects.requireNonNull(parameters, "操作参数不能为空");
           
-          // 计算实例统计
-          long totalStarted = 0;
-          long completed = 0;
-          long failed = 0;
-          long terminated = 0;
-          long cancelled = 0;
-          long suspended = 0;
-          long running = 0;
-          long waiting = 0;
+          List<String> ids = new ArrayList<>(instanceIds);
+          int chunkSize = Math.max(1, configuration.getBatchChunkSize());
+          int chunkCount = (ids.size() + chunkSize - 1) / chunkSize;
+          int workerCount = Math.min(chunkCount, Math.max(1, configuration.getBatchParallelism()));
           
-          List<Long> executionTimes = new ArrayList<>();
-          Map<String, Long> statusCounts = new HashMap<>();
-          Map<String, WorkflowEngineStatistics.WorkflowTypeStatistics> typeStats = new HashMap<>();
+          BatchOperationHandle handle = new BatchOperationHandle(operation, userId, ids.size(), workerCount);
+          AtomicInteger nextChunk = new AtomicInteger();
           
-          for (WorkflowInstance instance : instanceStorage.values()) {
-              totalStarted++;
-              String status = instance.getStatus();
-              
-              // 按状态统计
-              statusCounts.put(status, statusCounts.getOrDefault(status, 0L) + 1);
-              
-              switch (status) {
-                  case "COMPLETED":
-                      completed++;
-                      // 计算执行时间
-                      if (instance.getEndTime() != null && instance.getStartTime() != null) {
-                          long duration = Duration.between(instance.getStartTime(), instance.getEndTime()).toMillis();
-                          executionTimes.add(duration);
+          for (int w = 0; w < workerCount; w++) {
+              batchExecutor.execute(() -> {
+                  try {
+                      int chunk;
+                      while (!handle.isCancelled() && (chunk = nextChunk.getAndIncrement()) < chunkCount) {
+                          int from = chunk * chunkSize;
+                          int to = Math.min(from + chunkSize, ids.size());
+                          for (int i = from; i < to && !handle.isCancelled(); i++) {
+                              applyBatchOperation(handle, ids.get(i), operation, userId, parameters);
+                          }
                       }
+                  } finally {
+                      handle.workerFinished();
+                  }
+              });
+          }
+          
+          return handle;
+      }
+      
+      /**
+       * 对单个实例执行批量操作，结果记录到句柄
+       */
+      private void applyBatchOperation(BatchOperationHandle handle, String instanceId, WorkflowOperation operation,
+                                       String userId, Map<String, Object> parameters) {
+          try {
+              // 检查操作是否可用
+              if (!canPerformOperation(instanceId, operation, userId)) {
+                  handle.recordSkipped(instanceId, "操作不可用: " + operation.getDisplayName());
+                  return;
+              }
+              
+              // 执行操作
+              switch (operation) {
+                  case SUSPEND:
+                      suspendWorkflow(instanceId, userId, (String) parameters.getOrDefault("reason", "批量挂起操作"));
                       break;
-                  case "FAILED":
-                      failed++;
-                      break;
-                  case "TERMINATED":
-                      terminated++;
-                      break;
-                  case "CANCELLED":
-                      cancelled++;
-                      break;
-                  case "SUSPENDED":
-                      suspended++;
+                  case RESUME:
+                      resumeWorkflow(instanceId, userId);
                       break;
-                  case "RUNNING":
-                      running++;
+                  case TERMINATE:
+                      terminateWorkflow(instanceId, userId, (String) parameters.getOrDefault("reason", "批量终止操作"));
                       break;
-                  case "WAITING":
-                      waiting++;
+                  case CANCEL:
+                      cancelWorkflow(instanceId, userId, (String) parameters.getOrDefault("reason", "批量取消操作"));
                       break;
+                  default:
+                      handle.recordSkipped(instanceId, "不支持的批量操作: " + operation.getDisplayName());
+                      return;
               }
               
-              // 按工作流类型统计
-              String workflowId = instance.getWorkflowId();
-              WorkflowEngineStatistics.WorkflowTypeStatistics typeStatistics = typeStats.computeIfAbsent(
-                  workflowId, 
-                  id -> {
-                      Workflow workflow = workflowStorage.get(id);
-                      return new WorkflowEngineStatistics.WorkflowTypeStatistics(id, 
-                          workflow != null ? workflow.getName() : "Unknown");
-                  }
-              );
+              handle.recordSuccess(instanceId);
               
-              typeStatistics.setInstanceCount(typeStatistics.getInstanceCount() + 1);
-              if ("COMPLETED".equals(status)) {
-                  typeStatistics.setCompletedCount(typeStatistics.getCompletedCount() + 1);
-              } else if ("FAILED".equals(status)) {
-                  typeStatistics.setFailedCount(typeStatistics.getFailedCount() + 1);
-              }
+          } catch (Exception e) {
+              handle.recordFailure(instanceId, e);
+          }
+      }
+
+      @Override
+      public WorkflowEngineStatistics getStatistics() {
+          WorkflowEngineStatistics stats = new WorkflowEngineStatistics();
+          
+          // 计数器在每次状态转换时增量维护，这里只读取快照，不遍历实例存储
+          Map<String, Long> statusCounts = new HashMap<>();
+          for (InstanceStatus status : InstanceStatus.values()) {
+              statusCounts.put(status.name(), instanceIndex.countByStatus(status));
           }
           
           // 设置基本统计
-          stats.setTotalStartedInstances(totalStarted);
-          stats.setCompletedInstances(completed);
-          stats.setFailedInstances(failed);
-          stats.setTerminatedInstances(terminated);
-          stats.setCancelledInstances(cancelled);
-          stats.setSuspendedInstances(suspended);
-          stats.setRunningInstances(running);
-          stats.setWaitingInstances(waiting);
+          stats.setTotalStartedInstances(statistics.getStartedInstances());
+          stats.setCompletedInstances(statistics.getCompletedInstances());
+          stats.setFailedInstances(statistics.getFailedInstances());
+          stats.setTerminatedInstances(statistics.getTerminatedInstances());
+          stats.setCancelledInstances(statistics.getCancelledInstances());
+          stats.setSuspendedInstances(statusCounts.get(InstanceStatus.SUSPENDED.name()));
+          stats.setRunningInstances(statusCounts.get(InstanceStatus.RUNNING.name()));
+          stats.setWaitingInstances(statusCounts.get(InstanceStatus.WAITING.name()));
           
           // 计算执行时间统计
-          if (!executionTimes.isEmpty()) {
-              double avgTime = executionTimes.stream().mapToLong(Long::longValue).average().orElse(0.0);
-              long maxTime = executionTimes.stream().mapToLong(Long::longValue).max().orElse(0L);
-              long minTime = executionTimes.stream().mapToLong(Long::longValue).min().orElse(0L);
-              
-              stats.setAverageExecutionTime(avgTime);
-              stats.setMaxExecutionTime(maxTime);
-              stats.setMinExecutionTime(minTime);
+          LatencyHistogram executionTimes = statistics.getExecutionTimeHistogram();
+          if (executionTimes.getCount() > 0) {
+              stats.setAverageExecutionTime(executionTimes.getMean());
+              stats.setMaxExecutionTime(executionTimes.getMax());
+              stats.setMinExecutionTime(executionTimes.getMin());
           }
           
           // 计算成功率
@@ -358,7 +418,7 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
           }
           
           // 设置系统信息
-          stats.setActiveExecutorCount(executorStorage.size());
+          stats.setActiveExecutorCount(executorRegistry.size());
           stats.setRegisteredWorkflowCount(workflowStorage.size());
           stats.setSystemStartTime(configuration.getSystemStartTime());
           if (configuration.getSystemStartTime() != null) {
@@ -376,12 +436,28 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
           // 设置按状态分组的统计
           stats.setInstancesByStatus(statusCounts);
           
-          // 设置按工作流类型分组的统计
-          for (WorkflowEngineStatistics.WorkflowTypeStatistics typeStatistics : typeStats.values()) {
-              if (typeStatistics.getInstanceCount() > 0) {
-                  typeStatistics.setSuccessRate((double) typeStatistics.getCompletedCount() / typeStatistics.getInstanceCount());
+          // 设置按工作流类型分组的统计（与工作流类型数量相关，与实例数量无关）
+          for (Map.Entry<String, EngineStatistics.WorkflowTypeCounters> entry : statistics.getWorkflowTypeCounters().entrySet()) {
+              String workflowId = entry.getKey();
+              EngineStatistics.WorkflowTypeCounters counters = entry.getValue();
+              Workflow workflow = workflowStorage.get(workflowId);
+              
+              WorkflowEngineStatistics.WorkflowTypeStatistics typeStatistics = new WorkflowEngineStatistics.WorkflowTypeStatistics(
+                  workflowId, workflow != null ? workflow.getName() : "Unknown");
+              typeStatistics.setInstanceCount(counters.getStartedInstances());
+              typeStatistics.setCompletedCount(counters.getCompletedInstances());
+              typeStatistics.setFailedCount(counters.getFailedInstances());
+              if (counters.getStartedInstances() > 0) {
+                  typeStatistics.setSuccessRate((double) counters.getCompletedInstances() / counters.getStartedInstances());
               }
-              stats.addWorkflowTypeStats(typeStatistics.getWorkflowId(), typeStatistics);
+              
+              LatencyHistogram histogram = counters.getExecutionTimeHistogram();
+              typeStatistics.setAverageExecutionTime(histogram.getMean());
+              typeStatistics.setP50ExecutionTime(histogram.getPercentile(50));
+              typeStatistics.setP95ExecutionTime(histogram.getPercentile(95));
+              typeStatistics.setP99ExecutionTime(histogram.getPercentile(99));
+              
+              stats.addWorkflowTypeStats(workflowId, typeStatistics);
           }
           
           return stats;
@@ -389,52 +465,60 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
 
       @Override
       public long getActiveInstanceCount() {
-          return instanceStorage.values().stream()
-                  .filter(instance -> "RUNNING".equals(instance.getStatus()) || "WAITING".equals(instance.getStatus()))
-                  .count();
+          return instanceIndex.countByStatus(InstanceStatus.RUNNING)
+                  + instanceIndex.countByStatus(InstanceStatus.WAITING);
       }
 
       @Override
-      public long getInstanceCount(String status) {
-          if (status == null || status.trim().isEmpty()) {
+      public long getInstanceCount(String workflowId) {
+          if (workflowId == null || workflowId.trim().isEmpty()) {
               return instanceStorage.size();
           }
           
-          return instanceStorage.values().stream()
-                  .filter(instance -> status.equals(instance.getStatus()))
-                  .count();
+          return instanceIndex.countByWorkflowId(workflowId);
       }
 
       @Override
       public int cleanupCompletedInstances(int maxAge) {
           LocalDateTime cutoffTime = LocalDateTime.now().minusDays(maxAge);
           
-          List<String> instancesToRemove = new ArrayList<>();
+          // 只清理已完成、已取消或已终止的实例，按批弹出过期队列直到没有过期条目
+          List<InstanceStatus> statuses = Arrays.asList(
+              InstanceStatus.COMPLETED, InstanceStatus.CANCELLED, InstanceStatus.TERMINATED);
+          int batchSize = Math.max(1, configuration.getCleanupBatchSize());
+          int removed = 0;
+          List<String> expired;
+          do {
+              expired = expiryQueue.pollExpired(statuses, cutoffTime, batchSize);
+              removed += purgeExpiredInstances(expired, statuses, cutoffTime);
+          } while (expired.size() == batchSize);
           
-          for (Map.Entry<String, WorkflowInstance> entry : instanceStorage.entrySet()) {
-              WorkflowInstance instance = entry.getValue();
-              
-              // 只清理已完成、已取消或已终止的实例
-              if (("COMPLETED".equals(instance.getStatus()) || 
-                   "CANCELLED".equals(instance.getStatus()) || 
-                   "TERMINATED".equals(instance.getStatus())) &&
-                  (instance.getEndTime() != null && instance.getEndTime().isBefore(cutoffTime))) {
-                  
-                  instancesToRemove.add(entry.getKey());
-              }
-          }
-          
-          // 执行清理
-          for (String instanceId : instancesToRemove) {
-              instanceStorage.remove(instanceId);
-              executionHistoryStorage.remove(instanceId);
-              userTaskStorage.remove(instanceId);
-          }
-          
-          return instancesToRemove.size();
+          return removed;
       }
         );
         
+        // 初始化异步步骤优先级调度器
+        this.priorityScheduler = configuration.isPrioritySchedulingEnabled()
+            ? new PriorityStepScheduler(configuration.getAsyncThreadPoolSize(),
+                                        configuration.getAsyncQueueCapacity(),
+                                        configuration.getPriorityAgingMillis())
+            : null;
+        
+        // 初始化步骤类型隔离池
+        this.stepBulkheads = new StepBulkheads(configuration.getBulkheads());
+        
+        // 初始化启动准入控制，队列深度包含优先级调度器和隔离池中排队的步骤
+        this.admissionController = new AdmissionController(
+            configuration.getStartPermitsPerSecond(),
+            configuration.getStartBurst(),
+            configuration.getMaxInFlightStarts(),
+            configuration.getAdmissionQueueHighWatermark(),
+            configuration.getOverloadPolicy(),
+            () -> asyncQueue.size() + stepBulkheads.getQueuedTaskCount()
+                + (priorityScheduler != null ? priorityScheduler.getQueueSize() : 0));
+        this.deferredStarts = new LinkedBlockingDeque<>(configuration.getDeferredStartCapacity());
+        this.deferredStartSlots = new Semaphore(configuration.getDeferredStartCapacity());
+        
         // 初始化调度器
         this.scheduler = Executors.newScheduledThreadPool(
             configuration.getSchedulerThreadPoolSize(),
@@ -445,6 +529,64 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
             }
         );
         
+        // 初始化批量操作线程池，与步骤执行隔离，避免大批量操作挤占异步步骤
+        this.batchExecutor = Executors.newFixedThreadPool(
+            configuration.getBatchParallelism(),
+            r -> {
+                Thread t = new Thread(r, "workflow-batch-" + System.currentTimeMillis());
+                t.setDaemon(true);
+                return t;
+            }
+        );
+        
+        // 初始化ID生成器，未配置时使用时间有序的64位生成器
+        this.idGenerator = configuration.getIdGenerator() != null
+            ? configuration.getIdGenerator()
+            : new SnowflakeIdGenerator(configuration.getNodeId() >= 0
+                ? configuration.getNodeId() : SnowflakeIdGenerator.defaultNodeId());
+        
+        // 初始化过期队列，需在恢复状态之前创建
+        this.expiryQueue = new InstanceExpiryQueue(
+            TimeUnit.SECONDS.toMillis(configuration.getExpiryBucketSeconds()));
+        
+        // 初始化时间轮定时服务，到期任务交给独立的定时线程池执行。
+        // 异步线程池队列满时由提交线程执行，若共用会让时间轮线程执行步骤而停止推进
+        this.timerExecutor = Executors.newFixedThreadPool(
+            configuration.getTimerThreadPoolSize(),
+            r -> {
+                Thread t = new Thread(r, "workflow-timer-" + System.currentTimeMillis());
+                t.setDaemon(true);
+                return t;
+            }
+        );
+        this.timerService = new TimingWheelTimer(
+            configuration.getTimerTickMillis(), configuration.getTimerWheelSize(), timerExecutor);
+        this.timerStore = configuration.getTimerStore();
+        this.stepWatchdog = new StepWatchdog(timerService);
+        
+        // 初始化事件总线，步骤级的生命周期日志由订阅者输出，不占用步骤线程
+        this.eventBus = new EngineEventBus(configuration.getEventBusCapacity(), configuration.getEventOverflowPolicy());
+        if (configuration.isLifecycleLoggingEnabled()) {
+            eventBus.subscribe("lifecycle-log", this::logLifecycleEvents, configuration.getEventBatchSize());
+        }
+        
+        // 初始化实例执行通道
+        this.executionLanes = configuration.isSerialExecutionEnabled()
+            ? new InstanceExecutionLanes(configuration.getExecutionLaneCount())
+            : null;
+        
+        // 打开变更日志并从快照和日志中恢复状态
+        this.stateStore = openStateStore(configuration);
+        
+        // 恢复出的未启动实例重新进入延后启动队列
+        for (String instanceId : instanceIndex.getByStatus(InstanceStatus.CREATED)) {
+            if (!deferredStartSlots.tryAcquire()) {
+                logger.warn("延后启动队列已满，恢复的实例未能重新排队: {}", instanceId);
+                continue;
+            }
+            deferredStarts.offer(instanceId);
+        }
+        
         // 启动引擎
         start();
         
@@ -469,6 +611,24 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
             TimeUnit.MINUTES
         );
         
+        // 启动延后启动队列的排空任务
+        scheduler.scheduleWithFixedDelay(
+            this::drainDeferredStarts,
+            configuration.getAdmissionDrainIntervalMillis(),
+            configuration.getAdmissionDrainIntervalMillis(),
+            TimeUnit.MILLISECONDS
+        );
+        
+        // 启动定期快照任务
+        if (stateStore != null) {
+            scheduler.scheduleAtFixedRate(
+                this::takeSnapshot,
+                configuration.getSnapshotIntervalMinutes(),
+                configuration.getSnapshotIntervalMinutes(),
+                TimeUnit.MINUTES
+            );
+        }
+        
         logger.info("工作流引擎已启动");
     }
     
@@ -482,24 +642,51 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
         
         running = false;
         
-        // 关闭线程池
+        // 关闭线程池（持久化的定时器在重启后通过recoverTimers恢复）
+        timerService.stop();
+        timerExecutor.shutdown();
         asyncExecutor.shutdown();
+        if (priorityScheduler != null) {
+            priorityScheduler.shutdown();
+        }
+        stepBulkheads.shutdown();
         scheduler.shutdown();
+        batchExecutor.shutdownNow();
+        if (executionLanes != null) {
+            executionLanes.shutdown(30, TimeUnit.SECONDS);
+        }
         
         try {
             // 等待任务完成
+            if (!timerExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                timerExecutor.shutdownNow();
+            }
             if (!asyncExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
                 asyncExecutor.shutdownNow();
             }
+            if (priorityScheduler != null) {
+                priorityScheduler.awaitTermination(30, TimeUnit.SECONDS);
+            }
+            stepBulkheads.awaitTermination(30, TimeUnit.SECONDS);
             if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
                 scheduler.shutdownNow();
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            timerExecutor.shutdownNow();
             asyncExecutor.shutdownNow();
             scheduler.shutdownNow();
         }
         
+        // 等待订阅者处理完已发布的事件
+        eventBus.close(10, TimeUnit.SECONDS);
+        
+        // 停止前写出快照，缩短下次启动的重放时间
+        if (stateStore != null) {
+            takeSnapshot();
+            stateStore.close();
+        }
+        
         logger.info("工作流引擎已停止");
     }
     
@@ -511,6 +698,10 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
         Objects.requireNonNull(executor, "执行器不能为空");
         
         executorRegistry.put(stepType, executor);
+        
+        // 执行器变化后重新编译已注册的执行计划
+        planStorage.replaceAll((workflowId, plan) -> plan.recompile(executorRegistry));
+        
         logger.info("已注册步骤执行器: {} -> {}", stepType, executor.getName());
     }
     
@@ -520,8 +711,12 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
     public void registerWorkflow(Workflow workflow) {
         Objects.requireNonNull(workflow, "工作流定义不能为空");
         
+        // 编译执行计划，步骤引用错误在注册时即可发现
+        WorkflowExecutionPlan plan = WorkflowExecutionPlan.compile(workflow, executorRegistry);
+        
+        planStorage.put(workflow.getId(), plan);
         workflowStorage.put(workflow.getId(), workflow);
-        logger.info("已注册工作流定义: {} ({})", workflow.getId(), workflow.getName());
+        logger.info("已注册工作流定义: {} ({}), 执行计划: {}", workflow.getId(), workflow.getName(), plan);
     }
     
     @Override
@@ -542,35 +737,217 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
                                       WorkflowException.WorkflowErrorType.STATE_ERROR);
         }
         
-        // 创建工作流实例
-        String instanceId = generateInstanceId();
-        WorkflowInstance instance = WorkflowInstance.builder()
-            .id(instanceId)
-            .workflowId(workflowId)
-            .name(workflow.getName())
-            .status(InstanceStatus.CREATED)
-            .startUserId(startUserId)
-            .context(initialContext != null ? initialContext : new HashMap<>())
-            .build();
-        
-        // 保存实例
-        instanceStorage.put(instanceId, instance);
+        // 准入检查：限流或过载时抛出异常，或者只创建实例并延后启动
+        AdmissionController.Decision decision = admissionController.admit(workflowId);
         
-        // 更新统计
-        statistics.incrementStartedInstances();
+        // 延后启动先预留排队名额，队列已满时在创建、计数和发布实例之前拒绝
+        if (decision == AdmissionController.Decision.DEFER) {
+            reserveDeferredStart();
+        }
+        boolean deferred = false;
         
-        logger.info("工作流实例已创建: {} (工作流: {}, 用户: {})", instanceId, workflowId, startUserId);
+        // 准入取得的在途许可从这里开始由finally释放，创建实例时的异常也不会泄漏许可
+        try {
+            // 创建工作流实例
+            String instanceId = generateInstanceId();
+            WorkflowInstance instance = WorkflowInstance.builder()
+                .id(instanceId)
+                .workflowId(workflowId)
+                .name(workflow.getName())
+                .status(InstanceStatus.CREATED)
+                .startUserId(startUserId)
+                .context(initialContext != null ? initialContext : new HashMap<>())
+                .build();
+            
+            // 保存实例
+            storeInstance(instance);
+            
+            // 更新统计
+            statistics.incrementStartedInstances(workflowId);
+            
+            logger.info("工作流实例已创建: {} (工作流: {}, 用户: {})", instanceId, workflowId, startUserId);
+            eventBus.publish(EngineEvent.instanceCreated(instanceId, workflowId, startUserId));
+            
+            if (decision == AdmissionController.Decision.DEFER) {
+                deferredStarts.offer(instanceId);
+                deferred = true;
+                logger.info("引擎过载，实例延后启动: {} (排队: {})", instanceId, deferredStarts.size());
+                return instance;
+            }
+            
+            // 开始执行
+            try {
+                updateInstanceStatus(instanceId, InstanceStatus.RUNNING, null);
+                continueWorkflow(instanceId, startUserId, null);
+            } catch (Exception e) {
+                // 如果启动失败，更新实例状态
+                updateInstanceStatus(instanceId, InstanceStatus.FAILED, e.getMessage());
+                throw e;
+            }
+            
+            return instance;
+        } finally {
+            // 延后启动时没有取得许可，由startDeferred在执行后释放
+            if (decision == AdmissionController.Decision.ADMIT) {
+                admissionController.release();
+            } else if (!deferred) {
+                // 实例未能入队，归还预留的名额
+                deferredStartSlots.release();
+            }
+        }
+    }
+    
+    /**
+     * 提交异步步骤
+     * 
+     * 步骤类型声明了隔离池时在隔离池中执行，否则进入优先级调度器或异步线程池。
+     * 隔离池已满时步骤以失败结果完成，交给重试逻辑处理。
+     */
+    private CompletableFuture<StepExecutionResult> supplyStepAsync(WorkflowInstance instance, WorkflowStep step,
+                                                                   StepExecutor executor, StepExecutionContext context,
+                                                                   StepWatchdog.Guard guard) {
+        Executor stepExecutor = stepBulkheads.executorFor(step.getType());
+        if (stepExecutor == null) {
+            stepExecutor = priorityScheduler != null ? priorityScheduler.forPriority(context.getPriority()) : asyncExecutor;
+        }
         
-        // 开始执行
         try {
-            continueWorkflow(instanceId, startUserId);
+            return CompletableFuture.supplyAsync(() -> {
+                // 排队期间已超时的步骤不再执行，返回的结果会在complete时被丢弃
+                if (!guard.enter()) {
+                    return null;
+                }
+                try {
+                    return executor.execute(step, context);
+                } catch (Exception e) {
+                    logger.error("异步步骤执行异常: {} (实例: {})", step.getId(), instance.getId(), e);
+                    return StepExecutionResult.builder()
+                        .status(StepExecutionResult.Status.FAILED)
+                        .stepId(step.getId())
+                        .executorName(executor.getExecutorName())
+                        .errorMessage(e.getMessage())
+                        .exception(e)
+                        .build();
+                } finally {
+                    guard.exit();
+                }
+            }, stepExecutor);
+        } catch (RejectedExecutionException e) {
+            logger.warn("步骤隔离池已满: {} (实例: {}, 类型: {})", step.getId(), instance.getId(), step.getType());
+            return CompletableFuture.completedFuture(StepExecutionResult.builder()
+                .status(StepExecutionResult.Status.FAILED)
+                .stepId(step.getId())
+                .executorName(executor.getExecutorName())
+                .errorMessage("步骤隔离池已满: " + step.getType())
+                .exception(e)
+                .build());
+        }
+    }
+    
+    /**
+     * 获取步骤类型隔离池的执行器，可供并行步骤执行器等组件共用
+     * 
+     * @param type 步骤类型
+     * @return 隔离池，未声明隔离池时返回引擎的异步线程池
+     */
+    public ExecutorService getStepExecutorService(StepType type) {
+        ExecutorService executorService = stepBulkheads.executorFor(type);
+        return executorService != null ? executorService : asyncExecutor;
+    }
+    
+    /**
+     * 获取各步骤类型隔离池的使用情况
+     */
+    public List<StepBulkheads.PoolStats> getBulkheadStats() {
+        return stepBulkheads.getStats();
+    }
+    
+    /**
+     * 获取异步步骤各优先级的排队等待时间（微秒）
+     * 
+     * @return 优先级 -> 直方图，未启用优先级调度时为空
+     */
+    public Map<Integer, LatencyHistogram> getAsyncQueueWaitTimes() {
+        return priorityScheduler != null ? priorityScheduler.getQueueWaitTimes() : Collections.emptyMap();
+    }
+    
+    /**
+     * 获取生命周期事件总线
+     */
+    public EngineEventBus getEventBus() {
+        return eventBus;
+    }
+    
+    /**
+     * 订阅生命周期事件
+     * 
+     * 订阅者在独立线程上按配置的批量大小消费事件，适合持久化、指标和审计等不需要
+     * 在步骤线程上同步完成的处理。
+     * 
+     * @param name 订阅者名称
+     * @param subscriber 订阅者
+     * @return 订阅句柄，可用于取消订阅
+     */
+    public EngineEventBus.Subscription subscribe(String name, EngineEventBus.Subscriber subscriber) {
+        return eventBus.subscribe(name, subscriber, configuration.getEventBatchSize());
+    }
+    
+    /**
+     * 获取启动准入控制，可用于按工作流设置启动速率和读取准入统计
+     */
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+    
+    /**
+     * 预留延后启动队列的名额，队列已满时拒绝
+     * 
+     * 名额在实例创建之前预留，被拒绝的启动不会留下实例、启动计数或创建事件。
+     */
+    private void reserveDeferredStart() throws WorkflowException {
+        if (!deferredStartSlots.tryAcquire()) {
+            admissionController.recordRejected();
+            throw WorkflowException.overloadError("延后启动队列已满: " + configuration.getDeferredStartCapacity(),
+                                                  AdmissionController.DEFER_QUEUE_FULL);
+        }
+    }
+    
+    /**
+     * 排空延后启动队列
+     * 
+     * 负载回落到水位以下且有在途许可时，按排队顺序把实例交给异步线程池启动。
+     * 线程池拒绝时实例放回队首并保留名额，排队顺序不变。
+     */
+    private void drainDeferredStarts() {
+        while (running && deferredStarts.peek() != null && admissionController.tryAdmitDeferred()) {
+            String instanceId = deferredStarts.poll();
+            try {
+                asyncExecutor.execute(() -> startDeferred(instanceId));
+            } catch (RejectedExecutionException e) {
+                admissionController.release();
+                deferredStarts.offerFirst(instanceId);
+                return;
+            }
+            deferredStartSlots.release();
+        }
+    }
+    
+    /**
+     * 启动延后的实例，实例在排队期间被取消或移除时跳过
+     */
+    private void startDeferred(String instanceId) {
+        try {
+            WorkflowInstance instance = instanceStorage.get(instanceId);
+            if (instance == null || !updateInstanceStatus(instanceId, InstanceStatus.RUNNING, null)) {
+                return;
+            }
+            continueWorkflow(instanceId, instance.getStartUserId(), null);
         } catch (Exception e) {
-            // 如果启动失败，更新实例状态
+            logger.error("延后启动的实例执行失败: {}", instanceId, e);
             updateInstanceStatus(instanceId, InstanceStatus.FAILED, e.getMessage());
-            throw e;
+        } finally {
+            admissionController.release();
         }
-        
-        return instance;
     }
     
     @Override
@@ -578,6 +955,11 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
         Objects.requireNonNull(instanceId, "实例ID不能为空");
         Objects.requireNonNull(userId, "用户ID不能为空");
         
+        // 串行执行模式下，外部调用进入实例所属通道执行
+        if (executionLanes != null && !executionLanes.isInLane(instanceId)) {
+            return executionLanes.call(instanceId, () -> continueWorkflow(instanceId, userId, stepResult));
+        }
+        
         WorkflowInstance instance = getWorkflowInstance(instanceId);
         if (instance == null) {
             throw new WorkflowException("工作流实例不存在: " + instanceId, 
@@ -590,23 +972,23 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
                                       WorkflowException.WorkflowErrorType.STATE_ERROR);
         }
         
-        // 获取工作流定义
-        Workflow workflow = workflowStorage.get(instance.getWorkflowId());
-        if (workflow == null) {
+        // 获取执行计划
+        WorkflowExecutionPlan plan = planStorage.get(instance.getWorkflowId());
+        if (plan == null) {
             throw new WorkflowException("工作流定义不存在: " + instance.getWorkflowId(), 
                                       WorkflowException.WorkflowErrorType.CONFIGURATION_ERROR);
         }
         
         // 确定下一个要执行的步骤
-        WorkflowStep nextStep = determineNextStep(instance, workflow);
+        WorkflowStep nextStep = determineNextStep(instance, plan);
         if (nextStep == null) {
             // 没有更多步骤，完成工作流
             completeWorkflow(instanceId);
-            return;
+            return instance;
         }
         
-        // 执行步骤
-        executeStep(instance, nextStep, userId);
+        // 在执行循环中连续执行同步步骤
+        runSteps(instance, plan, nextStep, userId, null);
         
         return instance;
     }
@@ -617,28 +999,33 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
         Objects.requireNonNull(stepId, "步骤ID不能为空");
         Objects.requireNonNull(userId, "用户ID不能为空");
         
+        // 串行执行模式下，外部调用进入实例所属通道执行
+        if (executionLanes != null && !executionLanes.isInLane(instanceId)) {
+            return executionLanes.call(instanceId, () -> executeStep(instanceId, stepId, userId, stepContext));
+        }
+        
         WorkflowInstance instance = getWorkflowInstance(instanceId);
         if (instance == null) {
             throw new WorkflowException("工作流实例不存在: " + instanceId, 
                                       WorkflowException.WorkflowErrorType.CONFIGURATION_ERROR);
         }
         
-        // 获取工作流定义
-        Workflow workflow = workflowStorage.get(instance.getWorkflowId());
-        if (workflow == null) {
+        // 获取执行计划
+        WorkflowExecutionPlan plan = planStorage.get(instance.getWorkflowId());
+        if (plan == null) {
             throw new WorkflowException("工作流定义不存在: " + instance.getWorkflowId(), 
                                       WorkflowException.WorkflowErrorType.CONFIGURATION_ERROR);
         }
         
         // 查找步骤
-        WorkflowStep step = workflow.getSteps().stream()
-            .filter(s -> s.getId().equals(stepId))
-            .findFirst()
-            .orElseThrow(() -> new WorkflowException("步骤不存在: " + stepId, 
-                                                   WorkflowException.WorkflowErrorType.CONFIGURATION_ERROR));
+        WorkflowStep step = plan.getStep(stepId);
+        if (step == null) {
+            throw new WorkflowException("步骤不存在: " + stepId, 
+                                      WorkflowException.WorkflowErrorType.CONFIGURATION_ERROR);
+        }
         
         // 执行步骤
-        executeStep(instance, step, userId, stepContext);
+        runSteps(instance, plan, step, userId, stepContext);
         
         // 返回执行结果（这里需要从执行历史中获取最新结果）
         List<StepExecutionResult> history = executionHistory.get(instanceId);
@@ -655,24 +1042,70 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
     }
     
     /**
-     * 执行单个步骤
+     * 运行实例
+     * 
+     * 蹦床式执行循环：在同一个栈帧内连续执行同一实例的同步步骤，
+     * 只有在步骤进入等待、转为异步执行、调度重试或实例结束时才让出。
+     * 实例与执行计划在循环开始时获取一次，每一步不再重复查找。
+     * 
+     * @param instance 工作流实例
+     * @param plan 执行计划
+     * @param firstStep 第一个要执行的步骤
+     * @param userId 用户ID
+     * @param inputData 第一个步骤的输入数据
+     */
+    private void runSteps(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep firstStep, 
+                         String userId, Map<String, Object> inputData) {
+        WorkflowStep step = firstStep;
+        Map<String, Object> input = inputData;
+        
+        while (step != null) {
+            // 实例被暂停、终止或取消时停止推进
+            String currentStepId = instance.getCurrentStepId();
+            InstanceStatus status = instance.getStatus();
+            if (!status.isActive()) {
+                logger.info("实例状态不允许继续执行，执行循环让出: {} (状态: {})", instance.getId(), status);
+                return;
+            }
+            
+            step = executeStep(instance, plan, step, userId, input, status, currentStepId);
+            input = null;
+        }
+    }
+    
+    /**
+     * 推进到下一步骤
+     * 
+     * @return 下一个要执行的步骤，没有更多步骤时完成工作流并返回null
      */
-    private void executeStep(WorkflowInstance instance, WorkflowStep step, String userId) {
-        executeStep(instance, step, userId, null);
+    private WorkflowStep advance(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step) {
+        WorkflowStep nextStep = plan.getNextStep(step.getId());
+        if (nextStep == null) {
+            // 没有更多步骤，完成工作流
+            completeWorkflow(instance.getId());
+        }
+        return nextStep;
     }
     
     /**
      * 执行单个步骤（带输入数据）
+     * 
+     * @param observedStatus 执行循环检查时观察到的实例状态
+     * @param observedStepId 执行循环检查时观察到的当前步骤ID
+     * @return 需要在当前执行循环中继续执行的下一步骤，需要让出时返回null
      */
-    private void executeStep(WorkflowInstance instance, WorkflowStep step, String userId, Map<String, Object> inputData) {
-        logger.info("开始执行步骤: {} (实例: {}, 用户: {})", step.getId(), instance.getId(), userId);
-        
-        // 更新实例状态
-        updateInstanceStatus(instance.getId(), InstanceStatus.RUNNING, null);
-        updateCurrentStep(instance.getId(), step.getId());
+    private WorkflowStep executeStep(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, 
+                                    String userId, Map<String, Object> inputData,
+                                    InstanceStatus observedStatus, String observedStepId) {
+        // 更新实例状态与当前步骤（一次原子转换），期间状态被并发修改时让出
+        if (!enterStep(instance, step, observedStatus, observedStepId)) {
+            logger.info("实例状态已被并发修改，执行循环让出: {} (实例: {}, 状态: {})", step.getId(), instance.getId(), instance.getStatus());
+            return null;
+        }
+        eventBus.publish(EngineEvent.stepStarted(instance.getId(), instance.getWorkflowId(), step.getId(), userId));
         
         // 检查前置条件
-        if (!checkPrecondition(instance, step)) {
+        if (!checkPrecondition(instance, plan, step)) {
             logger.warn("步骤前置条件不满足，跳过执行: {} (实例: {})", step.getId(), instance.getId());
             
             // 记录跳过结果
@@ -685,12 +1118,17 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
             recordExecutionResult(instance.getId(), result);
             
             // 继续执行下一步
-            continueWorkflow(instance.getId(), userId);
-            return;
+            return advance(instance, plan, step);
+        }
+        
+        // TIMER步骤进入等待，由定时服务在到期后继续执行
+        if (step.getType() == StepType.TIMER) {
+            scheduleTimerStep(instance, plan, step, userId);
+            return null;
         }
         
         // 获取执行器
-        StepExecutor executor = getExecutor(step);
+        StepExecutor executor = plan.getExecutor(step.getType());
         if (executor == null) {
             String errorMsg = "未找到步骤执行器: " + step.getType();
             logger.error(errorMsg);
@@ -703,82 +1141,143 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
                 .build();
             
             recordExecutionResult(instance.getId(), result);
-            handleStepFailure(instance, step, result, userId);
-            return;
+            return handleStepFailure(instance, plan, step, result, userId);
         }
         
         // 创建执行上下文
         StepExecutionContext context = createExecutionContext(instance, step, userId, inputData);
         
         // 异步执行或同步执行
-        if (step.getType() == StepType.TIMER || context.isAsync()) {
-            executeStepAsync(instance, step, executor, context, userId);
-        } else {
-            executeStepSync(instance, step, executor, context, userId);
+        if (context.isAsync()) {
+            executeStepAsync(instance, plan, step, executor, context, userId);
+            return null;
         }
+        return executeStepSync(instance, plan, step, executor, context, userId);
     }
     
     /**
      * 同步执行步骤
+     * 
+     * @return 下一个要执行的步骤
      */
-    private void executeStepSync(WorkflowInstance instance, WorkflowStep step, 
-                                StepExecutor executor, StepExecutionContext context, String userId) {
+    private WorkflowStep executeStepSync(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, 
+                                        StepExecutor executor, StepExecutionContext context, String userId) {
+        StepWatchdog.Guard guard = watchStep(instance, plan, step, executor, context, userId);
+        
+        if (!guard.enter()) {
+            logger.warn("步骤开始前已超时: {} (实例: {})", step.getId(), instance.getId());
+            return null;
+        }
+        
+        StepExecutionResult result;
+        boolean completedInTime;
         try {
             // 执行步骤
-            StepExecutionResult result = executor.execute(step, context);
-            
-            // 记录执行结果
-            recordExecutionResult(instance.getId(), result);
-            
-            // 处理执行结果
-            handleStepResult(instance, step, result, userId);
-            
+            result = executor.execute(step, context);
         } catch (Exception e) {
             logger.error("步骤执行异常: {} (实例: {})", step.getId(), instance.getId(), e);
             
-            StepExecutionResult result = StepExecutionResult.builder()
+            result = StepExecutionResult.builder()
                 .status(StepExecutionResult.Status.FAILED)
                 .stepId(step.getId())
                 .executorName(executor.getExecutorName())
                 .errorMessage(e.getMessage())
                 .exception(e)
                 .build();
-            
-            recordExecutionResult(instance.getId(), result);
-            handleStepFailure(instance, step, result, userId);
+        } finally {
+            // 在退出之前判定完成，截止时间与返回同时发生时超时回调在本线程的exit中执行，不会与后续处理重叠
+            completedInTime = guard.complete();
+            guard.exit();
+        }
+        
+        // 已超时的步骤由看门狗处理，丢弃迟到的结果
+        if (!completedInTime) {
+            logger.warn("步骤超时后才返回，结果已丢弃: {} (实例: {})", step.getId(), instance.getId());
+            return null;
         }
+        
+        // 记录执行结果
+        recordExecutionResult(instance.getId(), result);
+        
+        // 处理执行结果
+        return handleStepResult(instance, plan, step, result, userId);
     }
     
     /**
-     * 异步执行步骤
+     * 在看门狗上登记步骤截止时间
+     * 
+     * 超时后中断执行线程，由执行器的超时处理生成结果（默认为TIMEOUT），
+     * 在实例所属的执行通道中记录结果并继续执行。步骤仍在执行时，
+     * 超时处理推迟到执行线程退出步骤后进行，不与步骤本身并发。
      */
-    private void executeStepAsync(WorkflowInstance instance, WorkflowStep step, 
-                                 StepExecutor executor, StepExecutionContext context, String userId) {
-        CompletableFuture.supplyAsync(() -> {
-            try {
-                return executor.execute(step, context);
-            } catch (Exception e) {
-                logger.error("异步步骤执行异常: {} (实例: {})", step.getId(), instance.getId(), e);
-                return StepExecutionResult.builder()
-                    .status(StepExecutionResult.Status.FAILED)
-                    .stepId(step.getId())
-                    .executorName(executor.getExecutorName())
-                    .errorMessage(e.getMessage())
-                    .exception(e)
-                    .build();
-            }
-        }, asyncExecutor)
-        .thenAccept(result -> {
-            // 记录执行结果
+    private StepWatchdog.Guard watchStep(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, 
+                                         StepExecutor executor, StepExecutionContext context, String userId) {
+        return stepWatchdog.watch(context.getTimeoutMillis(), () -> dispatch(instance.getId(), () -> {
+            StepExecutionResult result = handleExecutorTimeout(instance, step, executor, context);
             recordExecutionResult(instance.getId(), result);
-            
-            // 处理执行结果
-            handleStepResult(instance, step, result, userId);
-        })
-        .exceptionally(throwable -> {
-            logger.error("异步步骤执行失败: {} (实例: {})", step.getId(), instance.getId(), throwable);
-            
-            StepExecutionResult result = StepExecutionResult.builder()
+            runSteps(instance, plan, handleStepResult(instance, plan, step, result, userId), userId, null);
+        }));
+    }
+    
+    /**
+     * 调用执行器的超时处理
+     * 
+     * @return 执行器返回的处理结果；执行器未处理或抛出异常时返回TIMEOUT结果
+     */
+    private StepExecutionResult handleExecutorTimeout(WorkflowInstance instance, WorkflowStep step, 
+                                                      StepExecutor executor, StepExecutionContext context) {
+        String message = "步骤执行超时: " + context.getTimeoutMillis() + "ms";
+        Exception cause = null;
+        try {
+            StepExecutionResult handled = executor.handleTimeout(step, instance, context);
+            if (handled != null) {
+                return handled;
+            }
+        } catch (WorkflowException e) {
+            message = e.getMessage();
+            cause = e;
+        } catch (Exception e) {
+            logger.error("执行器超时处理异常: {} (实例: {})", step.getId(), instance.getId(), e);
+            cause = e;
+        }
+        return StepExecutionResult.builder(StepExecutionResult.Status.TIMEOUT)
+            .stepId(step.getId())
+            .executorName(executor.getExecutorName())
+            .errorMessage(message)
+            .exception(cause)
+            .build();
+    }
+    
+    /**
+     * 异步执行步骤
+     * 
+     * 步骤完成后在完成线程（或实例执行通道）中开启新的执行循环。
+     * 启用优先级调度时按上下文中的实例优先级排队。
+     */
+    private void executeStepAsync(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, 
+                                 StepExecutor executor, StepExecutionContext context, String userId) {
+        // 截止时间先到时由看门狗中断步骤并处理超时，步骤迟到的结果被丢弃
+        StepWatchdog.Guard guard = watchStep(instance, plan, step, executor, context, userId);
+        supplyStepAsync(instance, step, executor, context, guard).thenAccept(result -> {
+            if (!guard.complete()) {
+                logger.warn("步骤超时后才返回，结果已丢弃: {} (实例: {})", step.getId(), instance.getId());
+                return;
+            }
+            dispatch(instance.getId(), () -> {
+                // 记录执行结果
+                recordExecutionResult(instance.getId(), result);
+                
+                // 处理执行结果并继续执行后续同步步骤
+                runSteps(instance, plan, handleStepResult(instance, plan, step, result, userId), userId, null);
+            });
+        })
+        .exceptionally(throwable -> {
+            if (!guard.complete()) {
+                return null;
+            }
+            logger.error("异步步骤执行失败: {} (实例: {})", step.getId(), instance.getId(), throwable);
+            
+            StepExecutionResult result = StepExecutionResult.builder()
                 .status(StepExecutionResult.Status.FAILED)
                 .stepId(step.getId())
                 .executorName(executor.getExecutorName())
@@ -786,90 +1285,96 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
                 .exception(throwable)
                 .build();
             
-            recordExecutionResult(instance.getId(), result);
-            handleStepFailure(instance, step, result, userId);
+            dispatch(instance.getId(), () -> {
+                recordExecutionResult(instance.getId(), result);
+                runSteps(instance, plan, handleStepFailure(instance, plan, step, result, userId), userId, null);
+            });
             return null;
         });
     }
     
     /**
      * 处理步骤执行结果
+     * 
+     * @return 需要在当前执行循环中继续执行的下一步骤，需要让出时返回null
      */
-    private void handleStepResult(WorkflowInstance instance, WorkflowStep step, 
-                                 StepExecutionResult result, String userId) {
+    private WorkflowStep handleStepResult(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, 
+                                         StepExecutionResult result, String userId) {
+        eventBus.publish(EngineEvent.stepFinished(instance.getId(), instance.getWorkflowId(), step.getId(), result));
         switch (result.getStatus()) {
             case SUCCESS:
-                handleStepSuccess(instance, step, result, userId);
-                break;
+                return handleStepSuccess(instance, plan, step, result, userId);
             case FAILED:
-                handleStepFailure(instance, step, result, userId);
-                break;
+                return handleStepFailure(instance, plan, step, result, userId);
             case WAITING:
                 handleStepWaiting(instance, step, result, userId);
-                break;
+                return null;
             case RETRY:
-                handleStepRetry(instance, step, result, userId);
-                break;
+                handleStepRetry(instance, plan, step, result, userId);
+                return null;
             case TIMEOUT:
-                handleStepTimeout(instance, step, result, userId);
-                break;
+                return handleStepTimeout(instance, plan, step, result, userId);
             case SKIPPED:
-                handleStepSkipped(instance, step, result, userId);
-                break;
+                return handleStepSkipped(instance, plan, step, result, userId);
             default:
                 logger.warn("未知的步骤执行状态: {} (步骤: {}, 实例: {})", 
                           result.getStatus(), step.getId(), instance.getId());
-                break;
+                return null;
         }
     }
     
     /**
      * 处理步骤成功
      */
-    private void handleStepSuccess(WorkflowInstance instance, WorkflowStep step, 
-                                  StepExecutionResult result, String userId) {
-        logger.info("步骤执行成功: {} (实例: {})", step.getId(), instance.getId());
+    private WorkflowStep handleStepSuccess(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, 
+                                          StepExecutionResult result, String userId) {
+        retryTracker.reset(instance.getId(), step.getId());
         
         // 更新实例上下文
         if (result.getOutputData() != null && !result.getOutputData().isEmpty()) {
-            updateInstanceContext(instance.getId(), result.getOutputData());
+            instance.setContextValues(result.getOutputData());
+            if (stateStore != null) {
+                stateStore.logContext(instance.getId(), result.getOutputData());
+            }
         }
         
         // 继续执行下一步
-        continueWorkflow(instance.getId(), userId);
+        return advance(instance, plan, step);
     }
     
     /**
      * 处理步骤失败
      */
-    private void handleStepFailure(WorkflowInstance instance, WorkflowStep step, 
-                                  StepExecutionResult result, String userId) {
+    private WorkflowStep handleStepFailure(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, 
+                                          StepExecutionResult result, String userId) {
         logger.error("步骤执行失败: {} (实例: {}), 错误: {}", 
                     step.getId(), instance.getId(), result.getErrorMessage());
         
         // 检查是否可以重试
-        if (canRetryStep(instance, step, result)) {
-            scheduleStepRetry(instance, step, userId);
-            return;
+        int failures = retryTracker.recordFailure(instance.getId(), step.getId());
+        if (canRetryStep(step, failures)) {
+            scheduleStepRetry(instance, plan, step, userId, failures);
+            return null;
         }
         
         // 检查是否有错误处理步骤
-        if (step.getErrorStepId() != null) {
-            // 执行错误处理步骤
-            executeErrorStep(instance, step, userId);
-            return;
+        WorkflowStep errorStep = plan.getErrorStep(step.getId());
+        if (errorStep != null) {
+            logger.info("执行错误处理步骤: {} (实例: {})", errorStep.getId(), instance.getId());
+            return errorStep;
         }
         
         // 如果步骤是可选的，继续执行
         if (step.isOptional()) {
             logger.info("可选步骤失败，继续执行: {} (实例: {})", step.getId(), instance.getId());
-            continueWorkflow(instance.getId(), userId);
-            return;
+            return advance(instance, plan, step);
         }
         
         // 工作流失败
-        updateInstanceStatus(instance.getId(), InstanceStatus.FAILED, result.getErrorMessage());
-        statistics.incrementFailedInstances();
+        if (updateInstanceStatus(instance.getId(), InstanceStatus.FAILED, result.getErrorMessage())) {
+            statistics.incrementFailedInstances(instance.getWorkflowId());
+        }
+        return null;
     }
     
     /**
@@ -891,32 +1396,34 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
     /**
      * 处理步骤重试
      */
-    private void handleStepRetry(WorkflowInstance instance, WorkflowStep step, 
+    private void handleStepRetry(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, 
                                 StepExecutionResult result, String userId) {
         logger.info("步骤请求重试: {} (实例: {})", step.getId(), instance.getId());
-        scheduleStepRetry(instance, step, userId);
+        int attempt = retryTracker.recordFailure(instance.getId(), step.getId());
+        scheduleStepRetry(instance, plan, step, userId, attempt);
     }
     
     /**
      * 处理步骤超时
      */
-    private void handleStepTimeout(WorkflowInstance instance, WorkflowStep step, 
-                                  StepExecutionResult result, String userId) {
+    private WorkflowStep handleStepTimeout(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, 
+                                          StepExecutionResult result, String userId) {
         logger.warn("步骤执行超时: {} (实例: {})", step.getId(), instance.getId());
         
         // 按失败处理
-        handleStepFailure(instance, step, result, userId);
+        return handleStepFailure(instance, plan, step, result, userId);
     }
     
     /**
      * 处理步骤跳过
      */
-    private void handleStepSkipped(WorkflowInstance instance, WorkflowStep step, 
-                                  StepExecutionResult result, String userId) {
+    private WorkflowStep handleStepSkipped(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, 
+                                          StepExecutionResult result, String userId) {
         logger.info("步骤被跳过: {} (实例: {})", step.getId(), instance.getId());
+        retryTracker.reset(instance.getId(), step.getId());
         
         // 继续执行下一步
-        continueWorkflow(instance.getId(), userId);
+        return advance(instance, plan, step);
     }
     
     // 其他实现方法...
@@ -931,7 +1438,7 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
             throw new WorkflowException("工作流实例不存在: " + instanceId, WorkflowException.ErrorType.INSTANCE_NOT_FOUND);
         }
         
-        updateInstanceStatus(instanceId, InstanceStatus.SUSPENDED, reason);
+        requestInstanceStatus(instance, InstanceStatus.SUSPENDED, reason, "暂停");
         logger.info("工作流实例已暂停: {} (用户: {}, 原因: {})", instanceId, userId, reason);
         
         return instanceStorage.get(instanceId);
@@ -969,8 +1476,8 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
             throw new WorkflowException("工作流实例不存在: " + instanceId, WorkflowException.ErrorType.INSTANCE_NOT_FOUND);
         }
         
-        updateInstanceStatus(instanceId, InstanceStatus.TERMINATED, reason);
-        statistics.incrementTerminatedInstances();
+        requestInstanceStatus(instance, InstanceStatus.TERMINATED, reason, "终止");
+        statistics.incrementTerminatedInstances(instance.getWorkflowId());
         logger.info("工作流实例已终止: {} (用户: {}, 原因: {})", instanceId, userId, reason);
         
         return instanceStorage.get(instanceId);
@@ -986,8 +1493,8 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
             throw new WorkflowException("工作流实例不存在: " + instanceId, WorkflowException.ErrorType.INSTANCE_NOT_FOUND);
         }
         
-        updateInstanceStatus(instanceId, InstanceStatus.CANCELLED, reason);
-        statistics.incrementCancelledInstances();
+        requestInstanceStatus(instance, InstanceStatus.CANCELLED, reason, "取消");
+        statistics.incrementCancelledInstances(instance.getWorkflowId());
         logger.info("工作流实例已取消: {} (用户: {}, 原因: {})", instanceId, userId, reason);
         
         return instanceStorage.get(instanceId);
@@ -1000,11 +1507,39 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
     
     @Override
     public List<WorkflowInstance> getWorkflowInstances(String workflowId, InstanceStatus status, int limit) {
-        return instanceStorage.values().stream()
-            .filter(instance -> workflowId == null || workflowId.equals(instance.getWorkflowId()))
-            .filter(instance -> status == null || status == instance.getStatus())
-            .limit(limit > 0 ? limit : Integer.MAX_VALUE)
-            .collect(Collectors.toList());
+        int maxSize = limit > 0 ? limit : Integer.MAX_VALUE;
+        
+        if (workflowId == null && status == null) {
+            return instanceStorage.values().stream()
+                .limit(maxSize)
+                .collect(Collectors.toList());
+        }
+        
+        // 选择较小的索引集合作为候选，另一个条件在候选实例上校验
+        Set<String> candidates;
+        if (workflowId == null) {
+            candidates = instanceIndex.getByStatus(status);
+        } else if (status == null) {
+            candidates = instanceIndex.getByWorkflowId(workflowId);
+        } else {
+            Set<String> byStatus = instanceIndex.getByStatus(status);
+            Set<String> byWorkflow = instanceIndex.getByWorkflowId(workflowId);
+            candidates = byStatus.size() <= byWorkflow.size() ? byStatus : byWorkflow;
+        }
+        
+        List<WorkflowInstance> result = new ArrayList<>(Math.min(candidates.size(), maxSize));
+        for (String instanceId : candidates) {
+            if (result.size() >= maxSize) {
+                break;
+            }
+            WorkflowInstance instance = instanceStorage.get(instanceId);
+            if (instance != null
+                    && (workflowId == null || workflowId.equals(instance.getWorkflowId()))
+                    && (status == null || status == instance.getStatus())) {
+                result.add(instance);
+            }
+        }
+        return result;
     }
     
     @Override
@@ -1063,24 +1598,16 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
             throw new WorkflowException("已完成、已取消或已终止的工作流实例不能更新上下文", WorkflowException.ErrorType.INVALID_STATE);
         }
         
-        // 更新上下文
-        Map<String, Object> newContext = new HashMap<>(instance.getContext());
-        newContext.putAll(contextUpdates);
-        
-        // 创建更新后的实例
-        WorkflowInstance updatedInstance = WorkflowInstance.builder()
-                .from(instance)
-                .context(newContext)
-                .updateTime(LocalDateTime.now())
-                .build();
-        
-        // 保存更新后的实例
-        instanceStorage.put(instanceId, updatedInstance);
+        // 原地更新上下文
+        instance.setContextValues(contextUpdates);
+        if (stateStore != null) {
+            stateStore.logContext(instanceId, contextUpdates);
+        }
         
         // 记录上下文更新操作
         recordContextUpdate(instanceId, contextUpdates, userId);
         
-        return updatedInstance;
+        return instance;
     }
 
     /**
@@ -1108,71 +1635,69 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
         logger.info("记录上下文更新操作 - 实例ID: {}, 更新字段: {}, 操作用户: {}", 
                    instanceId, contextUpdates.keySet(), userId);
     }
-
-    private void updateInstanceContext(String instanceId, Map<String, Object> contextData) {
-        WorkflowInstance instance = instanceStorage.get(instanceId);
-        if (instance != null) {
-            Map<String, Object> newContext = new HashMap<>(instance.getContext());
-            newContext.putAll(contextData);
-            
-            WorkflowInstance updatedInstance = WorkflowInstance.builder()
-                .from(instance)
-                .context(newContext)
-                .updateTime(LocalDateTime.now())
-                .build();
-            
-            instanceStorage.put(instanceId, updatedInstance);
-        }
-    }
     
     @Override
     public List<WorkflowTask> getUserTasks(String userId) {
         Objects.requireNonNull(userId, "用户ID不能为空");
         
-        List<WorkflowTask> tasks = new ArrayList<>();
-        
-        // 遍历所有实例的用户任务
-        for (List<UserTask> userTasks : userTaskStorage.values()) {
-            for (UserTask userTask : userTasks) {
-                if ("PENDING".equals(userTask.getStatus())) {
-                    // 获取工作流实例信息
-                    WorkflowInstance instance = instanceStorage.get(userTask.getInstanceId());
-                    if (instance != null) {
-                        WorkflowTask task = new WorkflowTask(
-                            userTask.getId(),
-                            userTask.getInstanceId(),
-                            userTask.getStepId(),
-                            userTask.getName(),
-                            userTask.getDescription(),
-                            instance.getWorkflowId(),
-                            instance.getName(),
-                            userTask.getData(),
-                            userTask.getCreateTime(),
-                            "PENDING"
-                        );
-                        tasks.add(task);
-                    }
-                }
-            }
-        }
-        
-        return tasks;
+        TaskInbox.Page<UserTask> page = taskInbox.page(userId, null, 0, Integer.MAX_VALUE);
+        return toWorkflowTasks(page.getItems());
     }
     
     @Override
     public PageResult<WorkflowTask> getUserTasks(String userId, int page, int size) {
         Objects.requireNonNull(userId, "用户ID不能为空");
         
-        List<WorkflowTask> allTasks = getUserTasks(userId);
-        
-        // 计算分页
-        int total = allTasks.size();
-        int start = (page - 1) * size;
-        int end = Math.min(start + size, total);
+        // 页码分页需要跳过前面的页，开销为 O(page * size)；大收件箱请使用游标分页
+        int offset = Math.max(0, (page - 1) * size);
+        TaskInbox.Page<UserTask> inboxPage = taskInbox.page(userId, null, offset, size);
+        int total = taskInbox.count(userId, null);
         
-        List<WorkflowTask> pagedTasks = start < total ? allTasks.subList(start, end) : new ArrayList<>();
+        return new PageResult<>(toWorkflowTasks(inboxPage.getItems()), total, page, size);
+    }
+    
+    /**
+     * 按游标获取用户的待办任务
+     * 
+     * 同时包含直接分配给用户的任务和用户所属组的候选任务，按优先级降序、创建时间升序排列。
+     * 每页的开销只与页大小和组数量有关，与待办任务总量无关。
+     * 
+     * @param userId 用户ID
+     * @param groupIds 用户所属的组（可以为空）
+     * @param cursor 上一页返回的游标，为null时读取第一页
+     * @param size 每页大小
+     * @return 本页任务和下一页游标
+     */
+    public TaskInbox.Page<WorkflowTask> getUserTasks(String userId, Collection<String> groupIds, String cursor, int size) {
+        Objects.requireNonNull(userId, "用户ID不能为空");
         
-        return new PageResult<>(pagedTasks, total, page, size);
+        TaskInbox.Page<UserTask> page = taskInbox.page(userId, groupIds, cursor, size);
+        return new TaskInbox.Page<>(toWorkflowTasks(page.getItems()), page.getNextCursor());
+    }
+    
+    /**
+     * 将内部用户任务转换为对外的任务视图
+     */
+    private List<WorkflowTask> toWorkflowTasks(List<UserTask> userTasks) {
+        List<WorkflowTask> tasks = new ArrayList<>(userTasks.size());
+        for (UserTask userTask : userTasks) {
+            WorkflowInstance instance = instanceStorage.get(userTask.getInstanceId());
+            if (instance != null) {
+                tasks.add(new WorkflowTask(
+                    userTask.getId(),
+                    userTask.getInstanceId(),
+                    userTask.getStepId(),
+                    userTask.getName(),
+                    userTask.getDescription(),
+                    instance.getWorkflowId(),
+                    instance.getName(),
+                    userTask.getData(),
+                    userTask.getCreateTime(),
+                    "PENDING"
+                ));
+            }
+        }
+        return tasks;
     }
     
     @Override
@@ -1181,8 +1706,9 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
              return new ArrayList<>();
          }
          
-         return instanceStorage.values().stream()
-             .filter(instance -> businessKey.equals(instance.getBusinessKey()))
+         return instanceIndex.getByBusinessKey(businessKey).stream()
+             .map(instanceStorage::get)
+             .filter(Objects::nonNull)
              .sorted((a, b) -> b.getCreateTime().compareTo(a.getCreateTime()))
              .collect(Collectors.toList());
      }
@@ -1207,26 +1733,25 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
              throw new WorkflowException("指定的步骤不是当前步骤: " + stepId, WorkflowException.ErrorType.INVALID_STATE);
          }
          
-         // 获取工作流定义
-         Workflow workflow = workflowStorage.get(instance.getWorkflowId());
-         if (workflow == null) {
+         // 获取执行计划
+         WorkflowExecutionPlan plan = planStorage.get(instance.getWorkflowId());
+         if (plan == null) {
              throw new WorkflowException("工作流定义不存在: " + instance.getWorkflowId(), WorkflowException.ErrorType.WORKFLOW_NOT_FOUND);
          }
          
          // 获取当前步骤
-         WorkflowStep currentStep = workflow.getSteps().stream()
-                 .filter(step -> stepId.equals(step.getId()))
-                 .findFirst()
-                 .orElseThrow(() -> new WorkflowException("步骤不存在: " + stepId, WorkflowException.ErrorType.STEP_NOT_FOUND));
+         WorkflowStep currentStep = plan.getStep(stepId);
+         if (currentStep == null) {
+             throw new WorkflowException("步骤不存在: " + stepId, WorkflowException.ErrorType.STEP_NOT_FOUND);
+         }
          
          // 检查是否可以重试
-         if (!canRetryStep(instance, currentStep)) {
+         if (!canRetryStep(currentStep, retryTracker.getFailures(instanceId, stepId))) {
              throw new WorkflowException("步骤已达到最大重试次数: " + stepId, WorkflowException.ErrorType.RETRY_LIMIT_EXCEEDED);
          }
          
          // 重置实例状态
-         instance.setStatus("RUNNING");
-         instance.setUpdateTime(LocalDateTime.now());
+         updateInstanceStatus(instanceId, InstanceStatus.RUNNING, "手动重试步骤: " + stepId);
          
          // 记录重试操作
          recordExecutionResult(instance, currentStep, "RETRY", "手动重试步骤: " + stepId, null);
@@ -1236,8 +1761,7 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
             return executeStep(instanceId, stepId, userId, new HashMap<>());
         } catch (Exception e) {
             // 如果重试失败，更新实例状态
-            instance.setStatus("FAILED");
-            instance.setUpdateTime(LocalDateTime.now());
+            updateInstanceStatus(instanceId, InstanceStatus.FAILED, "重试失败: " + e.getMessage());
             recordExecutionResult(instance, currentStep, "FAILED", "重试失败: " + e.getMessage(), null);
             throw new WorkflowException("重试步骤失败: " + e.getMessage(), WorkflowException.ErrorType.EXECUTION_ERROR, e);
         }
@@ -1263,17 +1787,17 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
              throw new WorkflowException("指定的步骤不是当前步骤: " + stepId, WorkflowException.ErrorType.INVALID_STATE);
          }
          
-         // 获取工作流定义
-         Workflow workflow = workflowStorage.get(instance.getWorkflowId());
-         if (workflow == null) {
+         // 获取执行计划
+         WorkflowExecutionPlan plan = planStorage.get(instance.getWorkflowId());
+         if (plan == null) {
              throw new WorkflowException("工作流定义不存在: " + instance.getWorkflowId(), WorkflowException.ErrorType.WORKFLOW_NOT_FOUND);
          }
          
          // 获取当前步骤
-         WorkflowStep currentStep = workflow.getSteps().stream()
-                 .filter(step -> stepId.equals(step.getId()))
-                 .findFirst()
-                 .orElseThrow(() -> new WorkflowException("步骤不存在: " + stepId, WorkflowException.ErrorType.STEP_NOT_FOUND));
+         WorkflowStep currentStep = plan.getStep(stepId);
+         if (currentStep == null) {
+             throw new WorkflowException("步骤不存在: " + stepId, WorkflowException.ErrorType.STEP_NOT_FOUND);
+         }
          
          // 检查步骤是否可以跳过
          if (currentStep.isRequired()) {
@@ -1284,12 +1808,11 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
         recordExecutionResult(instance, currentStep, "SKIPPED", "手动跳过步骤: " + stepId + ", 原因: " + reason, null);
          
          // 确定下一步骤
-         WorkflowStep nextStep = determineNextStep(workflow, currentStep, instance.getContext());
+         WorkflowStep nextStep = plan.getNextStep(currentStep.getId());
          
          if (nextStep != null) {
-             // 更新到下一步骤
-             updateCurrentStep(instance, nextStep.getId());
-             instance.setStatus("RUNNING");
+             // 当前步骤保持为被跳过的步骤，继续执行时由执行计划确定下一步骤
+             updateInstanceStatus(instanceId, InstanceStatus.RUNNING, reason);
              
              // 继续执行工作流
             return continueWorkflow(instanceId, userId, new HashMap<>());
@@ -1325,7 +1848,15 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
          // 清理用户任务
          List<UserTask> userTasks = userTaskStorage.get(instanceId);
          if (userTasks != null) {
-             userTasks.removeIf(task -> !targetStepId.equals(task.getStepId()));
+             synchronized (userTasks) {
+                 userTasks.removeIf(task -> {
+                     if (targetStepId.equals(task.getStepId())) {
+                         return false;
+                     }
+                     taskInbox.remove(task.getId());
+                     return true;
+                 });
+             }
          }
      }
 
@@ -1333,58 +1864,37 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
     
     /**
      * 生成实例ID
+     * 
+     * ID按生成时间有序，新实例总是追加在主键索引的末端。
      */
     private String generateInstanceId() {
-        return "WF_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
+        return INSTANCE_ID_PREFIX + idGenerator.nextInstanceIdString();
     }
     
     /**
      * 确定下一个要执行的步骤
      */
-    private WorkflowStep determineNextStep(WorkflowInstance instance, Workflow workflow) {
+    private WorkflowStep determineNextStep(WorkflowInstance instance, WorkflowExecutionPlan plan) {
         if (instance.getCurrentStepId() == null) {
-            // 查找开始步骤
-            return workflow.getSteps().stream()
-                .filter(step -> step.getType() == StepType.START)
-                .findFirst()
-                .orElse(workflow.getSteps().isEmpty() ? null : workflow.getSteps().get(0));
+            // 开始步骤在编译时已确定
+            return plan.getStartStep();
         }
         
-        // 查找当前步骤
-        WorkflowStep currentStep = workflow.getSteps().stream()
-            .filter(step -> step.getId().equals(instance.getCurrentStepId()))
-            .findFirst()
-            .orElse(null);
-        
-        if (currentStep == null || currentStep.getNextStepId() == null) {
-            return null;
-        }
-        
-        // 查找下一个步骤
-        return workflow.getSteps().stream()
-            .filter(step -> step.getId().equals(currentStep.getNextStepId()))
-            .findFirst()
-            .orElse(null);
+        return plan.getNextStep(instance.getCurrentStepId());
     }
     
     /**
      * 检查前置条件
+     * 
+     * 前置条件表达式在注册时已编译进执行计划，这里直接在上下文视图上求值，
+     * 之后再检查以函数形式设置的前置条件。
      */
-    private boolean checkPrecondition(WorkflowInstance instance, WorkflowStep step) {
-        if (step.getPrecondition() == null || step.getPrecondition().trim().isEmpty()) {
-            return true;
+    private boolean checkPrecondition(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step) {
+        ConditionExpression precondition = plan.getPrecondition(step.getId());
+        if (precondition != null && !precondition.evaluate(instance.getContextView())) {
+            return false;
         }
-        
-        // 这里应该实现条件表达式的解析和执行
-        // 简化实现，总是返回true
-        return true;
-    }
-    
-    /**
-     * 获取步骤执行器
-     */
-    private StepExecutor getExecutor(WorkflowStep step) {
-        return executorRegistry.get(step.getType().name());
+        return step.checkPrecondition(instance.getContextView());
     }
     
     /**
@@ -1398,46 +1908,280 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
             .instanceContext(instance.getContext())
             .timeoutMillis(step.getTimeoutSeconds() != null ? step.getTimeoutSeconds() * 1000L : null)
             .retryCount(0)
+            .priority(instance.getPriority())
             .build();
     }
     
+    /**
+     * 分派实例事件
+     * 
+     * 串行执行模式下投递到实例所属的执行通道，否则在当前线程直接执行。
+     */
+    private void dispatch(String instanceId, Runnable event) {
+        if (executionLanes != null) {
+            executionLanes.execute(instanceId, event);
+        } else {
+            event.run();
+        }
+    }
+    
     /**
      * 记录执行结果
      */
     private void recordExecutionResult(String instanceId, StepExecutionResult result) {
-        executionHistory.computeIfAbsent(instanceId, k -> new ArrayList<>()).add(result);
+        List<StepExecutionResult> history = executionHistory.computeIfAbsent(instanceId, k -> new ArrayList<>());
+        int index;
+        synchronized (history) {
+            index = history.size();
+            history.add(result);
+        }
+        if (stateStore != null) {
+            stateStore.logStepResult(instanceId, index, result);
+        }
     }
     
     /**
-     * 更新实例状态
+     * 保存实例并加入二级索引
      */
-    private void updateInstanceStatus(String instanceId, InstanceStatus status, String message) {
-        WorkflowInstance instance = instanceStorage.get(instanceId);
-        if (instance != null) {
-            WorkflowInstance updatedInstance = WorkflowInstance.builder()
-                .from(instance)
-                .status(status)
-                .message(message)
-                .updateTime(LocalDateTime.now())
-                .build();
-            
-            instanceStorage.put(instanceId, updatedInstance);
+    private void storeInstance(WorkflowInstance instance) {
+        WorkflowInstance previous = instanceStorage.put(instance.getId(), instance);
+        if (previous != null) {
+            instanceIndex.remove(previous);
+        }
+        instanceIndex.add(instance);
+        if (instance.getStatus() != null && instance.getStatus().isFinalState()) {
+            expiryQueue.add(instance.getId(), instance.getStatus(), instance.getEndTime());
+        }
+        if (stateStore != null) {
+            stateStore.logInstance(instance);
         }
     }
     
     /**
-     * 更新当前步骤
+     * 移除实例并同步移出二级索引
      */
-    private void updateCurrentStep(String instanceId, String stepId) {
+    private WorkflowInstance removeInstance(String instanceId) {
+        WorkflowInstance removed = instanceStorage.remove(instanceId);
+        if (removed != null) {
+            instanceIndex.remove(removed);
+            retryTracker.remove(instanceId);
+            pendingRetries.remove(instanceId);
+            if (stateStore != null) {
+                stateStore.logRemove(instanceId);
+            }
+        }
+        return removed;
+    }
+    
+    /**
+     * 更新实例状态（引擎内部流转）
+     * 
+     * 在原实例上校验并原子转换状态，不再重建实例对象。
+     * 实例已被并发的终止或取消操作结束时放弃本次转换；其它被拒绝的转换说明引擎流转有误，直接抛出。
+     * 
+     * @return 如果转换成功返回true，实例不存在或已结束返回false
+     * @throws IllegalStateException 如果从未结束的状态转换到目标状态不合法
+     */
+    private boolean updateInstanceStatus(String instanceId, InstanceStatus status, String message) {
         WorkflowInstance instance = instanceStorage.get(instanceId);
-        if (instance != null) {
-            WorkflowInstance updatedInstance = WorkflowInstance.builder()
-                .from(instance)
-                .currentStepId(stepId)
-                .updateTime(LocalDateTime.now())
-                .build();
+        if (instance == null) {
+            return false;
+        }
+        
+        try {
+            transitionInstance(instance, status, message);
+            return true;
+        } catch (IllegalStateException e) {
+            if (instance.getStatus().isFinalState()) {
+                logger.debug("实例已结束，放弃状态转换: {} ({})", instanceId, e.getMessage());
+                return false;
+            }
+            logger.error("实例状态转换被拒绝: {} ({})", instanceId, e.getMessage());
+            throw e;
+        }
+    }
+    
+    /**
+     * 按用户请求转换实例状态（暂停、终止、取消）
+     * 
+     * @throws WorkflowException 如果当前状态不允许该操作
+     */
+    private void requestInstanceStatus(WorkflowInstance instance, InstanceStatus status, String reason,
+                                       String action) throws WorkflowException {
+        try {
+            transitionInstance(instance, status, reason);
+        } catch (IllegalStateException e) {
+            throw new WorkflowException("工作流实例状态不允许" + action + ": " + instance.getStatus(), 
+                                      WorkflowException.WorkflowErrorType.STATE_ERROR);
+        }
+    }
+    
+    /**
+     * 转换实例状态并维护索引、日志和事件
+     * 
+     * @throws IllegalStateException 如果状态转换不合法
+     */
+    private void transitionInstance(WorkflowInstance instance, InstanceStatus status, String message) {
+        String instanceId = instance.getId();
+        InstanceStatus previous = instance.transitionTo(status);
+        
+        if (status == InstanceStatus.FAILED && message != null) {
+            instance.setErrorMessage(message);
+        }
+        instanceIndex.updateStatus(instance, previous);
+        if (status.isFinalState()) {
+            expiryQueue.add(instanceId, status, instance.getEndTime());
+        }
+        logState(instance);
+        eventBus.publish(EngineEvent.statusChanged(instanceId, instance.getWorkflowId(), previous, status, message));
+    }
+    
+    /**
+     * 进入步骤
+     * 
+     * 将实例状态置为运行中并移动当前步骤指针，两者在一次CAS中完成。
+     * 不比较当前状态，只用于回滚等用户显式发起的操作；执行循环使用带观察状态的重载。
+     * 
+     * @return 如果转换成功返回true，实例已结束返回false
+     * @throws IllegalStateException 如果从未结束的状态进入运行状态不合法
+     */
+    private boolean enterStep(WorkflowInstance instance, WorkflowStep step) {
+        InstanceStatus previous;
+        try {
+            previous = instance.transitionTo(InstanceStatus.RUNNING, step.getId(), step.getOrder());
+        } catch (IllegalStateException e) {
+            if (instance.getStatus().isFinalState()) {
+                logger.debug("实例已结束，不再进入步骤: {} ({})", instance.getId(), e.getMessage());
+                return false;
+            }
+            logger.error("实例状态转换被拒绝: {} ({})", instance.getId(), e.getMessage());
+            throw e;
+        }
+        
+        onStepEntered(instance, previous);
+        return true;
+    }
+    
+    /**
+     * 从观察到的状态进入步骤
+     * 
+     * 只有实例仍处于执行循环检查时的状态与步骤才会转换，
+     * 并发的暂停、终止或取消不会被执行循环覆盖回运行状态。
+     * 
+     * @param observedStatus 观察到的实例状态
+     * @param observedStepId 观察到的当前步骤ID
+     * @return 如果转换成功返回true，状态已被并发修改返回false
+     * @throws IllegalStateException 如果从观察到的状态进入运行状态不合法
+     */
+    private boolean enterStep(WorkflowInstance instance, WorkflowStep step,
+                              InstanceStatus observedStatus, String observedStepId) {
+        if (!instance.compareAndTransition(observedStatus, observedStepId,
+                                           InstanceStatus.RUNNING, step.getId(), step.getOrder())) {
+            if (instance.getStatus() == observedStatus && Objects.equals(instance.getCurrentStepId(), observedStepId)) {
+                String message = String.format("不允许的状态转换: %s -> %s", observedStatus, InstanceStatus.RUNNING);
+                logger.error("实例状态转换被拒绝: {} ({})", instance.getId(), message);
+                throw new IllegalStateException(message);
+            }
+            return false;
+        }
+        
+        onStepEntered(instance, observedStatus);
+        return true;
+    }
+    
+    /**
+     * 进入步骤后维护索引、日志和事件
+     */
+    private void onStepEntered(WorkflowInstance instance, InstanceStatus previous) {
+        instanceIndex.updateStatus(instance, previous);
+        logState(instance);
+        if (previous != InstanceStatus.RUNNING) {
+            eventBus.publish(EngineEvent.statusChanged(instance.getId(), instance.getWorkflowId(), previous,
+                                                       InstanceStatus.RUNNING, null));
+        }
+    }
+    
+    /**
+     * 输出步骤级的生命周期日志（事件总线订阅者）
+     */
+    private void logLifecycleEvents(List<EngineEvent> events) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        for (EngineEvent event : events) {
+            switch (event.getType()) {
+                case STEP_STARTED:
+                    logger.info("开始执行步骤: {} (实例: {}, 用户: {})", event.getStepId(), event.getInstanceId(), event.getMessage());
+                    break;
+                case STEP_FINISHED:
+                    if (event.getResult().getStatus() == StepExecutionResult.Status.SUCCESS) {
+                        logger.info("步骤执行成功: {} (实例: {})", event.getStepId(), event.getInstanceId());
+                    }
+                    break;
+                case INSTANCE_STATUS_CHANGED:
+                    if (event.getStatus() == InstanceStatus.COMPLETED) {
+                        logger.info("工作流实例执行完成: {}", event.getInstanceId());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * 记录实例状态转换到变更日志（内存状态已经转换）
+     */
+    private void logState(WorkflowInstance instance) {
+        if (stateStore != null) {
+            stateStore.logState(instance);
+        }
+    }
+    
+    /**
+     * 打开状态持久化并恢复状态
+     */
+    private EngineStateStore openStateStore(EngineConfiguration configuration) {
+        if (configuration.getJournalDirectory() == null) {
+            return null;
+        }
+        
+        try {
+            EngineStateStore store = new EngineStateStore(
+                configuration.getJournalDirectory(),
+                configuration.getJournalSegmentSizeMb() << 20,
+                configuration.getJournalSyncIntervalMillis(),
+                configuration.getJournalSyncMode(),
+                configuration.getSnapshotCodec());
             
-            instanceStorage.put(instanceId, updatedInstance);
+            long startTime = System.currentTimeMillis();
+            store.recover(instanceStorage, executionHistory, userTaskStorage);
+            for (WorkflowInstance instance : instanceStorage.values()) {
+                instanceIndex.add(instance);
+                if (instance.getStatus().isFinalState()) {
+                    expiryQueue.add(instance.getId(), instance.getStatus(), instance.getEndTime());
+                }
+            }
+            userTaskStorage.values().forEach(tasks -> tasks.forEach(this::indexUserTask));
+            logger.info("引擎状态恢复完成: {} 个实例，耗时 {}ms", 
+                       instanceStorage.size(), System.currentTimeMillis() - startTime);
+            return store;
+        } catch (IOException e) {
+            throw new IllegalStateException("引擎状态恢复失败: " + configuration.getJournalDirectory(), e);
+        }
+    }
+    
+    /**
+     * 写出状态快照
+     */
+    public void takeSnapshot() {
+        if (stateStore == null) {
+            return;
+        }
+        try {
+            stateStore.snapshot(instanceStorage, executionHistory, userTaskStorage);
+        } catch (Exception e) {
+            logger.error("写出引擎快照失败", e);
         }
     }
     
@@ -1445,82 +2189,302 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
      * 完成工作流
      */
     private void completeWorkflow(String instanceId) {
-        updateInstanceStatus(instanceId, InstanceStatus.COMPLETED, "工作流执行完成");
-        statistics.incrementCompletedInstances();
-        logger.info("工作流实例执行完成: {}", instanceId);
+        if (!updateInstanceStatus(instanceId, InstanceStatus.COMPLETED, "工作流执行完成")) {
+            return;
+        }
+        
+        WorkflowInstance instance = instanceStorage.get(instanceId);
+        if (instance != null) {
+            statistics.incrementCompletedInstances(instance.getWorkflowId(), instance.getExecutionDuration());
+        }
     }
     
     /**
      * 检查步骤是否可以重试
+     * 
+     * @param failures 包括本次在内的连续失败次数
      */
-    private boolean canRetryStep(WorkflowInstance instance, WorkflowStep step, StepExecutionResult result) {
+    private boolean canRetryStep(WorkflowStep step, int failures) {
         if (step.getRetryCount() == null || step.getRetryCount() <= 0) {
             return false;
         }
         
-        // 获取当前步骤的重试次数
-        List<StepExecutionResult> history = executionHistory.getOrDefault(instance.getId(), Collections.emptyList());
-        long retryCount = history.stream()
-            .filter(r -> r.getStepId().equals(step.getId()))
-            .filter(r -> r.getStatus() == StepExecutionResult.Status.FAILED || 
-                        r.getStatus() == StepExecutionResult.Status.TIMEOUT)
-            .count();
-        
-        return retryCount < step.getRetryCount();
+        // 已重试次数 = 连续失败次数 - 1
+        return failures - 1 < step.getRetryCount();
     }
     
     /**
      * 调度步骤重试
      */
-    private void scheduleStepRetry(WorkflowInstance instance, WorkflowStep step, String userId) {
+    private void scheduleStepRetry(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, 
+                                   String userId, int attempt) {
         // 计算重试延迟
-        long delaySeconds = calculateRetryDelay(instance, step);
+        long delayMillis = calculateRetryDelay(attempt);
+        
+        scheduleTimer(instance, step, PersistentTimer.TimerType.RETRY, userId, delayMillis,
+                      () -> fireStepRetry(instance, plan, step, userId));
+        
+        logger.info("已调度步骤重试: {} (实例: {}, 第{}次, 延迟: {}ms)", step.getId(), instance.getId(), attempt, delayMillis);
+    }
+    
+    /**
+     * 步骤重试到期
+     * 
+     * 只有实例仍在该步骤上运行时才重试，等待期间被暂停、终止、跳过或已由其它路径推进的实例忽略到期事件。
+     * 状态与步骤在一次CAS中比较，不会在两次读取之间被并发修改。
+     */
+    private void fireStepRetry(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, String userId) {
+        pendingRetries.remove(instance.getId());
+        if (!instance.compareAndTransition(InstanceStatus.RUNNING, step.getId(),
+                                           InstanceStatus.RUNNING, step.getId(), step.getOrder())) {
+            logger.info("实例已不在该步骤上，忽略重试: {} (实例: {}, 状态: {}, 当前步骤: {})", 
+                       step.getId(), instance.getId(), instance.getStatus(), instance.getCurrentStepId());
+            return;
+        }
+        runSteps(instance, plan, step, userId, null);
+    }
+    
+    /**
+     * 调度TIMER步骤
+     * 
+     * 实例进入等待状态，定时器到期后恢复执行。等待时长取步骤配置
+     * "duration"或"waitDuration"（秒）。
+     */
+    private void scheduleTimerStep(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, String userId) {
+        long delaySeconds = getTimerDurationSeconds(step);
+        
+        updateInstanceStatus(instance.getId(), InstanceStatus.WAITING, "等待定时器到期");
+        scheduleTimer(instance, step, PersistentTimer.TimerType.TIMER, userId, TimeUnit.SECONDS.toMillis(delaySeconds),
+                      () -> fireTimerStep(instance, plan, step, userId));
+        
+        logger.info("TIMER步骤开始等待: {} (实例: {}, 时长: {}秒)", step.getId(), instance.getId(), delaySeconds);
+    }
+    
+    /**
+     * TIMER步骤到期
+     * 
+     * 只有实例仍在等待该步骤时才继续执行，期间被暂停、终止或跳过的实例忽略到期事件。
+     */
+    private void fireTimerStep(WorkflowInstance instance, WorkflowExecutionPlan plan, WorkflowStep step, String userId) {
+        if (!instance.compareAndTransition(InstanceStatus.WAITING, step.getId(),
+                                           InstanceStatus.RUNNING, step.getId(), step.getOrder())) {
+            logger.info("实例已不在等待该定时器，忽略到期事件: {} (实例: {}, 状态: {})", 
+                       step.getId(), instance.getId(), instance.getStatus());
+            return;
+        }
+        instanceIndex.updateStatus(instance, InstanceStatus.WAITING);
+        logState(instance);
+        
+        // 注册了TIMER执行器时由执行器处理到期逻辑，否则直接视为成功
+        StepExecutor executor = plan.getExecutor(StepType.TIMER);
+        if (executor != null) {
+            StepExecutionContext context = createExecutionContext(instance, step, userId, null);
+            runSteps(instance, plan, executeStepSync(instance, plan, step, executor, context, userId), userId, null);
+            return;
+        }
         
-        scheduler.schedule(() -> {
+        StepExecutionResult result = StepExecutionResult.builder(StepExecutionResult.Status.SUCCESS)
+            .stepId(step.getId())
+            .executorName("timer")
+            .message("定时器到期")
+            .build();
+        recordExecutionResult(instance.getId(), result);
+        runSteps(instance, plan, advance(instance, plan, step), userId, null);
+    }
+    
+    /**
+     * 获取TIMER步骤的等待时长（秒）
+     */
+    private long getTimerDurationSeconds(WorkflowStep step) {
+        Object duration = step.getConfigValue("duration");
+        if (duration == null) {
+            duration = step.getConfigValue("waitDuration");
+        }
+        if (duration instanceof Number) {
+            return Math.max(0, ((Number) duration).longValue());
+        }
+        if (duration != null) {
+            try {
+                return Math.max(0, Long.parseLong(duration.toString().trim()));
+            } catch (NumberFormatException e) {
+                logger.warn("TIMER步骤等待时长配置无效: {} (步骤: {})", duration, step.getId());
+            }
+        }
+        return 0;
+    }
+    
+    /**
+     * 在时间轮上调度实例定时器
+     * 
+     * 配置了定时器存储时同步持久化，到期后删除记录。到期事件通过dispatch分派，
+     * 串行执行模式下与实例的其它事件保持顺序。
+     */
+    private void scheduleTimer(WorkflowInstance instance, WorkflowStep step, PersistentTimer.TimerType timerType,
+                               String userId, long delayMillis, Runnable action) {
+        PersistentTimer record = null;
+        if (timerStore != null) {
+            record = new PersistentTimer(idGenerator.nextIdString(), instance.getId(), step.getId(), timerType,
+                                         System.currentTimeMillis() + delayMillis, userId);
+            try {
+                timerStore.save(record);
+            } catch (Exception e) {
+                logger.error("定时器持久化失败，仅保留内存定时器: {}", record, e);
+                record = null;
+            }
+        }
+        
+        String timerId = record != null ? record.getTimerId() : null;
+        scheduleOnWheel(instance, step, timerType, timerId, delayMillis, action);
+    }
+    
+    /**
+     * 把定时任务放入时间轮，到期时先删除持久化记录，实例已被移除或移交时忽略
+     */
+    private void scheduleOnWheel(WorkflowInstance instance, WorkflowStep step, PersistentTimer.TimerType timerType,
+                                 String timerId, long delayMillis, Runnable action) {
+        TimingWheelTimer.Timeout timeout = timerService.schedule(() -> dispatch(instance.getId(), () -> {
+            if (timerId != null) {
+                deletePersistentTimer(timerId);
+            }
+            if (instanceStorage.get(instance.getId()) != instance) {
+                logger.info("实例已被移除或移交，忽略定时任务: {} (实例: {}, 类型: {})", step.getId(), instance.getId(), timerType);
+                return;
+            }
             try {
-                executeStep(instance, step, userId);
+                action.run();
             } catch (Exception e) {
-                logger.error("重试步骤执行失败: {} (实例: {})", step.getId(), instance.getId(), e);
+                logger.error("定时任务执行失败: {} (实例: {}, 类型: {})", step.getId(), instance.getId(), timerType, e);
             }
-        }, delaySeconds, TimeUnit.SECONDS);
+        }), delayMillis, TimeUnit.MILLISECONDS);
         
-        logger.info("已调度步骤重试: {} (实例: {}, 延迟: {}秒)", step.getId(), instance.getId(), delaySeconds);
+        // 延迟很短时定时任务可能已经执行，此时登记的记录已过期，取消会失败，不影响移交判断
+        if (timerType == PersistentTimer.TimerType.RETRY) {
+            pendingRetries.put(instance.getId(), new PendingRetry(step.getId(), timerId, timeout));
+        }
+    }
+    
+    /**
+     * 取消实例等待中的重试定时器
+     * 
+     * @return 实例正在当前步骤上等待重试且定时器在到期前被取消时返回true
+     */
+    private boolean cancelPendingRetry(WorkflowInstance instance) {
+        PendingRetry retry = pendingRetries.get(instance.getId());
+        if (retry == null || !retry.stepId.equals(instance.getCurrentStepId()) || !retry.timeout.cancel()) {
+            return false;
+        }
+        pendingRetries.remove(instance.getId(), retry);
+        if (retry.timerId != null) {
+            deletePersistentTimer(retry.timerId);
+        }
+        return true;
     }
     
     /**
-     * 计算重试延迟
+     * 为接管的、等待重试退避的实例重新调度重试
+     * 
+     * 连续失败次数按执行历史末尾该步骤的失败记录恢复，重试次数上限和退避时长与移交前保持一致。
      */
-    private long calculateRetryDelay(WorkflowInstance instance, WorkflowStep step) {
-        // 获取当前重试次数
-        List<StepExecutionResult> history = executionHistory.getOrDefault(instance.getId(), Collections.emptyList());
-        long retryCount = history.stream()
-            .filter(r -> r.getNextStepId().equals(step.getId()))
-            .filter(r -> r.getStatus() == StepExecutionResult.Status.FAILED || 
-                        r.getStatus() == StepExecutionResult.Status.TIMEOUT)
-            .count();
+    private void resumeRetry(WorkflowInstance instance, List<StepExecutionResult> history) {
+        WorkflowExecutionPlan plan = planStorage.get(instance.getWorkflowId());
+        WorkflowStep step = plan != null ? plan.getStep(instance.getCurrentStepId()) : null;
+        if (step == null) {
+            logger.warn("接管的实例当前步骤不存在，无法恢复重试: {} (步骤: {})", instance.getId(), instance.getCurrentStepId());
+            return;
+        }
         
-        // 指数退避算法
-        return Math.min(configuration.getMaxRetryDelaySeconds(), 
-                       configuration.getBaseRetryDelaySeconds() * (1L << retryCount));
+        int failures = 0;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            StepExecutionResult result = history.get(i);
+            if (!step.getId().equals(result.getStepId()) || result.getStatus() == null
+                || result.getStatus().isCompleted() || result.getStatus() == StepExecutionResult.Status.WAITING) {
+                break;
+            }
+            failures = retryTracker.recordFailure(instance.getId(), step.getId());
+        }
+        scheduleStepRetry(instance, plan, step, instance.getStartUserId(), Math.max(1, failures));
     }
     
     /**
-     * 执行错误处理步骤
+     * 删除持久化定时器
      */
-    private void executeErrorStep(WorkflowInstance instance, WorkflowStep step, String userId) {
-        // 查找错误处理步骤
-        Workflow workflow = workflowStorage.get(instance.getWorkflowId());
-        if (workflow != null) {
-            WorkflowStep errorStep = workflow.getSteps().stream()
-                .filter(s -> s.getId().equals(step.getErrorStepId()))
-                .findFirst()
-                .orElse(null);
+    private void deletePersistentTimer(String timerId) {
+        try {
+            timerStore.delete(timerId);
+        } catch (Exception e) {
+            logger.warn("删除持久化定时器失败: {}", timerId, e);
+        }
+    }
+    
+    /**
+     * 恢复持久化的定时器
+     * 
+     * 重启并恢复实例后调用，将存储中挂起的定时器按剩余时长重新放入时间轮，
+     * 已经过期的立即执行。实例或步骤已不存在、或实例已不在该步骤上等待的记录会被删除；
+     * 到期时仍按调度时相同的步骤检查决定是否执行。
+     * 
+     * @return 恢复的定时器数量
+     */
+    public int recoverTimers() {
+        if (timerStore == null) {
+            return 0;
+        }
+        
+        int recovered = 0;
+        long now = System.currentTimeMillis();
+        for (PersistentTimer timer : timerStore.loadPending()) {
+            WorkflowInstance instance = instanceStorage.get(timer.getInstanceId());
+            WorkflowExecutionPlan plan = instance != null ? planStorage.get(instance.getWorkflowId()) : null;
+            WorkflowStep step = plan != null ? plan.getStep(timer.getStepId()) : null;
+            if (step == null) {
+                logger.warn("定时器关联的实例或步骤不存在，已删除: {}", timer);
+                deletePersistentTimer(timer.getTimerId());
+                continue;
+            }
             
-            if (errorStep != null) {
-                logger.info("执行错误处理步骤: {} (实例: {})", errorStep.getId(), instance.getId());
-                executeStep(instance, errorStep, userId);
+            boolean isTimerStep = timer.getTimerType() == PersistentTimer.TimerType.TIMER;
+            InstanceStatus expectedStatus = isTimerStep ? InstanceStatus.WAITING : InstanceStatus.RUNNING;
+            if (instance.getStatus() != expectedStatus || !step.getId().equals(instance.getCurrentStepId())) {
+                logger.warn("实例已不在定时器对应的步骤上，已删除: {} (状态: {}, 当前步骤: {})", 
+                           timer, instance.getStatus(), instance.getCurrentStepId());
+                deletePersistentTimer(timer.getTimerId());
+                continue;
             }
+            
+            String userId = timer.getUserId();
+            Runnable action = isTimerStep
+                ? () -> fireTimerStep(instance, plan, step, userId)
+                : () -> fireStepRetry(instance, plan, step, userId);
+            
+            scheduleOnWheel(instance, step, timer.getTimerType(), timer.getTimerId(),
+                            Math.max(0, timer.getDueTime() - now), action);
+            recovered++;
         }
+        
+        logger.info("已恢复持久化定时器: {} 个", recovered);
+        return recovered;
+    }
+    
+    /**
+     * 计算重试延迟（毫秒）
+     * 
+     * 指数退避：base * 2^(attempt-1)，不超过上限。启用抖动时在[delay/2, delay]内随机取值，
+     * 避免同一批失败的实例在同一时刻集中重试。
+     * 
+     * @param attempt 连续失败次数（从1开始）
+     */
+    private long calculateRetryDelay(int attempt) {
+        long baseMillis = TimeUnit.SECONDS.toMillis(configuration.getBaseRetryDelaySeconds());
+        long maxMillis = TimeUnit.SECONDS.toMillis(configuration.getMaxRetryDelaySeconds());
+        
+        int exponent = Math.min(Math.max(attempt - 1, 0), 30);
+        long delay = Math.min(maxMillis, baseMillis << exponent);
+        if (!configuration.isRetryJitterEnabled() || delay <= 1) {
+            return delay;
+        }
+        
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
     }
     
     /**
@@ -1528,7 +2492,7 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
      */
     private void createUserTask(WorkflowInstance instance, WorkflowStep step, StepExecutionResult result) {
         UserTask userTask = new UserTask(
-            UUID.randomUUID().toString(),
+            idGenerator.nextIdString(),
             instance.getId(),
             step.getId(),
             step.getName(),
@@ -1539,37 +2503,83 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
             "PENDING"
         );
         
-        userTaskStorage.computeIfAbsent(instance.getId(), k -> new ArrayList<>()).add(userTask);
+        List<UserTask> userTasks = userTaskStorage.computeIfAbsent(instance.getId(), k -> new ArrayList<>());
+        synchronized (userTasks) {
+            userTasks.add(userTask);
+        }
+        indexUserTask(userTask);
+        if (stateStore != null) {
+            stateStore.logUserTask(userTask);
+        }
         logger.info("已创建用户任务: {} (实例: {}, 步骤: {})", userTask.getId(), instance.getId(), step.getId());
     }
     
+    /**
+     * 将待办用户任务加入收件箱索引
+     * 
+     * 任务未指定优先级时使用实例优先级，未指定任何处理人时归入实例当前用户的收件箱。
+     */
+    private void indexUserTask(UserTask userTask) {
+        if (!"PENDING".equals(userTask.getStatus())) {
+            return;
+        }
+        WorkflowInstance instance = instanceStorage.get(userTask.getInstanceId());
+        if (instance == null) {
+            return;
+        }
+        taskInbox.add(userTask, instance.getPriority(), instance.getCurrentUserId());
+    }
+    
     /**
      * 清理过期实例
+     * 
+     * 每次只从过期队列弹出一批实例；如果还有剩余，重新提交到调度器继续清理，
+     * 期间其他定时任务可以穿插执行，不会被一次长时间的清理占住调度线程。
      */
     private void cleanupExpiredInstances() {
         try {
             LocalDateTime expireTime = LocalDateTime.now().minusDays(configuration.getInstanceRetentionDays());
+            int batchSize = Math.max(1, configuration.getCleanupBatchSize());
             
-            List<String> expiredInstances = instanceStorage.values().stream()
-                .filter(instance -> instance.getCreateTime().isBefore(expireTime))
-                .filter(instance -> instance.getStatus().isFinal())
-                .map(WorkflowInstance::getId)
-                .collect(Collectors.toList());
+            List<String> expired = expiryQueue.pollExpired(FINAL_STATUSES, expireTime, batchSize);
+            int removed = purgeExpiredInstances(expired, FINAL_STATUSES, expireTime);
             
-            for (String instanceId : expiredInstances) {
-                instanceStorage.remove(instanceId);
-                executionHistory.remove(instanceId);
-                userTaskStorage.remove(instanceId);
+            if (removed > 0) {
+                logger.info("已清理过期实例: {} 个", removed);
             }
-            
-            if (!expiredInstances.isEmpty()) {
-                logger.info("已清理过期实例: {} 个", expiredInstances.size());
+            if (expired.size() == batchSize && running) {
+                scheduler.execute(this::cleanupExpiredInstances);
             }
         } catch (Exception e) {
             logger.error("清理过期实例失败", e);
         }
     }
     
+    /**
+     * 移除从过期队列弹出的实例及其执行历史和用户任务
+     * 
+     * 队列条目可能已经过时（实例被重启或已被移除），移除前重新校验状态和结束时间。
+     * 
+     * @return 实际移除的实例数量
+     */
+    private int purgeExpiredInstances(List<String> instanceIds, Collection<InstanceStatus> statuses, LocalDateTime cutoffTime) {
+        int removed = 0;
+        for (String instanceId : instanceIds) {
+            WorkflowInstance instance = instanceStorage.get(instanceId);
+            if (instance == null
+                || !statuses.contains(instance.getStatus())
+                || instance.getEndTime() == null
+                || !instance.getEndTime().isBefore(cutoffTime)) {
+                continue;
+            }
+            removeInstance(instanceId);
+            executionHistory.remove(instanceId);
+            taskInbox.removeAll(userTaskStorage.remove(instanceId));
+            removed++;
+        }
+        return removed;
+    }
+    
     // 内部类
     
     /**
@@ -1577,20 +2587,196 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
      */
     public static class EngineConfiguration {
         private int asyncThreadPoolSize = 10;
+        private int asyncQueueCapacity = 10000;
+        private double startPermitsPerSecond = 0;
+        private int startBurst = 100;
+        private int maxInFlightStarts = 256;
+        private int admissionQueueHighWatermark = 8000;
+        private AdmissionController.OverloadPolicy overloadPolicy = AdmissionController.OverloadPolicy.REJECT;
+        private int deferredStartCapacity = 10000;
+        private long admissionDrainIntervalMillis = 50;
+        private boolean prioritySchedulingEnabled = false;
+        private long priorityAgingMillis = 1000;
+        private final Map<StepType, StepBulkheads.PoolSpec> bulkheads = defaultBulkheads();
+        private int eventBusCapacity = 8192;
+        private EngineEventBus.OverflowPolicy eventOverflowPolicy = EngineEventBus.OverflowPolicy.DROP;
+        private int eventBatchSize = 256;
+        private boolean lifecycleLoggingEnabled = true;
+        private int clusterVirtualNodes = ConsistentHashRing.DEFAULT_VIRTUAL_NODES;
+        private long clusterRebalanceIntervalMillis = 1000;
         private int schedulerThreadPoolSize = 5;
         private int cleanupIntervalMinutes = 60;
         private int instanceRetentionDays = 30;
         private long baseRetryDelaySeconds = 1;
         private long maxRetryDelaySeconds = 300;
+        private boolean retryJitterEnabled = true;
+        private boolean serialExecutionEnabled = false;
+        private int executionLaneCount = Runtime.getRuntime().availableProcessors();
+        private long timerTickMillis = 100;
+        private int timerWheelSize = 512;
+        private int timerThreadPoolSize = 2;
+        private TimerStore timerStore;
+        private String journalDirectory;
+        private int journalSegmentSizeMb = 64;
+        private long journalSyncIntervalMillis = 10;
+        private EngineStateStore.SyncMode journalSyncMode = EngineStateStore.SyncMode.GROUP_COMMIT;
+        private int snapshotIntervalMinutes = 10;
+        private InstanceCodec snapshotCodec = BinaryInstanceCodec.INSTANCE;
+        private int batchParallelism = Runtime.getRuntime().availableProcessors();
+        private int batchChunkSize = 500;
+        private long expiryBucketSeconds = 60;
+        private int cleanupBatchSize = 1000;
+        private IdGenerator idGenerator;
+        private int nodeId = -1;
         
         public static EngineConfiguration defaultConfig() {
             return new EngineConfiguration();
         }
         
+        /**
+         * 复制配置
+         * 
+         * 隔离池声明复制为独立的映射，ID生成器、定时器存储和编解码器等对象按引用共享。
+         * 
+         * @return 配置副本
+         */
+        public EngineConfiguration copy() {
+            EngineConfiguration copy = new EngineConfiguration();
+            copy.asyncThreadPoolSize = asyncThreadPoolSize;
+            copy.asyncQueueCapacity = asyncQueueCapacity;
+            copy.startPermitsPerSecond = startPermitsPerSecond;
+            copy.startBurst = startBurst;
+            copy.maxInFlightStarts = maxInFlightStarts;
+            copy.admissionQueueHighWatermark = admissionQueueHighWatermark;
+            copy.overloadPolicy = overloadPolicy;
+            copy.deferredStartCapacity = deferredStartCapacity;
+            copy.admissionDrainIntervalMillis = admissionDrainIntervalMillis;
+            copy.prioritySchedulingEnabled = prioritySchedulingEnabled;
+            copy.priorityAgingMillis = priorityAgingMillis;
+            copy.bulkheads.clear();
+            copy.bulkheads.putAll(bulkheads);
+            copy.eventBusCapacity = eventBusCapacity;
+            copy.eventOverflowPolicy = eventOverflowPolicy;
+            copy.eventBatchSize = eventBatchSize;
+            copy.lifecycleLoggingEnabled = lifecycleLoggingEnabled;
+            copy.clusterVirtualNodes = clusterVirtualNodes;
+            copy.clusterRebalanceIntervalMillis = clusterRebalanceIntervalMillis;
+            copy.schedulerThreadPoolSize = schedulerThreadPoolSize;
+            copy.cleanupIntervalMinutes = cleanupIntervalMinutes;
+            copy.instanceRetentionDays = instanceRetentionDays;
+            copy.baseRetryDelaySeconds = baseRetryDelaySeconds;
+            copy.maxRetryDelaySeconds = maxRetryDelaySeconds;
+            copy.retryJitterEnabled = retryJitterEnabled;
+            copy.serialExecutionEnabled = serialExecutionEnabled;
+            copy.executionLaneCount = executionLaneCount;
+            copy.timerTickMillis = timerTickMillis;
+            copy.timerWheelSize = timerWheelSize;
+            copy.timerThreadPoolSize = timerThreadPoolSize;
+            copy.timerStore = timerStore;
+            copy.journalDirectory = journalDirectory;
+            copy.journalSegmentSizeMb = journalSegmentSizeMb;
+            copy.journalSyncIntervalMillis = journalSyncIntervalMillis;
+            copy.journalSyncMode = journalSyncMode;
+            copy.snapshotIntervalMinutes = snapshotIntervalMinutes;
+            copy.snapshotCodec = snapshotCodec;
+            copy.batchParallelism = batchParallelism;
+            copy.batchChunkSize = batchChunkSize;
+            copy.expiryBucketSeconds = expiryBucketSeconds;
+            copy.cleanupBatchSize = cleanupBatchSize;
+            copy.idGenerator = idGenerator;
+            copy.nodeId = nodeId;
+            return copy;
+        }
+        
         // Getters and setters
         public int getAsyncThreadPoolSize() { return asyncThreadPoolSize; }
         public void setAsyncThreadPoolSize(int asyncThreadPoolSize) { this.asyncThreadPoolSize = asyncThreadPoolSize; }
         
+        /** 异步线程池队列容量，队列满时由提交线程直接执行 */
+        public int getAsyncQueueCapacity() { return asyncQueueCapacity; }
+        public void setAsyncQueueCapacity(int asyncQueueCapacity) { this.asyncQueueCapacity = asyncQueueCapacity; }
+        
+        /** 每个工作流的默认启动速率（每秒），小于等于0表示不限速 */
+        public double getStartPermitsPerSecond() { return startPermitsPerSecond; }
+        public void setStartPermitsPerSecond(double startPermitsPerSecond) { this.startPermitsPerSecond = startPermitsPerSecond; }
+        
+        /** 启动限流令牌桶容量（允许的突发启动数量） */
+        public int getStartBurst() { return startBurst; }
+        public void setStartBurst(int startBurst) { this.startBurst = startBurst; }
+        
+        /** 全局在途启动数量上限，小于等于0表示不限制 */
+        public int getMaxInFlightStarts() { return maxInFlightStarts; }
+        public void setMaxInFlightStarts(int maxInFlightStarts) { this.maxInFlightStarts = maxInFlightStarts; }
+        
+        /** 异步队列深度水位，超过后新启动按过载策略处理；应小于队列容量，小于等于0表示不检查 */
+        public int getAdmissionQueueHighWatermark() { return admissionQueueHighWatermark; }
+        public void setAdmissionQueueHighWatermark(int admissionQueueHighWatermark) { this.admissionQueueHighWatermark = admissionQueueHighWatermark; }
+        
+        /** 过载策略：拒绝或延后启动 */
+        public AdmissionController.OverloadPolicy getOverloadPolicy() { return overloadPolicy; }
+        public void setOverloadPolicy(AdmissionController.OverloadPolicy overloadPolicy) { this.overloadPolicy = overloadPolicy; }
+        
+        /** 延后启动队列容量，队列满时新启动被拒绝 */
+        public int getDeferredStartCapacity() { return deferredStartCapacity; }
+        public void setDeferredStartCapacity(int deferredStartCapacity) { this.deferredStartCapacity = deferredStartCapacity; }
+        
+        /** 延后启动队列的排空间隔（毫秒） */
+        public long getAdmissionDrainIntervalMillis() { return admissionDrainIntervalMillis; }
+        public void setAdmissionDrainIntervalMillis(long admissionDrainIntervalMillis) { this.admissionDrainIntervalMillis = admissionDrainIntervalMillis; }
+        
+        /** 异步步骤是否按实例优先级调度 */
+        public boolean isPrioritySchedulingEnabled() { return prioritySchedulingEnabled; }
+        public void setPrioritySchedulingEnabled(boolean prioritySchedulingEnabled) { this.prioritySchedulingEnabled = prioritySchedulingEnabled; }
+        
+        /** 优先级老化间隔（毫秒），排队每满一个间隔有效优先级提升1 */
+        public long getPriorityAgingMillis() { return priorityAgingMillis; }
+        public void setPriorityAgingMillis(long priorityAgingMillis) { this.priorityAgingMillis = priorityAgingMillis; }
+        
+        /** 事件总线容量，向上取整为2的幂 */
+        public int getEventBusCapacity() { return eventBusCapacity; }
+        public void setEventBusCapacity(int eventBusCapacity) { this.eventBusCapacity = eventBusCapacity; }
+        
+        /** 事件总线已满时的处理策略，默认丢弃以免阻塞步骤线程 */
+        public EngineEventBus.OverflowPolicy getEventOverflowPolicy() { return eventOverflowPolicy; }
+        public void setEventOverflowPolicy(EngineEventBus.OverflowPolicy eventOverflowPolicy) { this.eventOverflowPolicy = eventOverflowPolicy; }
+        
+        /** 订阅者单批处理的最多事件数量 */
+        public int getEventBatchSize() { return eventBatchSize; }
+        public void setEventBatchSize(int eventBatchSize) { this.eventBatchSize = eventBatchSize; }
+        
+        /** 是否通过事件总线输出步骤级的生命周期日志 */
+        public boolean isLifecycleLoggingEnabled() { return lifecycleLoggingEnabled; }
+        public void setLifecycleLoggingEnabled(boolean lifecycleLoggingEnabled) { this.lifecycleLoggingEnabled = lifecycleLoggingEnabled; }
+        
+        /** 集群模式下每个节点在哈希环上的虚拟节点数量 */
+        public int getClusterVirtualNodes() { return clusterVirtualNodes; }
+        public void setClusterVirtualNodes(int clusterVirtualNodes) { this.clusterVirtualNodes = clusterVirtualNodes; }
+        
+        /** 集群模式下重试移交暂不可移交实例的间隔（毫秒） */
+        public long getClusterRebalanceIntervalMillis() { return clusterRebalanceIntervalMillis; }
+        public void setClusterRebalanceIntervalMillis(long clusterRebalanceIntervalMillis) { this.clusterRebalanceIntervalMillis = clusterRebalanceIntervalMillis; }
+        
+        /** 步骤类型隔离池声明，未声明的类型使用异步线程池 */
+        public Map<StepType, StepBulkheads.PoolSpec> getBulkheads() { return bulkheads; }
+        public void setBulkhead(StepType stepType, StepBulkheads.PoolSpec spec) {
+            if (spec != null) {
+                bulkheads.put(stepType, spec);
+            } else {
+                bulkheads.remove(stepType);
+            }
+        }
+        
+        /**
+         * 默认隔离池：外部服务调用和邮件发送使用阻塞型线程池，脚本使用工作窃取池
+         */
+        private static Map<StepType, StepBulkheads.PoolSpec> defaultBulkheads() {
+            Map<StepType, StepBulkheads.PoolSpec> bulkheads = new EnumMap<>(StepType.class);
+            bulkheads.put(StepType.SERVICE_CALL, StepBulkheads.PoolSpec.blocking(32, 1000));
+            bulkheads.put(StepType.EMAIL, StepBulkheads.PoolSpec.blocking(8, 1000));
+            bulkheads.put(StepType.SCRIPT, StepBulkheads.PoolSpec.cpuBound(Runtime.getRuntime().availableProcessors(), 1000));
+            return bulkheads;
+        }
+        
         public int getSchedulerThreadPoolSize() { return schedulerThreadPoolSize; }
         public void setSchedulerThreadPoolSize(int schedulerThreadPoolSize) { this.schedulerThreadPoolSize = schedulerThreadPoolSize; }
         
@@ -1606,6 +2792,82 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
         public long getMaxRetryDelaySeconds() { return maxRetryDelaySeconds; }
         public void setMaxRetryDelaySeconds(long maxRetryDelaySeconds) { this.maxRetryDelaySeconds = maxRetryDelaySeconds; }
         
+        /** 重试延迟是否加入随机抖动 */
+        public boolean isRetryJitterEnabled() { return retryJitterEnabled; }
+        public void setRetryJitterEnabled(boolean retryJitterEnabled) { this.retryJitterEnabled = retryJitterEnabled; }
+        
+        /** 是否启用按实例串行的执行通道 */
+        public boolean isSerialExecutionEnabled() { return serialExecutionEnabled; }
+        public void setSerialExecutionEnabled(boolean serialExecutionEnabled) { this.serialExecutionEnabled = serialExecutionEnabled; }
+        
+        /** 执行通道数量，默认等于CPU核数 */
+        public int getExecutionLaneCount() { return executionLaneCount; }
+        public void setExecutionLaneCount(int executionLaneCount) { this.executionLaneCount = executionLaneCount; }
+        
+        /** 时间轮刻度（毫秒），即定时精度 */
+        public long getTimerTickMillis() { return timerTickMillis; }
+        public void setTimerTickMillis(long timerTickMillis) { this.timerTickMillis = timerTickMillis; }
+        
+        /** 每层时间轮的槽位数量 */
+        public int getTimerWheelSize() { return timerWheelSize; }
+        public void setTimerWheelSize(int timerWheelSize) { this.timerWheelSize = timerWheelSize; }
+        
+        /** 执行到期定时任务的线程数量 */
+        public int getTimerThreadPoolSize() { return timerThreadPoolSize; }
+        public void setTimerThreadPoolSize(int timerThreadPoolSize) { this.timerThreadPoolSize = timerThreadPoolSize; }
+        
+        /** 定时器持久化存储，为null时定时器只保存在内存中 */
+        public TimerStore getTimerStore() { return timerStore; }
+        public void setTimerStore(TimerStore timerStore) { this.timerStore = timerStore; }
+        
+        /** 变更日志与快照的数据目录，为null时不持久化引擎状态 */
+        public String getJournalDirectory() { return journalDirectory; }
+        public void setJournalDirectory(String journalDirectory) { this.journalDirectory = journalDirectory; }
+        
+        /** 日志段大小（MB） */
+        public int getJournalSegmentSizeMb() { return journalSegmentSizeMb; }
+        public void setJournalSegmentSizeMb(int journalSegmentSizeMb) { this.journalSegmentSizeMb = journalSegmentSizeMb; }
+        
+        /** 后台刷盘间隔（毫秒） */
+        public long getJournalSyncIntervalMillis() { return journalSyncIntervalMillis; }
+        public void setJournalSyncIntervalMillis(long journalSyncIntervalMillis) { this.journalSyncIntervalMillis = journalSyncIntervalMillis; }
+        
+        /** 日志持久化级别，默认组提交 */
+        public EngineStateStore.SyncMode getJournalSyncMode() { return journalSyncMode; }
+        public void setJournalSyncMode(EngineStateStore.SyncMode journalSyncMode) { this.journalSyncMode = journalSyncMode; }
+        
+        /** 快照间隔（分钟） */
+        public int getSnapshotIntervalMinutes() { return snapshotIntervalMinutes; }
+        public void setSnapshotIntervalMinutes(int snapshotIntervalMinutes) { this.snapshotIntervalMinutes = snapshotIntervalMinutes; }
+        
+        /** 快照编码格式，默认紧凑二进制；读取时按快照文件头自动选择 */
+        public InstanceCodec getSnapshotCodec() { return snapshotCodec; }
+        public void setSnapshotCodec(InstanceCodec snapshotCodec) { this.snapshotCodec = snapshotCodec; }
+        
+        /** 批量操作的最大并行度，默认等于CPU核数 */
+        public int getBatchParallelism() { return batchParallelism; }
+        public void setBatchParallelism(int batchParallelism) { this.batchParallelism = batchParallelism; }
+        
+        /** 批量操作的分块大小 */
+        public int getBatchChunkSize() { return batchChunkSize; }
+        public void setBatchChunkSize(int batchChunkSize) { this.batchChunkSize = batchChunkSize; }
+        
+        /** 过期队列的分桶宽度（秒） */
+        public long getExpiryBucketSeconds() { return expiryBucketSeconds; }
+        public void setExpiryBucketSeconds(long expiryBucketSeconds) { this.expiryBucketSeconds = expiryBucketSeconds; }
+        
+        /** 每批清理的最大实例数量 */
+        public int getCleanupBatchSize() { return cleanupBatchSize; }
+        public void setCleanupBatchSize(int cleanupBatchSize) { this.cleanupBatchSize = cleanupBatchSize; }
+        
+        /** 自定义ID生成器，为null时使用 {@link SnowflakeIdGenerator} */
+        public IdGenerator getIdGenerator() { return idGenerator; }
+        public void setIdGenerator(IdGenerator idGenerator) { this.idGenerator = idGenerator; }
+        
+        /** 节点ID（0 - 1023），集群部署时各节点必须不同；为负数时根据主机名和进程号推导 */
+        public int getNodeId() { return nodeId; }
+        public void setNodeId(int nodeId) { this.nodeId = nodeId; }
+        
         @Override
         public String toString() {
             return String.format("EngineConfiguration{asyncThreadPoolSize=%d, schedulerThreadPoolSize=%d, cleanupIntervalMinutes=%d, instanceRetentionDays=%d}", 
@@ -1615,32 +2877,102 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
     
     /**
      * 引擎统计信息
+     * 
+     * 计数器使用LongAdder分段累加，在高并发的状态转换下保持准确且无锁竞争；
+     * 执行耗时使用流式直方图记录，读取统计的开销与实例数量无关。
      */
     public static class EngineStatistics {
-        private volatile long startedInstances = 0;
-        private volatile long completedInstances = 0;
-        private volatile long failedInstances = 0;
-        private volatile long terminatedInstances = 0;
-        private volatile long cancelledInstances = 0;
-        
-        public void incrementStartedInstances() { startedInstances++; }
-        public void incrementCompletedInstances() { completedInstances++; }
-        public void incrementFailedInstances() { failedInstances++; }
-        public void incrementTerminatedInstances() { terminatedInstances++; }
-        public void incrementCancelledInstances() { cancelledInstances++; }
+        private final LongAdder startedInstances = new LongAdder();
+        private final LongAdder completedInstances = new LongAdder();
+        private final LongAdder failedInstances = new LongAdder();
+        private final LongAdder terminatedInstances = new LongAdder();
+        private final LongAdder cancelledInstances = new LongAdder();
+        private final LatencyHistogram executionTimeHistogram = new LatencyHistogram();
+        private final Map<String, WorkflowTypeCounters> workflowTypeCounters = new ConcurrentHashMap<>();
+        
+        public void incrementStartedInstances(String workflowId) {
+            startedInstances.increment();
+            typeCounters(workflowId).startedInstances.increment();
+        }
+        
+        public void incrementCompletedInstances(String workflowId, long executionTimeMillis) {
+            completedInstances.increment();
+            WorkflowTypeCounters counters = typeCounters(workflowId);
+            counters.completedInstances.increment();
+            if (executionTimeMillis >= 0) {
+                executionTimeHistogram.record(executionTimeMillis);
+                counters.executionTimeHistogram.record(executionTimeMillis);
+            }
+        }
+        
+        public void incrementFailedInstances(String workflowId) {
+            failedInstances.increment();
+            typeCounters(workflowId).failedInstances.increment();
+        }
+        
+        public void incrementTerminatedInstances(String workflowId) {
+            terminatedInstances.increment();
+            typeCounters(workflowId).terminatedInstances.increment();
+        }
+        
+        public void incrementCancelledInstances(String workflowId) {
+            cancelledInstances.increment();
+            typeCounters(workflowId).cancelledInstances.increment();
+        }
+        
+        private WorkflowTypeCounters typeCounters(String workflowId) {
+            return workflowTypeCounters.computeIfAbsent(workflowId, id -> new WorkflowTypeCounters());
+        }
         
         // Getters
-        public long getStartedInstances() { return startedInstances; }
-        public long getCompletedInstances() { return completedInstances; }
-        public long getFailedInstances() { return failedInstances; }
-        public long getTerminatedInstances() { return terminatedInstances; }
-        public long getCancelledInstances() { return cancelledInstances; }
-        public long getRunningInstances() { return startedInstances - completedInstances - failedInstances - terminatedInstances - cancelledInstances; }
+        public long getStartedInstances() { return startedInstances.sum(); }
+        public long getCompletedInstances() { return completedInstances.sum(); }
+        public long getFailedInstances() { return failedInstances.sum(); }
+        public long getTerminatedInstances() { return terminatedInstances.sum(); }
+        public long getCancelledInstances() { return cancelledInstances.sum(); }
+        public long getRunningInstances() { return getStartedInstances() - getCompletedInstances() - getFailedInstances() - getTerminatedInstances() - getCancelledInstances(); }
+        public LatencyHistogram getExecutionTimeHistogram() { return executionTimeHistogram; }
+        public Map<String, WorkflowTypeCounters> getWorkflowTypeCounters() { return Collections.unmodifiableMap(workflowTypeCounters); }
         
         @Override
         public String toString() {
             return String.format("EngineStatistics{started=%d, completed=%d, failed=%d, terminated=%d, cancelled=%d, running=%d}", 
-                               startedInstances, completedInstances, failedInstances, terminatedInstances, cancelledInstances, getRunningInstances());
+                               getStartedInstances(), getCompletedInstances(), getFailedInstances(), getTerminatedInstances(), getCancelledInstances(), getRunningInstances());
+        }
+        
+        /**
+         * 按工作流类型划分的计数器
+         */
+        public static class WorkflowTypeCounters {
+            private final LongAdder startedInstances = new LongAdder();
+            private final LongAdder completedInstances = new LongAdder();
+            private final LongAdder failedInstances = new LongAdder();
+            private final LongAdder terminatedInstances = new LongAdder();
+            private final LongAdder cancelledInstances = new LongAdder();
+            private final LatencyHistogram executionTimeHistogram = new LatencyHistogram();
+            
+            // Getters
+            public long getStartedInstances() { return startedInstances.sum(); }
+            public long getCompletedInstances() { return completedInstances.sum(); }
+            public long getFailedInstances() { return failedInstances.sum(); }
+            public long getTerminatedInstances() { return terminatedInstances.sum(); }
+            public long getCancelledInstances() { return cancelledInstances.sum(); }
+            public LatencyHistogram getExecutionTimeHistogram() { return executionTimeHistogram; }
+        }
+    }
+    
+    /**
+     * 等待中的步骤重试定时器
+     */
+    private static final class PendingRetry {
+        private final String stepId;
+        private final String timerId;
+        private final TimingWheelTimer.Timeout timeout;
+        
+        PendingRetry(String stepId, String timerId, TimingWheelTimer.Timeout timeout) {
+            this.stepId = stepId;
+            this.timerId = timerId;
+            this.timeout = timeout;
         }
     }
     
@@ -1683,6 +3015,311 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
         public String getStatus() { return status; }
     }
     
+    /**
+     * 批量导出工作流实例（NDJSON格式）
+     * 
+     * @param out 输出流（方法不会关闭该流）
+     * @param filter 过滤条件
+     * @return 导出的实例数量
+     * @throws WorkflowException 如果写出失败
+     * @see #exportInstances(OutputStream, InstanceExportFilter, InstanceCodec)
+     */
+    public long exportInstances(OutputStream out, InstanceExportFilter filter) throws WorkflowException {
+        return exportInstances(out, filter, JsonInstanceCodec.INSTANCE);
+    }
+    
+    /**
+     * 批量导出工作流实例
+     * 
+     * 按指定格式（每条记录一个实例，包含执行历史和用户任务）流式写出满足条件的实例。
+     * 逐个实例编码并写入输出流，不在内存中累积导出数据，内存占用与导出数量无关。
+     * 有工作流ID或状态条件时只遍历对应的索引项。
+     * 按多个状态遍历时，实例可能在遍历期间转换到另一个已遍历或待遍历的状态，
+     * 因此记录已写出的实例ID去重，每个实例最多导出一次。
+     * 
+     * @param out 输出流（方法不会关闭该流）
+     * @param filter 过滤条件
+     * @param codec 编解码器（{@link JsonInstanceCodec} 或 {@link BinaryInstanceCodec}）
+     * @return 导出的实例数量
+     * @throws WorkflowException 如果写出失败
+     */
+    public long exportInstances(OutputStream out, InstanceExportFilter filter, InstanceCodec codec) throws WorkflowException {
+        Objects.requireNonNull(out, "输出流不能为空");
+        Objects.requireNonNull(filter, "过滤条件不能为空");
+        Objects.requireNonNull(codec, "编解码器不能为空");
+        
+        // 选择最窄的候选来源，其余条件逐个实例判断
+        List<Collection<String>> sources = new ArrayList<>();
+        if (filter.getWorkflowId() != null) {
+            sources.add(instanceIndex.getByWorkflowId(filter.getWorkflowId()));
+        } else if (!filter.getStatuses().isEmpty()) {
+            for (InstanceStatus status : filter.getStatuses()) {
+                sources.add(instanceIndex.getByStatus(status));
+            }
+        } else {
+            sources.add(instanceStorage.keySet());
+        }
+        
+        // 只有一个候选来源时实例ID不会重复，无需记录
+        Set<String> exported = sources.size() > 1 ? new HashSet<>() : null;
+        long count = 0;
+        try (InstanceCodec.RecordWriter writer = codec.newWriter(out)) {
+            for (Collection<String> source : sources) {
+                for (String instanceId : source) {
+                    WorkflowInstance instance = instanceStorage.get(instanceId);
+                    if (instance == null || !filter.matches(instance)) {
+                        continue;
+                    }
+                    if (exported != null && !exported.add(instanceId)) {
+                        continue;
+                    }
+                    writer.write(new InstanceRecord(instance,
+                        copyOf(executionHistory.get(instanceId)), copyOf(userTaskStorage.get(instanceId))));
+                    count++;
+                }
+            }
+        } catch (IOException e) {
+            throw new WorkflowException("批量导出工作流实例失败: " + e.getMessage(), e,
+                                      WorkflowException.WorkflowErrorType.SYSTEM_ERROR);
+        }
+        
+        logger.info("批量导出工作流实例完成: {} 个", count);
+        return count;
+    }
+    
+    /**
+     * 批量导入工作流实例（NDJSON格式）
+     * 
+     * @param in 输入流（方法不会关闭该流）
+     * @param userId 操作用户ID
+     * @return 导入的实例数量
+     * @throws WorkflowException 如果读取或解析失败（之前已导入的实例保留）
+     * @see #importInstances(InputStream, String, InstanceCodec)
+     */
+    public long importInstances(InputStream in, String userId) throws WorkflowException {
+        return importInstances(in, userId, JsonInstanceCodec.INSTANCE);
+    }
+    
+    /**
+     * 批量导入工作流实例
+     * 
+     * 从 {@link #exportInstances(OutputStream, InstanceExportFilter, InstanceCodec)} 写出的流中逐条读取并恢复实例，
+     * 任意时刻只持有当前一条记录。原实例ID未被占用时保留原ID，否则生成新ID；
+     * 工作流定义未注册的记录会被跳过。
+     * 
+     * @param in 输入流（方法不会关闭该流）
+     * @param userId 操作用户ID
+     * @param codec 导出时使用的编解码器
+     * @return 导入的实例数量
+     * @throws WorkflowException 如果读取或解析失败（之前已导入的实例保留）
+     */
+    public long importInstances(InputStream in, String userId, InstanceCodec codec) throws WorkflowException {
+        Objects.requireNonNull(in, "输入流不能为空");
+        Objects.requireNonNull(userId, "用户ID不能为空");
+        Objects.requireNonNull(codec, "编解码器不能为空");
+        
+        long imported = 0;
+        long skipped = 0;
+        try (InstanceCodec.RecordReader reader = codec.newReader(in)) {
+            InstanceRecord record;
+            while ((record = reader.read()) != null) {
+                if (!workflowStorage.containsKey(record.getInstance().getWorkflowId())) {
+                    skipped++;
+                    logger.warn("跳过导入记录，工作流定义不存在: {} (实例: {})", 
+                               record.getInstance().getWorkflowId(), record.getInstance().getId());
+                    continue;
+                }
+                restoreInstance(record);
+                imported++;
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new WorkflowException("批量导入工作流实例失败（已导入 " + imported + " 个）: " + e.getMessage(), e,
+                                      WorkflowException.WorkflowErrorType.DATA_ERROR);
+        }
+        
+        logger.info("批量导入工作流实例完成: 导入 {} 个，跳过 {} 个，操作用户: {}", imported, skipped, userId);
+        return imported;
+    }
+    
+    /**
+     * 恢复一条导入记录，同步写入索引和变更日志
+     */
+    private WorkflowInstance restoreInstance(InstanceRecord record) {
+        WorkflowInstance instance = record.getInstance();
+        if (instance.getId() == null || instanceStorage.containsKey(instance.getId())) {
+            instance = WorkflowInstance.builder(instance).id(generateInstanceId()).build();
+        }
+        String instanceId = instance.getId();
+        
+        storeInstance(instance);
+        
+        List<StepExecutionResult> history = new ArrayList<>(record.getHistory());
+        executionHistory.put(instanceId, history);
+        if (stateStore != null) {
+            for (int i = 0; i < history.size(); i++) {
+                stateStore.logStepResult(instanceId, i, history.get(i));
+            }
+        }
+        
+        List<UserTask> userTasks = new ArrayList<>(record.getUserTasks().size());
+        for (UserTask task : record.getUserTasks()) {
+            userTasks.add(instanceId.equals(task.getInstanceId()) ? task : new UserTask(
+                task.getId(), instanceId, task.getStepId(), task.getName(), task.getDescription(),
+                task.getData(), task.getCreateTime(), task.getCompleteTime(), task.getStatus()));
+        }
+        if (!userTasks.isEmpty()) {
+            userTaskStorage.put(instanceId, userTasks);
+            for (UserTask task : userTasks) {
+                if (stateStore != null) {
+                    stateStore.logUserTask(task);
+                }
+                indexUserTask(task);
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * 恢复一条移交记录，等待重试退避时被移交的实例在本引擎重新调度重试
+     */
+    private void reattachInstance(InstanceRecord record) {
+        WorkflowInstance instance = restoreInstance(record);
+        if (instance.getStatus() == InstanceStatus.RUNNING) {
+            resumeRetry(instance, record.getHistory());
+        }
+    }
+    
+    /**
+     * 分离实例（集群分区移交）
+     * 
+     * 将选中的实例连同执行历史和用户任务按指定格式写出，并从本引擎移除，
+     * 接收方通过 {@link #importInstances(InputStream, String, InstanceCodec)} 接管。
+     * 以下实例暂不分离，调用方应稍后再次移交：
+     * 1. 正在执行步骤（RUNNING）或尚在延后启动队列中（CREATED）的实例
+     * 2. 等待本地定时器的TIMER步骤实例
+     * 
+     * 等待重试退避的RUNNING实例会取消本地的重试定时器后分离，接收方接管后重新调度重试。
+     * 
+     * 串行执行模式下每个实例在其执行通道内检查并移除，不会与该实例的其它事件交错。
+     * 
+     * @param selector 实例ID选择条件
+     * @param out 输出流（方法不会关闭该流）
+     * @param codec 编解码器
+     * @return 分离的实例数量
+     * @throws WorkflowException 如果写出失败（写出失败的实例保留在本引擎中）
+     */
+    public long detachInstances(Predicate<String> selector, OutputStream out, InstanceCodec codec) throws WorkflowException {
+        Objects.requireNonNull(selector, "选择条件不能为空");
+        Objects.requireNonNull(out, "输出流不能为空");
+        Objects.requireNonNull(codec, "编解码器不能为空");
+        
+        long detached = 0;
+        try (InstanceCodec.RecordWriter writer = codec.newWriter(out)) {
+            for (String instanceId : new ArrayList<>(instanceStorage.keySet())) {
+                if (!selector.test(instanceId)) {
+                    continue;
+                }
+                InstanceRecord record = executionLanes != null
+                    ? executionLanes.call(instanceId, () -> detachInstance(instanceId))
+                    : detachInstance(instanceId);
+                if (record == null) {
+                    continue;
+                }
+                try {
+                    writer.write(record);
+                } catch (IOException e) {
+                    reattachInstance(record);
+                    throw e;
+                }
+                detached++;
+            }
+        } catch (IOException e) {
+            throw new WorkflowException("分离工作流实例失败（已分离 " + detached + " 个）: " + e.getMessage(), e,
+                                      WorkflowException.WorkflowErrorType.SYSTEM_ERROR);
+        }
+        return detached;
+    }
+    
+    /**
+     * 接管分离的实例（集群分区移交）
+     * 
+     * 读取 {@link #detachInstances(Predicate, OutputStream, InstanceCodec)} 写出的全部记录，
+     * 确认所有实例的工作流定义都已注册后再逐个恢复，保留原实例ID。
+     * 任一记录的工作流定义缺失时不恢复任何实例，由移交方保留这批实例。
+     * 
+     * @param in 输入流（方法不会关闭该流）
+     * @param codec 编解码器
+     * @return 接管的实例数量
+     * @throws WorkflowException 如果读取失败或工作流定义缺失
+     */
+    public long attachInstances(InputStream in, InstanceCodec codec) throws WorkflowException {
+        Objects.requireNonNull(in, "输入流不能为空");
+        Objects.requireNonNull(codec, "编解码器不能为空");
+        
+        List<InstanceRecord> records = new ArrayList<>();
+        try (InstanceCodec.RecordReader reader = codec.newReader(in)) {
+            InstanceRecord record;
+            while ((record = reader.read()) != null) {
+                if (!workflowStorage.containsKey(record.getInstance().getWorkflowId())) {
+                    throw new WorkflowException("工作流定义不存在: " + record.getInstance().getWorkflowId()
+                                              + " (实例: " + record.getInstance().getId() + ")",
+                                              WorkflowException.WorkflowErrorType.CONFIGURATION_ERROR);
+                }
+                records.add(record);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new WorkflowException("接管工作流实例失败: " + e.getMessage(), e,
+                                      WorkflowException.WorkflowErrorType.DATA_ERROR);
+        }
+        
+        for (InstanceRecord record : records) {
+            reattachInstance(record);
+        }
+        return records.size();
+    }
+    
+    /**
+     * 移除单个可分离的实例
+     * 
+     * @return 实例记录，实例不存在或暂不可分离时返回null
+     */
+    private InstanceRecord detachInstance(String instanceId) {
+        WorkflowInstance instance = instanceStorage.get(instanceId);
+        if (instance == null || instance.getStatus() == InstanceStatus.CREATED) {
+            return null;
+        }
+        // RUNNING实例只有在等待重试退避、且重试定时器在到期前被取消时才可以分离
+        if (instance.getStatus() == InstanceStatus.RUNNING && !cancelPendingRetry(instance)) {
+            return null;
+        }
+        if (instance.getStatus() == InstanceStatus.WAITING) {
+            WorkflowExecutionPlan plan = planStorage.get(instance.getWorkflowId());
+            WorkflowStep step = plan != null ? plan.getStep(instance.getCurrentStepId()) : null;
+            if (step != null && step.getType() == StepType.TIMER) {
+                return null;
+            }
+        }
+        
+        InstanceRecord record = new InstanceRecord(instance,
+            copyOf(executionHistory.get(instanceId)), copyOf(userTaskStorage.get(instanceId)));
+        removeInstance(instanceId);
+        executionHistory.remove(instanceId);
+        taskInbox.removeAll(userTaskStorage.remove(instanceId));
+        return record;
+    }
+    
+    /**
+     * 在列表自身的锁内复制（执行历史和用户任务列表以自身为锁）
+     */
+    private static <T> List<T> copyOf(List<T> list) {
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        synchronized (list) {
+            return new ArrayList<>(list);
+        }
+    }
+    
     /**
      * 导出工作流实例数据
      * 
@@ -1872,7 +3509,7 @@ public class DefaultWorkflowEngine implements WorkflowEngine {
             WorkflowInstance instance = builder.build();
             
             // 保存实例
-            instanceStorage.put(newInstanceId, instance);
+            storeInstance(instance);
             
             // 重建执行历史
             List<Map<String, Object>> historyData = (List<Map<String, Object>>) exportData.get("executionHistory");
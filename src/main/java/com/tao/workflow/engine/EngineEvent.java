@@ -0,0 +1,123 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.InstanceStatus;
+
+/**
+ * 引擎生命周期事件
+ *
+ * 由引擎在实例和步骤的生命周期节点发布到 {@link EngineEventBus}，
+ * 事件对象不可变，可以安全地在多个订阅者之间共享。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public final class EngineEvent {
+
+    /**
+     * 事件类型
+     */
+    public enum Type {
+        /** 实例已创建 */
+        INSTANCE_CREATED,
+        /** 实例状态已变更 */
+        INSTANCE_STATUS_CHANGED,
+        /** 步骤开始执行 */
+        STEP_STARTED,
+        /** 步骤执行结束（包括成功、失败、等待、重试、超时、跳过） */
+        STEP_FINISHED
+    }
+
+    private final Type type;
+    private final String instanceId;
+    private final String workflowId;
+    private final String stepId;
+    private final InstanceStatus previousStatus;
+    private final InstanceStatus status;
+    private final StepExecutionResult result;
+    private final String message;
+    private final long timestamp;
+
+    private EngineEvent(Type type, String instanceId, String workflowId, String stepId,
+                        InstanceStatus previousStatus, InstanceStatus status,
+                        StepExecutionResult result, String message) {
+        this.type = type;
+        this.instanceId = instanceId;
+        this.workflowId = workflowId;
+        this.stepId = stepId;
+        this.previousStatus = previousStatus;
+        this.status = status;
+        this.result = result;
+        this.message = message;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * 实例已创建
+     */
+    public static EngineEvent instanceCreated(String instanceId, String workflowId, String userId) {
+        return new EngineEvent(Type.INSTANCE_CREATED, instanceId, workflowId, null,
+                               null, InstanceStatus.CREATED, null, userId);
+    }
+
+    /**
+     * 实例状态已变更
+     */
+    public static EngineEvent statusChanged(String instanceId, String workflowId, InstanceStatus previousStatus,
+                                            InstanceStatus status, String message) {
+        return new EngineEvent(Type.INSTANCE_STATUS_CHANGED, instanceId, workflowId, null,
+                               previousStatus, status, null, message);
+    }
+
+    /**
+     * 步骤开始执行
+     */
+    public static EngineEvent stepStarted(String instanceId, String workflowId, String stepId, String userId) {
+        return new EngineEvent(Type.STEP_STARTED, instanceId, workflowId, stepId, null, null, null, userId);
+    }
+
+    /**
+     * 步骤执行结束
+     */
+    public static EngineEvent stepFinished(String instanceId, String workflowId, String stepId,
+                                           StepExecutionResult result) {
+        return new EngineEvent(Type.STEP_FINISHED, instanceId, workflowId, stepId, null, null, result, null);
+    }
+
+    public Type getType() { return type; }
+
+    public String getInstanceId() { return instanceId; }
+
+    public String getWorkflowId() { return workflowId; }
+
+    /** 步骤ID，实例级事件为null */
+    public String getStepId() { return stepId; }
+
+    /** 变更前的状态，仅 INSTANCE_STATUS_CHANGED 事件有值 */
+    public InstanceStatus getPreviousStatus() { return previousStatus; }
+
+    /** 实例状态，仅实例级事件有值 */
+    public InstanceStatus getStatus() { return status; }
+
+    /** 步骤执行结果，仅 STEP_FINISHED 事件有值 */
+    public StepExecutionResult getResult() { return result; }
+
+    /** 附加信息：状态变更原因或操作用户 */
+    public String getMessage() { return message; }
+
+    /** 事件发生时间（毫秒） */
+    public long getTimestamp() { return timestamp; }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case INSTANCE_STATUS_CHANGED:
+                return String.format("EngineEvent{type=%s, instanceId='%s', %s -> %s}",
+                                     type, instanceId, previousStatus, status);
+            case STEP_FINISHED:
+                return String.format("EngineEvent{type=%s, instanceId='%s', stepId='%s', status=%s}",
+                                     type, instanceId, stepId, result != null ? result.getStatus() : null);
+            default:
+                return String.format("EngineEvent{type=%s, instanceId='%s', stepId='%s'}", type, instanceId, stepId);
+        }
+    }
+}
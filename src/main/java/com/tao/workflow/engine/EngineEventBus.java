@@ -0,0 +1,377 @@
+package com.tao.workflow.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 引擎事件总线（无锁环形缓冲区）
+ *
+ * 引擎在步骤线程上只把生命周期事件写入环形缓冲区，持久化、指标、审计等订阅者
+ * 在各自的线程上批量消费，订阅者的耗时不会叠加到步骤调度的热路径上。
+ *
+ * 实现说明：
+ * 1. 发布者通过CAS竞争下一个序号，写入槽位后把序号写入槽位的发布标记，全程无锁
+ * 2. 每个订阅者持有自己的消费序号，按序读取已发布的连续区间，一次交给订阅者处理一批
+ * 3. 缓冲区容量为2的幂，槽位下标由位运算得到；发布者不会越过最慢订阅者一整圈
+ * 4. 订阅者空闲时先自旋再休眠，发布者发现订阅者休眠时将其唤醒
+ *
+ * 缓冲区满（最慢的订阅者落后一整圈）时按溢出策略处理：
+ * 丢弃事件并计数，或者等待订阅者腾出空间。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class EngineEventBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(EngineEventBus.class);
+
+    /** 订阅者空闲时的自旋次数 */
+    private static final int SPIN_TRIES = 100;
+
+    /** 订阅者单次休眠的最长时间，防止错过唤醒 */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * 缓冲区满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /** 丢弃事件，不阻塞发布者 */
+        DROP,
+        /** 等待最慢的订阅者腾出空间 */
+        BLOCK
+    }
+
+    /**
+     * 事件订阅者
+     */
+    @FunctionalInterface
+    public interface Subscriber {
+
+        /**
+         * 处理一批事件
+         *
+         * 在订阅者自己的线程上调用，批内事件按发布顺序排列。
+         * 列表在调用返回后会被复用，订阅者不应持有其引用。
+         *
+         * @param events 事件列表
+         * @throws Exception 处理失败，异常被记录后继续处理后续事件
+         */
+        void onEvents(List<EngineEvent> events) throws Exception;
+    }
+
+    private final Object[] slots;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+
+    /** 槽位 -> 已发布的序号 */
+    private final AtomicLongArray published;
+
+    /** 已分配的最大序号 */
+    private final AtomicLong cursor = new AtomicLong(-1);
+
+    /** 最慢订阅者序号的缓存，减少发布时扫描订阅者的次数 */
+    private volatile long gatingCache = -1;
+
+    /** 当前订阅（写时复制） */
+    private volatile Subscription[] subscriptions = new Subscription[0];
+
+    private volatile boolean closed;
+
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+
+    /**
+     * 构造函数
+     *
+     * @param capacity 缓冲区容量，向上取整为2的幂
+     * @param overflowPolicy 缓冲区满时的处理策略
+     */
+    public EngineEventBus(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("事件总线容量必须在1到2^30之间");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new Object[size];
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy, "溢出策略不能为空");
+    }
+
+    /**
+     * 发布事件
+     *
+     * 没有订阅者时直接返回。
+     *
+     * @param event 事件
+     * @return 事件进入缓冲区返回true，被丢弃返回false
+     */
+    public boolean publish(EngineEvent event) {
+        Subscription[] current = subscriptions;
+        if (current.length == 0 || closed) {
+            return false;
+        }
+
+        long sequence;
+        while (true) {
+            long claimed = cursor.get();
+            long next = claimed + 1;
+            long wrapPoint = next - slots.length;
+            if (wrapPoint > gatingCache) {
+                long minSequence = minSequence(current, claimed);
+                gatingCache = minSequence;
+                if (wrapPoint > minSequence) {
+                    if (overflowPolicy == OverflowPolicy.DROP || closed) {
+                        droppedCount.increment();
+                        return false;
+                    }
+                    LockSupport.parkNanos(1000);
+                    current = subscriptions;
+                    continue;
+                }
+            }
+            if (cursor.compareAndSet(claimed, next)) {
+                sequence = next;
+                break;
+            }
+        }
+
+        int index = (int) sequence & mask;
+        slots[index] = event;
+        published.set(index, sequence);
+        publishedCount.increment();
+
+        for (Subscription subscription : current) {
+            if (subscription.sleeping) {
+                LockSupport.unpark(subscription.thread);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 注册订阅者
+     *
+     * 订阅者从注册之后发布的事件开始消费，每个订阅者使用独立的线程。
+     *
+     * @param name 订阅者名称，用于线程名和日志
+     * @param subscriber 订阅者
+     * @param maxBatchSize 单批最多事件数量
+     * @return 订阅句柄
+     */
+    public synchronized Subscription subscribe(String name, Subscriber subscriber, int maxBatchSize) {
+        Objects.requireNonNull(name, "订阅者名称不能为空");
+        Objects.requireNonNull(subscriber, "订阅者不能为空");
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("批量大小必须大于0");
+        }
+        if (closed) {
+            throw new IllegalStateException("事件总线已关闭");
+        }
+
+        Subscription subscription = new Subscription(name, subscriber, maxBatchSize, cursor.get());
+        Subscription[] updated = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+        updated[updated.length - 1] = subscription;
+        subscriptions = updated;
+        subscription.thread.start();
+        return subscription;
+    }
+
+    /**
+     * 关闭事件总线
+     *
+     * 停止接收新事件，等待订阅者处理完已发布的事件后停止订阅线程。
+     *
+     * @param timeout 等待时间
+     * @param unit 时间单位
+     */
+    public void close(long timeout, TimeUnit unit) {
+        Subscription[] current;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            current = subscriptions;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Subscription subscription : current) {
+            subscription.stop(deadline);
+        }
+    }
+
+    /** 已发布的事件数量 */
+    public long getPublishedCount() { return publishedCount.sum(); }
+
+    /** 因缓冲区满被丢弃的事件数量 */
+    public long getDroppedCount() { return droppedCount.sum(); }
+
+    /** 缓冲区容量 */
+    public int getCapacity() { return slots.length; }
+
+    /**
+     * 获取当前订阅
+     * @return 订阅列表
+     */
+    public List<Subscription> getSubscriptions() {
+        return Collections.unmodifiableList(Arrays.asList(subscriptions));
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        List<Subscription> remaining = new ArrayList<>(Arrays.asList(subscriptions));
+        if (remaining.remove(subscription)) {
+            subscriptions = remaining.toArray(new Subscription[0]);
+            gatingCache = -1;
+        }
+    }
+
+    private static long minSequence(Subscription[] current, long defaultValue) {
+        long min = defaultValue;
+        for (Subscription subscription : current) {
+            min = Math.min(min, subscription.sequence);
+        }
+        return min;
+    }
+
+    /**
+     * 订阅句柄
+     */
+    public final class Subscription {
+        private final String name;
+        private final Subscriber subscriber;
+        private final int maxBatchSize;
+        private final Thread thread;
+        private final List<EngineEvent> batch;
+
+        /** 已处理的最大序号 */
+        private volatile long sequence;
+        private volatile boolean sleeping;
+        private volatile boolean running = true;
+
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        private Subscription(String name, Subscriber subscriber, int maxBatchSize, long startSequence) {
+            this.name = name;
+            this.subscriber = subscriber;
+            this.maxBatchSize = maxBatchSize;
+            this.sequence = startSequence;
+            this.batch = new ArrayList<>(Math.min(maxBatchSize, slots.length));
+            this.thread = new Thread(this::consume, "workflow-event-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        public String getName() { return name; }
+
+        /** 已处理的事件数量 */
+        public long getProcessedCount() { return processed.sum(); }
+
+        /** 处理失败的批次数量 */
+        public long getFailureCount() { return failures.sum(); }
+
+        /** 尚未处理的事件数量 */
+        public long getLag() { return Math.max(0, cursor.get() - sequence); }
+
+        /**
+         * 取消订阅，已取出的批次处理完后停止
+         */
+        public void cancel() {
+            running = false;
+            LockSupport.unpark(thread);
+            unsubscribe(this);
+        }
+
+        private void consume() {
+            int idle = 0;
+            while (running) {
+                if (drainBatch()) {
+                    idle = 0;
+                    continue;
+                }
+                if (closed) {
+                    break;
+                }
+                if (idle < SPIN_TRIES) {
+                    idle++;
+                    Thread.onSpinWait();
+                    continue;
+                }
+                sleeping = true;
+                // 设置休眠标记后再检查一次，避免与发布者的唤醒错过
+                if (!isAvailable(sequence + 1)) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                sleeping = false;
+            }
+        }
+
+        /**
+         * 处理一批连续发布的事件
+         *
+         * @return 处理了事件返回true
+         */
+        private boolean drainBatch() {
+            long next = sequence + 1;
+            long last = next - 1;
+            while (last - next + 1 < maxBatchSize && isAvailable(last + 1)) {
+                last++;
+                batch.add((EngineEvent) slots[(int) last & mask]);
+            }
+            if (batch.isEmpty()) {
+                return false;
+            }
+            try {
+                subscriber.onEvents(batch);
+            } catch (Throwable e) {
+                failures.increment();
+                logger.error("事件订阅者处理失败: {} ({} 个事件)", name, batch.size(), e);
+            }
+            processed.add(batch.size());
+            batch.clear();
+            sequence = last;
+            return true;
+        }
+
+        private boolean isAvailable(long seq) {
+            return published.get((int) seq & mask) == seq;
+        }
+
+        private void stop(long deadlineNanos) {
+            LockSupport.unpark(thread);
+            try {
+                long remaining = deadlineNanos - System.nanoTime();
+                if (remaining > 0) {
+                    thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (thread.isAlive()) {
+                running = false;
+                logger.warn("事件订阅者未能在关闭时处理完全部事件: {} (剩余: {})", name, getLag());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Subscription{name='%s', processed=%d, lag=%d, failures=%d}",
+                                 name, getProcessedCount(), getLag(), getFailureCount());
+        }
+    }
+}
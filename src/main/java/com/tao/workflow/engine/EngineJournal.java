@@ -0,0 +1,408 @@
+package com.tao.workflow.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 引擎追加日志
+ *
+ * 基于内存映射文件的追加日志，由 {@link EngineStateStore} 在内存变更之后写入（写后日志）。写入只是一次内存拷贝，
+ * 刷盘由后台线程批量完成（组提交）：等待持久化的写入方注册后唤醒刷盘线程，
+ * 一次force覆盖期间到达的全部写入，吞吐接近纯内存写入。
+ *
+ * 文件格式：
+ * 1. 日志按段存储为 journal-{段号}.log，段写满后滚动到下一段
+ * 2. 每条记录为 [载荷长度 int][CRC32 int][记录类型 byte][载荷]
+ * 3. 映射文件未写入的部分为0，读到长度0或校验失败即视为日志末尾（丢弃撕裂写入）
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class EngineJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EngineJournal.class);
+
+    /** 记录头长度：长度 + 校验 + 类型 */
+    private static final int HEADER_SIZE = 9;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * 记录处理器
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        /**
+         * 处理一条日志记录
+         * @param type 记录类型
+         * @param payload 载荷
+         * @throws IOException 如果载荷解析失败
+         */
+        void handle(byte type, byte[] payload) throws IOException;
+    }
+
+    /** 日志目录 */
+    private final Path directory;
+
+    /** 段大小（字节） */
+    private final int segmentSize;
+
+    /** 刷盘间隔（毫秒） */
+    private final long syncIntervalMillis;
+
+    /** 当前段号 */
+    private long segmentIndex;
+
+    /** 当前段文件通道 */
+    private FileChannel channel;
+
+    /** 当前段映射缓冲区 */
+    private MappedByteBuffer buffer;
+
+    /** 已写入位置（段号 << 32 | 段内偏移），受this锁保护 */
+    private long writtenPosition;
+
+    /** 已持久化位置，受syncLock保护 */
+    private long durablePosition;
+
+    /** 是否有写入方在等待持久化，受syncLock保护 */
+    private boolean syncRequested;
+
+    /** 组提交锁 */
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    /** 刷盘线程等待刷盘请求 */
+    private final Condition syncRequestedCondition = syncLock.newCondition();
+
+    /** 写入方等待刷盘完成 */
+    private final Condition durableCondition = syncLock.newCondition();
+
+    /** 刷盘线程 */
+    private final Thread flusher;
+
+    /** 运行状态 */
+    private volatile boolean running = true;
+
+    /**
+     * 构造函数
+     *
+     * 打开日志目录，在最后一个段的有效末尾之后继续追加。
+     *
+     * @param directory 日志目录
+     * @param segmentSize 段大小（字节）
+     * @param syncIntervalMillis 后台刷盘间隔（毫秒）
+     * @throws IOException 如果日志文件无法打开
+     */
+    public EngineJournal(Path directory, int segmentSize, long syncIntervalMillis) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("日志段大小过小: " + segmentSize);
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncIntervalMillis = Math.max(1, syncIntervalMillis);
+        Files.createDirectories(directory);
+
+        List<Long> segments = listSegments();
+        long lastSegment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        openSegment(lastSegment, 0);
+        buffer.position(scanEnd(buffer));
+        this.writtenPosition = position();
+        this.durablePosition = writtenPosition;
+
+        this.flusher = new Thread(this::runFlusher, "workflow-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param type 记录类型
+     * @param payload 载荷
+     * @return 记录结束位置，可传给 {@link #sync(long)} 等待持久化
+     * @throws IOException 如果段滚动失败
+     */
+    public synchronized long append(byte type, byte[] payload) throws IOException {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (buffer.remaining() < recordSize) {
+            rollSegment(recordSize);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+
+        buffer.putInt(payload.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(type);
+        buffer.put(payload);
+
+        writtenPosition = position();
+        return writtenPosition;
+    }
+
+    /**
+     * 等待指定位置之前的记录持久化（组提交）
+     *
+     * @param position 记录结束位置
+     * @throws IOException 如果等待被中断
+     */
+    public void sync(long position) throws IOException {
+        syncLock.lock();
+        try {
+            while (durablePosition < position) {
+                if (!running) {
+                    throw new IOException("日志已关闭");
+                }
+                if (!syncRequested) {
+                    syncRequested = true;
+                    syncRequestedCondition.signal();
+                }
+                durableCondition.await(syncIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待日志持久化被中断", e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * 滚动到新段
+     *
+     * 快照开始前调用，返回的段号及之后的段包含快照之后需要重放的全部记录。
+     *
+     * @return 新段号
+     * @throws IOException 如果滚动失败
+     */
+    public synchronized long roll() throws IOException {
+        rollSegment(0);
+        return segmentIndex;
+    }
+
+    /**
+     * 从指定段开始按顺序重放记录
+     *
+     * @param fromSegment 起始段号
+     * @param handler 记录处理器
+     * @return 重放的记录数量
+     * @throws IOException 如果读取失败
+     */
+    public long replay(long fromSegment, RecordHandler handler) throws IOException {
+        long count = 0;
+        for (long segment : listSegments()) {
+            if (segment < fromSegment) {
+                continue;
+            }
+            try (FileChannel readChannel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+                MappedByteBuffer view = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+                int end = scanEnd(view);
+                view.position(0);
+                while (view.position() < end) {
+                    int length = view.getInt();
+                    view.getInt();
+                    byte type = view.get();
+                    byte[] payload = new byte[length];
+                    view.get(payload);
+                    handler.handle(type, payload);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 删除指定段之前的全部段（快照完成后调用）
+     *
+     * @param segment 保留的最小段号
+     */
+    public void deleteSegmentsBefore(long segment) {
+        try {
+            for (long existing : listSegments()) {
+                if (existing < segment) {
+                    Files.deleteIfExists(segmentPath(existing));
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("删除旧日志段失败", e);
+        }
+    }
+
+    /**
+     * 获取日志目录
+     * @return 日志目录
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 关闭日志，关闭前刷盘
+     */
+    @Override
+    public void close() {
+        running = false;
+        flusher.interrupt();
+        synchronized (this) {
+            try {
+                buffer.force();
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("关闭日志失败", e);
+            }
+        }
+        advanceDurable(Long.MIN_VALUE);
+    }
+
+    /**
+     * 刷盘线程主循环
+     */
+    private void runFlusher() {
+        while (running) {
+            try {
+                syncLock.lock();
+                try {
+                    if (!syncRequested) {
+                        syncRequestedCondition.await(syncIntervalMillis, TimeUnit.MILLISECONDS);
+                    }
+                    syncRequested = false;
+                } finally {
+                    syncLock.unlock();
+                }
+                flush();
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } catch (Exception e) {
+                logger.error("日志刷盘失败", e);
+            }
+        }
+    }
+
+    /**
+     * 刷盘并推进持久化位置
+     */
+    private void flush() {
+        MappedByteBuffer target;
+        long targetPosition;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            target = buffer;
+            targetPosition = writtenPosition;
+        }
+        syncLock.lock();
+        try {
+            if (durablePosition >= targetPosition) {
+                return;
+            }
+        } finally {
+            syncLock.unlock();
+        }
+
+        // force在锁外执行，刷盘期间写入方可以继续追加
+        target.force();
+        advanceDurable(targetPosition);
+    }
+
+    /**
+     * 推进持久化位置并唤醒等待的写入方
+     */
+    private void advanceDurable(long position) {
+        syncLock.lock();
+        try {
+            if (position > durablePosition) {
+                durablePosition = position;
+            }
+            durableCondition.signalAll();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void rollSegment(int minimumSize) throws IOException {
+        buffer.force();
+        channel.close();
+        openSegment(segmentIndex + 1, minimumSize);
+        writtenPosition = position();
+
+        // 旧段已同步刷盘
+        advanceDurable((segmentIndex << 32) - 1);
+    }
+
+    private void openSegment(long index, int minimumSize) throws IOException {
+        Path path = segmentPath(index);
+        long size = Math.max(segmentSize, minimumSize);
+        if (Files.exists(path)) {
+            size = Math.max(size, Files.size(path));
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.segmentIndex = index;
+    }
+
+    /**
+     * 扫描段中有效记录的末尾
+     */
+    private static int scanEnd(MappedByteBuffer view) {
+        int offset = 0;
+        int limit = view.limit();
+        while (offset + HEADER_SIZE <= limit) {
+            int length = view.getInt(offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > limit) {
+                break;
+            }
+            ByteBuffer payload = view.duplicate();
+            payload.limit(offset + HEADER_SIZE + length).position(offset + HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(view.get(offset + 8));
+            crc.update(payload);
+            if ((int) crc.getValue() != view.getInt(offset + 4)) {
+                logger.warn("日志记录校验失败，截断于偏移 {}", offset);
+                break;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private long position() {
+        return (segmentIndex << 32) | buffer.position();
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                .sorted()
+                .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+}
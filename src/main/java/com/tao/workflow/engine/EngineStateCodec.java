@@ -0,0 +1,330 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.InstanceStatus;
+import com.tao.workflow.model.WorkflowInstance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 引擎状态编解码器
+ *
+ * 将实例、执行结果和用户任务编码为紧凑的二进制载荷，供变更日志和快照使用。
+ * 上下文等动态值按类型标记编码，无法识别的类型按字符串保存。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+final class EngineStateCodec {
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+    private static final byte TYPE_MAP = 6;
+    private static final byte TYPE_LIST = 7;
+    private static final byte TYPE_DATE_TIME = 8;
+
+    private EngineStateCodec() {
+    }
+
+    /**
+     * 载荷写入器
+     */
+    @FunctionalInterface
+    interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * 编码载荷
+     */
+    static byte[] encode(PayloadWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 打开载荷读取流
+     */
+    static DataInputStream decode(byte[] payload) {
+        return new DataInputStream(new ByteArrayInputStream(payload));
+    }
+
+    // ==================== 实例 ====================
+
+    static void writeInstance(DataOutputStream out, WorkflowInstance instance) throws IOException {
+        writeString(out, instance.getId());
+        writeString(out, instance.getWorkflowId());
+        writeString(out, instance.getName());
+        writeString(out, instance.getStatus().name());
+        writeString(out, instance.getCurrentStepId());
+        out.writeInt(instance.getCurrentStepOrder());
+        writeMap(out, instance.getContext());
+        writeMap(out, instance.getConfig());
+        writeString(out, instance.getStartUserId());
+        writeString(out, instance.getCurrentUserId());
+        writeString(out, instance.getBusinessKey());
+        out.writeInt(instance.getPriority());
+        writeDateTime(out, instance.getCreateTime());
+        writeDateTime(out, instance.getStartTime());
+        writeDateTime(out, instance.getEndTime());
+        writeDateTime(out, instance.getUpdateTime());
+        writeString(out, instance.getErrorMessage());
+    }
+
+    static WorkflowInstance readInstance(DataInputStream in) throws IOException {
+        return WorkflowInstance.builder()
+            .id(readString(in))
+            .workflowId(readString(in))
+            .name(readString(in))
+            .status(InstanceStatus.valueOf(readString(in)))
+            .currentStep(readString(in), in.readInt())
+            .context(readMap(in))
+            .config(readMap(in))
+            .startUserId(readString(in))
+            .currentUserId(readString(in))
+            .businessKey(readString(in))
+            .priority(in.readInt())
+            .createTime(readDateTime(in))
+            .startTime(readDateTime(in))
+            .endTime(readDateTime(in))
+            .updateTime(readDateTime(in))
+            .errorMessage(readString(in))
+            .build();
+    }
+
+    /**
+     * 写入实例的执行状态部分（状态转换事件）
+     */
+    static void writeInstanceState(DataOutputStream out, WorkflowInstance instance) throws IOException {
+        writeString(out, instance.getId());
+        writeString(out, instance.getStatus().name());
+        writeString(out, instance.getCurrentStepId());
+        out.writeInt(instance.getCurrentStepOrder());
+        writeDateTime(out, instance.getStartTime());
+        writeDateTime(out, instance.getEndTime());
+        writeDateTime(out, instance.getUpdateTime());
+        writeString(out, instance.getErrorMessage());
+    }
+
+    /**
+     * 读取执行状态并应用到实例副本
+     *
+     * @return 更新后的实例，实例不存在时返回null
+     */
+    static WorkflowInstance readInstanceState(DataInputStream in, Map<String, WorkflowInstance> instances) throws IOException {
+        WorkflowInstance instance = instances.get(readString(in));
+        InstanceStatus status = InstanceStatus.valueOf(readString(in));
+        String stepId = readString(in);
+        int stepOrder = in.readInt();
+        LocalDateTime startTime = readDateTime(in);
+        LocalDateTime endTime = readDateTime(in);
+        LocalDateTime updateTime = readDateTime(in);
+        String errorMessage = readString(in);
+        if (instance == null) {
+            return null;
+        }
+        return WorkflowInstance.builder(instance)
+            .status(status)
+            .currentStep(stepId, stepOrder)
+            .startTime(startTime)
+            .endTime(endTime)
+            .updateTime(updateTime)
+            .errorMessage(errorMessage)
+            .build();
+    }
+
+    // ==================== 执行结果 ====================
+
+    static void writeResult(DataOutputStream out, StepExecutionResult result) throws IOException {
+        writeString(out, result.getStatus().name());
+        writeString(out, result.getMessage());
+        writeMap(out, result.getOutputData());
+        writeString(out, result.getNextStepId());
+        writeString(out, result.getErrorMessage());
+        out.writeLong(result.getStartTime());
+        out.writeLong(result.getEndTime());
+        out.writeInt(result.getRetryCount());
+        writeString(out, result.getExecutorName());
+    }
+
+    static StepExecutionResult readResult(DataInputStream in) throws IOException {
+        return StepExecutionResult.builder(StepExecutionResult.Status.valueOf(readString(in)))
+            .message(readString(in))
+            .outputData(readMap(in))
+            .nextStepId(readString(in))
+            .errorMessage(readString(in))
+            .startTime(in.readLong())
+            .endTime(in.readLong())
+            .retryCount(in.readInt())
+            .executorName(readString(in))
+            .build();
+    }
+
+    // ==================== 用户任务 ====================
+
+    static void writeUserTask(DataOutputStream out, DefaultWorkflowEngine.UserTask task) throws IOException {
+        writeString(out, task.getId());
+        writeString(out, task.getInstanceId());
+        writeString(out, task.getStepId());
+        writeString(out, task.getName());
+        writeString(out, task.getDescription());
+        writeMap(out, task.getData());
+        writeDateTime(out, task.getCreateTime());
+        writeDateTime(out, task.getCompleteTime());
+        writeString(out, task.getStatus());
+    }
+
+    static DefaultWorkflowEngine.UserTask readUserTask(DataInputStream in) throws IOException {
+        return new DefaultWorkflowEngine.UserTask(
+            readString(in),
+            readString(in),
+            readString(in),
+            readString(in),
+            readString(in),
+            readMap(in),
+            readDateTime(in),
+            readDateTime(in),
+            readString(in));
+    }
+
+    // ==================== 基础类型 ====================
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeDateTime(DataOutputStream out, LocalDateTime value) throws IOException {
+        writeString(out, value != null ? value.toString() : null);
+    }
+
+    static LocalDateTime readDateTime(DataInputStream in) throws IOException {
+        String value = readString(in);
+        return value != null ? LocalDateTime.parse(value) : null;
+    }
+
+    static void writeMap(DataOutputStream out, Map<String, Object> map) throws IOException {
+        if (map == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    static Map<String, Object> readMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        Map<String, Object> map = new HashMap<>(Math.max(16, size * 2));
+        for (int i = 0; i < size; i++) {
+            map.put(readString(in), readValue(in));
+        }
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Map) {
+            out.writeByte(TYPE_MAP);
+            writeMap(out, (Map<String, Object>) value);
+        } else if (value instanceof Collection) {
+            Collection<Object> values = (Collection<Object>) value;
+            out.writeByte(TYPE_LIST);
+            out.writeInt(values.size());
+            for (Object element : values) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof LocalDateTime) {
+            out.writeByte(TYPE_DATE_TIME);
+            writeDateTime(out, (LocalDateTime) value);
+        } else {
+            out.writeByte(TYPE_STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_MAP:
+                return readMap(in);
+            case TYPE_LIST:
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            case TYPE_DATE_TIME:
+                return readDateTime(in);
+            default:
+                throw new IOException("未知的值类型标记: " + type);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.WorkflowInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * 引擎状态持久化（变更日志 + 快照）
+ *
+ * 引擎的内存状态（实例、执行历史、用户任务）在每次变更之后以事件形式追加到
+ * {@link EngineJournal}，并定期写出压缩快照。重启时加载最新快照并重放其后的日志段。
+ * 快照按实例分组，使用可配置的 {@link InstanceCodec} 编码，默认为紧凑二进制格式。
+ *
+ * 持久化保证：
+ * 1. 日志记录的是已经生效的内存变更（写后日志），不是预写日志：
+ *    内存变更与日志追加之间崩溃时该变更丢失，重启后实例回到最后一条已记录的状态
+ * 2. GROUP_COMMIT模式下追加在刷盘后才返回，引擎接口返回时其变更已经落盘；
+ *    ASYNC模式下崩溃可能丢失最近一个刷盘间隔内的变更
+ * 3. 步骤执行器的外部副作用发生在执行结果记录之前，恢复后步骤可能再次执行，执行器应保持幂等
+ *
+ * 一致性约定：
+ * 1. 引擎先修改内存再写日志，快照开始前滚动日志段，快照只需重放新段
+ * 2. 所有事件的重放都是幂等的：状态事件携带绝对值，执行结果携带序号，
+ *    用户任务按ID去重，因此快照期间并发写入的事件重复重放也不会出错
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class EngineStateStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EngineStateStore.class);
+
+    /** 完整实例 */
+    private static final byte EVENT_INSTANCE = 1;
+
+    /** 实例状态转换 */
+    private static final byte EVENT_STATE = 2;
+
+    /** 实例上下文合并 */
+    private static final byte EVENT_CONTEXT = 3;
+
+    /** 实例移除 */
+    private static final byte EVENT_REMOVE = 4;
+
+    /** 步骤执行结果 */
+    private static final byte EVENT_STEP_RESULT = 5;
+
+    /** 用户任务 */
+    private static final byte EVENT_USER_TASK = 6;
+
+    /** 快照文件魔数与版本（版本1为逐事件格式，版本2为按实例分组的编解码器格式） */
+    private static final int SNAPSHOT_MAGIC = 0x57464B53;
+    private static final int SNAPSHOT_VERSION_EVENTS = 1;
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    /**
+     * 持久化级别
+     */
+    public enum SyncMode {
+        /** 写入内存映射后立即返回，由后台线程定期刷盘 */
+        ASYNC,
+        /** 等待刷盘完成后返回，并发写入共享一次刷盘（组提交） */
+        GROUP_COMMIT
+    }
+
+    private final EngineJournal journal;
+    private final Path directory;
+    private final SyncMode syncMode;
+
+    /** 快照编解码器 */
+    private final InstanceCodec snapshotCodec;
+
+    /** 快照互斥锁 */
+    private final Object snapshotLock = new Object();
+
+    /**
+     * 构造函数
+     *
+     * @param directory 数据目录
+     * @param segmentSize 日志段大小（字节）
+     * @param syncIntervalMillis 后台刷盘间隔（毫秒）
+     * @param syncMode 持久化级别
+     * @throws IOException 如果日志无法打开
+     */
+    public EngineStateStore(String directory, int segmentSize, long syncIntervalMillis, SyncMode syncMode) throws IOException {
+        this(directory, segmentSize, syncIntervalMillis, syncMode, BinaryInstanceCodec.INSTANCE);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param directory 数据目录
+     * @param segmentSize 日志段大小（字节）
+     * @param syncIntervalMillis 后台刷盘间隔（毫秒）
+     * @param syncMode 持久化级别
+     * @param snapshotCodec 写快照使用的编解码器（读取时按快照文件头选择）
+     * @throws IOException 如果日志无法打开
+     */
+    public EngineStateStore(String directory, int segmentSize, long syncIntervalMillis, SyncMode syncMode,
+                            InstanceCodec snapshotCodec) throws IOException {
+        this.directory = Paths.get(directory);
+        this.syncMode = syncMode;
+        this.snapshotCodec = snapshotCodec;
+        this.journal = new EngineJournal(this.directory, segmentSize, syncIntervalMillis);
+    }
+
+    // ==================== 事件写入 ====================
+
+    /**
+     * 记录完整实例（创建、导入）
+     */
+    public void logInstance(WorkflowInstance instance) {
+        append(EVENT_INSTANCE, out -> EngineStateCodec.writeInstance(out, instance));
+    }
+
+    /**
+     * 记录实例状态转换
+     */
+    public void logState(WorkflowInstance instance) {
+        append(EVENT_STATE, out -> EngineStateCodec.writeInstanceState(out, instance));
+    }
+
+    /**
+     * 记录上下文合并
+     */
+    public void logContext(String instanceId, Map<String, Object> updates) {
+        append(EVENT_CONTEXT, out -> {
+            EngineStateCodec.writeString(out, instanceId);
+            EngineStateCodec.writeMap(out, updates);
+        });
+    }
+
+    /**
+     * 记录实例移除（连同执行历史和用户任务）
+     */
+    public void logRemove(String instanceId) {
+        append(EVENT_REMOVE, out -> EngineStateCodec.writeString(out, instanceId));
+    }
+
+    /**
+     * 记录步骤执行结果
+     *
+     * @param instanceId 实例ID
+     * @param index 结果在执行历史中的序号
+     * @param result 执行结果
+     */
+    public void logStepResult(String instanceId, int index, StepExecutionResult result) {
+        append(EVENT_STEP_RESULT, out -> {
+            EngineStateCodec.writeString(out, instanceId);
+            out.writeInt(index);
+            EngineStateCodec.writeResult(out, result);
+        });
+    }
+
+    /**
+     * 记录用户任务（创建或更新）
+     */
+    public void logUserTask(DefaultWorkflowEngine.UserTask task) {
+        append(EVENT_USER_TASK, out -> EngineStateCodec.writeUserTask(out, task));
+    }
+
+    private void append(byte type, EngineStateCodec.PayloadWriter writer) {
+        try {
+            long position = journal.append(type, EngineStateCodec.encode(writer));
+            if (syncMode == SyncMode.GROUP_COMMIT) {
+                journal.sync(position);
+            }
+        } catch (IOException e) {
+            // 持久化失败不影响内存执行，但必须显式报告
+            logger.error("写入引擎日志失败 (事件类型: {})", type, e);
+        }
+    }
+
+    // ==================== 快照与恢复 ====================
+
+    /**
+     * 写出快照
+     *
+     * 先滚动日志段，再将当前状态写入临时文件并原子替换，
+     * 成功后删除新段之前的日志段和旧快照。
+     *
+     * @param instances 实例存储
+     * @param histories 执行历史
+     * @param userTasks 用户任务
+     * @throws IOException 如果写出失败
+     */
+    public void snapshot(Map<String, WorkflowInstance> instances,
+                         Map<String, List<StepExecutionResult>> histories,
+                         Map<String, List<DefaultWorkflowEngine.UserTask>> userTasks) throws IOException {
+        synchronized (snapshotLock) {
+            long segment = journal.roll();
+            Path target = snapshotPath(segment);
+            Path temp = directory.resolve(target.getFileName() + ".tmp");
+
+            long records = 0;
+            try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeUTF(snapshotCodec.getName());
+
+                try (InstanceCodec.RecordWriter writer = snapshotCodec.newWriter(out)) {
+                    for (WorkflowInstance instance : instances.values()) {
+                        writer.write(new InstanceRecord(instance,
+                            copyOf(histories.get(instance.getId())), copyOf(userTasks.get(instance.getId()))));
+                        records++;
+                    }
+                }
+                out.flush();
+                file.getFD().sync();
+            }
+
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            deleteSnapshotsBefore(segment);
+            journal.deleteSegmentsBefore(segment);
+            logger.info("已写出引擎快照: {} (记录数: {})", target.getFileName(), records);
+        }
+    }
+
+    /**
+     * 恢复状态
+     *
+     * 加载最新快照后重放其后的日志段，结果写入传入的存储中。
+     *
+     * @param instances 实例存储
+     * @param histories 执行历史
+     * @param userTasks 用户任务
+     * @return 恢复的实例数量
+     * @throws IOException 如果读取失败
+     */
+    public int recover(Map<String, WorkflowInstance> instances,
+                       Map<String, List<StepExecutionResult>> histories,
+                       Map<String, List<DefaultWorkflowEngine.UserTask>> userTasks) throws IOException {
+        EngineJournal.RecordHandler handler = (type, payload) -> apply(type, payload, instances, histories, userTasks);
+
+        long fromSegment = 0;
+        Optional<Long> snapshot = latestSnapshot();
+        if (snapshot.isPresent()) {
+            fromSegment = snapshot.get();
+            long loaded = loadSnapshot(snapshotPath(fromSegment), handler, instances, histories, userTasks);
+            logger.info("已加载引擎快照: {} (记录数: {})", snapshotPath(fromSegment).getFileName(), loaded);
+        }
+
+        long replayed = journal.replay(fromSegment, handler);
+        logger.info("已重放引擎日志: {} 条记录，恢复实例 {} 个", replayed, instances.size());
+        return instances.size();
+    }
+
+    /**
+     * 应用一条事件（幂等）
+     */
+    private void apply(byte type, byte[] payload,
+                       Map<String, WorkflowInstance> instances,
+                       Map<String, List<StepExecutionResult>> histories,
+                       Map<String, List<DefaultWorkflowEngine.UserTask>> userTasks) throws IOException {
+        DataInputStream in = EngineStateCodec.decode(payload);
+        switch (type) {
+            case EVENT_INSTANCE: {
+                WorkflowInstance instance = EngineStateCodec.readInstance(in);
+                instances.put(instance.getId(), instance);
+                break;
+            }
+            case EVENT_STATE: {
+                WorkflowInstance instance = EngineStateCodec.readInstanceState(in, instances);
+                if (instance != null) {
+                    instances.put(instance.getId(), instance);
+                }
+                break;
+            }
+            case EVENT_CONTEXT: {
+                WorkflowInstance instance = instances.get(EngineStateCodec.readString(in));
+                Map<String, Object> updates = EngineStateCodec.readMap(in);
+                if (instance != null && updates != null) {
+                    instance.setContextValues(updates);
+                }
+                break;
+            }
+            case EVENT_REMOVE: {
+                String instanceId = EngineStateCodec.readString(in);
+                instances.remove(instanceId);
+                histories.remove(instanceId);
+                userTasks.remove(instanceId);
+                break;
+            }
+            case EVENT_STEP_RESULT: {
+                String instanceId = EngineStateCodec.readString(in);
+                int index = in.readInt();
+                StepExecutionResult result = EngineStateCodec.readResult(in);
+                List<StepExecutionResult> history = histories.computeIfAbsent(instanceId, k -> new ArrayList<>());
+                if (index >= history.size()) {
+                    history.add(result);
+                }
+                break;
+            }
+            case EVENT_USER_TASK: {
+                DefaultWorkflowEngine.UserTask task = EngineStateCodec.readUserTask(in);
+                List<DefaultWorkflowEngine.UserTask> tasks = userTasks.computeIfAbsent(task.getInstanceId(), k -> new ArrayList<>());
+                tasks.removeIf(existing -> existing.getId().equals(task.getId()));
+                tasks.add(task);
+                break;
+            }
+            default:
+                throw new IOException("未知的日志事件类型: " + type);
+        }
+    }
+
+    private long loadSnapshot(Path path, EngineJournal.RecordHandler handler,
+                              Map<String, WorkflowInstance> instances,
+                              Map<String, List<StepExecutionResult>> histories,
+                              Map<String, List<DefaultWorkflowEngine.UserTask>> userTasks) throws IOException {
+        long count = 0;
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("无效的快照文件: " + path);
+            }
+            int version = in.readInt();
+            if (version == SNAPSHOT_VERSION) {
+                return loadRecords(in, instances, histories, userTasks);
+            }
+            if (version != SNAPSHOT_VERSION_EVENTS) {
+                throw new IOException("不支持的快照版本: " + version);
+            }
+            while (true) {
+                byte type = in.readByte();
+                if (type == 0) {
+                    break;
+                }
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                handler.handle(type, payload);
+                count++;
+            }
+        } catch (EOFException e) {
+            throw new IOException("快照文件不完整: " + path, e);
+        }
+        return count;
+    }
+
+    /**
+     * 读取按实例分组的快照记录
+     */
+    private long loadRecords(DataInputStream in,
+                             Map<String, WorkflowInstance> instances,
+                             Map<String, List<StepExecutionResult>> histories,
+                             Map<String, List<DefaultWorkflowEngine.UserTask>> userTasks) throws IOException {
+        InstanceCodec codec = InstanceCodec.forName(in.readUTF());
+        long count = 0;
+        try (InstanceCodec.RecordReader reader = codec.newReader(in)) {
+            InstanceRecord record;
+            while ((record = reader.read()) != null) {
+                String instanceId = record.getInstance().getId();
+                instances.put(instanceId, record.getInstance());
+                if (!record.getHistory().isEmpty()) {
+                    histories.put(instanceId, new ArrayList<>(record.getHistory()));
+                }
+                if (!record.getUserTasks().isEmpty()) {
+                    userTasks.put(instanceId, new ArrayList<>(record.getUserTasks()));
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 在列表自身的锁内复制
+     */
+    private static <T> List<T> copyOf(List<T> list) {
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        synchronized (list) {
+            return new ArrayList<>(list);
+        }
+    }
+
+    private Optional<Long> latestSnapshot() throws IOException {
+        return listSnapshots().max(Comparator.naturalOrder());
+    }
+
+    private void deleteSnapshotsBefore(long segment) {
+        try {
+            listSnapshots().filter(existing -> existing < segment).forEach(existing -> {
+                try {
+                    Files.deleteIfExists(snapshotPath(existing));
+                } catch (IOException e) {
+                    logger.warn("删除旧快照失败: {}", existing, e);
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("删除旧快照失败", e);
+        }
+    }
+
+    private Stream<Long> listSnapshots() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                .filter(name -> name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX))
+                .forEach(name -> segments.add(Long.parseLong(
+                    name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()))));
+        }
+        return segments.stream();
+    }
+
+    private Path snapshotPath(long segment) {
+        return directory.resolve(String.format("%s%012d%s", SNAPSHOT_PREFIX, segment, SNAPSHOT_SUFFIX));
+    }
+
+    /**
+     * 关闭日志
+     */
+    @Override
+    public void close() {
+        journal.close();
+    }
+}
@@ -0,0 +1,51 @@
+package com.tao.workflow.engine;
+
+/**
+ * ID生成器
+ *
+ * 为工作流实例、用户任务等引擎对象分配唯一ID。实现必须线程安全，
+ * 可以通过 {@link DefaultWorkflowEngine.EngineConfiguration#setIdGenerator(IdGenerator)} 替换默认实现。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public interface IdGenerator {
+
+    /**
+     * 生成下一个ID
+     *
+     * @return 唯一ID
+     */
+    long nextId();
+
+    /**
+     * 生成下一个ID的字符串形式
+     *
+     * 默认实现按固定19位十进制补零，保证字符串的字典序与数值顺序一致。
+     *
+     * @return 唯一ID字符串
+     */
+    default String nextIdString() {
+        String digits = Long.toString(nextId());
+        if (digits.length() >= 19) {
+            return digits;
+        }
+        StringBuilder sb = new StringBuilder(19);
+        for (int i = digits.length(); i < 19; i++) {
+            sb.append('0');
+        }
+        return sb.append(digits).toString();
+    }
+
+    /**
+     * 生成下一个工作流实例ID的字符串形式（不含实例ID前缀）
+     *
+     * 引擎为新实例分配ID时调用，用户任务、定时器等其它对象使用 {@link #nextIdString()}。
+     * 默认与 {@link #nextIdString()} 相同，需要对实例ID附加约束的实现覆盖此方法。
+     *
+     * @return 唯一ID字符串
+     */
+    default String nextInstanceIdString() {
+        return nextIdString();
+    }
+}
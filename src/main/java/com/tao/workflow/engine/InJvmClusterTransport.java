@@ -0,0 +1,94 @@
+package com.tao.workflow.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内集群传输
+ *
+ * 在同一个JVM内连接多个 {@link ClusteredWorkflowEngine} 节点，请求在调用方线程上直接交给
+ * 目标节点的处理器，不经过网络。用于在单机上验证路由、分区移交和多节点的吞吐扩展。
+ *
+ * 分区移交的实例数据仍按 {@link InstanceCodec} 编码为字节传递，各节点之间不共享实例对象。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class InJvmClusterTransport implements ClusterTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(InJvmClusterTransport.class);
+
+    /** 节点ID -> 请求处理器 */
+    private final Map<String, RequestHandler> handlers = new ConcurrentHashMap<>();
+
+    private final CopyOnWriteArrayList<MembershipListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder invocations = new LongAdder();
+
+    @Override
+    public void join(String nodeId, RequestHandler handler) {
+        Objects.requireNonNull(nodeId, "节点ID不能为空");
+        Objects.requireNonNull(handler, "请求处理器不能为空");
+        if (handlers.putIfAbsent(nodeId, handler) != null) {
+            throw new IllegalStateException("节点ID已存在: " + nodeId);
+        }
+        logger.info("集群节点已加入: {}", nodeId);
+        notifyListeners();
+    }
+
+    @Override
+    public void leave(String nodeId) {
+        if (handlers.remove(nodeId) != null) {
+            logger.info("集群节点已离开: {}", nodeId);
+            notifyListeners();
+        }
+    }
+
+    @Override
+    public Set<String> getMembers() {
+        return Collections.unmodifiableSet(new TreeSet<>(handlers.keySet()));
+    }
+
+    @Override
+    public Object invoke(String targetNodeId, ClusterMessage message) throws WorkflowException {
+        RequestHandler handler = handlers.get(targetNodeId);
+        if (handler == null) {
+            throw new WorkflowException("集群节点不可达: " + targetNodeId, WorkflowException.WorkflowErrorType.NETWORK_ERROR);
+        }
+        invocations.increment();
+        return handler.handle(message);
+    }
+
+    @Override
+    public void addMembershipListener(MembershipListener listener) {
+        listeners.add(Objects.requireNonNull(listener, "监听器不能为空"));
+    }
+
+    @Override
+    public void removeMembershipListener(MembershipListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** 节点间请求次数 */
+    public long getInvocationCount() { return invocations.sum(); }
+
+    private void notifyListeners() {
+        Set<String> members = getMembers();
+        for (MembershipListener listener : listeners) {
+            try {
+                listener.membershipChanged(members);
+            } catch (RuntimeException e) {
+                logger.error("成员变化监听器执行失败", e);
+            }
+        }
+    }
+}
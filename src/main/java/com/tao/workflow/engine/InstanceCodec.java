@@ -0,0 +1,88 @@
+package com.tao.workflow.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 实例编解码器
+ *
+ * 将 {@link InstanceRecord} 序列流式写入或读出字节流，供快照、批量导出/导入和复制使用。
+ * 写入器和读取器都只持有当前记录和有限的编码状态，内存占用与记录数量无关。
+ *
+ * 内置实现：
+ * 1. {@link JsonInstanceCodec}：NDJSON文本格式，便于人工查看和跨系统交换
+ * 2. {@link BinaryInstanceCodec}：带版本的紧凑二进制格式，编码更快、体积更小
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public interface InstanceCodec {
+
+    /**
+     * 获取编解码器名称（写入快照文件头，用于读取时选择编解码器）
+     * @return 名称
+     */
+    String getName();
+
+    /**
+     * 创建记录写入器
+     *
+     * @param out 输出流（关闭写入器时不会关闭该流）
+     * @return 记录写入器
+     * @throws IOException 如果写出文件头失败
+     */
+    RecordWriter newWriter(OutputStream out) throws IOException;
+
+    /**
+     * 创建记录读取器
+     *
+     * @param in 输入流（关闭读取器时不会关闭该流）
+     * @return 记录读取器
+     * @throws IOException 如果读取文件头失败
+     */
+    RecordReader newReader(InputStream in) throws IOException;
+
+    /**
+     * 记录写入器
+     */
+    interface RecordWriter extends Closeable {
+        /**
+         * 写入一条记录
+         * @param record 实例记录
+         * @throws IOException 如果写出失败
+         */
+        void write(InstanceRecord record) throws IOException;
+    }
+
+    /**
+     * 记录读取器
+     */
+    interface RecordReader extends Closeable {
+        /**
+         * 读取下一条记录
+         * @return 实例记录，输入结束时返回null
+         * @throws IOException 如果读取或解析失败
+         */
+        InstanceRecord read() throws IOException;
+    }
+
+    /**
+     * 按名称获取内置编解码器
+     *
+     * @param name 编解码器名称
+     * @return 编解码器
+     * @throws IllegalArgumentException 如果名称未知
+     */
+    static InstanceCodec forName(String name) {
+        switch (name) {
+            case JsonInstanceCodec.NAME:
+                return JsonInstanceCodec.INSTANCE;
+            case BinaryInstanceCodec.NAME:
+                return BinaryInstanceCodec.INSTANCE;
+            default:
+                throw new IllegalArgumentException("未知的实例编解码器: " + name);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.tao.workflow.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实例执行通道（Actor模型）
+ *
+ * 按实例ID哈希将同一实例的所有事件（异步步骤完成、定时重试、外部继续执行）
+ * 投递到固定的执行通道中串行处理。每个通道由一个邮箱队列和一个工作线程组成，
+ * 同一实例的事件永远不会并发执行，从而消除"最后一次put覆盖"的丢失更新问题；
+ * 不同实例分布在多个通道上并行执行，不需要全局锁。
+ *
+ * 使用约定：
+ * 1. 工作线程内部发起的对同一实例的调用直接内联执行，避免自我等待造成死锁
+ * 2. 外部线程可通过 {@link #call(String, Callable)} 同步等待执行结果
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class InstanceExecutionLanes {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstanceExecutionLanes.class);
+
+    /** 通道执行器，每个通道一个工作线程 */
+    private final ExecutorService[] lanes;
+
+    /** 通道工作线程，用于识别当前线程是否处于某个通道内 */
+    private final Thread[] laneThreads;
+
+    /**
+     * 构造函数
+     *
+     * @param laneCount 通道数量，通常取CPU核数
+     */
+    public InstanceExecutionLanes(int laneCount) {
+        if (laneCount <= 0) {
+            throw new IllegalArgumentException("执行通道数量必须大于0");
+        }
+
+        this.lanes = new ExecutorService[laneCount];
+        this.laneThreads = new Thread[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            final int laneIndex = i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "workflow-lane-" + laneIndex);
+                t.setDaemon(true);
+                laneThreads[laneIndex] = t;
+                return t;
+            });
+        }
+    }
+
+    /**
+     * 计算实例所属的通道
+     */
+    private int laneOf(String instanceId) {
+        return Math.floorMod(instanceId.hashCode(), lanes.length);
+    }
+
+    /**
+     * 检查当前线程是否是实例所属通道的工作线程
+     *
+     * @param instanceId 实例ID
+     * @return 如果是返回true，否则返回false
+     */
+    public boolean isInLane(String instanceId) {
+        return Thread.currentThread() == laneThreads[laneOf(instanceId)];
+    }
+
+    /**
+     * 向实例所属通道投递事件
+     *
+     * 在通道线程内投递时同样进入邮箱排队，保证事件按到达顺序处理。
+     *
+     * @param instanceId 实例ID
+     * @param task 事件处理逻辑
+     */
+    public void execute(String instanceId, Runnable task) {
+        lanes[laneOf(instanceId)].execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("执行通道事件处理失败 (实例: {})", instanceId, e);
+            }
+        });
+    }
+
+    /**
+     * 在实例所属通道中执行并等待结果
+     *
+     * 当前线程已在该通道内时直接内联执行。
+     *
+     * @param instanceId 实例ID
+     * @param task 执行逻辑
+     * @return 执行结果
+     * @throws WorkflowException 如果执行失败或等待被中断
+     */
+    public <T> T call(String instanceId, Callable<T> task) throws WorkflowException {
+        if (isInLane(instanceId)) {
+            return invokeInline(task);
+        }
+
+        Future<T> future = lanes[laneOf(instanceId)].submit(task);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new WorkflowException("等待执行通道结果被中断: " + instanceId, e,
+                                        WorkflowException.WorkflowErrorType.SYSTEM_ERROR);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof WorkflowException) {
+                throw (WorkflowException) cause;
+            }
+            throw new WorkflowException("执行通道事件处理失败: " + cause.getMessage(), cause,
+                                        WorkflowException.WorkflowErrorType.EXECUTION_ERROR);
+        }
+    }
+
+    /**
+     * 内联执行
+     */
+    private static <T> T invokeInline(Callable<T> task) throws WorkflowException {
+        try {
+            return task.call();
+        } catch (WorkflowException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new WorkflowException("执行通道事件处理失败: " + e.getMessage(), e,
+                                        WorkflowException.WorkflowErrorType.EXECUTION_ERROR);
+        }
+    }
+
+    /**
+     * 获取通道数量
+     * @return 通道数量
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * 获取所有通道中排队的事件总数
+     * @return 排队事件数
+     */
+    public int getPendingEventCount() {
+        int pending = 0;
+        for (ExecutorService lane : lanes) {
+            pending += ((ThreadPoolExecutor) lane).getQueue().size();
+        }
+        return pending;
+    }
+
+    /**
+     * 关闭所有通道
+     *
+     * @param timeout 等待时间
+     * @param unit 时间单位
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (ExecutorService lane : lanes) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !lane.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                    lane.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (ExecutorService lane : lanes) {
+                lane.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.InstanceStatus;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 实例过期队列
+ *
+ * 实例进入终止状态时按结束时间放入时间分桶，清理任务只弹出已经过期的桶，
+ * 不再遍历全部常驻实例比较时间。每个终止状态单独维护一组分桶，
+ * 按状态筛选的清理不会触碰其他状态的实例。
+ *
+ * 一致性约定：
+ * 1. 实例转换到终止状态时调用 {@link #add(String, InstanceStatus, LocalDateTime)}
+ * 2. 队列中的条目可能已经过时（实例被重启或已被移除），调用方在弹出后需重新校验实例状态
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class InstanceExpiryQueue {
+
+    /** 分桶宽度（毫秒） */
+    private final long bucketMillis;
+
+    /** 终止状态 -> (桶序号 -> 桶) */
+    private final Map<InstanceStatus, ConcurrentNavigableMap<Long, Bucket>> queues =
+        new EnumMap<>(InstanceStatus.class);
+
+    /**
+     * 构造函数
+     *
+     * @param bucketMillis 分桶宽度（毫秒）
+     */
+    public InstanceExpiryQueue(long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("分桶宽度必须大于0: " + bucketMillis);
+        }
+        this.bucketMillis = bucketMillis;
+        for (InstanceStatus status : InstanceStatus.values()) {
+            if (status.isFinalState()) {
+                queues.put(status, new ConcurrentSkipListMap<>());
+            }
+        }
+    }
+
+    /**
+     * 加入过期队列
+     *
+     * @param instanceId 实例ID
+     * @param status 终止状态（非终止状态会被忽略）
+     * @param endTime 结束时间
+     */
+    public void add(String instanceId, InstanceStatus status, LocalDateTime endTime) {
+        ConcurrentNavigableMap<Long, Bucket> queue = queues.get(status);
+        if (queue == null) {
+            return;
+        }
+        long endMillis = toMillis(endTime != null ? endTime : LocalDateTime.now());
+        // 桶在清空移除时会被标记作废，遇到作废的桶重新获取
+        while (!queue.computeIfAbsent(endMillis / bucketMillis, k -> new Bucket()).put(instanceId, endMillis)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 弹出已过期的实例
+     *
+     * 完整落在截止时间之前的桶整体弹出；截止时间所在的边界桶只弹出其中已过期的条目。
+     *
+     * @param statuses 要弹出的终止状态
+     * @param cutoff 截止时间，结束时间早于该时间的实例视为过期
+     * @param maxCount 本次最多弹出的数量
+     * @return 过期的实例ID（可能包含过时条目）
+     */
+    public List<String> pollExpired(Collection<InstanceStatus> statuses, LocalDateTime cutoff, int maxCount) {
+        long cutoffMillis = toMillis(cutoff);
+        long cutoffBucket = cutoffMillis / bucketMillis;
+        List<String> expired = new ArrayList<>();
+
+        for (InstanceStatus status : statuses) {
+            ConcurrentNavigableMap<Long, Bucket> queue = queues.get(status);
+            if (queue == null) {
+                continue;
+            }
+            for (Map.Entry<Long, Bucket> entry : queue.headMap(cutoffBucket, true).entrySet()) {
+                Bucket bucket = entry.getValue();
+                long limit = entry.getKey() == cutoffBucket ? cutoffMillis : Long.MAX_VALUE;
+                if (bucket.drain(expired, limit, maxCount)) {
+                    queue.remove(entry.getKey(), bucket);
+                }
+                if (expired.size() >= maxCount) {
+                    return expired;
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 获取队列中的条目数量
+     * @return 条目数量
+     */
+    public int size() {
+        int size = 0;
+        for (ConcurrentNavigableMap<Long, Bucket> queue : queues.values()) {
+            for (Bucket bucket : queue.values()) {
+                size += bucket.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 时间桶
+     */
+    private static final class Bucket {
+        /** 实例ID -> 结束时间毫秒 */
+        private final Map<String, Long> entries = new HashMap<>();
+        /** 已清空并从队列移除 */
+        private boolean dead;
+
+        synchronized boolean put(String instanceId, long endMillis) {
+            if (dead) {
+                return false;
+            }
+            entries.put(instanceId, endMillis);
+            return true;
+        }
+
+        /**
+         * 取出结束时间早于limit的条目
+         *
+         * @return 桶被清空并作废时返回true
+         */
+        synchronized boolean drain(List<String> expired, long limit, int maxCount) {
+            Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+            while (it.hasNext() && expired.size() < maxCount) {
+                Map.Entry<String, Long> entry = it.next();
+                if (entry.getValue() < limit) {
+                    expired.add(entry.getKey());
+                    it.remove();
+                }
+            }
+            dead = entries.isEmpty();
+            return dead;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
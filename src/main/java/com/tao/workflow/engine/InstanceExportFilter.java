@@ -0,0 +1,99 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.InstanceStatus;
+import com.tao.workflow.model.WorkflowInstance;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * 实例批量导出过滤条件
+ *
+ * 所有条件之间是"与"的关系，未设置的条件不参与过滤。
+ * 时间范围按实例创建时间判断，包含起点、不包含终点。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class InstanceExportFilter {
+
+    private String workflowId;
+    private Set<InstanceStatus> statuses = Collections.emptySet();
+    private LocalDateTime createdFrom;
+    private LocalDateTime createdTo;
+
+    /**
+     * 不过滤任何实例
+     * @return 过滤条件
+     */
+    public static InstanceExportFilter all() {
+        return new InstanceExportFilter();
+    }
+
+    /**
+     * 按工作流ID过滤
+     * @param workflowId 工作流ID
+     * @return 当前过滤条件
+     */
+    public InstanceExportFilter workflowId(String workflowId) {
+        this.workflowId = workflowId;
+        return this;
+    }
+
+    /**
+     * 按实例状态过滤
+     * @param statuses 实例状态
+     * @return 当前过滤条件
+     */
+    public InstanceExportFilter statuses(InstanceStatus... statuses) {
+        this.statuses = statuses.length == 0
+            ? Collections.emptySet()
+            : EnumSet.copyOf(Arrays.asList(statuses));
+        return this;
+    }
+
+    /**
+     * 按创建时间过滤
+     * @param from 起始时间（包含，可以为null）
+     * @param to 结束时间（不包含，可以为null）
+     * @return 当前过滤条件
+     */
+    public InstanceExportFilter createdBetween(LocalDateTime from, LocalDateTime to) {
+        this.createdFrom = from;
+        this.createdTo = to;
+        return this;
+    }
+
+    /**
+     * 判断实例是否满足过滤条件
+     * @param instance 工作流实例
+     * @return 满足返回true
+     */
+    public boolean matches(WorkflowInstance instance) {
+        if (workflowId != null && !workflowId.equals(instance.getWorkflowId())) {
+            return false;
+        }
+        if (!statuses.isEmpty() && !statuses.contains(instance.getStatus())) {
+            return false;
+        }
+        LocalDateTime createTime = instance.getCreateTime();
+        if (createdFrom != null && (createTime == null || createTime.isBefore(createdFrom))) {
+            return false;
+        }
+        if (createdTo != null && (createTime == null || !createTime.isBefore(createdTo))) {
+            return false;
+        }
+        return true;
+    }
+
+    public String getWorkflowId() { return workflowId; }
+
+    public Set<InstanceStatus> getStatuses() { return statuses; }
+
+    public LocalDateTime getCreatedFrom() { return createdFrom; }
+
+    public LocalDateTime getCreatedTo() { return createdTo; }
+}
@@ -0,0 +1,182 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.InstanceStatus;
+import com.tao.workflow.model.WorkflowInstance;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 工作流实例二级索引
+ *
+ * 为引擎的内存实例存储维护按状态、工作流ID和业务键划分的并发索引，
+ * 索引中只保存实例ID，实例本身仍以instanceStorage为准。
+ * 查询只需访问匹配的索引项，而不必遍历全部常驻实例。
+ *
+ * 一致性约定：
+ * 1. 实例存入存储时调用 {@link #add(WorkflowInstance)}
+ * 2. 每次状态变更时调用 {@link #updateStatus(WorkflowInstance, InstanceStatus)}
+ * 3. 实例从存储中移除时调用 {@link #remove(WorkflowInstance)}
+ *
+ * 状态索引的维护以实例对象为锁逐个实例串行化，并以加锁时实例的实际状态为准，
+ * 并发的状态转换无论以何种顺序更新索引，实例最终都只出现在当前状态的集合中。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class InstanceIndex {
+
+    /** 状态 -> 实例ID集合 */
+    private final Map<InstanceStatus, Set<String>> byStatus = new EnumMap<>(InstanceStatus.class);
+
+    /** 工作流ID -> 实例ID集合 */
+    private final Map<String, Set<String>> byWorkflowId = new ConcurrentHashMap<>();
+
+    /** 业务键 -> 实例ID集合 */
+    private final Map<String, Set<String>> byBusinessKey = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数
+     *
+     * 状态索引在构造时为每个状态预先分配集合，之后只读访问EnumMap本身，
+     * 因此无需额外同步。
+     */
+    public InstanceIndex() {
+        for (InstanceStatus status : InstanceStatus.values()) {
+            byStatus.put(status, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    /**
+     * 添加实例到索引
+     * @param instance 工作流实例
+     */
+    public void add(WorkflowInstance instance) {
+        String id = instance.getId();
+        synchronized (instance) {
+            if (instance.getStatus() != null) {
+                byStatus.get(instance.getStatus()).add(id);
+            }
+        }
+        addTo(byWorkflowId, instance.getWorkflowId(), id);
+        if (instance.getBusinessKey() != null) {
+            addTo(byBusinessKey, instance.getBusinessKey(), id);
+        }
+    }
+
+    /**
+     * 向键控集合中添加实例ID
+     *
+     * 添加必须在compute内完成：removeFrom会在集合变空时移除键，
+     * 若先取集合再在外部添加，ID可能落入一个刚被移除的集合而丢失。
+     */
+    private void addTo(Map<String, Set<String>> index, String key, String instanceId) {
+        index.compute(key, (k, ids) -> {
+            Set<String> target = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            target.add(instanceId);
+            return target;
+        });
+    }
+
+    /**
+     * 更新实例状态索引
+     *
+     * 在状态转换成功后调用。加锁后重新读取实例的当前状态：
+     * 并发转换先更新了索引时，本次调用会移出自己的原状态并补上实际的当前状态，
+     * 而不是把实例放回已经过时的目标状态。
+     *
+     * @param instance 工作流实例
+     * @param oldStatus 本次转换前的状态（可以为null）
+     */
+    public void updateStatus(WorkflowInstance instance, InstanceStatus oldStatus) {
+        String id = instance.getId();
+        synchronized (instance) {
+            InstanceStatus current = instance.getStatus();
+            // 先加入当前状态再移出旧状态，保证并发查询期间实例不会从索引中消失
+            if (current != null) {
+                byStatus.get(current).add(id);
+            }
+            if (oldStatus != null && oldStatus != current) {
+                byStatus.get(oldStatus).remove(id);
+            }
+        }
+    }
+
+    /**
+     * 从索引中移除实例
+     * @param instance 工作流实例
+     */
+    public void remove(WorkflowInstance instance) {
+        String id = instance.getId();
+        synchronized (instance) {
+            if (instance.getStatus() != null) {
+                byStatus.get(instance.getStatus()).remove(id);
+            }
+        }
+        removeFrom(byWorkflowId, instance.getWorkflowId(), id);
+        if (instance.getBusinessKey() != null) {
+            removeFrom(byBusinessKey, instance.getBusinessKey(), id);
+        }
+    }
+
+    /**
+     * 从键控集合中移除实例ID，集合为空时一并移除键，避免索引无限增长
+     */
+    private void removeFrom(Map<String, Set<String>> index, String key, String instanceId) {
+        index.computeIfPresent(key, (k, ids) -> {
+            ids.remove(instanceId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * 获取指定状态的实例ID
+     * @param status 实例状态
+     * @return 实例ID集合的只读视图
+     */
+    public Set<String> getByStatus(InstanceStatus status) {
+        return Collections.unmodifiableSet(byStatus.get(status));
+    }
+
+    /**
+     * 获取指定工作流的实例ID
+     * @param workflowId 工作流ID
+     * @return 实例ID集合的只读视图
+     */
+    public Set<String> getByWorkflowId(String workflowId) {
+        Set<String> ids = byWorkflowId.get(workflowId);
+        return ids != null ? Collections.unmodifiableSet(ids) : Collections.emptySet();
+    }
+
+    /**
+     * 获取指定业务键的实例ID
+     * @param businessKey 业务键
+     * @return 实例ID集合的只读视图
+     */
+    public Set<String> getByBusinessKey(String businessKey) {
+        Set<String> ids = byBusinessKey.get(businessKey);
+        return ids != null ? Collections.unmodifiableSet(ids) : Collections.emptySet();
+    }
+
+    /**
+     * 统计指定状态的实例数量
+     * @param status 实例状态
+     * @return 实例数量
+     */
+    public long countByStatus(InstanceStatus status) {
+        return byStatus.get(status).size();
+    }
+
+    /**
+     * 统计指定工作流的实例数量
+     * @param workflowId 工作流ID
+     * @return 实例数量
+     */
+    public long countByWorkflowId(String workflowId) {
+        Set<String> ids = byWorkflowId.get(workflowId);
+        return ids != null ? ids.size() : 0;
+    }
+}
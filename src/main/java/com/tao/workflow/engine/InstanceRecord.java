@@ -0,0 +1,36 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.WorkflowInstance;
+
+import java.util.List;
+
+/**
+ * 实例记录
+ *
+ * 一个工作流实例连同它的执行历史和用户任务，是快照、批量导出和复制的编码单元。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class InstanceRecord {
+
+    private final WorkflowInstance instance;
+    private final List<StepExecutionResult> history;
+    private final List<DefaultWorkflowEngine.UserTask> userTasks;
+
+    public InstanceRecord(WorkflowInstance instance, List<StepExecutionResult> history,
+                          List<DefaultWorkflowEngine.UserTask> userTasks) {
+        this.instance = instance;
+        this.history = history;
+        this.userTasks = userTasks;
+    }
+
+    /** 工作流实例 */
+    public WorkflowInstance getInstance() { return instance; }
+
+    /** 执行历史（按执行顺序） */
+    public List<StepExecutionResult> getHistory() { return history; }
+
+    /** 用户任务 */
+    public List<DefaultWorkflowEngine.UserTask> getUserTasks() { return userTasks; }
+}
@@ -0,0 +1,415 @@
+package com.tao.workflow.engine;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.tao.workflow.model.InstanceStatus;
+import com.tao.workflow.model.WorkflowInstance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 实例NDJSON编解码器
+ *
+ * 每个实例连同执行历史和用户任务写成一行JSON，写入端逐字段输出，
+ * 读取端用拉取式解析器逐个记录读取，内存占用只与单个记录的大小有关。
+ *
+ * 记录格式：
+ * {"instance":{...},"history":[{...}],"userTasks":[{...}]}
+ *
+ * 读取时忽略未知字段，便于以后扩展记录格式。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public final class JsonInstanceCodec implements InstanceCodec {
+
+    /** 编解码器名称 */
+    public static final String NAME = "json";
+
+    /** 共享实例（无状态） */
+    public static final JsonInstanceCodec INSTANCE = new JsonInstanceCodec();
+
+    /** 共享的流工厂：不关闭调用方传入的流，记录之间只用换行分隔 */
+    private static final JsonFactory FACTORY = new JsonFactory()
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+        .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+        .setRootValueSeparator(null);
+
+    private JsonInstanceCodec() {
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public RecordWriter newWriter(OutputStream out) throws IOException {
+        JsonGenerator gen = FACTORY.createGenerator(out);
+        return new RecordWriter() {
+            @Override
+            public void write(InstanceRecord record) throws IOException {
+                writeRecord(gen, record);
+            }
+
+            @Override
+            public void close() throws IOException {
+                gen.close();
+            }
+        };
+    }
+
+    @Override
+    public RecordReader newReader(InputStream in) throws IOException {
+        JsonParser parser = FACTORY.createParser(in);
+        return new RecordReader() {
+            @Override
+            public InstanceRecord read() throws IOException {
+                return readRecord(parser);
+            }
+
+            @Override
+            public void close() throws IOException {
+                parser.close();
+            }
+        };
+    }
+
+    // ==================== 写入 ====================
+
+    /**
+     * 写入一条记录（一行）
+     */
+    private static void writeRecord(JsonGenerator gen, InstanceRecord record) throws IOException {
+        gen.writeStartObject();
+
+        gen.writeFieldName("instance");
+        writeInstance(gen, record.getInstance());
+
+        gen.writeArrayFieldStart("history");
+        for (StepExecutionResult result : record.getHistory()) {
+            writeResult(gen, result);
+        }
+        gen.writeEndArray();
+
+        gen.writeArrayFieldStart("userTasks");
+        for (DefaultWorkflowEngine.UserTask task : record.getUserTasks()) {
+            writeUserTask(gen, task);
+        }
+        gen.writeEndArray();
+
+        gen.writeEndObject();
+        gen.writeRaw('\n');
+    }
+
+    private static void writeInstance(JsonGenerator gen, WorkflowInstance instance) throws IOException {
+        gen.writeStartObject();
+        writeStringField(gen, "id", instance.getId());
+        writeStringField(gen, "workflowId", instance.getWorkflowId());
+        writeStringField(gen, "name", instance.getName());
+        writeStringField(gen, "status", instance.getStatus().name());
+        writeStringField(gen, "currentStepId", instance.getCurrentStepId());
+        gen.writeNumberField("currentStepOrder", instance.getCurrentStepOrder());
+        gen.writeFieldName("context");
+        writeValue(gen, instance.getContext());
+        gen.writeFieldName("config");
+        writeValue(gen, instance.getConfig());
+        writeStringField(gen, "startUserId", instance.getStartUserId());
+        writeStringField(gen, "currentUserId", instance.getCurrentUserId());
+        writeStringField(gen, "businessKey", instance.getBusinessKey());
+        gen.writeNumberField("priority", instance.getPriority());
+        writeDateTimeField(gen, "createTime", instance.getCreateTime());
+        writeDateTimeField(gen, "startTime", instance.getStartTime());
+        writeDateTimeField(gen, "endTime", instance.getEndTime());
+        writeDateTimeField(gen, "updateTime", instance.getUpdateTime());
+        writeStringField(gen, "errorMessage", instance.getErrorMessage());
+        gen.writeEndObject();
+    }
+
+    private static void writeResult(JsonGenerator gen, StepExecutionResult result) throws IOException {
+        gen.writeStartObject();
+        writeStringField(gen, "status", result.getStatus().name());
+        writeStringField(gen, "message", result.getMessage());
+        gen.writeFieldName("outputData");
+        writeValue(gen, result.getOutputData());
+        writeStringField(gen, "nextStepId", result.getNextStepId());
+        writeStringField(gen, "errorMessage", result.getErrorMessage());
+        gen.writeNumberField("startTime", result.getStartTime());
+        gen.writeNumberField("endTime", result.getEndTime());
+        gen.writeNumberField("retryCount", result.getRetryCount());
+        writeStringField(gen, "executorName", result.getExecutorName());
+        gen.writeEndObject();
+    }
+
+    private static void writeUserTask(JsonGenerator gen, DefaultWorkflowEngine.UserTask task) throws IOException {
+        gen.writeStartObject();
+        writeStringField(gen, "id", task.getId());
+        writeStringField(gen, "stepId", task.getStepId());
+        writeStringField(gen, "name", task.getName());
+        writeStringField(gen, "description", task.getDescription());
+        gen.writeFieldName("data");
+        writeValue(gen, task.getData());
+        writeDateTimeField(gen, "createTime", task.getCreateTime());
+        writeDateTimeField(gen, "completeTime", task.getCompleteTime());
+        writeStringField(gen, "status", task.getStatus());
+        gen.writeEndObject();
+    }
+
+    private static void writeStringField(JsonGenerator gen, String name, String value) throws IOException {
+        if (value != null) {
+            gen.writeStringField(name, value);
+        }
+    }
+
+    private static void writeDateTimeField(JsonGenerator gen, String name, LocalDateTime value) throws IOException {
+        if (value != null) {
+            gen.writeStringField(name, value.toString());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeValue(JsonGenerator gen, Object value) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+        } else if (value instanceof String) {
+            gen.writeString((String) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            gen.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            gen.writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            gen.writeBoolean((Boolean) value);
+        } else if (value instanceof Map) {
+            gen.writeStartObject();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                gen.writeFieldName(entry.getKey());
+                writeValue(gen, entry.getValue());
+            }
+            gen.writeEndObject();
+        } else if (value instanceof Collection) {
+            gen.writeStartArray();
+            for (Object element : (Collection<Object>) value) {
+                writeValue(gen, element);
+            }
+            gen.writeEndArray();
+        } else {
+            gen.writeString(value.toString());
+        }
+    }
+
+    // ==================== 读取 ====================
+
+    /**
+     * 读取下一条记录
+     *
+     * @return 记录，输入结束时返回null
+     */
+    private static InstanceRecord readRecord(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+
+        WorkflowInstance instance = null;
+        List<StepExecutionResult> history = new ArrayList<>();
+        List<DefaultWorkflowEngine.UserTask> userTasks = new ArrayList<>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "instance":
+                    instance = readInstance(parser);
+                    break;
+                case "history":
+                    expect(parser, value, JsonToken.START_ARRAY);
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        history.add(readResult(parser));
+                    }
+                    break;
+                case "userTasks":
+                    expect(parser, value, JsonToken.START_ARRAY);
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        userTasks.add(readUserTask(parser, instance != null ? instance.getId() : null));
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (instance == null) {
+            throw new IOException("记录缺少instance字段，位置: " + parser.getCurrentLocation());
+        }
+        return new InstanceRecord(instance, history, userTasks);
+    }
+
+    private static WorkflowInstance readInstance(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        WorkflowInstance.Builder builder = WorkflowInstance.builder();
+        String stepId = null;
+        int stepOrder = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id": builder.id(parser.getText()); break;
+                case "workflowId": builder.workflowId(parser.getText()); break;
+                case "name": builder.name(parser.getText()); break;
+                case "status": builder.status(InstanceStatus.valueOf(parser.getText())); break;
+                case "currentStepId": stepId = parser.getText(); break;
+                case "currentStepOrder": stepOrder = parser.getIntValue(); break;
+                case "context": builder.context(readMap(parser)); break;
+                case "config": builder.config(readMap(parser)); break;
+                case "startUserId": builder.startUserId(parser.getText()); break;
+                case "currentUserId": builder.currentUserId(parser.getText()); break;
+                case "businessKey": builder.businessKey(parser.getText()); break;
+                case "priority": builder.priority(parser.getIntValue()); break;
+                case "createTime": builder.createTime(LocalDateTime.parse(parser.getText())); break;
+                case "startTime": builder.startTime(LocalDateTime.parse(parser.getText())); break;
+                case "endTime": builder.endTime(LocalDateTime.parse(parser.getText())); break;
+                case "updateTime": builder.updateTime(LocalDateTime.parse(parser.getText())); break;
+                case "errorMessage": builder.errorMessage(parser.getText()); break;
+                default: parser.skipChildren();
+            }
+        }
+        return builder.currentStep(stepId, stepOrder).build();
+    }
+
+    private static StepExecutionResult readResult(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        StepExecutionResult.Status status = null;
+        String message = null;
+        Map<String, Object> outputData = null;
+        String nextStepId = null;
+        String errorMessage = null;
+        long startTime = 0;
+        long endTime = 0;
+        int retryCount = 0;
+        String executorName = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "status": status = StepExecutionResult.Status.valueOf(parser.getText()); break;
+                case "message": message = parser.getText(); break;
+                case "outputData": outputData = readMap(parser); break;
+                case "nextStepId": nextStepId = parser.getText(); break;
+                case "errorMessage": errorMessage = parser.getText(); break;
+                case "startTime": startTime = parser.getLongValue(); break;
+                case "endTime": endTime = parser.getLongValue(); break;
+                case "retryCount": retryCount = parser.getIntValue(); break;
+                case "executorName": executorName = parser.getText(); break;
+                default: parser.skipChildren();
+            }
+        }
+        if (status == null) {
+            throw new IOException("执行结果缺少status字段，位置: " + parser.getCurrentLocation());
+        }
+        return StepExecutionResult.builder(status)
+            .message(message)
+            .outputData(outputData)
+            .nextStepId(nextStepId)
+            .errorMessage(errorMessage)
+            .startTime(startTime)
+            .endTime(endTime)
+            .retryCount(retryCount)
+            .executorName(executorName)
+            .build();
+    }
+
+    private static DefaultWorkflowEngine.UserTask readUserTask(JsonParser parser, String instanceId) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        String id = null;
+        String stepId = null;
+        String name = null;
+        String description = null;
+        Map<String, Object> data = null;
+        LocalDateTime createTime = null;
+        LocalDateTime completeTime = null;
+        String status = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id": id = parser.getText(); break;
+                case "stepId": stepId = parser.getText(); break;
+                case "name": name = parser.getText(); break;
+                case "description": description = parser.getText(); break;
+                case "data": data = readMap(parser); break;
+                case "createTime": createTime = LocalDateTime.parse(parser.getText()); break;
+                case "completeTime": completeTime = LocalDateTime.parse(parser.getText()); break;
+                case "status": status = parser.getText(); break;
+                default: parser.skipChildren();
+            }
+        }
+        return new DefaultWorkflowEngine.UserTask(id, instanceId, stepId, name, description,
+            data, createTime, completeTime, status);
+    }
+
+    private static Map<String, Object> readMap(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        Map<String, Object> map = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            parser.nextToken();
+            // 实例上下文不允许null值，空值项直接丢弃
+            Object value = readValue(parser);
+            if (value != null) {
+                map.put(key, value);
+            }
+        }
+        return map;
+    }
+
+    private static Object readValue(JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                long value = parser.getLongValue();
+                return value == (int) value ? (Object) (int) value : (Object) value;
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case START_OBJECT:
+                return readMap(parser);
+            case START_ARRAY:
+                List<Object> list = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    list.add(readValue(parser));
+                }
+                return list;
+            default:
+                throw new IOException("无法识别的JSON值: " + parser.currentToken() + "，位置: " + parser.getCurrentLocation());
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("期望 " + expected + " 但读取到 " + actual + "，位置: " + parser.getCurrentLocation());
+        }
+    }
+}
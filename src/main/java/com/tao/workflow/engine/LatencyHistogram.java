@@ -0,0 +1,144 @@
+package com.tao.workflow.engine;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 流式延迟直方图
+ *
+ * 以固定大小的对数-线性桶记录耗时分布，记录操作无锁且不分配对象，
+ * 查询分位数只需遍历固定数量的桶，与已记录的样本数量无关。
+ *
+ * 精度说明：
+ * 小于32的值精确记录；更大的值保留最高5个有效位，相对误差不超过约6%，
+ * 对于p50/p95/p99这类监控指标已经足够。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class LatencyHistogram {
+
+    /** 每个数量级的子桶数量（2^4） */
+    private static final int SUB_BUCKET_HALF_COUNT = 16;
+
+    /** 精确记录区间的上界（2^5） */
+    private static final int SUB_BUCKET_COUNT = 32;
+
+    /** 桶总数，覆盖全部非负long取值 */
+    private static final int BUCKET_COUNT = 64 * SUB_BUCKET_HALF_COUNT;
+
+    /** 各桶计数 */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /** 样本数量 */
+    private final LongAdder count = new LongAdder();
+
+    /** 样本总和 */
+    private final LongAdder sum = new LongAdder();
+
+    /** 最小值 */
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+    /** 最大值 */
+    private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    /**
+     * 记录一个样本
+     * @param value 样本值（负数按0处理）
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(bucketIndex(v));
+        count.increment();
+        sum.add(v);
+        min.accumulate(v);
+        max.accumulate(v);
+    }
+
+    /**
+     * 计算值所在的桶
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - 4;
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * 计算桶所能代表的最大值
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * 获取分位数
+     * @param percentile 百分位（0-100）
+     * @return 分位数值，没有样本时返回0
+     */
+    public long getPercentile(double percentile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * 获取样本数量
+     * @return 样本数量
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * 获取平均值
+     * @return 平均值，没有样本时返回0
+     */
+    public double getMean() {
+        long total = count.sum();
+        return total == 0 ? 0.0 : (double) sum.sum() / total;
+    }
+
+    /**
+     * 获取最小值
+     * @return 最小值，没有样本时返回0
+     */
+    public long getMin() {
+        long value = min.get();
+        return value == Long.MAX_VALUE ? 0 : value;
+    }
+
+    /**
+     * 获取最大值
+     * @return 最大值，没有样本时返回0
+     */
+    public long getMax() {
+        long value = max.get();
+        return value == Long.MIN_VALUE ? 0 : value;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LatencyHistogram{count=%d, mean=%.1f, p50=%d, p95=%d, p99=%d, max=%d}",
+                             getCount(), getMean(), getPercentile(50), getPercentile(95), getPercentile(99), getMax());
+    }
+}
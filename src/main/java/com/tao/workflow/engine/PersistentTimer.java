@@ -0,0 +1,55 @@
+package com.tao.workflow.engine;
+
+import java.util.Objects;
+
+/**
+ * 持久化定时器记录
+ *
+ * 描述一个挂起的引擎定时器，足以在重启后重新调度。
+ * 到期时间使用墙上时钟（毫秒时间戳），以便跨进程恢复。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class PersistentTimer {
+
+    /**
+     * 定时器类型
+     */
+    public enum TimerType {
+        /** 步骤重试 */
+        RETRY,
+        /** TIMER步骤等待 */
+        TIMER
+    }
+
+    private final String timerId;
+    private final String instanceId;
+    private final String stepId;
+    private final TimerType timerType;
+    private final long dueTime;
+    private final String userId;
+
+    public PersistentTimer(String timerId, String instanceId, String stepId, TimerType timerType,
+                           long dueTime, String userId) {
+        this.timerId = Objects.requireNonNull(timerId, "定时器ID不能为空");
+        this.instanceId = Objects.requireNonNull(instanceId, "实例ID不能为空");
+        this.stepId = Objects.requireNonNull(stepId, "步骤ID不能为空");
+        this.timerType = Objects.requireNonNull(timerType, "定时器类型不能为空");
+        this.dueTime = dueTime;
+        this.userId = userId;
+    }
+
+    public String getTimerId() { return timerId; }
+    public String getInstanceId() { return instanceId; }
+    public String getStepId() { return stepId; }
+    public TimerType getTimerType() { return timerType; }
+    public long getDueTime() { return dueTime; }
+    public String getUserId() { return userId; }
+
+    @Override
+    public String toString() {
+        return String.format("PersistentTimer{timerId='%s', instanceId='%s', stepId='%s', timerType=%s, dueTime=%d}",
+                             timerId, instanceId, stepId, timerType, dueTime);
+    }
+}
@@ -0,0 +1,170 @@
+package com.tao.workflow.engine;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按优先级调度的异步步骤执行器
+ *
+ * 异步步骤按实例优先级出队，优先级高的步骤不再排在大批量低优先级任务之后。
+ * 为避免低优先级任务饿死，等待时间按老化间隔折算为优先级：
+ * 每等待一个老化间隔，有效优先级提升1。
+ *
+ * 实现说明：
+ * 有效优先级 = priority + 等待时间 / 老化间隔，比较两个任务的有效优先级等价于比较
+ * (入队时间 - priority * 老化间隔)，该值在入队时即可确定，堆中元素的顺序不随时间变化。
+ *
+ * 队列有界，队列满时由提交线程直接执行，与异步线程池的背压行为一致。
+ * 每个优先级的排队等待时间（微秒）记录在独立的直方图中。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class PriorityStepScheduler {
+
+    private final ThreadPoolExecutor executor;
+    private final PriorityBlockingQueue<Runnable> queue;
+    private final int capacity;
+    private final long agingNanos;
+
+    /** 同一排序键的任务按提交顺序执行 */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /** 优先级 -> 排队等待时间直方图（微秒） */
+    private final Map<Integer, LatencyHistogram> queueWaitTimes = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数
+     *
+     * @param threads 工作线程数量
+     * @param capacity 队列容量
+     * @param agingMillis 老化间隔（毫秒），等待这么久相当于优先级提升1
+     */
+    public PriorityStepScheduler(int threads, int capacity, long agingMillis) {
+        if (threads <= 0 || capacity <= 0 || agingMillis <= 0) {
+            throw new IllegalArgumentException("线程数量、队列容量和老化间隔必须大于0");
+        }
+        this.capacity = capacity;
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMillis);
+        this.queue = new PriorityBlockingQueue<>(Math.min(capacity, 1024));
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue,
+            r -> {
+                Thread t = new Thread(r, "workflow-priority-" + threadIndex.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+    }
+
+    /**
+     * 按优先级提交任务
+     *
+     * @param task 任务
+     * @param priority 优先级，数值越大越优先
+     */
+    public void execute(Runnable task, int priority) {
+        Objects.requireNonNull(task, "任务不能为空");
+        if (queue.size() >= capacity) {
+            // 队列已满，由提交线程执行
+            queueWaitOf(priority).record(0);
+            task.run();
+            return;
+        }
+        long now = System.nanoTime();
+        executor.execute(new PrioritizedTask(task, priority, now, now - priority * agingNanos,
+                                             sequence.getAndIncrement()));
+    }
+
+    /**
+     * 获取以固定优先级提交任务的执行器
+     *
+     * @param priority 优先级
+     * @return 执行器
+     */
+    public Executor forPriority(int priority) {
+        return task -> execute(task, priority);
+    }
+
+    /**
+     * 获取排队中的任务数量
+     * @return 任务数量
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 获取各优先级的排队等待时间（微秒）
+     * @return 优先级 -> 直方图的只读视图
+     */
+    public Map<Integer, LatencyHistogram> getQueueWaitTimes() {
+        return Collections.unmodifiableMap(queueWaitTimes);
+    }
+
+    /**
+     * 停止接收新任务，已排队的任务继续执行
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 等待已排队的任务执行完成，超时后中断执行中的任务
+     *
+     * @param timeout 超时时间
+     * @param unit 时间单位
+     * @throws InterruptedException 等待被中断
+     */
+    public void awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!executor.awaitTermination(timeout, unit)) {
+            executor.shutdownNow();
+        }
+    }
+
+    private LatencyHistogram queueWaitOf(int priority) {
+        return queueWaitTimes.computeIfAbsent(priority, p -> new LatencyHistogram());
+    }
+
+    /**
+     * 带排序键的任务
+     */
+    private final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final Runnable task;
+        private final int priority;
+        private final long enqueueNanos;
+        private final long sortKey;
+        private final long seq;
+
+        PrioritizedTask(Runnable task, int priority, long enqueueNanos, long sortKey, long seq) {
+            this.task = task;
+            this.priority = priority;
+            this.enqueueNanos = enqueueNanos;
+            this.sortKey = sortKey;
+            this.seq = seq;
+        }
+
+        @Override
+        public void run() {
+            queueWaitOf(priority).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - enqueueNanos));
+            task.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            // nanoTime可能为负，比较差值而不是直接比较大小
+            long diff = sortKey - other.sortKey;
+            if (diff != 0) {
+                return diff < 0 ? -1 : 1;
+            }
+            return Long.compare(seq, other.seq);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.StepType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按步骤类型隔离的执行线程池（舱壁）
+ *
+ * 每种声明了隔离池的步骤类型使用独立的线程池执行异步步骤，
+ * 某类步骤积压（如外部服务调用变慢）不会占满其他类型步骤的线程，
+ * 各类步骤的尾延迟互不影响。
+ *
+ * 线程池分为两类：
+ * 1. CPU密集型：ForkJoin工作窃取池，线程数等于并行度，空闲线程从其他线程的队列中窃取任务
+ * 2. 阻塞型：固定大小线程池，队列有界
+ *
+ * 两类线程池都有排队上限，超过上限的提交抛出 {@link RejectedExecutionException}，
+ * 不会在调用方线程中执行，以免把一个类型的积压传递给其他类型的线程。
+ * 未声明隔离池的步骤类型不经过本类，由引擎的异步线程池执行。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class StepBulkheads {
+
+    /**
+     * 线程池类型
+     */
+    public enum PoolKind {
+        /** CPU密集型，使用工作窃取 */
+        CPU_BOUND,
+        /** 阻塞型，使用有界固定线程池 */
+        BLOCKING
+    }
+
+    /**
+     * 隔离池声明
+     */
+    public static final class PoolSpec {
+        private final PoolKind kind;
+        private final int threads;
+        private final int queueCapacity;
+
+        private PoolSpec(PoolKind kind, int threads, int queueCapacity) {
+            if (threads <= 0 || queueCapacity <= 0) {
+                throw new IllegalArgumentException("线程数量和队列容量必须大于0");
+            }
+            this.kind = kind;
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+        }
+
+        /**
+         * CPU密集型隔离池
+         * @param parallelism 并行度
+         * @param queueCapacity 排队上限
+         * @return 隔离池声明
+         */
+        public static PoolSpec cpuBound(int parallelism, int queueCapacity) {
+            return new PoolSpec(PoolKind.CPU_BOUND, parallelism, queueCapacity);
+        }
+
+        /**
+         * 阻塞型隔离池
+         * @param threads 线程数量
+         * @param queueCapacity 队列容量
+         * @return 隔离池声明
+         */
+        public static PoolSpec blocking(int threads, int queueCapacity) {
+            return new PoolSpec(PoolKind.BLOCKING, threads, queueCapacity);
+        }
+
+        public PoolKind getKind() { return kind; }
+
+        public int getThreads() { return threads; }
+
+        public int getQueueCapacity() { return queueCapacity; }
+
+        @Override
+        public String toString() {
+            return kind + "(" + threads + ", " + queueCapacity + ")";
+        }
+    }
+
+    /** 步骤类型 -> 隔离池 */
+    private final Map<StepType, Pool> pools = new EnumMap<>(StepType.class);
+
+    /**
+     * 构造函数
+     *
+     * @param specs 步骤类型 -> 隔离池声明
+     */
+    public StepBulkheads(Map<StepType, PoolSpec> specs) {
+        Objects.requireNonNull(specs, "隔离池声明不能为空");
+        for (Map.Entry<StepType, PoolSpec> entry : specs.entrySet()) {
+            if (entry.getValue() != null) {
+                pools.put(entry.getKey(), new Pool(entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * 获取步骤类型的隔离池
+     *
+     * @param type 步骤类型
+     * @return 线程池，未声明隔离池时返回null
+     */
+    public ExecutorService executorFor(StepType type) {
+        return type != null ? pools.get(type) : null;
+    }
+
+    /**
+     * 获取全部隔离池中排队的任务数量
+     * @return 任务数量
+     */
+    public int getQueuedTaskCount() {
+        int queued = 0;
+        for (Pool pool : pools.values()) {
+            queued += pool.queued();
+        }
+        return queued;
+    }
+
+    /**
+     * 获取各隔离池的使用情况
+     * @return 使用情况列表
+     */
+    public List<PoolStats> getStats() {
+        if (pools.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<PoolStats> stats = new ArrayList<>(pools.size());
+        for (Pool pool : pools.values()) {
+            stats.add(pool.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * 停止接收新任务
+     */
+    public void shutdown() {
+        pools.values().forEach(Pool::shutdown);
+    }
+
+    /**
+     * 等待隔离池中的任务完成，超时后中断执行中的任务
+     *
+     * @param timeout 每个隔离池的等待时间
+     * @param unit 时间单位
+     * @throws InterruptedException 等待被中断
+     */
+    public void awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        for (Pool pool : pools.values()) {
+            if (!pool.awaitTermination(timeout, unit)) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * 隔离池
+     *
+     * 在底层线程池外统一处理排队上限和计数。
+     */
+    private static final class Pool extends AbstractExecutorService {
+        private final StepType type;
+        private final PoolSpec spec;
+        private final ForkJoinPool forkJoinPool;
+        private final ThreadPoolExecutor threadPool;
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        Pool(StepType type, PoolSpec spec) {
+            this.type = type;
+            this.spec = spec;
+            String prefix = "workflow-" + type.name().toLowerCase() + "-";
+            AtomicInteger threadIndex = new AtomicInteger();
+            if (spec.getKind() == PoolKind.CPU_BOUND) {
+                this.forkJoinPool = new ForkJoinPool(spec.getThreads(), pool -> {
+                    ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    t.setName(prefix + threadIndex.incrementAndGet());
+                    return t;
+                }, null, true);
+                this.threadPool = null;
+            } else {
+                this.threadPool = new ThreadPoolExecutor(spec.getThreads(), spec.getThreads(),
+                    0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(spec.getQueueCapacity()),
+                    r -> {
+                        Thread t = new Thread(r, prefix + threadIndex.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+                this.forkJoinPool = null;
+            }
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            Runnable task = () -> {
+                try {
+                    command.run();
+                } finally {
+                    completed.increment();
+                }
+            };
+            try {
+                if (forkJoinPool != null) {
+                    if (forkJoinPool.getQueuedSubmissionCount() >= spec.getQueueCapacity()) {
+                        throw new RejectedExecutionException("步骤隔离池已满: " + type);
+                    }
+                    forkJoinPool.execute(task);
+                } else {
+                    threadPool.execute(task);
+                }
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                throw e;
+            }
+        }
+
+        int queued() {
+            return forkJoinPool != null
+                ? (int) Math.min(Integer.MAX_VALUE, forkJoinPool.getQueuedSubmissionCount() + forkJoinPool.getQueuedTaskCount())
+                : threadPool.getQueue().size();
+        }
+
+        PoolStats stats() {
+            if (forkJoinPool != null) {
+                return new PoolStats(type, spec.getKind(), forkJoinPool.getParallelism(),
+                    forkJoinPool.getActiveThreadCount(), queued(), completed.sum(), rejected.sum(),
+                    forkJoinPool.getStealCount());
+            }
+            return new PoolStats(type, spec.getKind(), threadPool.getMaximumPoolSize(),
+                threadPool.getActiveCount(), queued(), completed.sum(), rejected.sum(), 0);
+        }
+
+        @Override
+        public void shutdown() {
+            if (forkJoinPool != null) {
+                forkJoinPool.shutdown();
+            } else {
+                threadPool.shutdown();
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return forkJoinPool != null ? forkJoinPool.shutdownNow() : threadPool.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return forkJoinPool != null ? forkJoinPool.isShutdown() : threadPool.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return forkJoinPool != null ? forkJoinPool.isTerminated() : threadPool.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return forkJoinPool != null
+                ? forkJoinPool.awaitTermination(timeout, unit)
+                : threadPool.awaitTermination(timeout, unit);
+        }
+    }
+
+    /**
+     * 隔离池使用情况
+     */
+    public static final class PoolStats {
+        private final StepType stepType;
+        private final PoolKind kind;
+        private final int poolSize;
+        private final int activeThreads;
+        private final int queuedTasks;
+        private final long completedTasks;
+        private final long rejectedTasks;
+        private final long stealCount;
+
+        PoolStats(StepType stepType, PoolKind kind, int poolSize, int activeThreads, int queuedTasks,
+                  long completedTasks, long rejectedTasks, long stealCount) {
+            this.stepType = stepType;
+            this.kind = kind;
+            this.poolSize = poolSize;
+            this.activeThreads = activeThreads;
+            this.queuedTasks = queuedTasks;
+            this.completedTasks = completedTasks;
+            this.rejectedTasks = rejectedTasks;
+            this.stealCount = stealCount;
+        }
+
+        public StepType getStepType() { return stepType; }
+
+        public PoolKind getKind() { return kind; }
+
+        /** 线程数量（CPU密集型为并行度） */
+        public int getPoolSize() { return poolSize; }
+
+        /** 正在执行任务的线程数量 */
+        public int getActiveThreads() { return activeThreads; }
+
+        /** 排队中的任务数量 */
+        public int getQueuedTasks() { return queuedTasks; }
+
+        /** 已完成的任务数量 */
+        public long getCompletedTasks() { return completedTasks; }
+
+        /** 因排队已满被拒绝的任务数量 */
+        public long getRejectedTasks() { return rejectedTasks; }
+
+        /** 工作窃取次数（仅CPU密集型） */
+        public long getStealCount() { return stealCount; }
+
+        /** 线程利用率（0 - 1） */
+        public double getUtilization() {
+            return poolSize > 0 ? Math.min(1.0, (double) activeThreads / poolSize) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("PoolStats{stepType=%s, kind=%s, utilization=%.2f, active=%d/%d, queued=%d, completed=%d, rejected=%d}",
+                                 stepType.name(), kind, getUtilization(), activeThreads, poolSize, queuedTasks, completedTasks, rejectedTasks);
+        }
+    }
+}
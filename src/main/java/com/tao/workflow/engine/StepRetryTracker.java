@@ -0,0 +1,89 @@
+package com.tao.workflow.engine;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 步骤失败计数器
+ *
+ * 按（实例，步骤）维护连续失败次数，用于判断是否还能重试和计算退避延迟，
+ * 替代每次失败都遍历实例执行历史的做法，查询和更新都是O(1)。
+ *
+ * 计数约定：
+ * 1. 步骤失败或超时时调用 {@link #recordFailure(String, String)} 递增
+ * 2. 步骤成功或被跳过时调用 {@link #reset(String, String)} 清零
+ * 3. 实例回滚时调用 {@link #resetInstance(String)} 清零该实例的全部步骤
+ * 4. 实例移除时调用 {@link #remove(String)} 释放计数器
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class StepRetryTracker {
+
+    /** 实例ID -> (步骤ID -> 连续失败次数) */
+    private final Map<String, Map<String, AtomicInteger>> failures = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次失败
+     *
+     * @param instanceId 实例ID
+     * @param stepId 步骤ID
+     * @return 记录后的连续失败次数
+     */
+    public int recordFailure(String instanceId, String stepId) {
+        return failures.computeIfAbsent(instanceId, k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(stepId, k -> new AtomicInteger())
+            .incrementAndGet();
+    }
+
+    /**
+     * 获取连续失败次数
+     *
+     * @param instanceId 实例ID
+     * @param stepId 步骤ID
+     * @return 连续失败次数，没有记录时返回0
+     */
+    public int getFailures(String instanceId, String stepId) {
+        Map<String, AtomicInteger> steps = failures.get(instanceId);
+        if (steps == null) {
+            return 0;
+        }
+        AtomicInteger counter = steps.get(stepId);
+        return counter != null ? counter.get() : 0;
+    }
+
+    /**
+     * 清零步骤的失败次数
+     *
+     * @param instanceId 实例ID
+     * @param stepId 步骤ID
+     */
+    public void reset(String instanceId, String stepId) {
+        Map<String, AtomicInteger> steps = failures.get(instanceId);
+        if (steps != null) {
+            steps.remove(stepId);
+        }
+    }
+
+    /**
+     * 清零实例全部步骤的失败次数
+     *
+     * @param instanceId 实例ID
+     */
+    public void resetInstance(String instanceId) {
+        Map<String, AtomicInteger> steps = failures.get(instanceId);
+        if (steps != null) {
+            steps.clear();
+        }
+    }
+
+    /**
+     * 移除实例的计数器
+     *
+     * @param instanceId 实例ID
+     */
+    public void remove(String instanceId) {
+        failures.remove(instanceId);
+    }
+}
@@ -0,0 +1,173 @@
+package com.tao.workflow.engine;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 步骤超时看门狗
+ *
+ * 所有步骤的截止时间登记在引擎共享的时间轮上，不为每个步骤创建线程或调度器任务，
+ * 登记和取消都是O(1)操作。
+ *
+ * 每个被监视的步骤对应一个 {@link Guard}，步骤完成和超时两者只有一个生效：
+ * 1. 步骤先完成：{@link Guard#complete()} 返回true，截止时间被取消，调用方正常处理结果
+ * 2. 截止时间先到：中断正在执行步骤的线程并执行超时回调，之后 {@link Guard#complete()} 返回false，
+ *    调用方丢弃步骤迟到的结果
+ *
+ * 超时回调与步骤执行不会重叠：截止时间到达时如果仍有线程在 {@link Guard#enter()} 和
+ * {@link Guard#exit()} 之间执行步骤，只中断该线程，回调推迟到它调用exit时在同一线程上执行；
+ * 步骤还未开始时回调在定时器线程上执行，之后的enter返回false，调用方不再执行步骤。
+ * 因此不响应中断的步骤会推迟超时处理，直到步骤返回。
+ *
+ * exit时会清除由超时引起的中断标记，避免中断泄漏到线程池中的下一个任务。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class StepWatchdog {
+
+    /** 不受监视的步骤 */
+    public static final Guard UNWATCHED = new Guard(null, null);
+
+    private final TimingWheelTimer timer;
+
+    private final LongAdder watched = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * 构造函数
+     *
+     * @param timer 共享的时间轮定时器
+     */
+    public StepWatchdog(TimingWheelTimer timer) {
+        this.timer = Objects.requireNonNull(timer, "定时器不能为空");
+    }
+
+    /**
+     * 登记步骤截止时间
+     *
+     * @param timeoutMillis 超时时间（毫秒），为null或不大于0时不监视
+     * @param onTimeout 超时回调，在定时器的任务线程中执行
+     * @return 监视句柄
+     */
+    public Guard watch(Long timeoutMillis, Runnable onTimeout) {
+        if (timeoutMillis == null || timeoutMillis <= 0) {
+            return UNWATCHED;
+        }
+        Objects.requireNonNull(onTimeout, "超时回调不能为空");
+        Guard guard = new Guard(onTimeout, expired);
+        guard.timeout = timer.schedule(guard::expire, timeoutMillis, TimeUnit.MILLISECONDS);
+        watched.increment();
+        return guard;
+    }
+
+    /** 已监视的步骤数量 */
+    public long getWatchedCount() { return watched.sum(); }
+
+    /** 已超时的步骤数量 */
+    public long getExpiredCount() { return expired.sum(); }
+
+    /**
+     * 步骤监视句柄
+     */
+    public static final class Guard {
+        private final Runnable onTimeout;
+        private final LongAdder expiredCounter;
+        private volatile TimingWheelTimer.Timeout timeout;
+        private Thread thread;
+        private boolean completed;
+        private boolean timedOut;
+        private boolean timeoutPending;
+
+        private Guard(Runnable onTimeout, LongAdder expiredCounter) {
+            this.onTimeout = onTimeout;
+            this.expiredCounter = expiredCounter;
+        }
+
+        /**
+         * 执行线程开始执行步骤
+         *
+         * @return 可以执行返回true；已超时返回false，调用方不应再执行步骤
+         */
+        public boolean enter() {
+            if (onTimeout == null) {
+                return true;
+            }
+            synchronized (this) {
+                if (timedOut) {
+                    return false;
+                }
+                thread = Thread.currentThread();
+                return true;
+            }
+        }
+
+        /**
+         * 执行线程结束执行步骤，清除超时引起的中断标记
+         *
+         * 步骤执行期间已超时的，在当前线程上执行推迟的超时回调。
+         */
+        public void exit() {
+            if (onTimeout == null) {
+                return;
+            }
+            boolean fire;
+            synchronized (this) {
+                thread = null;
+                if (timedOut) {
+                    Thread.interrupted();
+                }
+                fire = timeoutPending;
+                timeoutPending = false;
+            }
+            if (fire) {
+                onTimeout.run();
+            }
+        }
+
+        /**
+         * 标记步骤完成
+         *
+         * @return 步骤在截止时间前完成返回true；已超时返回false，调用方应丢弃结果
+         */
+        public boolean complete() {
+            if (onTimeout == null) {
+                return true;
+            }
+            synchronized (this) {
+                if (timedOut) {
+                    return false;
+                }
+                completed = true;
+            }
+            timeout.cancel();
+            return true;
+        }
+
+        /**
+         * 是否已超时
+         * @return 已超时返回true
+         */
+        public synchronized boolean isTimedOut() {
+            return timedOut;
+        }
+
+        private void expire() {
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                timedOut = true;
+                expiredCounter.increment();
+                if (thread != null) {
+                    // 步骤仍在执行，回调推迟到执行线程退出时运行
+                    timeoutPending = true;
+                    thread.interrupt();
+                    return;
+                }
+            }
+            onTimeout.run();
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.tao.workflow.engine;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 用户任务收件箱索引
+ *
+ * 按处理人和候选用户组为待办用户任务维护并发有序索引，排序规则为：
+ * 优先级降序、创建时间升序、任务ID升序。打开一页收件箱只需从游标位置
+ * 顺序读取页大小条记录，开销与任务总量无关。
+ *
+ * 使用约定：
+ * 1. 创建用户任务时调用 {@link #add(DefaultWorkflowEngine.UserTask, int, String)}
+ * 2. 任务完成、回滚清理或实例移除时调用 {@link #remove(String)}
+ * 3. 分页通过 {@link Page#getNextCursor()} 返回的游标继续读取下一页
+ *
+ * 任务的处理人、候选用户和候选用户组取自任务数据中的 assignee、candidateUsers、
+ * candidateGroups（由用户任务执行器输出），都未配置时归入回退用户的收件箱。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class TaskInbox {
+
+    private static final String USER_PREFIX = "U:";
+    private static final String GROUP_PREFIX = "G:";
+
+    /** 收件箱排序：优先级降序、创建时间升序、任务ID升序 */
+    private static final Comparator<Entry> ORDER = Comparator
+        .comparingInt((Entry e) -> -e.priority)
+        .thenComparing(e -> e.createTime)
+        .thenComparing(e -> e.taskId);
+
+    /** 收件箱键 -> 有序任务条目 */
+    private final Map<String, NavigableSet<Entry>> inboxes = new ConcurrentHashMap<>();
+
+    /** 收件箱键 -> 条目数量（跳表的size()需要遍历，单独计数） */
+    private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+
+    /** 任务ID -> 条目 */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 添加待办任务
+     *
+     * @param task 用户任务
+     * @param defaultPriority 任务数据未指定优先级时使用的优先级
+     * @param fallbackUserId 任务数据未指定任何处理人时归属的用户（可以为null）
+     */
+    public void add(DefaultWorkflowEngine.UserTask task, int defaultPriority, String fallbackUserId) {
+        Objects.requireNonNull(task, "用户任务不能为空");
+
+        Map<String, Object> data = task.getData();
+        List<String> keys = new ArrayList<>();
+        Object assignee = data.get("assignee");
+        if (assignee != null) {
+            keys.add(USER_PREFIX + assignee);
+        }
+        addKeys(keys, USER_PREFIX, data.get("candidateUsers"));
+        addKeys(keys, GROUP_PREFIX, data.get("candidateGroups"));
+        if (keys.isEmpty() && fallbackUserId != null) {
+            keys.add(USER_PREFIX + fallbackUserId);
+        }
+
+        Object priority = data.get("priority");
+        Entry entry = new Entry(task,
+            priority instanceof Number ? ((Number) priority).intValue() : defaultPriority,
+            task.getCreateTime() != null ? task.getCreateTime() : LocalDateTime.MIN,
+            keys);
+
+        if (entries.putIfAbsent(task.getId(), entry) != null) {
+            return;
+        }
+        for (String key : keys) {
+            if (inboxes.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>(ORDER)).add(entry)) {
+                counts.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 移除任务
+     *
+     * @param taskId 任务ID
+     */
+    public void remove(String taskId) {
+        Entry entry = entries.remove(taskId);
+        if (entry == null) {
+            return;
+        }
+        for (String key : entry.keys) {
+            NavigableSet<Entry> inbox = inboxes.get(key);
+            if (inbox != null && inbox.remove(entry)) {
+                counts.get(key).decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 移除一组任务
+     *
+     * @param tasks 用户任务列表（可以为null）
+     */
+    public void removeAll(Collection<DefaultWorkflowEngine.UserTask> tasks) {
+        if (tasks == null) {
+            return;
+        }
+        synchronized (tasks) {
+            for (DefaultWorkflowEngine.UserTask task : tasks) {
+                remove(task.getId());
+            }
+        }
+    }
+
+    /**
+     * 清空索引
+     */
+    public void clear() {
+        entries.clear();
+        inboxes.clear();
+        counts.clear();
+    }
+
+    /**
+     * 统计用户可见的待办数量
+     *
+     * 同时属于处理人和候选组的任务会重复计数，结果是上界。
+     *
+     * @param userId 用户ID
+     * @param groupIds 用户所属的组（可以为空）
+     * @return 待办数量
+     */
+    public int count(String userId, Collection<String> groupIds) {
+        int total = 0;
+        for (String key : keysOf(userId, groupIds)) {
+            AtomicInteger count = counts.get(key);
+            if (count != null) {
+                total += count.get();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 读取一页待办任务
+     *
+     * 对用户收件箱和各个组收件箱做多路归并，从游标之后开始读取，
+     * 同一任务出现在多个收件箱中时只返回一次。
+     *
+     * @param userId 用户ID
+     * @param groupIds 用户所属的组（可以为空）
+     * @param cursor 上一页返回的游标，为null时从第一条开始
+     * @param size 页大小
+     * @return 分页结果
+     */
+    public Page<DefaultWorkflowEngine.UserTask> page(String userId, Collection<String> groupIds, String cursor, int size) {
+        return page(userId, groupIds, cursor, 0, size);
+    }
+
+    /**
+     * 按偏移量读取一页待办任务（兼容页码分页，开销为 O(offset + size)）
+     *
+     * @param userId 用户ID
+     * @param groupIds 用户所属的组（可以为空）
+     * @param offset 跳过的条数
+     * @param size 页大小
+     * @return 分页结果
+     */
+    public Page<DefaultWorkflowEngine.UserTask> page(String userId, Collection<String> groupIds, int offset, int size) {
+        return page(userId, groupIds, null, offset, size);
+    }
+
+    private Page<DefaultWorkflowEngine.UserTask> page(String userId, Collection<String> groupIds,
+                                                      String cursor, int offset, int size) {
+        Objects.requireNonNull(userId, "用户ID不能为空");
+        if (size <= 0) {
+            return new Page<>(Collections.emptyList(), null);
+        }
+
+        Entry after = decodeCursor(cursor);
+        PriorityQueue<Source> sources = new PriorityQueue<>((a, b) -> ORDER.compare(a.head, b.head));
+        long available = 0;
+        for (String key : keysOf(userId, groupIds)) {
+            NavigableSet<Entry> inbox = inboxes.get(key);
+            if (inbox == null) {
+                continue;
+            }
+            AtomicInteger count = counts.get(key);
+            available += count != null ? count.get() : 0;
+            Iterator<Entry> iterator = after != null ? inbox.tailSet(after, false).iterator() : inbox.iterator();
+            if (iterator.hasNext()) {
+                sources.add(new Source(iterator));
+            }
+        }
+
+        // 不分页的调用以Integer.MAX_VALUE作为页大小，初始容量按收件箱中的任务数截断
+        List<DefaultWorkflowEngine.UserTask> items = new ArrayList<>((int) Math.min(size, available));
+        Entry last = null;
+        int skipped = 0;
+        while (!sources.isEmpty() && items.size() < size) {
+            Source source = sources.poll();
+            Entry entry = source.head;
+            if (source.advance()) {
+                sources.add(source);
+            }
+            // 相同任务在归并序中相邻，与上一条比较即可去重
+            if (last != null && last.taskId.equals(entry.taskId)) {
+                continue;
+            }
+            last = entry;
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            items.add(entry.task);
+        }
+
+        String nextCursor = items.size() == size && !sources.isEmpty() ? encodeCursor(last) : null;
+        return new Page<>(items, nextCursor);
+    }
+
+    private static List<String> keysOf(String userId, Collection<String> groupIds) {
+        List<String> keys = new ArrayList<>();
+        keys.add(USER_PREFIX + userId);
+        if (groupIds != null) {
+            for (String groupId : groupIds) {
+                keys.add(GROUP_PREFIX + groupId);
+            }
+        }
+        return keys;
+    }
+
+    private static void addKeys(List<String> keys, String prefix, Object values) {
+        if (values instanceof Collection) {
+            for (Object value : (Collection<?>) values) {
+                if (value != null && !keys.contains(prefix + value)) {
+                    keys.add(prefix + value);
+                }
+            }
+        }
+    }
+
+    private static String encodeCursor(Entry entry) {
+        return entry.priority + "|" + entry.createTime + "|" + entry.taskId;
+    }
+
+    private static Entry decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String[] parts = cursor.split("\\|", 3);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor);
+        }
+        try {
+            return new Entry(null, Integer.parseInt(parts[0]), LocalDateTime.parse(parts[1]), parts[2]);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor, e);
+        }
+    }
+
+    /**
+     * 收件箱条目
+     */
+    private static final class Entry {
+        private final DefaultWorkflowEngine.UserTask task;
+        private final String taskId;
+        private final int priority;
+        private final LocalDateTime createTime;
+        private final List<String> keys;
+
+        Entry(DefaultWorkflowEngine.UserTask task, int priority, LocalDateTime createTime, List<String> keys) {
+            this.task = task;
+            this.taskId = task.getId();
+            this.priority = priority;
+            this.createTime = createTime;
+            this.keys = keys;
+        }
+
+        /** 游标条目，只用于定位 */
+        Entry(DefaultWorkflowEngine.UserTask task, int priority, LocalDateTime createTime, String taskId) {
+            this.task = task;
+            this.taskId = taskId;
+            this.priority = priority;
+            this.createTime = createTime;
+            this.keys = Collections.emptyList();
+        }
+    }
+
+    /**
+     * 归并输入源
+     */
+    private static final class Source {
+        private final Iterator<Entry> iterator;
+        private Entry head;
+
+        Source(Iterator<Entry> iterator) {
+            this.iterator = iterator;
+            this.head = iterator.next();
+        }
+
+        boolean advance() {
+            if (iterator.hasNext()) {
+                head = iterator.next();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 收件箱分页结果
+     *
+     * @param <T> 元素类型
+     */
+    public static class Page<T> {
+        private final List<T> items;
+        private final String nextCursor;
+
+        public Page(List<T> items, String nextCursor) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+        }
+
+        /** 本页任务 */
+        public List<T> getItems() { return items; }
+
+        /** 下一页游标，没有更多数据时为null */
+        public String getNextCursor() { return nextCursor; }
+
+        /** 是否还有下一页 */
+        public boolean hasNext() { return nextCursor != null; }
+    }
+}
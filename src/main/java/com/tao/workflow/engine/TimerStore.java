@@ -0,0 +1,34 @@
+package com.tao.workflow.engine;
+
+import java.util.List;
+
+/**
+ * 定时器持久化存储
+ *
+ * 引擎在调度重试和TIMER步骤时将定时器写入存储，到期或取消后删除，
+ * 重启后通过 {@link DefaultWorkflowEngine#recoverTimers()} 重新加载挂起的定时器。
+ * 未配置存储时定时器只存在于内存中。
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public interface TimerStore {
+
+    /**
+     * 保存定时器
+     * @param timer 定时器记录
+     */
+    void save(PersistentTimer timer);
+
+    /**
+     * 删除定时器
+     * @param timerId 定时器ID
+     */
+    void delete(String timerId);
+
+    /**
+     * 加载全部挂起的定时器
+     * @return 定时器记录列表
+     */
+    List<PersistentTimer> loadPending();
+}
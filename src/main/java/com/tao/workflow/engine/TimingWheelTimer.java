@@ -0,0 +1,404 @@
+package com.tao.workflow.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 分层时间轮定时器
+ *
+ * 引擎的统一定时服务，用于步骤重试、TIMER步骤等待和步骤超时。
+ * 与ScheduledThreadPoolExecutor的堆结构（插入/取消O(log n)）不同，
+ * 时间轮将定时任务按到期时间散列到槽位链表中，插入和取消都是O(1)，
+ * 适合数十万级别的挂起定时任务。
+ *
+ * 结构说明：
+ * 1. 第0层时间轮每个槽位跨度为tickMs，共wheelSize个槽位
+ * 2. 超出当前层范围的任务放入上一层时间轮（槽位跨度为下层的总跨度），上层按需创建
+ * 3. 上层槽位到期时，其中的任务重新插入下层，逐级降落直到到期执行
+ * 4. 单个指针线程按tick推进时钟，到期任务交给任务执行器执行，不占用指针线程
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class TimingWheelTimer {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheelTimer.class);
+
+    /** 任务状态：等待中 */
+    private static final int STATE_PENDING = 0;
+
+    /** 任务状态：已到期 */
+    private static final int STATE_EXPIRED = 1;
+
+    /** 任务状态：已取消 */
+    private static final int STATE_CANCELLED = 2;
+
+    /** 时钟起点（纳秒），内部时间使用单调时钟 */
+    private final long startNanos = System.nanoTime();
+
+    /** 第0层槽位跨度（毫秒） */
+    private final long tickMs;
+
+    /** 到期任务执行器 */
+    private final Executor taskExecutor;
+
+    /** 第0层时间轮 */
+    private final Wheel root;
+
+    /** 插入使用读锁、推进时钟使用写锁，插入之间互不阻塞 */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** 挂起的任务数量 */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /** 指针线程 */
+    private final Thread ticker;
+
+    /** 运行状态 */
+    private volatile boolean running = true;
+
+    /**
+     * 构造函数
+     *
+     * @param tickMs 第0层槽位跨度（毫秒），即定时精度
+     * @param wheelSize 每层时间轮的槽位数量
+     * @param taskExecutor 到期任务执行器
+     */
+    public TimingWheelTimer(long tickMs, int wheelSize, Executor taskExecutor) {
+        if (tickMs <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("时间轮刻度和槽位数量必须大于0");
+        }
+
+        this.tickMs = tickMs;
+        this.taskExecutor = taskExecutor;
+        this.root = new Wheel(tickMs, wheelSize, 0);
+
+        this.ticker = new Thread(this::runTicker, "workflow-timer");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * 调度定时任务
+     *
+     * @param task 到期执行的任务
+     * @param delay 延迟
+     * @param unit 时间单位
+     * @return 定时句柄，可用于取消
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        // 到期时间向上取整到刻度边界，保证任务不会提前执行
+        long deadline = currentTimeMs() + Math.max(0, unit.toMillis(delay));
+        Timeout timeout = new Timeout(task, (deadline + tickMs - 1) / tickMs * tickMs);
+        pendingCount.incrementAndGet();
+
+        lock.readLock().lock();
+        try {
+            if (!root.add(timeout)) {
+                // 已经到期，立即执行
+                expire(timeout);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return timeout;
+    }
+
+    /**
+     * 获取挂起的任务数量
+     * @return 挂起任务数
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * 停止定时器
+     *
+     * 停止后挂起的任务不再执行。
+     */
+    public void stop() {
+        running = false;
+        ticker.interrupt();
+    }
+
+    /**
+     * 当前时间（毫秒，单调时钟）
+     */
+    private long currentTimeMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 指针线程主循环
+     */
+    private void runTicker() {
+        long lastTick = 0;
+        while (running) {
+            try {
+                long now = currentTimeMs();
+                if (now < lastTick + tickMs) {
+                    Thread.sleep(lastTick + tickMs - now);
+                    continue;
+                }
+                // 逐个tick推进，保证每个槽位都在到期时刻被检查到
+                while (lastTick + tickMs <= now) {
+                    lastTick += tickMs;
+                    tick(lastTick);
+                }
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } catch (Exception e) {
+                logger.error("时间轮推进失败", e);
+            }
+        }
+    }
+
+    /**
+     * 推进一个刻度
+     */
+    private void tick(long timeMs) {
+        lock.writeLock().lock();
+        try {
+            root.advanceClock(timeMs);
+            for (Wheel wheel = root; wheel != null; wheel = wheel.overflow) {
+                Bucket bucket = wheel.bucketAt(timeMs);
+                if (bucket.isDue(timeMs)) {
+                    // 到期槽位中的任务重新插入，低层放得下则降级，否则执行
+                    for (Timeout timeout = bucket.drain(); timeout != null; ) {
+                        Timeout next = timeout.next;
+                        timeout.next = null;
+                        if (!root.add(timeout)) {
+                            expire(timeout);
+                        }
+                        timeout = next;
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 执行到期任务
+     */
+    private void expire(Timeout timeout) {
+        if (!timeout.transition(STATE_EXPIRED)) {
+            return;
+        }
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    timeout.task.run();
+                } catch (Exception e) {
+                    logger.error("定时任务执行失败", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("定时任务执行器已关闭，丢弃到期任务");
+        }
+    }
+
+    /**
+     * 定时句柄
+     */
+    public final class Timeout {
+        private final Runnable task;
+        private final long expirationMs;
+        private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+
+        /** 所在槽位及链表指针，受槽位锁保护 */
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long expirationMs) {
+            this.task = task;
+            this.expirationMs = expirationMs;
+        }
+
+        private boolean transition(int target) {
+            if (state.compareAndSet(STATE_PENDING, target)) {
+                pendingCount.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 取消定时任务
+         * @return 如果在到期前取消成功返回true
+         */
+        public boolean cancel() {
+            if (!transition(STATE_CANCELLED)) {
+                return false;
+            }
+            Bucket current = bucket;
+            if (current != null) {
+                current.remove(this);
+            }
+            return true;
+        }
+
+        /**
+         * 是否已取消
+         * @return 已取消返回true
+         */
+        public boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        /**
+         * 是否已到期
+         * @return 已到期返回true
+         */
+        public boolean isExpired() {
+            return state.get() == STATE_EXPIRED;
+        }
+    }
+
+    /**
+     * 时间轮槽位 - 双向链表，插入和删除O(1)
+     */
+    private static final class Bucket {
+        private Timeout head;
+
+        /** 槽位到期时间，-1表示空槽位 */
+        private long expiration = -1;
+
+        synchronized void add(Timeout timeout, long bucketExpiration) {
+            timeout.bucket = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+            expiration = bucketExpiration;
+        }
+
+        synchronized void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        synchronized boolean isDue(long timeMs) {
+            return expiration != -1 && expiration <= timeMs;
+        }
+
+        /**
+         * 取出全部任务并清空槽位
+         * @return 通过next串联的任务链表
+         */
+        synchronized Timeout drain() {
+            Timeout first = head;
+            for (Timeout t = first; t != null; t = t.next) {
+                t.bucket = null;
+                t.prev = null;
+            }
+            head = null;
+            expiration = -1;
+            return first;
+        }
+    }
+
+    /**
+     * 单层时间轮
+     */
+    private static final class Wheel {
+        private final long tickMs;
+        private final int wheelSize;
+        private final long interval;
+        private final Bucket[] buckets;
+        private long currentTime;
+        private volatile Wheel overflow;
+
+        Wheel(long tickMs, int wheelSize, long startMs) {
+            this.tickMs = tickMs;
+            this.wheelSize = wheelSize;
+            this.interval = tickMs * wheelSize;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket();
+            }
+            this.currentTime = startMs - startMs % tickMs;
+        }
+
+        Bucket bucketAt(long timeMs) {
+            return buckets[(int) ((timeMs / tickMs) % wheelSize)];
+        }
+
+        /**
+         * 插入任务
+         * @return 插入成功返回true，任务已到期返回false
+         */
+        boolean add(Timeout timeout) {
+            if (timeout.state.get() != STATE_PENDING) {
+                // 已取消的任务直接丢弃
+                return true;
+            }
+            long expiration = timeout.expirationMs;
+            if (expiration < currentTime + tickMs) {
+                return false;
+            }
+            if (expiration < currentTime + interval) {
+                long virtualId = expiration / tickMs;
+                buckets[(int) (virtualId % wheelSize)].add(timeout, virtualId * tickMs);
+                // 插入与取消并发时，确保已取消的任务不会留在槽位中
+                if (timeout.state.get() == STATE_CANCELLED) {
+                    Bucket bucket = timeout.bucket;
+                    if (bucket != null) {
+                        bucket.remove(timeout);
+                    }
+                }
+                return true;
+            }
+            return overflowWheel().add(timeout);
+        }
+
+        private Wheel overflowWheel() {
+            Wheel wheel = overflow;
+            if (wheel == null) {
+                synchronized (this) {
+                    wheel = overflow;
+                    if (wheel == null) {
+                        wheel = new Wheel(interval, wheelSize, currentTime);
+                        overflow = wheel;
+                    }
+                }
+            }
+            return wheel;
+        }
+
+        void advanceClock(long timeMs) {
+            if (timeMs >= currentTime + tickMs) {
+                currentTime = timeMs - timeMs % tickMs;
+                Wheel wheel = overflow;
+                if (wheel != null) {
+                    wheel.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+}
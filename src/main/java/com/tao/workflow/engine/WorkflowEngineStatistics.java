@@ -0,0 +1,223 @@
+package com.tao.workflow.engine;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 工作流引擎统计信息
+ *
+ * {@link WorkflowEngine#getStatistics()} 返回的统计快照，字段在生成快照时一次性填充，
+ * 之后不再随引擎变化。
+ *
+ * 主要内容：
+ * 1. 按生命周期结果划分的实例数量
+ * 2. 实例执行耗时和成功率
+ * 3. 引擎运行时间、执行器和工作流注册数量
+ * 4. JVM内存使用情况
+ * 5. 按状态和按工作流类型分组的统计
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public class WorkflowEngineStatistics {
+
+    private long totalStartedInstances;
+    private long completedInstances;
+    private long failedInstances;
+    private long terminatedInstances;
+    private long cancelledInstances;
+    private long suspendedInstances;
+    private long runningInstances;
+    private long waitingInstances;
+
+    private double averageExecutionTime;
+    private long maxExecutionTime;
+    private long minExecutionTime;
+    private double successRate;
+    private double instancesPerHour;
+
+    private int activeExecutorCount;
+    private int registeredWorkflowCount;
+    private LocalDateTime systemStartTime;
+    private long systemUptime;
+    private MemoryUsage memoryUsage;
+
+    private Map<String, Long> instancesByStatus = new HashMap<>();
+    private final Map<String, WorkflowTypeStatistics> workflowTypeStats = new LinkedHashMap<>();
+
+    /**
+     * 已处理（进入终止状态）的实例数量
+     * @return 完成、失败、终止和取消的实例总数
+     */
+    public long getTotalProcessedInstances() {
+        return completedInstances + failedInstances + terminatedInstances + cancelledInstances;
+    }
+
+    /**
+     * 按已处理实例计算成功率
+     */
+    public void calculateSuccessRate() {
+        long processed = getTotalProcessedInstances();
+        successRate = processed > 0 ? (double) completedInstances / processed : 0.0;
+    }
+
+    /**
+     * 添加工作流类型统计
+     * @param workflowId 工作流ID
+     * @param statistics 工作流类型统计
+     */
+    public void addWorkflowTypeStats(String workflowId, WorkflowTypeStatistics statistics) {
+        workflowTypeStats.put(workflowId, statistics);
+    }
+
+    public long getTotalStartedInstances() { return totalStartedInstances; }
+    public void setTotalStartedInstances(long totalStartedInstances) { this.totalStartedInstances = totalStartedInstances; }
+
+    public long getCompletedInstances() { return completedInstances; }
+    public void setCompletedInstances(long completedInstances) { this.completedInstances = completedInstances; }
+
+    public long getFailedInstances() { return failedInstances; }
+    public void setFailedInstances(long failedInstances) { this.failedInstances = failedInstances; }
+
+    public long getTerminatedInstances() { return terminatedInstances; }
+    public void setTerminatedInstances(long terminatedInstances) { this.terminatedInstances = terminatedInstances; }
+
+    public long getCancelledInstances() { return cancelledInstances; }
+    public void setCancelledInstances(long cancelledInstances) { this.cancelledInstances = cancelledInstances; }
+
+    public long getSuspendedInstances() { return suspendedInstances; }
+    public void setSuspendedInstances(long suspendedInstances) { this.suspendedInstances = suspendedInstances; }
+
+    public long getRunningInstances() { return runningInstances; }
+    public void setRunningInstances(long runningInstances) { this.runningInstances = runningInstances; }
+
+    public long getWaitingInstances() { return waitingInstances; }
+    public void setWaitingInstances(long waitingInstances) { this.waitingInstances = waitingInstances; }
+
+    public double getAverageExecutionTime() { return averageExecutionTime; }
+    public void setAverageExecutionTime(double averageExecutionTime) { this.averageExecutionTime = averageExecutionTime; }
+
+    public long getMaxExecutionTime() { return maxExecutionTime; }
+    public void setMaxExecutionTime(long maxExecutionTime) { this.maxExecutionTime = maxExecutionTime; }
+
+    public long getMinExecutionTime() { return minExecutionTime; }
+    public void setMinExecutionTime(long minExecutionTime) { this.minExecutionTime = minExecutionTime; }
+
+    public double getSuccessRate() { return successRate; }
+
+    public double getInstancesPerHour() { return instancesPerHour; }
+    public void setInstancesPerHour(double instancesPerHour) { this.instancesPerHour = instancesPerHour; }
+
+    public int getActiveExecutorCount() { return activeExecutorCount; }
+    public void setActiveExecutorCount(int activeExecutorCount) { this.activeExecutorCount = activeExecutorCount; }
+
+    public int getRegisteredWorkflowCount() { return registeredWorkflowCount; }
+    public void setRegisteredWorkflowCount(int registeredWorkflowCount) { this.registeredWorkflowCount = registeredWorkflowCount; }
+
+    public LocalDateTime getSystemStartTime() { return systemStartTime; }
+    public void setSystemStartTime(LocalDateTime systemStartTime) { this.systemStartTime = systemStartTime; }
+
+    public long getSystemUptime() { return systemUptime; }
+    public void setSystemUptime(long systemUptime) { this.systemUptime = systemUptime; }
+
+    public MemoryUsage getMemoryUsage() { return memoryUsage; }
+    public void setMemoryUsage(MemoryUsage memoryUsage) { this.memoryUsage = memoryUsage; }
+
+    public Map<String, Long> getInstancesByStatus() { return Collections.unmodifiableMap(instancesByStatus); }
+    public void setInstancesByStatus(Map<String, Long> instancesByStatus) { this.instancesByStatus = new HashMap<>(instancesByStatus); }
+
+    public Map<String, WorkflowTypeStatistics> getWorkflowTypeStats() { return Collections.unmodifiableMap(workflowTypeStats); }
+
+    @Override
+    public String toString() {
+        return String.format("WorkflowEngineStatistics{started=%d, completed=%d, failed=%d, running=%d, waiting=%d, successRate=%.2f}",
+                           totalStartedInstances, completedInstances, failedInstances, runningInstances, waitingInstances, successRate);
+    }
+
+    /**
+     * JVM内存使用情况（字节）
+     */
+    public static class MemoryUsage {
+        private final long totalMemory;
+        private final long usedMemory;
+        private final long freeMemory;
+        private final long maxMemory;
+
+        public MemoryUsage(long totalMemory, long usedMemory, long freeMemory, long maxMemory) {
+            this.totalMemory = totalMemory;
+            this.usedMemory = usedMemory;
+            this.freeMemory = freeMemory;
+            this.maxMemory = maxMemory;
+        }
+
+        public long getTotalMemory() { return totalMemory; }
+        public long getUsedMemory() { return usedMemory; }
+        public long getFreeMemory() { return freeMemory; }
+        public long getMaxMemory() { return maxMemory; }
+
+        /**
+         * 已用内存占最大可用内存的比例
+         * @return 使用率（0-1）
+         */
+        public double getUsageRatio() {
+            return maxMemory > 0 ? (double) usedMemory / maxMemory : 0.0;
+        }
+    }
+
+    /**
+     * 按工作流类型划分的统计
+     */
+    public static class WorkflowTypeStatistics {
+        private final String workflowId;
+        private final String workflowName;
+        private long instanceCount;
+        private long completedCount;
+        private long failedCount;
+        private double successRate;
+        private double averageExecutionTime;
+        private long p50ExecutionTime;
+        private long p95ExecutionTime;
+        private long p99ExecutionTime;
+
+        public WorkflowTypeStatistics(String workflowId, String workflowName) {
+            this.workflowId = workflowId;
+            this.workflowName = workflowName;
+        }
+
+        public String getWorkflowId() { return workflowId; }
+        public String getWorkflowName() { return workflowName; }
+
+        public long getInstanceCount() { return instanceCount; }
+        public void setInstanceCount(long instanceCount) { this.instanceCount = instanceCount; }
+
+        public long getCompletedCount() { return completedCount; }
+        public void setCompletedCount(long completedCount) { this.completedCount = completedCount; }
+
+        public long getFailedCount() { return failedCount; }
+        public void setFailedCount(long failedCount) { this.failedCount = failedCount; }
+
+        public double getSuccessRate() { return successRate; }
+        public void setSuccessRate(double successRate) { this.successRate = successRate; }
+
+        public double getAverageExecutionTime() { return averageExecutionTime; }
+        public void setAverageExecutionTime(double averageExecutionTime) { this.averageExecutionTime = averageExecutionTime; }
+
+        public long getP50ExecutionTime() { return p50ExecutionTime; }
+        public void setP50ExecutionTime(long p50ExecutionTime) { this.p50ExecutionTime = p50ExecutionTime; }
+
+        public long getP95ExecutionTime() { return p95ExecutionTime; }
+        public void setP95ExecutionTime(long p95ExecutionTime) { this.p95ExecutionTime = p95ExecutionTime; }
+
+        public long getP99ExecutionTime() { return p99ExecutionTime; }
+        public void setP99ExecutionTime(long p99ExecutionTime) { this.p99ExecutionTime = p99ExecutionTime; }
+
+        @Override
+        public String toString() {
+            return String.format("WorkflowTypeStatistics{workflowId=%s, instances=%d, completed=%d, failed=%d, p95=%dms}",
+                               workflowId, instanceCount, completedCount, failedCount, p95ExecutionTime);
+        }
+    }
+}
@@ -12,6 +12,7 @@ package com.tao.workflow.engine;
  * 3. 状态异常：非法状态转换、并发冲突等
  * 4. 权限异常：用户权限不足、操作不被允许等
  * 5. 数据异常：数据不一致、约束违反等
+ * 6. 过载异常：启动限流、队列积压等背压拒绝
  * 
  * @author Tao
  * @version 1.0
@@ -84,6 +85,9 @@ public class WorkflowException extends Exception {
         /** 业务错误 */
         BUSINESS_ERROR("业务错误", false),
         
+        /** 过载拒绝（限流、背压） */
+        OVERLOAD_ERROR("过载拒绝", true),
+        
         /** 未知错误 */
         UNKNOWN_ERROR("未知错误", false);
         
@@ -297,6 +301,15 @@ public class WorkflowException extends Exception {
         return errorType == WorkflowErrorType.BUSINESS_ERROR;
     }
     
+    /**
+     * 是否为过载拒绝
+     * 
+     * @return 如果是过载拒绝返回true，否则返回false
+     */
+    public boolean isOverloadError() {
+        return errorType == WorkflowErrorType.OVERLOAD_ERROR;
+    }
+    
     /**
      * 获取详细的错误信息
      * 
@@ -425,6 +438,17 @@ public class WorkflowException extends Exception {
         return new WorkflowException(message, null, WorkflowErrorType.BUSINESS_ERROR, errorCode, instanceId, null, false);
     }
     
+    /**
+     * 创建过载拒绝异常
+     * 
+     * @param message 错误消息
+     * @param errorCode 拒绝原因错误码
+     * @return 过载拒绝异常
+     */
+    public static WorkflowException overloadError(String message, String errorCode) {
+        return new WorkflowException(message, WorkflowErrorType.OVERLOAD_ERROR, errorCode);
+    }
+    
     /**
      * 创建数据错误异常
      * 
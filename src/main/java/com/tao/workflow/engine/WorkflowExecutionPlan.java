@@ -0,0 +1,245 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.StepType;
+import com.tao.workflow.model.Workflow;
+import com.tao.workflow.model.WorkflowStep;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 工作流执行计划
+ *
+ * 在注册工作流定义时由引擎一次性编译生成的不可变执行计划，
+ * 将步骤列表预先整理为索引结构，使引擎在运行时的每一次步骤跳转
+ * 都变为常数时间的查表操作，而不再对步骤列表进行线性扫描。
+ *
+ * 包含内容：
+ * 1. 步骤ID到步骤的索引
+ * 2. 正常流转（nextStepId）邻接表
+ * 3. 错误处理（errorStepId）邻接表
+ * 4. 开始步骤
+ * 5. 步骤类型到执行器的映射（EnumMap）
+ * 6. 编译后的步骤前置条件表达式
+ *
+ * @author Tao
+ * @version 1.0
+ */
+public final class WorkflowExecutionPlan {
+
+    /** 工作流定义 */
+    private final Workflow workflow;
+
+    /** 步骤ID -> 步骤 */
+    private final Map<String, WorkflowStep> stepIndex;
+
+    /** 步骤ID -> 下一个步骤 */
+    private final Map<String, WorkflowStep> nextSteps;
+
+    /** 步骤ID -> 错误处理步骤 */
+    private final Map<String, WorkflowStep> errorSteps;
+
+    /** 步骤类型 -> 执行器 */
+    private final Map<StepType, StepExecutor> executors;
+
+    /** 步骤ID -> 编译后的前置条件 */
+    private final Map<String, ConditionExpression> preconditions;
+
+    /** 开始步骤 */
+    private final WorkflowStep startStep;
+
+    /**
+     * 私有构造函数 - 只能通过compile创建
+     */
+    private WorkflowExecutionPlan(Workflow workflow, Map<String, WorkflowStep> stepIndex,
+                                  Map<String, WorkflowStep> nextSteps, Map<String, WorkflowStep> errorSteps,
+                                  Map<StepType, StepExecutor> executors, Map<String, ConditionExpression> preconditions,
+                                  WorkflowStep startStep) {
+        this.workflow = workflow;
+        this.stepIndex = Collections.unmodifiableMap(stepIndex);
+        this.nextSteps = Collections.unmodifiableMap(nextSteps);
+        this.errorSteps = Collections.unmodifiableMap(errorSteps);
+        this.executors = Collections.unmodifiableMap(executors);
+        this.preconditions = Collections.unmodifiableMap(preconditions);
+        this.startStep = startStep;
+    }
+
+    /**
+     * 编译工作流定义
+     *
+     * 执行器注册表以步骤类型名称为键，编译时将其转换为EnumMap，
+     * 未注册执行器的步骤类型在运行时返回null，与原有行为保持一致。
+     *
+     * @param workflow 工作流定义
+     * @param executorRegistry 步骤执行器注册表（步骤类型名称 -> 执行器）
+     * @return 执行计划
+     * @throws IllegalStateException 如果步骤引用了不存在的下一步骤或错误处理步骤，或前置条件表达式无效
+     */
+    public static WorkflowExecutionPlan compile(Workflow workflow, Map<String, StepExecutor> executorRegistry) {
+        return compile(workflow, executorRegistry, null);
+    }
+
+    private static WorkflowExecutionPlan compile(Workflow workflow, Map<String, StepExecutor> executorRegistry,
+                                                 Map<String, ConditionExpression> compiledPreconditions) {
+        List<WorkflowStep> steps = workflow.getSteps();
+
+        Map<String, WorkflowStep> stepIndex = new HashMap<>(steps.size() * 2);
+        WorkflowStep startStep = null;
+        for (WorkflowStep step : steps) {
+            stepIndex.put(step.getId(), step);
+            if (startStep == null && step.getType() == StepType.START) {
+                startStep = step;
+            }
+        }
+        if (startStep == null && !steps.isEmpty()) {
+            startStep = steps.get(0);
+        }
+
+        Map<String, WorkflowStep> nextSteps = new HashMap<>(steps.size() * 2);
+        Map<String, WorkflowStep> errorSteps = new HashMap<>();
+        for (WorkflowStep step : steps) {
+            if (step.getNextStepId() != null) {
+                nextSteps.put(step.getId(), resolve(workflow, stepIndex, step, step.getNextStepId()));
+            }
+            if (step.getErrorStepId() != null) {
+                errorSteps.put(step.getId(), resolve(workflow, stepIndex, step, step.getErrorStepId()));
+            }
+        }
+
+        Map<StepType, StepExecutor> executors = new EnumMap<>(StepType.class);
+        for (StepType type : StepType.values()) {
+            StepExecutor executor = executorRegistry.get(type.name());
+            if (executor != null) {
+                executors.put(type, executor);
+            }
+        }
+
+        // 定义不变时复用已编译的前置条件
+        Map<String, ConditionExpression> preconditions = compiledPreconditions != null
+            ? compiledPreconditions
+            : compilePreconditions(workflow, steps);
+
+        return new WorkflowExecutionPlan(workflow, stepIndex, nextSteps, errorSteps, executors, preconditions, startStep);
+    }
+
+    /**
+     * 编译步骤前置条件表达式
+     */
+    private static Map<String, ConditionExpression> compilePreconditions(Workflow workflow, List<WorkflowStep> steps) {
+        Map<String, ConditionExpression> preconditions = new HashMap<>();
+        for (WorkflowStep step : steps) {
+            String expression = step.getPrecondition();
+            if (expression == null || expression.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                preconditions.put(step.getId(), ConditionExpression.compile(expression));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException(String.format("工作流 [%s] 的步骤 [%s] 前置条件无效: %s",
+                                                              workflow.getId(), step.getId(), e.getMessage()), e);
+            }
+        }
+        return preconditions;
+    }
+
+    /**
+     * 解析步骤引用
+     */
+    private static WorkflowStep resolve(Workflow workflow, Map<String, WorkflowStep> stepIndex,
+                                        WorkflowStep from, String targetId) {
+        WorkflowStep target = stepIndex.get(targetId);
+        if (target == null) {
+            throw new IllegalStateException(String.format("工作流 [%s] 的步骤 [%s] 引用了不存在的步骤: %s",
+                                                          workflow.getId(), from.getId(), targetId));
+        }
+        return target;
+    }
+
+    /**
+     * 基于新的执行器注册表重新编译
+     *
+     * @param executorRegistry 步骤执行器注册表
+     * @return 新的执行计划
+     */
+    public WorkflowExecutionPlan recompile(Map<String, StepExecutor> executorRegistry) {
+        return compile(workflow, executorRegistry, preconditions);
+    }
+
+    /**
+     * 获取工作流定义
+     * @return 工作流定义
+     */
+    public Workflow getWorkflow() {
+        return workflow;
+    }
+
+    /**
+     * 获取开始步骤
+     * @return 开始步骤，没有步骤时返回null
+     */
+    public WorkflowStep getStartStep() {
+        return startStep;
+    }
+
+    /**
+     * 根据ID获取步骤
+     * @param stepId 步骤ID
+     * @return 步骤，不存在时返回null
+     */
+    public WorkflowStep getStep(String stepId) {
+        return stepId != null ? stepIndex.get(stepId) : null;
+    }
+
+    /**
+     * 获取指定步骤的下一个步骤
+     * @param stepId 步骤ID
+     * @return 下一个步骤，没有时返回null
+     */
+    public WorkflowStep getNextStep(String stepId) {
+        return stepId != null ? nextSteps.get(stepId) : null;
+    }
+
+    /**
+     * 获取指定步骤的错误处理步骤
+     * @param stepId 步骤ID
+     * @return 错误处理步骤，没有时返回null
+     */
+    public WorkflowStep getErrorStep(String stepId) {
+        return stepId != null ? errorSteps.get(stepId) : null;
+    }
+
+    /**
+     * 获取步骤类型对应的执行器
+     * @param type 步骤类型
+     * @return 执行器，未注册时返回null
+     */
+    public StepExecutor getExecutor(StepType type) {
+        return executors.get(type);
+    }
+
+    /**
+     * 获取步骤编译后的前置条件
+     * @param stepId 步骤ID
+     * @return 前置条件，步骤没有前置条件表达式时返回null
+     */
+    public ConditionExpression getPrecondition(String stepId) {
+        return stepId != null ? preconditions.get(stepId) : null;
+    }
+
+    /**
+     * 获取步骤数量
+     * @return 步骤数量
+     */
+    public int getStepCount() {
+        return stepIndex.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WorkflowExecutionPlan{workflowId='%s', steps=%d, executors=%d}",
+                             workflow.getId(), stepIndex.size(), executors.size());
+    }
+}
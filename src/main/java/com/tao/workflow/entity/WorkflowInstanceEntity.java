@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import com.baomidou.mybatisplus.annotation.FieldFill;
+import com.baomidou.mybatisplus.annotation.FieldStrategy;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -109,6 +110,30 @@ public class WorkflowInstanceEntity implements Serializable {
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss", timezone = "GMT+8")
     private LocalDateTime completedTime;
 
+    /**
+     * 租约持有者
+     * 正在处理该实例的工作节点ID，为空表示没有节点持有租约
+     * 租约字段只由租约相关的语句写入，按实体更新时不会覆盖
+     */
+    @TableField(value = "lease_owner", updateStrategy = FieldStrategy.NEVER)
+    private String leaseOwner;
+
+    /**
+     * 租约令牌
+     * 同一次认领的实例共享一个令牌，用于取回本次认领的实例，
+     * 处理过程中的更新以令牌为条件，实例被重新认领后旧持有者的更新不会生效
+     */
+    @TableField(value = "lease_token", updateStrategy = FieldStrategy.NEVER)
+    private String leaseToken;
+
+    /**
+     * 租约到期时间
+     * 以数据库时钟为准，过期后其它工作节点可以重新认领
+     */
+    @TableField(value = "lease_expire_time", updateStrategy = FieldStrategy.NEVER)
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss", timezone = "GMT+8")
+    private LocalDateTime leaseExpireTime;
+
     /**
      * 创建时间
      * 自动填充创建时间
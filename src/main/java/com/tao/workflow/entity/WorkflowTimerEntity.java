@@ -0,0 +1,70 @@
+package com.tao.workflow.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+
+/**
+ * 工作流定时器实体类
+ * 对应数据库表：workflow_timer
+ * 存储引擎挂起的重试和TIMER步骤定时器，保证重启后定时器不丢失
+ *
+ * @author tao
+ * @since 2024-01-15
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("workflow_timer")
+public class WorkflowTimerEntity implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 定时器ID
+     * 主键，由引擎生成
+     */
+    @TableId(value = "id", type = IdType.INPUT)
+    private String id;
+
+    /**
+     * 工作流实例ID
+     * 关联到workflow_instance表的主键
+     */
+    @TableField("instance_id")
+    private String instanceId;
+
+    /**
+     * 步骤ID
+     * 定时器到期后要执行的步骤
+     */
+    @TableField("step_id")
+    private String stepId;
+
+    /**
+     * 定时器类型
+     * RETRY / TIMER
+     */
+    @TableField("timer_type")
+    private String timerType;
+
+    /**
+     * 到期时间
+     * 毫秒时间戳，按此字段建立索引
+     */
+    @TableField("due_time")
+    private Long dueTime;
+
+    /**
+     * 用户ID
+     * 到期后继续执行使用的用户
+     */
+    @TableField("user_id")
+    private String userId;
+}
@@ -34,9 +34,18 @@ import java.util.stream.Collectors;
  */
 public class ParallelStepExecutor extends AbstractStepExecutor {
     
+    /** 默认分支线程数量上限 */
+    private static final int DEFAULT_MAX_THREADS = Runtime.getRuntime().availableProcessors() * 4;
+    
+    /** 默认分支任务队列容量 */
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    
     /** 线程池用于并行执行 */
     private final ExecutorService executorService;
     
+    /** 线程池是否由本执行器创建（外部传入的线程池不在shutdown时关闭） */
+    private final boolean ownsExecutorService;
+    
     /** 汇聚策略注册表 */
     private final Map<String, JoinStrategy> joinStrategies = new HashMap<>();
     
@@ -45,16 +54,30 @@ public class ParallelStepExecutor extends AbstractStepExecutor {
     
     /**
      * 构造函数
+     * 
+     * 使用有界线程池执行分支，线程和队列都满时由并行步骤所在线程直接执行分支。
      */
     public ParallelStepExecutor() {
+        this(createDefaultExecutorService(), true);
+    }
+    
+    /**
+     * 构造函数
+     * 
+     * 使用外部线程池执行分支，例如引擎中为某个步骤类型声明的隔离池。
+     * 不要传入执行并行步骤本身的线程池，否则分支可能因等待同一池中的线程而无法执行。
+     * 
+     * @param executorService 分支线程池
+     */
+    public ParallelStepExecutor(ExecutorService executorService) {
+        this(executorService, false);
+    }
+    
+    private ParallelStepExecutor(ExecutorService executorService, boolean ownsExecutorService) {
         super("ParallelStepExecutor", "1.0.0", StepType.PARALLEL);
         
-        // 创建线程池
-        this.executorService = Executors.newCachedThreadPool(r -> {
-            Thread thread = new Thread(r, "ParallelStep-" + System.currentTimeMillis());
-            thread.setDaemon(true);
-            return thread;
-        });
+        this.executorService = Objects.requireNonNull(executorService, "线程池不能为空");
+        this.ownsExecutorService = ownsExecutorService;
         
         // 注册默认汇聚策略
         registerDefaultJoinStrategies();
@@ -62,6 +85,24 @@ public class ParallelStepExecutor extends AbstractStepExecutor {
         logger.info("并行步骤执行器已初始化");
     }
     
+    /**
+     * 创建默认的有界线程池
+     */
+    private static ExecutorService createDefaultExecutorService() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            DEFAULT_MAX_THREADS, DEFAULT_MAX_THREADS,
+            60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(DEFAULT_QUEUE_CAPACITY),
+            r -> {
+                Thread thread = new Thread(r, "ParallelStep-" + System.currentTimeMillis());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+    
     /**
      * 注册默认汇聚策略
      */
@@ -856,7 +897,7 @@ public class ParallelStepExecutor extends AbstractStepExecutor {
      * 关闭执行器
      */
     public void shutdown() {
-        if (executorService != null && !executorService.isShutdown()) {
+        if (ownsExecutorService && !executorService.isShutdown()) {
             executorService.shutdown();
             try {
                 if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -0,0 +1,16 @@
+package com.tao.workflow.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tao.workflow.entity.WorkflowTimerEntity;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 工作流定时器Mapper接口
+ * 提供定时器表的数据库操作方法
+ *
+ * @author tao
+ * @since 2024-01-15
+ */
+@Mapper
+public interface WorkflowTimerMapper extends BaseMapper<WorkflowTimerEntity> {
+}
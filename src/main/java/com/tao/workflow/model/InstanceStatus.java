@@ -204,10 +204,10 @@ public enum InstanceStatus {
      * 检查是否可以转换到目标状态
      * 
      * 定义状态转换规则：
-     * - CREATED可以转换到RUNNING、CANCELLED
-     * - RUNNING可以转换到WAITING、SUSPENDED、COMPLETED、FAILED、TERMINATED
-     * - WAITING可以转换到RUNNING、SUSPENDED、FAILED、TERMINATED
-     * - SUSPENDED可以转换到RUNNING、TERMINATED
+     * - CREATED可以转换到RUNNING、FAILED、CANCELLED
+     * - RUNNING可以转换到WAITING、SUSPENDED、COMPLETED、FAILED、TERMINATED、CANCELLED
+     * - WAITING可以转换到RUNNING、SUSPENDED、COMPLETED、FAILED、TERMINATED、CANCELLED
+     * - SUSPENDED可以转换到RUNNING、TERMINATED、CANCELLED
      * - 终态不能转换到其他状态
      * 
      * @param targetStatus 目标状态
@@ -226,8 +226,8 @@ public enum InstanceStatus {
         
         switch (this) {
             case CREATED:
-                // 创建状态可以开始运行或取消
-                return targetStatus == RUNNING || targetStatus == CANCELLED;
+                // 创建状态可以开始运行、启动失败或取消
+                return targetStatus == RUNNING || targetStatus == FAILED || targetStatus == CANCELLED;
                 
             case RUNNING:
                 // 运行状态可以转换到任何其他状态
@@ -235,19 +235,23 @@ public enum InstanceStatus {
                        targetStatus == SUSPENDED || 
                        targetStatus == COMPLETED || 
                        targetStatus == FAILED || 
-                       targetStatus == TERMINATED;
+                       targetStatus == TERMINATED || 
+                       targetStatus == CANCELLED;
                        
             case WAITING:
-                // 等待状态可以继续运行、暂停或结束
+                // 等待状态可以继续运行、暂停或结束（最后一个步骤完成时直接进入完成状态）
                 return targetStatus == RUNNING || 
                        targetStatus == SUSPENDED || 
+                       targetStatus == COMPLETED || 
                        targetStatus == FAILED || 
-                       targetStatus == TERMINATED;
+                       targetStatus == TERMINATED || 
+                       targetStatus == CANCELLED;
                        
             case SUSPENDED:
-                // 暂停状态可以恢复运行或终止
+                // 暂停状态可以恢复运行、终止或取消
                 return targetStatus == RUNNING || 
-                       targetStatus == TERMINATED;
+                       targetStatus == TERMINATED || 
+                       targetStatus == CANCELLED;
                        
             default:
                 return false;
@@ -262,16 +266,16 @@ public enum InstanceStatus {
     public InstanceStatus[] getTransitionableStates() {
         switch (this) {
             case CREATED:
-                return new InstanceStatus[]{RUNNING, CANCELLED};
+                return new InstanceStatus[]{RUNNING, FAILED, CANCELLED};
                 
             case RUNNING:
-                return new InstanceStatus[]{WAITING, SUSPENDED, COMPLETED, FAILED, TERMINATED};
+                return new InstanceStatus[]{WAITING, SUSPENDED, COMPLETED, FAILED, TERMINATED, CANCELLED};
                 
             case WAITING:
-                return new InstanceStatus[]{RUNNING, SUSPENDED, FAILED, TERMINATED};
+                return new InstanceStatus[]{RUNNING, SUSPENDED, COMPLETED, FAILED, TERMINATED, CANCELLED};
                 
             case SUSPENDED:
-                return new InstanceStatus[]{RUNNING, TERMINATED};
+                return new InstanceStatus[]{RUNNING, TERMINATED, CANCELLED};
                 
             default:
                 return new InstanceStatus[0];
@@ -1,8 +1,11 @@
 package com.tao.workflow.model;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * 工作流实例实体类
@@ -15,6 +18,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * 2. 上下文保持 - 维护执行过程中的变量和数据
  * 3. 进度跟踪 - 记录当前执行到哪个步骤
  * 4. 错误处理 - 记录执行过程中的错误信息
+ * 5. 原子状态转换 - 状态与当前步骤作为一个整体原地CAS更新
  * 
  * @author Tao
  * @version 1.0
@@ -30,18 +34,19 @@ public class WorkflowInstance {
     /** 实例名称 */
     private final String name;
     
-    /** 实例状态 */
-    private volatile InstanceStatus status;
+    /** 执行状态（实例状态 + 当前步骤指针），整体原子替换 */
+    private volatile ExecutionState state;
     
-    /** 当前执行步骤ID */
-    private volatile String currentStepId;
-    
-    /** 当前步骤顺序号 */
-    private volatile int currentStepOrder;
+    /** 执行状态的CAS更新器 */
+    private static final AtomicReferenceFieldUpdater<WorkflowInstance, ExecutionState> STATE_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(WorkflowInstance.class, ExecutionState.class, "state");
     
     /** 执行上下文 - 存储流程变量和中间结果 */
     private final Map<String, Object> context;
     
+    /** 执行上下文的只读视图 */
+    private final Map<String, Object> contextView;
+    
     /** 实例配置参数 */
     private final Map<String, Object> config;
     
@@ -84,10 +89,9 @@ public class WorkflowInstance {
         this.id = builder.id;
         this.workflowId = builder.workflowId;
         this.name = builder.name;
-        this.status = builder.status;
-        this.currentStepId = builder.currentStepId;
-        this.currentStepOrder = builder.currentStepOrder;
+        this.state = new ExecutionState(builder.status, builder.currentStepId, builder.currentStepOrder);
         this.context = new ConcurrentHashMap<>(builder.context);
+        this.contextView = Collections.unmodifiableMap(context);
         this.config = new ConcurrentHashMap<>(builder.config);
         this.startUserId = builder.startUserId;
         this.currentUserId = builder.currentUserId;
@@ -130,25 +134,131 @@ public class WorkflowInstance {
      * @return 当前状态
      */
     public InstanceStatus getStatus() {
-        return status;
+        return state.status;
     }
     
     /**
      * 设置实例状态
      * 
-     * 状态变更时自动更新时间戳
+     * 状态变更时自动更新时间戳。此方法不校验状态转换规则，
+     * 引擎内部的状态流转应使用 {@link #transitionTo(InstanceStatus)}。
      * 
      * @param status 新状态
      */
     public void setStatus(InstanceStatus status) {
-        this.status = status;
-        this.updateTime = LocalDateTime.now();
+        ExecutionState current;
+        do {
+            current = state;
+        } while (!STATE_UPDATER.compareAndSet(this, current, current.withStatus(status)));
+        onStatusChanged(current.status, status);
+    }
+    
+    /**
+     * 原子地转换实例状态
+     * 
+     * 校验状态转换规则后在原对象上CAS更新，不会复制实例或上下文。
+     * 转换到当前的非最终状态视为无操作，已结束的实例不能再次转换到同一最终状态；
+     * 失败或终止的实例允许重新进入运行状态（重试/回滚）。
+     * 
+     * @param target 目标状态
+     * @return 转换前的状态
+     * @throws IllegalStateException 如果不允许从当前状态转换到目标状态
+     */
+    public InstanceStatus transitionTo(InstanceStatus target) {
+        ExecutionState current;
+        do {
+            current = state;
+            if (current.status == target && !target.isFinalState()) {
+                return current.status;
+            }
+            checkTransition(current.status, target);
+        } while (!STATE_UPDATER.compareAndSet(this, current, current.withStatus(target)));
+        onStatusChanged(current.status, target);
+        return current.status;
+    }
+    
+    /**
+     * 原子地转换实例状态并移动步骤指针
+     * 
+     * 状态与当前步骤在一次CAS中同时更新，并发观察者不会看到新状态配旧步骤的中间态。
+     * 
+     * @param target 目标状态
+     * @param stepId 步骤ID
+     * @param stepOrder 步骤顺序号
+     * @return 转换前的状态
+     * @throws IllegalStateException 如果不允许从当前状态转换到目标状态
+     */
+    public InstanceStatus transitionTo(InstanceStatus target, String stepId, int stepOrder) {
+        ExecutionState current;
+        do {
+            current = state;
+            if (current.status != target || target.isFinalState()) {
+                checkTransition(current.status, target);
+            }
+        } while (!STATE_UPDATER.compareAndSet(this, current, new ExecutionState(target, stepId, stepOrder)));
+        onStatusChanged(current.status, target);
+        return current.status;
+    }
+    
+    /**
+     * 比较并转换实例状态
+     * 
+     * 只有当前状态与步骤都与期望值一致时才会更新，用于并发的事件源之间仲裁。
+     * 
+     * @param expectedStatus 期望的当前状态
+     * @param expectedStepId 期望的当前步骤ID（可以为null）
+     * @param target 目标状态
+     * @param stepId 新的步骤ID
+     * @param stepOrder 新的步骤顺序号
+     * @return 如果更新成功返回true，当前状态不符或转换不合法返回false
+     */
+    public boolean compareAndTransition(InstanceStatus expectedStatus, String expectedStepId,
+                                        InstanceStatus target, String stepId, int stepOrder) {
+        ExecutionState current = state;
+        if (current.status != expectedStatus || !Objects.equals(current.stepId, expectedStepId)) {
+            return false;
+        }
+        if ((expectedStatus != target || target.isFinalState()) && !isTransitionAllowed(expectedStatus, target)) {
+            return false;
+        }
+        if (!STATE_UPDATER.compareAndSet(this, current, new ExecutionState(target, stepId, stepOrder))) {
+            return false;
+        }
+        onStatusChanged(expectedStatus, target);
+        return true;
+    }
+    
+    /**
+     * 检查状态转换是否合法
+     */
+    private static boolean isTransitionAllowed(InstanceStatus from, InstanceStatus to) {
+        return from.canTransitionTo(to) || (to == InstanceStatus.RUNNING && from.canRestart());
+    }
+    
+    /**
+     * 校验状态转换
+     */
+    private static void checkTransition(InstanceStatus from, InstanceStatus to) {
+        if (!isTransitionAllowed(from, to)) {
+            throw new IllegalStateException(String.format("不允许的状态转换: %s -> %s", from, to));
+        }
+    }
+    
+    /**
+     * 状态变更后维护时间戳
+     */
+    private void onStatusChanged(InstanceStatus from, InstanceStatus to) {
+        LocalDateTime now = LocalDateTime.now();
+        this.updateTime = now;
         
         // 根据状态设置特殊时间戳
-        if (status == InstanceStatus.RUNNING && this.startTime == null) {
-            this.startTime = LocalDateTime.now();
-        } else if (status.isFinalState() && this.endTime == null) {
-            this.endTime = LocalDateTime.now();
+        if (to == InstanceStatus.RUNNING && this.startTime == null) {
+            this.startTime = now;
+        } else if (to.isFinalState() && this.endTime == null) {
+            this.endTime = now;
+        } else if (to == InstanceStatus.RUNNING && from.isFinalState()) {
+            // 重新运行的实例清除结束时间
+            this.endTime = null;
         }
     }
     
@@ -157,7 +267,7 @@ public class WorkflowInstance {
      * @return 当前执行步骤的ID
      */
     public String getCurrentStepId() {
-        return currentStepId;
+        return state.stepId;
     }
     
     /**
@@ -167,8 +277,10 @@ public class WorkflowInstance {
      * @param stepOrder 步骤顺序号
      */
     public void setCurrentStep(String stepId, int stepOrder) {
-        this.currentStepId = stepId;
-        this.currentStepOrder = stepOrder;
+        ExecutionState current;
+        do {
+            current = state;
+        } while (!STATE_UPDATER.compareAndSet(this, current, new ExecutionState(current.status, stepId, stepOrder)));
         this.updateTime = LocalDateTime.now();
     }
     
@@ -177,7 +289,7 @@ public class WorkflowInstance {
      * @return 当前步骤的顺序号
      */
     public int getCurrentStepOrder() {
-        return currentStepOrder;
+        return state.stepOrder;
     }
     
     /**
@@ -188,6 +300,17 @@ public class WorkflowInstance {
         return new ConcurrentHashMap<>(context);
     }
     
+    /**
+     * 获取执行上下文的只读视图
+     * 
+     * 不复制上下文，适合条件判断等只读的高频访问，视图内容随上下文变化。
+     * 
+     * @return 执行上下文的只读视图
+     */
+    public Map<String, Object> getContextView() {
+        return contextView;
+    }
+    
     /**
      * 获取上下文变量
      * @param key 变量名
@@ -454,8 +577,30 @@ public class WorkflowInstance {
     
     @Override
     public String toString() {
+        ExecutionState current = state;
         return String.format("WorkflowInstance{id='%s', workflowId='%s', status=%s, currentStep='%s', businessKey='%s'}",
-                id, workflowId, status, currentStepId, businessKey);
+                id, workflowId, current.status, current.stepId, businessKey);
+    }
+    
+    /**
+     * 执行状态
+     * 
+     * 实例状态与当前步骤指针的不可变组合，作为CAS的比较单元。
+     */
+    private static final class ExecutionState {
+        private final InstanceStatus status;
+        private final String stepId;
+        private final int stepOrder;
+        
+        private ExecutionState(InstanceStatus status, String stepId, int stepOrder) {
+            this.status = status;
+            this.stepId = stepId;
+            this.stepOrder = stepOrder;
+        }
+        
+        private ExecutionState withStatus(InstanceStatus newStatus) {
+            return new ExecutionState(newStatus, stepId, stepOrder);
+        }
     }
     
     /**
@@ -501,9 +646,10 @@ public class WorkflowInstance {
             this.id = instance.id;
             this.workflowId = instance.workflowId;
             this.name = instance.name;
-            this.status = instance.status;
-            this.currentStepId = instance.currentStepId;
-            this.currentStepOrder = instance.currentStepOrder;
+            ExecutionState current = instance.state;
+            this.status = current.status;
+            this.currentStepId = current.stepId;
+            this.currentStepOrder = current.stepOrder;
             this.context = new ConcurrentHashMap<>(instance.context);
             this.config = new ConcurrentHashMap<>(instance.config);
             this.startUserId = instance.startUserId;
@@ -588,6 +734,31 @@ public class WorkflowInstance {
             return this;
         }
         
+        public Builder createTime(LocalDateTime createTime) {
+            this.createTime = createTime;
+            return this;
+        }
+        
+        public Builder startTime(LocalDateTime startTime) {
+            this.startTime = startTime;
+            return this;
+        }
+        
+        public Builder endTime(LocalDateTime endTime) {
+            this.endTime = endTime;
+            return this;
+        }
+        
+        public Builder updateTime(LocalDateTime updateTime) {
+            this.updateTime = updateTime;
+            return this;
+        }
+        
+        public Builder errorMessage(String errorMessage) {
+            this.errorMessage = errorMessage;
+            return this;
+        }
+        
         /**
          * 构建工作流实例
          * 
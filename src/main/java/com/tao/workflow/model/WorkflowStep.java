@@ -46,6 +46,9 @@ public class WorkflowStep {
     /** 前置条件 - 决定步骤是否应该执行 */
     private final Function<Map<String, Object>, Boolean> precondition;
     
+    /** 前置条件表达式 - 可来自JSON定义，注册工作流时编译 */
+    private final String preconditionExpression;
+    
     /** 下一步骤ID - 用于流程控制 */
     private final String nextStepId;
     
@@ -78,6 +81,7 @@ public class WorkflowStep {
         this.executorClass = builder.executorClass;
         this.config = new ConcurrentHashMap<>(builder.config);
         this.precondition = builder.precondition;
+        this.preconditionExpression = builder.preconditionExpression;
         this.nextStepId = builder.nextStepId;
         this.errorStepId = builder.errorStepId;
         this.optional = builder.optional;
@@ -184,6 +188,14 @@ public class WorkflowStep {
         }
     }
     
+    /**
+     * 获取前置条件表达式
+     * @return 前置条件表达式，如果没有则返回null
+     */
+    public String getPrecondition() {
+        return preconditionExpression;
+    }
+    
     /**
      * 获取下一步骤ID
      * @return 下一步骤的ID，如果没有则返回null
@@ -273,6 +285,7 @@ public class WorkflowStep {
         private String executorClass;
         private Map<String, Object> config = new ConcurrentHashMap<>();
         private Function<Map<String, Object>, Boolean> precondition;
+        private String preconditionExpression;
         private String nextStepId;
         private String errorStepId;
         private boolean optional = false; // 默认为必需步骤
@@ -299,6 +312,7 @@ public class WorkflowStep {
             this.executorClass = step.executorClass;
             this.config = new ConcurrentHashMap<>(step.config);
             this.precondition = step.precondition;
+            this.preconditionExpression = step.preconditionExpression;
             this.nextStepId = step.nextStepId;
             this.errorStepId = step.errorStepId;
             this.optional = step.optional;
@@ -400,6 +414,16 @@ public class WorkflowStep {
             return this;
         }
         
+        /**
+         * 设置前置条件表达式
+         * @param expression 前置条件表达式，语法见 ConditionExpression
+         * @return 构建器实例
+         */
+        public Builder precondition(String expression) {
+            this.preconditionExpression = expression;
+            return this;
+        }
+        
         /**
          * 设置下一步骤ID
          * @param nextStepId 下一步骤ID
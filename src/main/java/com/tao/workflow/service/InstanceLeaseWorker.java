@@ -0,0 +1,358 @@
+package com.tao.workflow.service;
+
+import com.tao.workflow.entity.WorkflowInstanceEntity;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于租约的实例认领工作者
+ * 多个节点共享workflow_instance表时，每个节点运行一个工作者，
+ * 通过租约保证同一实例同一时刻只由一个节点处理，处理能力随节点数量线性扩展
+ *
+ * 工作流程：
+ * 1. 认领：按空闲处理槽位数量批量认领可执行实例，没有可认领实例时按轮询间隔退避
+ * 2. 处理：处理器通过 {@link Lease#update(WorkflowInstanceEntity)} 写回实例，更新以租约持有者和令牌为条件，
+ *    租约丢失后的迟到写入不会生效
+ * 3. 续约：每隔租约时长的三分之一为处理中的实例续约，续约失败的实例立即中断处理
+ * 4. 释放：实例处理结束（无论成功与否）后释放租约；停止时只释放从未开始处理的实例，
+ *    等待超时仍未结束的处理保留租约，直到到期
+ *
+ * 节点宕机时其租约到期后由其它节点重新认领。
+ *
+ * @author tao
+ * @since 2024-01-15
+ */
+@Slf4j
+public class InstanceLeaseWorker {
+
+    /**
+     * 实例处理器
+     */
+    @FunctionalInterface
+    public interface InstanceProcessor {
+        /**
+         * 处理已认领的实例
+         * 对实例的更新应通过 {@link Lease#update(WorkflowInstanceEntity)} 进行，返回false时租约已丢失，应停止处理
+         *
+         * @param instance 工作流实例
+         * @param lease 本次认领的租约
+         * @throws Exception 处理失败
+         */
+        void process(WorkflowInstanceEntity instance, Lease lease) throws Exception;
+    }
+
+    /**
+     * 实例租约
+     */
+    public final class Lease {
+        private final String instanceId;
+        private final String token;
+
+        private Lease(String instanceId, String token) {
+            this.instanceId = instanceId;
+            this.token = token;
+        }
+
+        /** 实例ID */
+        public String getInstanceId() { return instanceId; }
+
+        /** 工作节点ID */
+        public String getWorkerId() { return workerId; }
+
+        /** 租约令牌 */
+        public String getToken() { return token; }
+
+        /**
+         * 在租约保护下更新实例
+         *
+         * @param instance 要更新的字段（ID会被设置为租约对应的实例）
+         * @return 租约仍有效且更新成功返回true
+         */
+        public boolean update(WorkflowInstanceEntity instance) {
+            instance.setId(instanceId);
+            return instanceService.updateUnderLease(instance, workerId, token);
+        }
+    }
+
+    /**
+     * 处理中的认领
+     */
+    private static final class Claim {
+        private final Lease lease;
+        private volatile Future<?> future;
+
+        Claim(Lease lease) {
+            this.lease = lease;
+        }
+    }
+
+    private final WorkflowInstanceService instanceService;
+    private final String workerId;
+    private final InstanceProcessor processor;
+    private final int concurrency;
+    private final int batchSize;
+    private final Duration leaseDuration;
+    private final long pollIntervalMillis;
+
+    private final ThreadPoolExecutor processingPool;
+    private final ScheduledExecutorService scheduler;
+
+    /** 处理中的实例ID -> 认领 */
+    private final Map<String, Claim> inFlight = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+
+    /** 连续空轮询次数，用于退避 */
+    private int idlePolls;
+
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder leasesLost = new LongAdder();
+
+    /**
+     * 构造函数
+     *
+     * @param instanceService 工作流实例服务
+     * @param workerId 工作节点ID，集群内唯一（通常取主机名加进程号）
+     * @param processor 实例处理器
+     * @param concurrency 同时处理的最大实例数量
+     * @param batchSize 单次认领的最大数量
+     * @param leaseDuration 租约时长
+     * @param pollIntervalMillis 没有可认领实例时的轮询间隔（毫秒）
+     */
+    public InstanceLeaseWorker(WorkflowInstanceService instanceService, String workerId, InstanceProcessor processor,
+                               int concurrency, int batchSize, Duration leaseDuration, long pollIntervalMillis) {
+        this.instanceService = Objects.requireNonNull(instanceService, "实例服务不能为空");
+        this.workerId = Objects.requireNonNull(workerId, "工作节点ID不能为空");
+        this.processor = Objects.requireNonNull(processor, "实例处理器不能为空");
+        this.leaseDuration = Objects.requireNonNull(leaseDuration, "租约时长不能为空");
+        if (concurrency <= 0 || batchSize <= 0 || pollIntervalMillis <= 0 || leaseDuration.toMillis() < 3) {
+            throw new IllegalArgumentException("并发数量、认领批量、轮询间隔和租约时长必须大于0");
+        }
+        this.concurrency = concurrency;
+        this.batchSize = batchSize;
+        this.pollIntervalMillis = pollIntervalMillis;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.processingPool = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> {
+                Thread t = new Thread(r, "lease-worker-" + workerId + "-" + threadIndex.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        this.scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "lease-worker-" + workerId + "-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 启动认领和续约循环
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        scheduler.schedule(this::claimLoop, 0, TimeUnit.MILLISECONDS);
+        long renewInterval = leaseDuration.toMillis() / 3;
+        scheduler.scheduleWithFixedDelay(this::renewLeases, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+        log.info("租约工作者已启动: workerId={}, concurrency={}, batchSize={}, lease={}",
+                 workerId, concurrency, batchSize, leaseDuration);
+    }
+
+    /**
+     * 停止认领，等待处理中的实例结束
+     *
+     * 每个处理任务结束时释放自己的租约。超时后从未开始处理的实例直接释放租约，
+     * 正在处理的实例被中断并再等待一个超时时长；仍未结束的处理保留租约直到到期，
+     * 在此之前其它节点不会认领这些实例，到期后它们的迟到写入也会因令牌不匹配而失效。
+     *
+     * @param timeout 等待时间
+     * @param unit 时间单位
+     */
+    public void stop(long timeout, TimeUnit unit) {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+        processingPool.shutdown();
+        try {
+            if (!processingPool.awaitTermination(timeout, unit)) {
+                releaseNeverStarted(processingPool.shutdownNow());
+                processingPool.awaitTermination(timeout, unit);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            releaseNeverStarted(processingPool.shutdownNow());
+        }
+        // 续约在等待期间保持运行，处理任务全部结束后才停止
+        scheduler.shutdownNow();
+        if (!inFlight.isEmpty()) {
+            log.warn("停止时仍有实例在处理，租约保留到到期: workerId={}, instances={}", workerId, inFlight.keySet());
+        }
+        log.info("租约工作者已停止: workerId={}, processed={}, failed={}, leasesLost={}",
+                 workerId, getProcessedCount(), getFailedCount(), getLeasesLostCount());
+    }
+
+    /**
+     * 释放队列中从未开始处理的实例的租约
+     */
+    private void releaseNeverStarted(List<Runnable> neverStarted) {
+        for (Claim claim : new ArrayList<>(inFlight.values())) {
+            if (neverStarted.contains(claim.future) && inFlight.remove(claim.lease.getInstanceId(), claim)) {
+                release(claim.lease);
+            }
+        }
+    }
+
+    /**
+     * 认领循环：按空闲槽位认领并提交处理，没有实例时退避
+     */
+    private void claimLoop() {
+        if (!running) {
+            return;
+        }
+        long delay = pollIntervalMillis;
+        try {
+            int free = concurrency - inFlight.size();
+            if (free > 0) {
+                List<WorkflowInstanceEntity> instances =
+                    instanceService.claimRunnableInstances(workerId, Math.min(free, batchSize), leaseDuration);
+                claimed.add(instances.size());
+                for (WorkflowInstanceEntity instance : instances) {
+                    submit(instance);
+                }
+                if (!instances.isEmpty()) {
+                    idlePolls = 0;
+                    // 还有空闲槽位时立即继续认领
+                    delay = inFlight.size() < concurrency ? 0 : pollIntervalMillis;
+                } else {
+                    idlePolls = Math.min(idlePolls + 1, 5);
+                    delay = pollIntervalMillis << idlePolls;
+                }
+            }
+        } catch (Exception e) {
+            log.error("认领工作流实例失败: workerId={}", workerId, e);
+        } finally {
+            if (running) {
+                scheduler.schedule(this::claimLoop, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * 提交实例处理任务，处理完成后释放租约
+     */
+    private void submit(WorkflowInstanceEntity instance) {
+        String instanceId = instance.getId();
+        Claim claim = new Claim(new Lease(instanceId, instance.getLeaseToken()));
+        try {
+            // 提交和登记在同一把锁内完成，处理结束时的移除一定发生在登记之后
+            synchronized (inFlight) {
+                claim.future = processingPool.submit(() -> process(instance, claim));
+                inFlight.put(instanceId, claim);
+            }
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(instanceId, claim);
+            release(claim.lease);
+        }
+    }
+
+    private void process(WorkflowInstanceEntity instance, Claim claim) {
+        String instanceId = instance.getId();
+        try {
+            processor.process(instance, claim.lease);
+            processed.increment();
+        } catch (InterruptedException e) {
+            log.warn("实例处理被中断: workerId={}, instanceId={}", workerId, instanceId);
+        } catch (Exception e) {
+            failed.increment();
+            log.error("实例处理失败: workerId={}, instanceId={}", workerId, instanceId, e);
+        } finally {
+            synchronized (inFlight) {
+                inFlight.remove(instanceId, claim);
+            }
+            // 被中断（租约丢失）时清除中断标记，令牌已不匹配，释放只会匹配到0行
+            Thread.interrupted();
+            release(claim.lease);
+        }
+    }
+
+    private void release(Lease lease) {
+        try {
+            instanceService.releaseLease(workerId, lease.getInstanceId(), lease.getToken());
+        } catch (Exception e) {
+            log.warn("释放租约失败，等待租约到期: workerId={}, instanceId={}", workerId, lease.getInstanceId(), e);
+        }
+    }
+
+    /**
+     * 为处理中的实例续约，续约失败的实例已被其它节点认领，立即中断本地处理
+     */
+    private void renewLeases() {
+        Map<String, Claim> claims = new HashMap<>(inFlight);
+        if (claims.isEmpty()) {
+            return;
+        }
+        Map<String, String> leaseTokens = new HashMap<>();
+        claims.forEach((instanceId, claim) -> leaseTokens.put(instanceId, claim.lease.getToken()));
+        try {
+            Set<String> held = instanceService.renewLeases(workerId, leaseTokens, leaseDuration);
+            for (Map.Entry<String, Claim> entry : claims.entrySet()) {
+                if (held.contains(entry.getKey())) {
+                    continue;
+                }
+                Claim claim = entry.getValue();
+                if (claim.future.cancel(true)) {
+                    // 尚未开始执行的任务被取消后不会再运行，在这里移出
+                    inFlight.remove(entry.getKey(), claim);
+                    leasesLost.increment();
+                    log.warn("实例租约已丢失，中断处理: workerId={}, instanceId={}", workerId, entry.getKey());
+                }
+            }
+        } catch (Exception e) {
+            log.error("续约失败: workerId={}, count={}", workerId, claims.size(), e);
+        }
+    }
+
+    /** 工作节点ID */
+    public String getWorkerId() { return workerId; }
+
+    /** 处理中的实例数量 */
+    public int getInFlightCount() { return inFlight.size(); }
+
+    /** 已认领的实例数量 */
+    public long getClaimedCount() { return claimed.sum(); }
+
+    /** 处理成功的实例数量 */
+    public long getProcessedCount() { return processed.sum(); }
+
+    /** 处理失败的实例数量 */
+    public long getFailedCount() { return failed.sum(); }
+
+    /** 因租约丢失被中断的实例数量 */
+    public long getLeasesLostCount() { return leasesLost.sum(); }
+}
@@ -3,6 +3,7 @@ package com.tao.workflow.service;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.tao.workflow.entity.WorkflowDefinitionEntity;
+import com.tao.workflow.model.Workflow;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -50,6 +51,35 @@ public interface WorkflowDefinitionService {
      */
     WorkflowDefinitionEntity getLatestWorkflowDefinitionByName(String name);
 
+    /**
+     * 根据ID获取编译后的工作流
+     * 结果来自编译缓存，定义更新、状态变更后自动替换
+     * 
+     * @param workflowId 工作流ID
+     * @return 编译后的工作流，如果不存在则返回null
+     * @throws IllegalArgumentException 如果定义JSON无法编译
+     */
+    Workflow getCompiledWorkflow(String workflowId);
+
+    /**
+     * 根据名称和版本获取编译后的工作流
+     * 
+     * @param name 工作流名称
+     * @param version 版本号
+     * @return 编译后的工作流，如果不存在则返回null
+     * @throws IllegalArgumentException 如果定义JSON无法编译
+     */
+    Workflow getCompiledWorkflow(String name, String version);
+
+    /**
+     * 获取指定名称最新版本的编译后工作流
+     * 
+     * @param name 工作流名称
+     * @return 编译后的工作流，如果不存在则返回null
+     * @throws IllegalArgumentException 如果定义JSON无法编译
+     */
+    Workflow getLatestCompiledWorkflow(String name);
+
     /**
      * 获取所有激活状态的工作流定义
      * 
@@ -4,9 +4,11 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.tao.workflow.entity.WorkflowInstanceEntity;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 工作流实例服务接口
@@ -338,4 +340,59 @@ public interface WorkflowInstanceService {
      * @return 是否回退成功
      */
     boolean rollbackToStep(String instanceId, String targetStepId, String reason);
+
+    /**
+     * 认领一批可执行的工作流实例
+     * 在一条条件更新语句中锁定并写入租约，跳过其它节点正在认领的行，
+     * 多个工作节点并发认领时不会拿到同一个实例
+     * 
+     * @param workerId 工作节点ID
+     * @param batchSize 最多认领数量
+     * @param leaseDuration 租约时长
+     * @return 本次认领的实例列表
+     */
+    List<WorkflowInstanceEntity> claimRunnableInstances(String workerId, int batchSize, Duration leaseDuration);
+
+    /**
+     * 续约
+     * 只续约持有者和令牌都匹配的实例
+     * 
+     * @param workerId 工作节点ID
+     * @param leaseTokens 实例ID -> 认领时取得的租约令牌
+     * @param leaseDuration 租约时长（从当前时间起算）
+     * @return 续约成功（仍由该节点以该令牌持有）的实例ID集合
+     */
+    Set<String> renewLeases(String workerId, Map<String, String> leaseTokens, Duration leaseDuration);
+
+    /**
+     * 在租约保护下更新工作流实例
+     * 更新以租约持有者和令牌为条件，实例已被其它节点（或本节点的另一次认领）重新认领时不更新
+     * 
+     * @param instance 要更新的工作流实例（按ID更新非空字段，租约字段不会被写入）
+     * @param workerId 工作节点ID
+     * @param leaseToken 认领时取得的租约令牌
+     * @return 租约仍有效且更新成功返回true
+     */
+    boolean updateUnderLease(WorkflowInstanceEntity instance, String workerId, String leaseToken);
+
+    /**
+     * 释放租约
+     * 只有以该令牌持有租约的节点可以释放
+     * 
+     * @param workerId 工作节点ID
+     * @param instanceId 实例ID
+     * @param leaseToken 认领时取得的租约令牌
+     * @return 是否释放成功
+     */
+    boolean releaseLease(String workerId, String instanceId, String leaseToken);
+
+    /**
+     * 释放工作节点持有的全部租约
+     * 只应在该节点没有任何处理中的实例时调用（例如节点崩溃重启后），
+     * 正常停止时由各处理任务结束后逐个释放
+     * 
+     * @param workerId 工作节点ID
+     * @return 释放的数量
+     */
+    int releaseAllLeases(String workerId);
 }
\ No newline at end of file
@@ -0,0 +1,470 @@
+package com.tao.workflow.service;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.json.JSONUtil;
+import com.tao.workflow.engine.DefaultWorkflowEngine;
+import com.tao.workflow.engine.EngineEvent;
+import com.tao.workflow.engine.EngineEventBus;
+import com.tao.workflow.engine.StepExecutionResult;
+import com.tao.workflow.model.WorkflowInstance;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 引擎状态写后持久化桥接
+ * 订阅引擎的生命周期事件，把内存引擎中的实例状态和步骤执行历史异步写入数据库，
+ * 步骤线程上不产生任何数据库往返
+ *
+ * 写入方式：
+ * 1. 合并：同一实例在两次刷新之间的多次变更（状态、当前步骤、上下文）只记录实例ID，
+ *    刷新时读取实例的最新状态写一次
+ * 2. 批量：实例以upsert语句、执行历史以insert语句按JDBC批量写入
+ * 3. 触发：按刷新间隔定时触发，待写数量达到批量大小时提前触发
+ * 4. 容错：批量写入失败时逐行重试，数据本身无法写入的行（违反约束、超长等）记录日志后丢弃，
+ *    数据库不可用等其他错误则放回待写集合，下次刷新重试
+ *
+ * 实例进入最终状态时记录状态变更事件，刷新前实例已从引擎移除（清理或移交）的，按事件中的最终状态更新数据库。
+ * 持久化级别按工作流配置：不持久化、写后持久化（默认）或变更后立即触发刷新。
+ * 单机崩溃恢复仍由引擎的变更日志和快照负责（见 EngineStateStore 的持久化保证），
+ * 本桥接只负责让数据库中的数据尽快跟上引擎，数据库中的状态可能落后于引擎。
+ * 事件总线使用丢弃策略时，总线已满期间的变更可能漏写，需要完整同步时应配置为阻塞策略。
+ *
+ * @author tao
+ * @since 2024-01-15
+ */
+@Slf4j
+public class WriteBehindPersistenceBridge {
+
+    /**
+     * 持久化级别
+     */
+    public enum Durability {
+        /** 不写入数据库 */
+        NONE,
+        /** 写后持久化，按刷新间隔或批量大小触发 */
+        WRITE_BEHIND,
+        /** 变更后立即触发刷新（仍在刷新线程上执行，不阻塞步骤线程） */
+        IMMEDIATE
+    }
+
+    private static final String UPSERT_INSTANCE_SQL =
+        "INSERT INTO workflow_instance (id, workflow_id, workflow_name, status, current_step_id, context_data,"
+        + " started_by, started_time, completed_time, created_time, updated_time)"
+        + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+        + " ON CONFLICT (id) DO UPDATE SET status = EXCLUDED.status, current_step_id = EXCLUDED.current_step_id,"
+        + " context_data = EXCLUDED.context_data, started_time = EXCLUDED.started_time,"
+        + " completed_time = EXCLUDED.completed_time, updated_time = EXCLUDED.updated_time";
+
+    private static final String INSERT_HISTORY_SQL =
+        "INSERT INTO workflow_execution_history (id, instance_id, step_id, status, executor_name, output_data,"
+        + " error_message, started_time, completed_time, execution_time, retry_count, created_time)"
+        + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+        + " ON CONFLICT (id) DO NOTHING";
+
+    private static final String UPDATE_FINAL_STATE_SQL =
+        "UPDATE workflow_instance SET status = ?, completed_time = ?, updated_time = ? WHERE id = ?";
+
+    private final DefaultWorkflowEngine engine;
+    private final JdbcTemplate jdbcTemplate;
+    private final Durability defaultDurability;
+    private final int batchSize;
+    private final int maxPendingHistory;
+    private final long flushIntervalMillis;
+
+    /** 工作流ID -> 持久化级别 */
+    private final Map<String, Durability> durabilities = new ConcurrentHashMap<>();
+
+    /** 待写入的实例ID（合并同一实例的多次变更） */
+    private final Set<String> dirtyInstances = ConcurrentHashMap.newKeySet();
+
+    /** 实例ID -> 进入最终状态的事件，刷新时实例已被移除则按事件写入 */
+    private final Map<String, EngineEvent> finalStates = new ConcurrentHashMap<>();
+
+    /** 待写入的执行历史 */
+    private final ConcurrentLinkedQueue<Object[]> pendingHistory = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingHistoryCount = new AtomicInteger();
+
+    private final ScheduledExecutorService flushExecutor;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    /** 刷新锁，与start/stop使用的对象锁分开，stop等待刷新线程结束时不会阻塞排队的刷新 */
+    private final Object flushLock = new Object();
+    private EngineEventBus.Subscription subscription;
+
+    private final LongAdder instanceWrites = new LongAdder();
+    private final LongAdder coalescedUpdates = new LongAdder();
+    private final LongAdder historyWrites = new LongAdder();
+    private final LongAdder droppedHistory = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LongAdder rejectedRows = new LongAdder();
+
+    /**
+     * 构造函数
+     *
+     * @param engine 工作流引擎
+     * @param jdbcTemplate JDBC模板
+     * @param defaultDurability 未单独配置的工作流使用的持久化级别
+     * @param batchSize JDBC批量大小，待写数量达到该值时提前刷新
+     * @param flushIntervalMillis 刷新间隔（毫秒）
+     * @param maxPendingHistory 待写执行历史的上限，数据库不可用期间超过上限的最早记录被丢弃
+     */
+    public WriteBehindPersistenceBridge(DefaultWorkflowEngine engine, JdbcTemplate jdbcTemplate,
+                                        Durability defaultDurability, int batchSize,
+                                        long flushIntervalMillis, int maxPendingHistory) {
+        this.engine = Objects.requireNonNull(engine, "工作流引擎不能为空");
+        this.jdbcTemplate = Objects.requireNonNull(jdbcTemplate, "JDBC模板不能为空");
+        this.defaultDurability = Objects.requireNonNull(defaultDurability, "持久化级别不能为空");
+        if (batchSize <= 0 || flushIntervalMillis <= 0 || maxPendingHistory <= 0) {
+            throw new IllegalArgumentException("批量大小、刷新间隔和待写上限必须大于0");
+        }
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxPendingHistory = maxPendingHistory;
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "workflow-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 设置工作流的持久化级别
+     *
+     * @param workflowId 工作流ID
+     * @param durability 持久化级别，为null时恢复默认级别
+     */
+    public void setDurability(String workflowId, Durability durability) {
+        Objects.requireNonNull(workflowId, "工作流ID不能为空");
+        if (durability != null) {
+            durabilities.put(workflowId, durability);
+        } else {
+            durabilities.remove(workflowId);
+        }
+    }
+
+    /**
+     * 订阅引擎事件并启动定时刷新
+     */
+    public synchronized void start() {
+        if (subscription != null) {
+            return;
+        }
+        subscription = engine.subscribe("write-behind", this::onEvents);
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                                             TimeUnit.MILLISECONDS);
+        log.info("写后持久化已启动: durability={}, batchSize={}, flushInterval={}ms",
+                 defaultDurability, batchSize, flushIntervalMillis);
+    }
+
+    /**
+     * 取消订阅，写出全部待写数据后停止
+     */
+    public synchronized void stop() {
+        if (subscription == null) {
+            return;
+        }
+        subscription.cancel();
+        subscription = null;
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        log.info("写后持久化已停止: instanceWrites={}, coalesced={}, historyWrites={}",
+                 getInstanceWriteCount(), getCoalescedUpdateCount(), getHistoryWriteCount());
+    }
+
+    /**
+     * 处理一批引擎事件（事件总线的订阅线程）
+     */
+    private void onEvents(List<EngineEvent> events) {
+        boolean immediate = false;
+        for (EngineEvent event : events) {
+            Durability durability = durabilities.getOrDefault(event.getWorkflowId(), defaultDurability);
+            if (durability == Durability.NONE) {
+                continue;
+            }
+            immediate |= durability == Durability.IMMEDIATE;
+
+            if (!dirtyInstances.add(event.getInstanceId())) {
+                coalescedUpdates.increment();
+            }
+            if (event.getType() == EngineEvent.Type.STEP_FINISHED) {
+                addHistory(event);
+            } else if (event.getType() == EngineEvent.Type.INSTANCE_STATUS_CHANGED) {
+                if (event.getStatus().isFinalState()) {
+                    finalStates.put(event.getInstanceId(), event);
+                } else {
+                    finalStates.remove(event.getInstanceId());
+                }
+            }
+        }
+        if (immediate || dirtyInstances.size() + pendingHistoryCount.get() >= batchSize) {
+            requestFlush();
+        }
+    }
+
+    private void addHistory(EngineEvent event) {
+        StepExecutionResult result = event.getResult();
+        Map<String, Object> output = result.getOutputData();
+        pendingHistory.add(new Object[] {
+            IdUtil.fastSimpleUUID(),
+            event.getInstanceId(),
+            event.getStepId(),
+            result.getStatus().name(),
+            result.getExecutorName(),
+            output != null && !output.isEmpty() ? JSONUtil.toJsonStr(output) : null,
+            result.getErrorMessage(),
+            toTimestamp(result.getStartTime()),
+            toTimestamp(result.getEndTime()),
+            result.getDuration(),
+            result.getRetryCount(),
+            new Timestamp(event.getTimestamp())
+        });
+        if (pendingHistoryCount.incrementAndGet() > maxPendingHistory && pendingHistory.poll() != null) {
+            pendingHistoryCount.decrementAndGet();
+            droppedHistory.increment();
+        }
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(this::flushQuietly);
+            } catch (RuntimeException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (Exception e) {
+            flushFailures.increment();
+            log.error("写后持久化刷新失败，待下次刷新重试", e);
+        }
+    }
+
+    /**
+     * 写出全部待写数据
+     *
+     * 实例按最新状态写入；数据库不可用时未写入的实例和执行历史重新放回待写集合，下次刷新重试。
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            flushInstances();
+            flushHistory();
+        }
+    }
+
+    private void flushInstances() {
+        List<InstanceWrite> upserts = new ArrayList<>(Math.min(dirtyInstances.size(), batchSize));
+        List<InstanceWrite> finalUpdates = new ArrayList<>();
+        try {
+            Iterator<String> iterator = dirtyInstances.iterator();
+            while (iterator.hasNext()) {
+                String instanceId = iterator.next();
+                iterator.remove();
+                EngineEvent finalState = finalStates.remove(instanceId);
+                WorkflowInstance instance = engine.getWorkflowInstance(instanceId);
+                if (instance != null) {
+                    upserts.add(new InstanceWrite(instanceId, finalState, toInstanceRow(instance)));
+                } else if (finalState != null) {
+                    // 实例已从引擎移除（清理或移交），写入事件中的最终状态
+                    finalUpdates.add(new InstanceWrite(instanceId, finalState, toFinalStateRow(finalState)));
+                }
+                if (upserts.size() >= batchSize) {
+                    writeInstances(UPSERT_INSTANCE_SQL, upserts);
+                }
+                if (finalUpdates.size() >= batchSize) {
+                    writeInstances(UPDATE_FINAL_STATE_SQL, finalUpdates);
+                }
+            }
+            writeInstances(UPSERT_INSTANCE_SQL, upserts);
+            writeInstances(UPDATE_FINAL_STATE_SQL, finalUpdates);
+        } catch (RuntimeException e) {
+            // 已取出但尚未写入的实例放回待写集合
+            upserts.forEach(this::requeue);
+            finalUpdates.forEach(this::requeue);
+            throw e;
+        }
+    }
+
+    /**
+     * 写入一批实例，写入后清空列表
+     */
+    private void writeInstances(String sql, List<InstanceWrite> writes) {
+        try {
+            writeRows(sql, writes, write -> write.row, write -> "instance " + write.instanceId,
+                      this::requeue, instanceWrites);
+        } finally {
+            writes.clear();
+        }
+    }
+
+    private void requeue(InstanceWrite write) {
+        if (write.finalState != null) {
+            finalStates.putIfAbsent(write.instanceId, write.finalState);
+        }
+        dirtyInstances.add(write.instanceId);
+    }
+
+    private void flushHistory() {
+        List<Object[]> rows = new ArrayList<>(batchSize);
+        Object[] row;
+        while ((row = pendingHistory.poll()) != null) {
+            pendingHistoryCount.decrementAndGet();
+            rows.add(row);
+            if (rows.size() >= batchSize) {
+                writeHistory(rows);
+                rows.clear();
+            }
+        }
+        if (!rows.isEmpty()) {
+            writeHistory(rows);
+        }
+    }
+
+    private void writeHistory(List<Object[]> rows) {
+        writeRows(INSERT_HISTORY_SQL, rows, Function.identity(), row -> "history " + row[1] + "/" + row[2],
+                  row -> {
+                      pendingHistory.add(row);
+                      pendingHistoryCount.incrementAndGet();
+                  }, historyWrites);
+    }
+
+    /**
+     * 按JDBC批量写入，批量失败时逐行重试
+     *
+     * 逐行写入时违反约束或数据超长的行无法通过重试写入，记录日志后丢弃，避免一行数据阻塞全部持久化；
+     * 其他错误（如数据库不可用）时把该行及之后未写入的行交给 requeue 后抛出。
+     * 批量失败前可能已经写入部分行，各写入语句都是幂等的，逐行重试不会重复写入。
+     */
+    private <T> void writeRows(String sql, List<T> items, Function<T, Object[]> toRow, Function<T, String> describe,
+                               Consumer<T> requeue, LongAdder written) {
+        if (items.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(items.size());
+        for (T item : items) {
+            rows.add(toRow.apply(item));
+        }
+        try {
+            jdbcTemplate.batchUpdate(sql, rows);
+            written.add(rows.size());
+            return;
+        } catch (RuntimeException e) {
+            log.warn("批量写入失败，改为逐行写入: count={}, error={}", rows.size(), e.getMessage());
+        }
+
+        for (int i = 0; i < rows.size(); i++) {
+            try {
+                jdbcTemplate.update(sql, rows.get(i));
+                written.increment();
+            } catch (DataIntegrityViolationException e) {
+                rejectedRows.increment();
+                log.error("数据无法写入，已丢弃: {}", describe.apply(items.get(i)), e);
+            } catch (RuntimeException e) {
+                for (int j = i; j < items.size(); j++) {
+                    requeue.accept(items.get(j));
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static Object[] toInstanceRow(WorkflowInstance instance) {
+        Map<String, Object> context = instance.getContext();
+        return new Object[] {
+            instance.getId(),
+            instance.getWorkflowId(),
+            instance.getName(),
+            instance.getStatus() != null ? instance.getStatus().name() : null,
+            instance.getCurrentStepId(),
+            context.isEmpty() ? null : JSONUtil.toJsonStr(context),
+            instance.getStartUserId(),
+            toTimestamp(instance.getStartTime()),
+            toTimestamp(instance.getEndTime()),
+            toTimestamp(instance.getCreateTime()),
+            toTimestamp(instance.getUpdateTime() != null ? instance.getUpdateTime() : LocalDateTime.now())
+        };
+    }
+
+    private static Object[] toFinalStateRow(EngineEvent event) {
+        Timestamp time = new Timestamp(event.getTimestamp());
+        return new Object[] {event.getStatus().name(), time, time, event.getInstanceId()};
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime time) {
+        return time != null ? Timestamp.valueOf(time) : null;
+    }
+
+    private static Timestamp toTimestamp(long epochMillis) {
+        return epochMillis > 0 ? Timestamp.from(Instant.ofEpochMilli(epochMillis)) : null;
+    }
+
+    /** 已写入的实例行数 */
+    public long getInstanceWriteCount() { return instanceWrites.sum(); }
+
+    /** 被合并（未单独写入）的实例变更数量 */
+    public long getCoalescedUpdateCount() { return coalescedUpdates.sum(); }
+
+    /** 已写入的执行历史行数 */
+    public long getHistoryWriteCount() { return historyWrites.sum(); }
+
+    /** 因待写上限被丢弃的执行历史数量 */
+    public long getDroppedHistoryCount() { return droppedHistory.sum(); }
+
+    /** 因数据无法写入被丢弃的行数 */
+    public long getRejectedRowCount() { return rejectedRows.sum(); }
+
+    /** 刷新失败次数 */
+    public long getFlushFailureCount() { return flushFailures.sum(); }
+
+    /** 待写入的实例数量 */
+    public int getDirtyInstanceCount() { return dirtyInstances.size(); }
+
+    /** 待写入的执行历史数量 */
+    public int getPendingHistoryCount() { return pendingHistoryCount.get(); }
+
+    /**
+     * 一次实例写入
+     */
+    private static final class InstanceWrite {
+        private final String instanceId;
+        /** 进入最终状态的事件，重新放回待写集合时一并恢复 */
+        private final EngineEvent finalState;
+        private final Object[] row;
+
+        private InstanceWrite(String instanceId, EngineEvent finalState, Object[] row) {
+            this.instanceId = instanceId;
+            this.finalState = finalState;
+            this.row = row;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.tao.workflow.service.impl;
+
+import com.tao.workflow.entity.WorkflowDefinitionEntity;
+import com.tao.workflow.model.Workflow;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 编译后工作流的有界缓存
+ * 按工作流ID、名称+版本以及名称的最新版本三种方式查找同一份编译结果
+ *
+ * 并发约定：
+ * 1. 读取不加锁，命中时直接返回缓存的 {@link Workflow}（不可变对象，可被多个线程共享）
+ * 2. 更新定义时先在锁外编译新版本，再在锁内一次性替换各个索引，
+ *    正在启动的实例要么拿到旧版本要么拿到新版本，不会等待
+ * 3. 每次替换或失效都会推进代数，未命中时加载的结果只有在加载期间代数没有变化时才写入缓存，
+ *    避免并发加载把已被替换的旧定义写回缓存
+ * 4. 超过容量时淘汰最久未访问的条目
+ *
+ * @author tao
+ * @since 2024-01-15
+ */
+final class CompiledWorkflowCache {
+
+    /**
+     * 缓存条目
+     */
+    private static final class Entry {
+        final Workflow workflow;
+        final String uniqueKey;
+        final String name;
+        volatile long lastAccess;
+
+        Entry(Workflow workflow, String uniqueKey, String name, long lastAccess) {
+            this.workflow = workflow;
+            this.uniqueKey = uniqueKey;
+            this.name = name;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final int maxSize;
+
+    /** 工作流ID -> 缓存条目 */
+    private final Map<String, Entry> byId = new ConcurrentHashMap<>();
+
+    /** 名称:版本 -> 工作流ID */
+    private final Map<String, String> idByUniqueKey = new ConcurrentHashMap<>();
+
+    /** 名称 -> 最新版本的工作流ID */
+    private final Map<String, String> latestIdByName = new ConcurrentHashMap<>();
+
+    /** 失效代数 */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** 访问时钟，用于近似LRU淘汰 */
+    private final AtomicLong accessClock = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 构造函数
+     *
+     * @param maxSize 最大缓存条目数
+     */
+    CompiledWorkflowCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("缓存容量必须大于0");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 按工作流ID获取
+     *
+     * @param workflowId 工作流ID
+     * @param loader 未命中时加载定义实体
+     * @return 编译后的工作流，定义不存在时返回null
+     */
+    Workflow getById(String workflowId, Supplier<WorkflowDefinitionEntity> loader) {
+        Workflow cached = lookup(workflowId);
+        return cached != null ? cached : load(loader, false);
+    }
+
+    /**
+     * 按名称和版本获取
+     *
+     * @param uniqueKey 名称:版本
+     * @param loader 未命中时加载定义实体
+     * @return 编译后的工作流，定义不存在时返回null
+     */
+    Workflow getByUniqueKey(String uniqueKey, Supplier<WorkflowDefinitionEntity> loader) {
+        Workflow cached = lookup(idByUniqueKey.get(uniqueKey));
+        return cached != null ? cached : load(loader, false);
+    }
+
+    /**
+     * 获取名称的最新版本
+     *
+     * @param name 工作流名称
+     * @param loader 未命中时加载最新版本的定义实体
+     * @return 编译后的工作流，定义不存在时返回null
+     */
+    Workflow getLatest(String name, Supplier<WorkflowDefinitionEntity> loader) {
+        Workflow cached = lookup(latestIdByName.get(name));
+        return cached != null ? cached : load(loader, true);
+    }
+
+    /**
+     * 用新的定义替换缓存（原子切换）
+     * 定义无法编译时移除旧条目，下次访问时重新加载并把编译错误抛给调用方
+     *
+     * @param definition 最新的定义实体
+     */
+    void refresh(WorkflowDefinitionEntity definition) {
+        Workflow workflow;
+        try {
+            workflow = WorkflowDefinitionCompiler.compile(definition);
+        } catch (IllegalArgumentException e) {
+            evict(definition.getWorkflowId());
+            throw e;
+        }
+        synchronized (this) {
+            generation.incrementAndGet();
+            Entry previous = byId.get(definition.getWorkflowId());
+            if (previous != null && !previous.uniqueKey.equals(definition.getUniqueKey())) {
+                idByUniqueKey.remove(previous.uniqueKey, definition.getWorkflowId());
+                latestIdByName.remove(previous.name);
+            }
+            install(definition, workflow, false);
+            latestIdByName.remove(definition.getName());
+        }
+    }
+
+    /**
+     * 使名称的最新版本映射失效（新增版本后调用）
+     *
+     * @param name 工作流名称
+     */
+    synchronized void invalidateLatest(String name) {
+        generation.incrementAndGet();
+        latestIdByName.remove(name);
+    }
+
+    /**
+     * 移除工作流的缓存条目
+     *
+     * @param workflowId 工作流ID
+     */
+    synchronized void evict(String workflowId) {
+        generation.incrementAndGet();
+        Entry entry = byId.remove(workflowId);
+        if (entry != null) {
+            unlink(workflowId, entry);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    synchronized void clear() {
+        generation.incrementAndGet();
+        byId.clear();
+        idByUniqueKey.clear();
+        latestIdByName.clear();
+    }
+
+    /** 缓存条目数 */
+    int size() { return byId.size(); }
+
+    /** 命中次数 */
+    long getHitCount() { return hits.sum(); }
+
+    /** 未命中次数 */
+    long getMissCount() { return misses.sum(); }
+
+    /** 淘汰次数 */
+    long getEvictionCount() { return evictions.sum(); }
+
+    private Workflow lookup(String workflowId) {
+        Entry entry = workflowId != null ? byId.get(workflowId) : null;
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        entry.lastAccess = accessClock.incrementAndGet();
+        hits.increment();
+        return entry.workflow;
+    }
+
+    /**
+     * 加载并编译定义，加载期间没有发生替换或失效时写入缓存
+     */
+    private Workflow load(Supplier<WorkflowDefinitionEntity> loader, boolean latest) {
+        long observed = generation.get();
+        WorkflowDefinitionEntity definition = loader.get();
+        if (definition == null) {
+            return null;
+        }
+        Workflow workflow = WorkflowDefinitionCompiler.compile(definition);
+        synchronized (this) {
+            if (generation.get() == observed) {
+                install(definition, workflow, latest);
+            }
+        }
+        return workflow;
+    }
+
+    /**
+     * 写入各个索引，调用方持有锁
+     */
+    private void install(WorkflowDefinitionEntity definition, Workflow workflow, boolean latest) {
+        String workflowId = definition.getWorkflowId();
+        byId.put(workflowId, new Entry(workflow, definition.getUniqueKey(), definition.getName(),
+                                       accessClock.incrementAndGet()));
+        idByUniqueKey.put(definition.getUniqueKey(), workflowId);
+        if (latest) {
+            latestIdByName.put(definition.getName(), workflowId);
+        }
+        while (byId.size() > maxSize) {
+            evictEldest();
+        }
+    }
+
+    private void evictEldest() {
+        String eldestId = null;
+        Entry eldest = null;
+        for (Map.Entry<String, Entry> candidate : byId.entrySet()) {
+            if (eldest == null || candidate.getValue().lastAccess < eldest.lastAccess) {
+                eldestId = candidate.getKey();
+                eldest = candidate.getValue();
+            }
+        }
+        if (eldestId != null && byId.remove(eldestId, eldest)) {
+            unlink(eldestId, eldest);
+            evictions.increment();
+        }
+    }
+
+    private void unlink(String workflowId, Entry entry) {
+        idByUniqueKey.remove(entry.uniqueKey, workflowId);
+        latestIdByName.remove(entry.name, workflowId);
+    }
+}
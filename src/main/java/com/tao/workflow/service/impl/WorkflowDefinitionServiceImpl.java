@@ -8,10 +8,13 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tao.workflow.entity.WorkflowDefinitionEntity;
 import com.tao.workflow.mapper.WorkflowDefinitionMapper;
+import com.tao.workflow.model.Workflow;
 import com.tao.workflow.service.WorkflowDefinitionService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -31,6 +34,17 @@ import java.util.Map;
 public class WorkflowDefinitionServiceImpl extends ServiceImpl<WorkflowDefinitionMapper, WorkflowDefinitionEntity> 
         implements WorkflowDefinitionService {
 
+    /**
+     * 编译缓存的最大条目数
+     */
+    private static final int COMPILED_WORKFLOW_CACHE_SIZE = 1024;
+
+    /**
+     * 编译后工作流的缓存
+     * 定义的变更在事务提交后才替换缓存，未提交或回滚的修改不会被其它线程读到
+     */
+    private final CompiledWorkflowCache compiledWorkflows = new CompiledWorkflowCache(COMPILED_WORKFLOW_CACHE_SIZE);
+
     /**
      * 创建工作流定义
      * 
@@ -74,6 +88,10 @@ public class WorkflowDefinitionServiceImpl extends ServiceImpl<WorkflowDefinitio
             throw new RuntimeException("保存工作流定义失败");
         }
         
+        // 同名工作流的最新版本可能已变化
+        String name = workflowDefinition.getName();
+        afterCommit(() -> compiledWorkflows.invalidateLatest(name));
+        
         log.info("工作流定义创建成功: id={}, name={}", workflowDefinition.getWorkflowId(), workflowDefinition.getName());
         return workflowDefinition;
     }
@@ -124,6 +142,56 @@ public class WorkflowDefinitionServiceImpl extends ServiceImpl<WorkflowDefinitio
         return baseMapper.selectLatestByName(name);
     }
 
+    /**
+     * 根据ID获取编译后的工作流
+     * 
+     * @param workflowId 工作流ID
+     * @return 编译后的工作流，如果不存在则返回null
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Workflow getCompiledWorkflow(String workflowId) {
+        if (StrUtil.isBlank(workflowId)) {
+            return null;
+        }
+        
+        return compiledWorkflows.getById(workflowId, () -> getWorkflowDefinitionById(workflowId));
+    }
+
+    /**
+     * 根据名称和版本获取编译后的工作流
+     * 
+     * @param name 工作流名称
+     * @param version 版本号
+     * @return 编译后的工作流，如果不存在则返回null
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Workflow getCompiledWorkflow(String name, String version) {
+        if (StrUtil.isBlank(name) || StrUtil.isBlank(version)) {
+            return null;
+        }
+        
+        return compiledWorkflows.getByUniqueKey(name + ":" + version,
+            () -> getWorkflowDefinitionByNameAndVersion(name, version));
+    }
+
+    /**
+     * 获取指定名称最新版本的编译后工作流
+     * 
+     * @param name 工作流名称
+     * @return 编译后的工作流，如果不存在则返回null
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Workflow getLatestCompiledWorkflow(String name) {
+        if (StrUtil.isBlank(name)) {
+            return null;
+        }
+        
+        return compiledWorkflows.getLatest(name, () -> getLatestWorkflowDefinitionByName(name));
+    }
+
     /**
      * 获取所有激活状态的工作流定义
      * 
@@ -191,7 +259,9 @@ public class WorkflowDefinitionServiceImpl extends ServiceImpl<WorkflowDefinitio
         }
         
         log.info("工作流定义更新成功: {}", workflowDefinition.getWorkflowId());
-        return getWorkflowDefinitionById(workflowDefinition.getWorkflowId());
+        WorkflowDefinitionEntity updatedDefinition = getWorkflowDefinitionById(workflowDefinition.getWorkflowId());
+        afterCommit(() -> refreshCompiledWorkflow(updatedDefinition));
+        return updatedDefinition;
     }
 
     /**
@@ -244,6 +314,9 @@ public class WorkflowDefinitionServiceImpl extends ServiceImpl<WorkflowDefinitio
         // TODO: 添加检查逻辑
         
         int result = baseMapper.softDelete(workflowId);
+        if (result > 0) {
+            afterCommit(() -> compiledWorkflows.evict(workflowId));
+        }
         return result > 0;
     }
 
@@ -258,6 +331,14 @@ public class WorkflowDefinitionServiceImpl extends ServiceImpl<WorkflowDefinitio
         log.info("恢复工作流定义: {}", workflowId);
         
         int result = baseMapper.restore(workflowId);
+        if (result > 0) {
+            // 恢复的可能是更新的版本，最新版本需要重新查询
+            WorkflowDefinitionEntity restored = getWorkflowDefinitionById(workflowId);
+            if (restored != null) {
+                String name = restored.getName();
+                afterCommit(() -> compiledWorkflows.invalidateLatest(name));
+            }
+        }
         return result > 0;
     }
 
@@ -275,7 +356,12 @@ public class WorkflowDefinitionServiceImpl extends ServiceImpl<WorkflowDefinitio
         }
         
         log.info("批量更新工作流定义状态: ids={}, status={}", workflowIds, status);
-        return baseMapper.batchUpdateStatus(workflowIds, status);
+        int updated = baseMapper.batchUpdateStatus(workflowIds, status);
+        
+        // 批量更新不逐条重新查询，移除缓存后按需重新加载
+        List<String> evictedIds = List.copyOf(workflowIds);
+        afterCommit(() -> evictedIds.forEach(compiledWorkflows::evict));
+        return updated;
     }
 
     /**
@@ -573,6 +659,47 @@ public class WorkflowDefinitionServiceImpl extends ServiceImpl<WorkflowDefinitio
         definition.setStatus(status);
         definition.setUpdatedAt(LocalDateTime.now());
         
-        return updateById(definition);
+        boolean updated = updateById(definition);
+        if (updated) {
+            afterCommit(() -> refreshCompiledWorkflow(definition));
+        }
+        return updated;
+    }
+
+    /**
+     * 用最新的定义替换编译缓存
+     * 定义无法编译时只移除缓存并记录日志，编译错误在下次获取时抛给调用方
+     * 
+     * @param definition 最新的工作流定义
+     */
+    private void refreshCompiledWorkflow(WorkflowDefinitionEntity definition) {
+        if (definition == null) {
+            return;
+        }
+        
+        try {
+            compiledWorkflows.refresh(definition);
+        } catch (IllegalArgumentException e) {
+            log.warn("工作流定义编译失败，已移除缓存: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 在当前事务提交后执行，没有事务时立即执行
+     * 
+     * @param action 要执行的操作
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 }
\ No newline at end of file
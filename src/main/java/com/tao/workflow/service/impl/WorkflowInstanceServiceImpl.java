@@ -3,6 +3,8 @@ package com.tao.workflow.service.impl;
 import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -13,10 +15,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * 工作流实例服务实现类
@@ -661,6 +668,174 @@ public class WorkflowInstanceServiceImpl extends ServiceImpl<WorkflowInstanceMap
         return updateCurrentStep(instanceId, targetStepId);
     }
 
+    /**
+     * 认领一批可执行的工作流实例
+     * 子查询按更新时间选出未被持有或租约已过期的实例，并通过FOR UPDATE SKIP LOCKED跳过
+     * 其它节点正在认领的行；外层UPDATE在同一条语句中写入租约。租约时间使用数据库时钟，
+     * 不受各工作节点之间时钟偏差的影响
+     * 
+     * @param workerId 工作节点ID
+     * @param batchSize 最多认领数量
+     * @param leaseDuration 租约时长
+     * @return 本次认领的实例列表
+     */
+    @Override
+    public List<WorkflowInstanceEntity> claimRunnableInstances(String workerId, int batchSize, Duration leaseDuration) {
+        if (StrUtil.isBlank(workerId)) {
+            throw new IllegalArgumentException("工作节点ID不能为空");
+        }
+        if (batchSize <= 0) {
+            return List.of();
+        }
+        
+        String leaseToken = IdUtil.fastSimpleUUID();
+        int claimed = baseMapper.update(null, new LambdaUpdateWrapper<WorkflowInstanceEntity>()
+            .set(WorkflowInstanceEntity::getLeaseOwner, workerId)
+            .set(WorkflowInstanceEntity::getLeaseToken, leaseToken)
+            .setSql(leaseExpireSql(leaseDuration))
+            .inSql(WorkflowInstanceEntity::getId, claimCandidatesSql(batchSize)));
+        if (claimed == 0) {
+            return List.of();
+        }
+        
+        log.debug("认领工作流实例: workerId={}, count={}", workerId, claimed);
+        return list(new LambdaQueryWrapper<WorkflowInstanceEntity>()
+            .eq(WorkflowInstanceEntity::getLeaseToken, leaseToken));
+    }
+
+    /**
+     * 续约
+     * 同一次认领的实例共享令牌，按令牌分组续约；只续约持有者和令牌都匹配的实例，
+     * 已被重新认领的实例不在返回结果中
+     * 
+     * @param workerId 工作节点ID
+     * @param leaseTokens 实例ID -> 租约令牌
+     * @param leaseDuration 租约时长（从当前时间起算）
+     * @return 续约成功的实例ID集合
+     */
+    @Override
+    public Set<String> renewLeases(String workerId, Map<String, String> leaseTokens, Duration leaseDuration) {
+        if (leaseTokens == null || leaseTokens.isEmpty()) {
+            return Set.of();
+        }
+        
+        Map<String, List<String>> byToken = new HashMap<>();
+        leaseTokens.forEach((instanceId, token) ->
+            byToken.computeIfAbsent(token, k -> new ArrayList<>()).add(instanceId));
+        
+        int renewed = 0;
+        for (Map.Entry<String, List<String>> entry : byToken.entrySet()) {
+            renewed += baseMapper.update(null, new LambdaUpdateWrapper<WorkflowInstanceEntity>()
+                .setSql(leaseExpireSql(leaseDuration))
+                .eq(WorkflowInstanceEntity::getLeaseOwner, workerId)
+                .eq(WorkflowInstanceEntity::getLeaseToken, entry.getKey())
+                .in(WorkflowInstanceEntity::getId, entry.getValue()));
+        }
+        if (renewed == leaseTokens.size()) {
+            return new HashSet<>(leaseTokens.keySet());
+        }
+        
+        // 部分租约已丢失，查出仍以原令牌持有的实例
+        Set<String> held = new HashSet<>();
+        for (WorkflowInstanceEntity instance : list(new LambdaQueryWrapper<WorkflowInstanceEntity>()
+                .select(WorkflowInstanceEntity::getId, WorkflowInstanceEntity::getLeaseToken)
+                .eq(WorkflowInstanceEntity::getLeaseOwner, workerId)
+                .in(WorkflowInstanceEntity::getId, leaseTokens.keySet()))) {
+            if (Objects.equals(leaseTokens.get(instance.getId()), instance.getLeaseToken())) {
+                held.add(instance.getId());
+            }
+        }
+        log.warn("部分租约已丢失: workerId={}, lost={}", workerId, leaseTokens.size() - held.size());
+        return held;
+    }
+
+    /**
+     * 在租约保护下更新工作流实例
+     * 
+     * @param instance 要更新的工作流实例
+     * @param workerId 工作节点ID
+     * @param leaseToken 租约令牌
+     * @return 租约仍有效且更新成功返回true
+     */
+    @Override
+    public boolean updateUnderLease(WorkflowInstanceEntity instance, String workerId, String leaseToken) {
+        if (instance == null || StrUtil.isBlank(instance.getId()) || StrUtil.isBlank(leaseToken)) {
+            throw new IllegalArgumentException("实例ID和租约令牌不能为空");
+        }
+        
+        boolean updated = baseMapper.update(instance, new LambdaUpdateWrapper<WorkflowInstanceEntity>()
+            .eq(WorkflowInstanceEntity::getId, instance.getId())
+            .eq(WorkflowInstanceEntity::getLeaseOwner, workerId)
+            .eq(WorkflowInstanceEntity::getLeaseToken, leaseToken)) > 0;
+        if (!updated) {
+            log.warn("租约已丢失，更新未生效: workerId={}, instanceId={}", workerId, instance.getId());
+        }
+        return updated;
+    }
+
+    /**
+     * 释放租约
+     * 
+     * @param workerId 工作节点ID
+     * @param instanceId 实例ID
+     * @param leaseToken 租约令牌
+     * @return 是否释放成功
+     */
+    @Override
+    public boolean releaseLease(String workerId, String instanceId, String leaseToken) {
+        return baseMapper.update(null, clearLease()
+            .eq(WorkflowInstanceEntity::getId, instanceId)
+            .eq(WorkflowInstanceEntity::getLeaseOwner, workerId)
+            .eq(WorkflowInstanceEntity::getLeaseToken, leaseToken)) > 0;
+    }
+
+    /**
+     * 释放工作节点持有的全部租约
+     * 
+     * @param workerId 工作节点ID
+     * @return 释放的数量
+     */
+    @Override
+    public int releaseAllLeases(String workerId) {
+        int released = baseMapper.update(null, clearLease()
+            .eq(WorkflowInstanceEntity::getLeaseOwner, workerId));
+        log.info("释放工作节点的全部租约: workerId={}, count={}", workerId, released);
+        return released;
+    }
+
+    /**
+     * 可认领实例的子查询
+     * 选出未被持有或租约已过期的可执行实例，跳过其它事务已锁定的行
+     */
+    static String claimCandidatesSql(int batchSize) {
+        return "SELECT id FROM workflow_instance"
+            + " WHERE status IN ('" + WorkflowInstanceEntity.Status.CREATED.getCode() + "', '"
+            + WorkflowInstanceEntity.Status.RUNNING.getCode() + "')"
+            + " AND (lease_owner IS NULL OR lease_expire_time < now())"
+            + " ORDER BY updated_time LIMIT " + batchSize
+            + " FOR UPDATE SKIP LOCKED";
+    }
+
+    /**
+     * 租约到期时间的赋值语句（以数据库时钟为准）
+     */
+    static String leaseExpireSql(Duration leaseDuration) {
+        if (leaseDuration == null || leaseDuration.isNegative() || leaseDuration.isZero()) {
+            throw new IllegalArgumentException("租约时长必须大于0");
+        }
+        return "lease_expire_time = now() + interval '" + leaseDuration.toMillis() + " milliseconds'";
+    }
+
+    /**
+     * 清空租约字段的更新条件
+     */
+    private static LambdaUpdateWrapper<WorkflowInstanceEntity> clearLease() {
+        return new LambdaUpdateWrapper<WorkflowInstanceEntity>()
+            .set(WorkflowInstanceEntity::getLeaseOwner, null)
+            .set(WorkflowInstanceEntity::getLeaseToken, null)
+            .set(WorkflowInstanceEntity::getLeaseExpireTime, null);
+    }
+
     /**
      * 更新实例状态的通用方法
      * 
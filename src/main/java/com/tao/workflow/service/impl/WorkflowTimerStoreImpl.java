@@ -0,0 +1,61 @@
+package com.tao.workflow.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.tao.workflow.engine.PersistentTimer;
+import com.tao.workflow.engine.TimerStore;
+import com.tao.workflow.entity.WorkflowTimerEntity;
+import com.tao.workflow.mapper.WorkflowTimerMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 数据库定时器存储实现类
+ * 将引擎定时器保存到workflow_timer表，通过EngineConfiguration.setTimerStore启用
+ *
+ * @author tao
+ * @since 2024-01-15
+ */
+@Slf4j
+@Service
+public class WorkflowTimerStoreImpl extends ServiceImpl<WorkflowTimerMapper, WorkflowTimerEntity> implements TimerStore {
+
+    @Override
+    public void save(PersistentTimer timer) {
+        WorkflowTimerEntity entity = new WorkflowTimerEntity()
+            .setId(timer.getTimerId())
+            .setInstanceId(timer.getInstanceId())
+            .setStepId(timer.getStepId())
+            .setTimerType(timer.getTimerType().name())
+            .setDueTime(timer.getDueTime())
+            .setUserId(timer.getUserId());
+        save(entity);
+    }
+
+    @Override
+    public void delete(String timerId) {
+        removeById(timerId);
+    }
+
+    @Override
+    public List<PersistentTimer> loadPending() {
+        LambdaQueryWrapper<WorkflowTimerEntity> wrapper = new LambdaQueryWrapper<>();
+        wrapper.orderByAsc(WorkflowTimerEntity::getDueTime);
+
+        List<PersistentTimer> timers = list(wrapper).stream()
+            .map(entity -> new PersistentTimer(
+                entity.getId(),
+                entity.getInstanceId(),
+                entity.getStepId(),
+                PersistentTimer.TimerType.valueOf(entity.getTimerType()),
+                entity.getDueTime(),
+                entity.getUserId()))
+            .collect(Collectors.toList());
+
+        log.info("加载挂起的定时器: {} 个", timers.size());
+        return timers;
+    }
+}
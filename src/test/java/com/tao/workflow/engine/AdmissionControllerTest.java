@@ -0,0 +1,115 @@
+package com.tao.workflow.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 启动准入控制测试
+ *
+ * @author Tao
+ * @version 1.0
+ */
+class AdmissionControllerTest {
+
+    @Test
+    void tokenBucketAllowsBurstThenRejects() throws WorkflowException {
+        AdmissionController controller = new AdmissionController(
+            1, 3, 0, 0, AdmissionController.OverloadPolicy.REJECT, () -> 0);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(AdmissionController.Decision.ADMIT, controller.admit("order"));
+        }
+        WorkflowException e = assertThrows(WorkflowException.class, () -> controller.admit("order"));
+
+        assertEquals(WorkflowException.WorkflowErrorType.OVERLOAD_ERROR, e.getErrorType());
+        assertEquals(AdmissionController.RATE_LIMITED, e.getErrorCode());
+        assertEquals(3, controller.getAdmittedCount());
+        assertEquals(1, controller.getRejectedCount());
+    }
+
+    @Test
+    void tokenBucketsArePerWorkflow() throws WorkflowException {
+        AdmissionController controller = new AdmissionController(
+            1, 1, 0, 0, AdmissionController.OverloadPolicy.REJECT, () -> 0);
+
+        assertEquals(AdmissionController.Decision.ADMIT, controller.admit("order"));
+        assertEquals(AdmissionController.Decision.ADMIT, controller.admit("leave"));
+        assertThrows(WorkflowException.class, () -> controller.admit("order"));
+    }
+
+    @Test
+    void tokenBucketRefillsOverTime() throws Exception {
+        AdmissionController controller = new AdmissionController(
+            100, 1, 0, 0, AdmissionController.OverloadPolicy.REJECT, () -> 0);
+
+        assertEquals(AdmissionController.Decision.ADMIT, controller.admit("order"));
+        assertThrows(WorkflowException.class, () -> controller.admit("order"));
+        Thread.sleep(30);
+
+        assertEquals(AdmissionController.Decision.ADMIT, controller.admit("order"));
+    }
+
+    @Test
+    void rateLimitOverrideReplacesDefault() throws WorkflowException {
+        AdmissionController controller = new AdmissionController(
+            0, 1, 0, 0, AdmissionController.OverloadPolicy.REJECT, () -> 0);
+        for (int i = 0; i < 5; i++) {
+            controller.admit("order");
+        }
+
+        controller.setRateLimit("order", 1, 2);
+
+        controller.admit("order");
+        controller.admit("order");
+        assertThrows(WorkflowException.class, () -> controller.admit("order"));
+    }
+
+    @Test
+    void inFlightLimitRejectsUntilReleased() throws WorkflowException {
+        AdmissionController controller = new AdmissionController(
+            0, 1, 2, 0, AdmissionController.OverloadPolicy.REJECT, () -> 0);
+
+        controller.admit("order");
+        controller.admit("order");
+        WorkflowException e = assertThrows(WorkflowException.class, () -> controller.admit("order"));
+        assertEquals(AdmissionController.IN_FLIGHT_LIMIT, e.getErrorCode());
+        assertEquals(0, controller.getAvailableInFlight());
+
+        controller.release();
+
+        assertEquals(AdmissionController.Decision.ADMIT, controller.admit("order"));
+    }
+
+    @Test
+    void queueWatermarkDefersWithoutTakingPermit() throws WorkflowException {
+        AtomicInteger depth = new AtomicInteger(10);
+        AdmissionController controller = new AdmissionController(
+            0, 1, 1, 10, AdmissionController.OverloadPolicy.DEFER, depth::get);
+
+        assertEquals(AdmissionController.Decision.DEFER, controller.admit("order"));
+        assertEquals(1, controller.getAvailableInFlight());
+        assertFalse(controller.tryAdmitDeferred());
+
+        depth.set(0);
+
+        assertTrue(controller.tryAdmitDeferred());
+        assertFalse(controller.tryAdmitDeferred());
+        assertEquals(1, controller.getDeferredCount());
+    }
+
+    @Test
+    void queueWatermarkRejectsUnderRejectPolicy() {
+        AdmissionController controller = new AdmissionController(
+            0, 1, 0, 5, AdmissionController.OverloadPolicy.REJECT, () -> 5);
+
+        WorkflowException e = assertThrows(WorkflowException.class, () -> controller.admit("order"));
+
+        assertEquals(AdmissionController.QUEUE_OVERLOADED, e.getErrorCode());
+    }
+}
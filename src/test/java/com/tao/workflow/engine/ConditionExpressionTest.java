@@ -0,0 +1,122 @@
+package com.tao.workflow.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 条件表达式测试
+ *
+ * @author Tao
+ * @version 1.0
+ */
+class ConditionExpressionTest {
+
+    @Test
+    void numbersCompareByValueAcrossTypes() {
+        Map<String, Object> vars = Collections.singletonMap("amount", new BigDecimal("1000.0"));
+
+        assertTrue(eval("amount >= 1000", vars));
+        assertTrue(eval("amount == 1000", vars));
+        assertFalse(eval("amount > 1000", vars));
+        assertTrue(eval("amount < 1000.5", Collections.singletonMap("amount", 1000L)));
+    }
+
+    @Test
+    void logicalOperatorsFollowPrecedence() {
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("a", true);
+        vars.put("b", false);
+        vars.put("c", true);
+
+        assertTrue(eval("a || b && !c", vars));
+        assertFalse(eval("(a || b) && !c", vars));
+        assertTrue(eval("a and not b or false", vars));
+    }
+
+    @Test
+    void nestedPathsResolveThroughMaps() {
+        Map<String, Object> order = new HashMap<>();
+        order.put("amount", 250);
+        order.put("level", "VIP");
+        Map<String, Object> vars = Collections.singletonMap("order", order);
+
+        assertTrue(eval("order.amount > 100 && order.level == 'VIP'", vars));
+        assertFalse(eval("order.customer.name == 'x'", vars));
+        assertFalse(eval("exists(order.customer)", vars));
+        assertTrue(eval("exists(order.level)", vars));
+    }
+
+    @Test
+    void inListMatchesMembers() {
+        Map<String, Object> vars = Collections.singletonMap("region", "EU");
+
+        assertTrue(eval("region in ['EU', 'US']", vars));
+        assertFalse(eval("region not in [\"EU\", \"US\"]", vars));
+        assertTrue(eval("region not in ['CN']", vars));
+    }
+
+    @Test
+    void truthinessOfBareOperands() {
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("zero", 0);
+        vars.put("blank", "");
+        vars.put("items", Arrays.asList(1, 2));
+        vars.put("none", Collections.emptyList());
+
+        assertFalse(eval("zero", vars));
+        assertFalse(eval("blank", vars));
+        assertFalse(eval("missing", vars));
+        assertTrue(eval("items", vars));
+        assertTrue(eval("empty(none) && !empty(items)", vars));
+    }
+
+    @Test
+    void typeMismatchEvaluatesToFalseWithoutThrowing() {
+        Map<String, Object> vars = Collections.singletonMap("amount", "abc");
+
+        assertFalse(eval("amount > 10", vars));
+        assertFalse(eval("amount == 10", vars));
+        assertFalse(ConditionExpression.compile("amount > 10").evaluate(null));
+    }
+
+    @Test
+    void enumsEqualTheirNames() {
+        Map<String, Object> vars = Collections.singletonMap("status", Level.VIP);
+
+        assertTrue(eval("status == 'VIP'", vars));
+        assertTrue(eval("status in ['NORMAL', 'VIP']", vars));
+    }
+
+    @Test
+    void syntaxErrorsAreRejectedAtCompileTime() {
+        assertThrows(IllegalArgumentException.class, () -> ConditionExpression.compile("amount >"));
+        assertThrows(IllegalArgumentException.class, () -> ConditionExpression.compile("(a && b"));
+        assertThrows(IllegalArgumentException.class, () -> ConditionExpression.compile("a b"));
+        assertThrows(IllegalArgumentException.class, () -> ConditionExpression.compile("x in [1, "));
+    }
+
+    @Test
+    void keepsSource() {
+        String source = "amount >= 1000";
+
+        assertEquals(source, ConditionExpression.compile(source).getSource());
+    }
+
+    private static boolean eval(String source, Map<String, ?> variables) {
+        return ConditionExpression.compile(source).evaluate(variables);
+    }
+
+    private enum Level {
+        NORMAL, VIP
+    }
+}
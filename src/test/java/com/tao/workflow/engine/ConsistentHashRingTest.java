@@ -0,0 +1,99 @@
+package com.tao.workflow.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 一致性哈希环测试
+ *
+ * @author Tao
+ * @version 1.0
+ */
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 20_000;
+
+    @Test
+    void emptyRingHasNoOwner() {
+        ConsistentHashRing ring = new ConsistentHashRing(Collections.emptySet(), 16);
+
+        assertNull(ring.ownerOf("WF_1"));
+    }
+
+    @Test
+    void rejectsNonPositiveVirtualNodes() {
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(Collections.singleton("a"), 0));
+    }
+
+    @Test
+    void ownershipDoesNotDependOnMemberOrder() {
+        ConsistentHashRing ring1 = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 64);
+        ConsistentHashRing ring2 = new ConsistentHashRing(Arrays.asList("c", "a", "b"), 64);
+
+        for (int i = 0; i < 1_000; i++) {
+            String key = "WF_" + i;
+            assertEquals(ring1.ownerOf(key), ring2.ownerOf(key), key);
+        }
+    }
+
+    @Test
+    void keysSpreadAcrossMembers() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c", "d"),
+                                                         ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.ownerOf("WF_" + i), 1, Integer::sum);
+        }
+
+        assertEquals(4, counts.size());
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            // 理想值为25%，允许较宽的偏差
+            assertTrue(entry.getValue() > KEYS / 8, entry.getKey() + " owns " + entry.getValue());
+            assertTrue(entry.getValue() < KEYS / 2, entry.getKey() + " owns " + entry.getValue());
+        }
+    }
+
+    @Test
+    void addingMemberOnlyMovesKeysToNewMember() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 64);
+        ConsistentHashRing after = before.withMembers(Arrays.asList("a", "b", "c", "d"));
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "WF_" + i;
+            String oldOwner = before.ownerOf(key);
+            String newOwner = after.ownerOf(key);
+            if (!oldOwner.equals(newOwner)) {
+                assertEquals("d", newOwner, key);
+                moved++;
+            }
+        }
+        assertTrue(moved > 0);
+        assertTrue(moved < KEYS / 2, "moved " + moved);
+    }
+
+    @Test
+    void removingMemberOnlyMovesItsKeys() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 64);
+        ConsistentHashRing after = before.withMembers(Arrays.asList("a", "c"));
+
+        for (int i = 0; i < KEYS; i++) {
+            String key = "WF_" + i;
+            String oldOwner = before.ownerOf(key);
+            if (!"b".equals(oldOwner)) {
+                assertEquals(oldOwner, after.ownerOf(key), key);
+            }
+        }
+        assertTrue(after.contains("a"));
+        assertEquals(2, after.getMembers().size());
+    }
+}
@@ -0,0 +1,212 @@
+package com.tao.workflow.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 引擎事件总线测试
+ *
+ * @author Tao
+ * @version 1.0
+ */
+class EngineEventBusTest {
+
+    private EngineEventBus bus;
+
+    @AfterEach
+    void closeBus() {
+        if (bus != null) {
+            bus.close(1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(8, new EngineEventBus(5, EngineEventBus.OverflowPolicy.DROP).getCapacity());
+        assertEquals(1, new EngineEventBus(1, EngineEventBus.OverflowPolicy.DROP).getCapacity());
+        assertThrows(IllegalArgumentException.class, () -> new EngineEventBus(0, EngineEventBus.OverflowPolicy.DROP));
+    }
+
+    @Test
+    void eventsWithoutSubscribersAreNotBuffered() {
+        bus = new EngineEventBus(4, EngineEventBus.OverflowPolicy.DROP);
+
+        assertFalse(bus.publish(event("WF_1")));
+        assertEquals(0, bus.getPublishedCount());
+    }
+
+    @Test
+    void concurrentPublishersAreDeliveredInPublishOrder() throws InterruptedException {
+        int publishers = 4;
+        int perPublisher = 2_000;
+        bus = new EngineEventBus(64, EngineEventBus.OverflowPolicy.BLOCK);
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger maxBatch = new AtomicInteger();
+        bus.subscribe("test", events -> {
+            maxBatch.accumulateAndGet(events.size(), Math::max);
+            events.forEach(event -> received.add(event.getInstanceId()));
+        }, 16);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < publishers; p++) {
+            String prefix = "P" + p + "-";
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perPublisher; i++) {
+                    bus.publish(event(prefix + i));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        bus.close(5, TimeUnit.SECONDS);
+
+        assertEquals(publishers * perPublisher, received.size());
+        assertEquals(0, bus.getDroppedCount());
+        assertTrue(maxBatch.get() <= 16, "batch " + maxBatch.get());
+        // 同一发布者的事件保持发布顺序
+        int[] next = new int[publishers];
+        for (String instanceId : received) {
+            int publisher = instanceId.charAt(1) - '0';
+            assertEquals(next[publisher]++, Integer.parseInt(instanceId.substring(3)), instanceId);
+        }
+    }
+
+    @Test
+    void everySubscriberSeesEveryEvent() {
+        bus = new EngineEventBus(16, EngineEventBus.OverflowPolicy.BLOCK);
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        bus.subscribe("first", events -> first.addAndGet(events.size()), 4);
+        bus.subscribe("second", events -> second.addAndGet(events.size()), 100);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(bus.publish(event("WF_" + i)));
+        }
+        bus.close(5, TimeUnit.SECONDS);
+
+        assertEquals(100, first.get());
+        assertEquals(100, second.get());
+    }
+
+    @Test
+    void dropPolicyDropsWhileSlowestSubscriberIsOneLapBehind() throws InterruptedException {
+        bus = new EngineEventBus(4, EngineEventBus.OverflowPolicy.DROP);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger received = new AtomicInteger();
+        bus.subscribe("slow", events -> {
+            release.await();
+            received.addAndGet(events.size());
+        }, 100);
+
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (bus.publish(event("WF_" + i))) {
+                accepted++;
+            }
+        }
+        release.countDown();
+        bus.close(5, TimeUnit.SECONDS);
+
+        assertEquals(4, accepted);
+        assertEquals(6, bus.getDroppedCount());
+        assertEquals(4, received.get());
+    }
+
+    @Test
+    void blockPolicyWaitsForSubscriberInsteadOfDropping() throws InterruptedException {
+        bus = new EngineEventBus(2, EngineEventBus.OverflowPolicy.BLOCK);
+        AtomicInteger received = new AtomicInteger();
+        bus.subscribe("slow", events -> {
+            Thread.sleep(1);
+            received.addAndGet(events.size());
+        }, 1);
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(bus.publish(event("WF_" + i)));
+        }
+        bus.close(5, TimeUnit.SECONDS);
+
+        assertEquals(50, received.get());
+        assertEquals(0, bus.getDroppedCount());
+    }
+
+    @Test
+    void failingBatchIsCountedAndLaterEventsStillDelivered() {
+        bus = new EngineEventBus(16, EngineEventBus.OverflowPolicy.BLOCK);
+        AtomicInteger received = new AtomicInteger();
+        EngineEventBus.Subscription subscription = bus.subscribe("flaky", events -> {
+            if ("WF_0".equals(events.get(0).getInstanceId())) {
+                throw new IllegalStateException("boom");
+            }
+            received.addAndGet(events.size());
+        }, 1);
+
+        bus.publish(event("WF_0"));
+        bus.publish(event("WF_1"));
+        bus.close(5, TimeUnit.SECONDS);
+
+        assertEquals(1, subscription.getFailureCount());
+        assertEquals(2, subscription.getProcessedCount());
+        assertEquals(1, received.get());
+    }
+
+    @Test
+    void closedBusRejectsEventsAndSubscribers() {
+        bus = new EngineEventBus(4, EngineEventBus.OverflowPolicy.DROP);
+        bus.subscribe("test", events -> { }, 1);
+        bus.close(1, TimeUnit.SECONDS);
+
+        assertFalse(bus.publish(event("WF_1")));
+        assertThrows(IllegalStateException.class, () -> bus.subscribe("late", events -> { }, 1));
+    }
+
+    @Test
+    void cancelledSubscriptionNoLongerGatesPublishers() throws InterruptedException {
+        bus = new EngineEventBus(2, EngineEventBus.OverflowPolicy.DROP);
+        CountDownLatch release = new CountDownLatch(1);
+        EngineEventBus.Subscription stuck = bus.subscribe("stuck", events -> release.await(), 1);
+        AtomicInteger received = new AtomicInteger();
+        bus.subscribe("live", events -> received.addAndGet(events.size()), 100);
+        assertTrue(bus.publish(event("WF_0")));
+        awaitReceived(received, 1);
+
+        stuck.cancel();
+
+        assertEquals(1, bus.getSubscriptions().size());
+        for (int i = 1; i <= 10; i++) {
+            assertTrue(bus.publish(event("WF_" + i)), "event " + i);
+            awaitReceived(received, i + 1);
+        }
+        assertEquals(0, bus.getDroppedCount());
+        release.countDown();
+    }
+
+    private static EngineEvent event(String instanceId) {
+        return EngineEvent.stepStarted(instanceId, "WF", "step", null);
+    }
+
+    private static void awaitReceived(AtomicInteger received, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (received.get() < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("received " + received.get() + " of " + expected);
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.InstanceStatus;
+import com.tao.workflow.model.WorkflowInstance;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 引擎状态存储的快照与恢复测试
+ *
+ * @author Tao
+ * @version 1.0
+ */
+class EngineStateStoreTest {
+
+    private static final int SEGMENT_SIZE = 1 << 20;
+
+    private final Path directory;
+
+    private final Map<String, WorkflowInstance> instances = new ConcurrentHashMap<>();
+    private final Map<String, List<StepExecutionResult>> histories = new ConcurrentHashMap<>();
+    private final Map<String, List<DefaultWorkflowEngine.UserTask>> userTasks = new ConcurrentHashMap<>();
+
+    EngineStateStoreTest() throws IOException {
+        this.directory = Files.createTempDirectory("engine-state-");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void snapshotRestoresInstancesWithHistoryAndUserTasks() throws IOException {
+        InstanceRecord record = InstanceCodecTest.record("WF_1", InstanceStatus.WAITING);
+        InstanceRecord minimal = InstanceCodecTest.minimalRecord("WF_2");
+        put(record);
+        put(minimal);
+
+        try (EngineStateStore store = open(BinaryInstanceCodec.INSTANCE)) {
+            store.snapshot(instances, histories, userTasks);
+        }
+        Recovered recovered = recover(BinaryInstanceCodec.INSTANCE);
+
+        assertEquals(2, recovered.instances.size());
+        InstanceCodecTest.assertRecordEquals(record, recovered.record("WF_1"));
+        InstanceCodecTest.assertRecordEquals(minimal, recovered.record("WF_2"));
+    }
+
+    @Test
+    void snapshotIsReadWithTheCodecNamedInItsHeader() throws IOException {
+        InstanceRecord record = InstanceCodecTest.record("WF_1", InstanceStatus.RUNNING);
+        put(record);
+
+        try (EngineStateStore store = open(JsonInstanceCodec.INSTANCE)) {
+            store.snapshot(instances, histories, userTasks);
+        }
+        Recovered recovered = recover(BinaryInstanceCodec.INSTANCE);
+
+        InstanceCodecTest.assertRecordEquals(record, recovered.record("WF_1"));
+    }
+
+    @Test
+    void journalAfterSnapshotIsReplayedOnTopOfIt() throws IOException {
+        InstanceRecord record = InstanceCodecTest.record("WF_1", InstanceStatus.RUNNING);
+        put(record);
+        put(InstanceCodecTest.minimalRecord("WF_2"));
+
+        try (EngineStateStore store = open(BinaryInstanceCodec.INSTANCE)) {
+            store.snapshot(instances, histories, userTasks);
+            store.logContext("WF_1", Collections.singletonMap("approved", "yes"));
+            store.logStepResult("WF_1", 2, StepExecutionResult.success("approved"));
+            store.logRemove("WF_2");
+        }
+        Recovered recovered = recover(BinaryInstanceCodec.INSTANCE);
+
+        assertEquals(1, recovered.instances.size());
+        assertEquals("yes", recovered.instances.get("WF_1").getContext().get("approved"));
+        assertEquals(3, recovered.histories.get("WF_1").size());
+    }
+
+    @Test
+    void versionOneSnapshotIsStillLoaded() throws IOException {
+        InstanceRecord record = InstanceCodecTest.record("WF_1", InstanceStatus.WAITING);
+        writeVersionOneSnapshot(record);
+
+        Recovered recovered = recover(BinaryInstanceCodec.INSTANCE);
+
+        assertEquals(1, recovered.instances.size());
+        InstanceCodecTest.assertRecordEquals(record, recovered.record("WF_1"));
+    }
+
+    @Test
+    void unknownSnapshotVersionIsRejected() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(snapshotFile()))) {
+            out.writeInt(0x57464B53);
+            out.writeInt(99);
+        }
+
+        IOException error = assertThrows(IOException.class, () -> recover(BinaryInstanceCodec.INSTANCE));
+        assertTrue(error.getMessage().contains("99"), error.getMessage());
+    }
+
+    private EngineStateStore open(InstanceCodec codec) throws IOException {
+        return new EngineStateStore(directory.toString(), SEGMENT_SIZE, 1000,
+                                    EngineStateStore.SyncMode.ASYNC, codec);
+    }
+
+    private Recovered recover(InstanceCodec codec) throws IOException {
+        Recovered recovered = new Recovered();
+        try (EngineStateStore store = open(codec)) {
+            store.recover(recovered.instances, recovered.histories, recovered.userTasks);
+        }
+        return recovered;
+    }
+
+    private void put(InstanceRecord record) {
+        String instanceId = record.getInstance().getId();
+        instances.put(instanceId, record.getInstance());
+        histories.put(instanceId, new ArrayList<>(record.getHistory()));
+        userTasks.put(instanceId, new ArrayList<>(record.getUserTasks()));
+    }
+
+    /**
+     * 按版本1的逐事件格式写出快照：魔数 版本 { 类型 长度 载荷 }* 0
+     */
+    private void writeVersionOneSnapshot(InstanceRecord record) throws IOException {
+        String instanceId = record.getInstance().getId();
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(snapshotFile()))) {
+            out.writeInt(0x57464B53);
+            out.writeInt(1);
+            writeEvent(out, 1, EngineStateCodec.encode(
+                payload -> EngineStateCodec.writeInstance(payload, record.getInstance())));
+            for (int i = 0; i < record.getHistory().size(); i++) {
+                int index = i;
+                writeEvent(out, 5, EngineStateCodec.encode(payload -> {
+                    EngineStateCodec.writeString(payload, instanceId);
+                    payload.writeInt(index);
+                    EngineStateCodec.writeResult(payload, record.getHistory().get(index));
+                }));
+            }
+            for (DefaultWorkflowEngine.UserTask task : record.getUserTasks()) {
+                writeEvent(out, 6, EngineStateCodec.encode(payload -> EngineStateCodec.writeUserTask(payload, task)));
+            }
+            out.writeByte(0);
+        }
+    }
+
+    private static void writeEvent(DataOutputStream out, int type, byte[] payload) throws IOException {
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    private Path snapshotFile() {
+        return directory.resolve(String.format("snapshot-%012d.snap", 0));
+    }
+
+    /**
+     * 恢复结果
+     */
+    private static final class Recovered {
+        final Map<String, WorkflowInstance> instances = new ConcurrentHashMap<>();
+        final Map<String, List<StepExecutionResult>> histories = new HashMap<>();
+        final Map<String, List<DefaultWorkflowEngine.UserTask>> userTasks = new HashMap<>();
+
+        InstanceRecord record(String instanceId) {
+            return new InstanceRecord(instances.get(instanceId),
+                                      histories.getOrDefault(instanceId, Collections.emptyList()),
+                                      userTasks.getOrDefault(instanceId, Collections.emptyList()));
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.InstanceStatus;
+import com.tao.workflow.model.WorkflowInstance;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 实例编解码器测试
+ *
+ * @author Tao
+ * @version 1.0
+ */
+class InstanceCodecTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 1, 15, 9, 30, 0, 123_456_789);
+
+    @Test
+    void jsonRoundTripPreservesRecords() throws IOException {
+        List<InstanceRecord> records = Arrays.asList(record("WF_1", InstanceStatus.RUNNING), minimalRecord("WF_2"));
+
+        List<InstanceRecord> decoded = decode(JsonInstanceCodec.INSTANCE, encode(JsonInstanceCodec.INSTANCE, records));
+
+        assertEquals(2, decoded.size());
+        assertRecordEquals(records.get(0), decoded.get(0));
+        assertRecordEquals(records.get(1), decoded.get(1));
+    }
+
+    @Test
+    void jsonWritesOneLinePerRecord() throws IOException {
+        byte[] encoded = encode(JsonInstanceCodec.INSTANCE,
+                                Arrays.asList(minimalRecord("WF_1"), minimalRecord("WF_2"), minimalRecord("WF_3")));
+
+        String[] lines = new String(encoded, StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].startsWith("{\"instance\":{\"id\":\"WF_2\""), lines[1]);
+    }
+
+    @Test
+    void jsonReaderIgnoresUnknownFields() throws IOException {
+        String line = "{\"version\":3,\"instance\":{\"id\":\"WF_1\",\"workflowId\":\"order\",\"status\":\"WAITING\","
+            + "\"startUserId\":\"u1\",\"tags\":[1,{\"a\":2}]},\"history\":[{\"status\":\"SUCCESS\",\"cost\":1.5}],"
+            + "\"audit\":{\"by\":\"x\"}}\n";
+
+        List<InstanceRecord> decoded = decode(JsonInstanceCodec.INSTANCE, line.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(1, decoded.size());
+        assertEquals(InstanceStatus.WAITING, decoded.get(0).getInstance().getStatus());
+        assertEquals(StepExecutionResult.Status.SUCCESS, decoded.get(0).getHistory().get(0).getStatus());
+    }
+
+    @Test
+    void jsonRecordWithoutInstanceIsRejected() {
+        byte[] line = "{\"history\":[]}\n".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(IOException.class, () -> decode(JsonInstanceCodec.INSTANCE, line));
+    }
+
+    @Test
+    void binaryRoundTripPreservesRecords() throws IOException {
+        List<InstanceRecord> records = Arrays.asList(record("WF_1", InstanceStatus.RUNNING), minimalRecord("WF_2"));
+
+        List<InstanceRecord> decoded = decode(BinaryInstanceCodec.INSTANCE, encode(BinaryInstanceCodec.INSTANCE, records));
+
+        assertEquals(2, decoded.size());
+        assertRecordEquals(records.get(0), decoded.get(0));
+        assertRecordEquals(records.get(1), decoded.get(1));
+    }
+
+    @Test
+    void binaryKeepsDateTimesAndStoresUnknownTypesAsStrings() throws IOException {
+        WorkflowInstance instance = WorkflowInstance.builder()
+            .id("WF_1")
+            .workflowId("order-approval")
+            .startUserId("u1")
+            .context("deadline", CREATED)
+            .context("amount", new BigDecimal("12.50"))
+            .build();
+
+        InstanceRecord decoded = decode(BinaryInstanceCodec.INSTANCE, encode(BinaryInstanceCodec.INSTANCE,
+            Collections.singletonList(new InstanceRecord(instance, Collections.emptyList(), Collections.emptyList()))))
+            .get(0);
+
+        assertEquals(CREATED, decoded.getInstance().getContext().get("deadline"));
+        assertEquals("12.50", decoded.getInstance().getContext().get("amount"));
+    }
+
+    @Test
+    void binaryDictionaryResolvesRepeatedSymbolsAcrossRecords() throws IOException {
+        List<InstanceRecord> records = new ArrayList<>();
+        InstanceStatus[] statuses = InstanceStatus.values();
+        for (int i = 0; i < 300; i++) {
+            records.add(record("WF_" + i, statuses[i % statuses.length]));
+        }
+
+        byte[] binary = encode(BinaryInstanceCodec.INSTANCE, records);
+        List<InstanceRecord> decoded = decode(BinaryInstanceCodec.INSTANCE, binary);
+
+        assertEquals(records.size(), decoded.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertRecordEquals(records.get(i), decoded.get(i));
+        }
+        assertTrue(binary.length < encode(JsonInstanceCodec.INSTANCE, records).length / 2,
+                   "binary size " + binary.length);
+    }
+
+    @Test
+    void binaryReaderRejectsUnsupportedVersion() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0x57464249);
+            out.writeByte(99);
+            out.writeByte(0);
+        }
+
+        assertThrows(IOException.class, () -> decode(BinaryInstanceCodec.INSTANCE, bytes.toByteArray()));
+        assertThrows(IOException.class, () -> decode(BinaryInstanceCodec.INSTANCE, new byte[] {'{', '}', 0, 0}));
+    }
+
+    @Test
+    void binaryReaderRejectsStreamWithoutEndMarker() throws IOException {
+        byte[] complete = encode(BinaryInstanceCodec.INSTANCE, Collections.singletonList(minimalRecord("WF_1")));
+        byte[] truncated = Arrays.copyOf(complete, complete.length - 1);
+
+        assertThrows(IOException.class, () -> decode(BinaryInstanceCodec.INSTANCE, truncated));
+    }
+
+    @Test
+    void emptyStreamsHaveNoRecords() throws IOException {
+        assertTrue(decode(BinaryInstanceCodec.INSTANCE,
+                          encode(BinaryInstanceCodec.INSTANCE, Collections.emptyList())).isEmpty());
+        assertTrue(decode(JsonInstanceCodec.INSTANCE, new byte[0]).isEmpty());
+        try (InstanceCodec.RecordReader reader = BinaryInstanceCodec.INSTANCE.newReader(
+                new ByteArrayInputStream(encode(BinaryInstanceCodec.INSTANCE, Collections.emptyList())))) {
+            assertNull(reader.read());
+            assertNull(reader.read());
+        }
+    }
+
+    @Test
+    void codecsAreLookedUpByName() {
+        assertSame(JsonInstanceCodec.INSTANCE, InstanceCodec.forName(JsonInstanceCodec.NAME));
+        assertSame(BinaryInstanceCodec.INSTANCE, InstanceCodec.forName(BinaryInstanceCodec.NAME));
+        assertThrows(IllegalArgumentException.class, () -> InstanceCodec.forName("xml"));
+    }
+
+    private static byte[] encode(InstanceCodec codec, List<InstanceRecord> records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InstanceCodec.RecordWriter writer = codec.newWriter(out)) {
+            for (InstanceRecord record : records) {
+                writer.write(record);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static List<InstanceRecord> decode(InstanceCodec codec, byte[] bytes) throws IOException {
+        List<InstanceRecord> records = new ArrayList<>();
+        try (InstanceCodec.RecordReader reader = codec.newReader(new ByteArrayInputStream(bytes))) {
+            InstanceRecord record;
+            while ((record = reader.read()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 包含各类上下文值、执行历史和用户任务的完整记录
+     */
+    static InstanceRecord record(String instanceId, InstanceStatus status) {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("level", "VIP");
+        nested.put("tags", Arrays.asList("a", 2, null));
+
+        Map<String, Object> context = new HashMap<>();
+        context.put("text", "订单审批");
+        context.put("empty", "");
+        context.put("count", -3);
+        context.put("big", 1L << 40);
+        context.put("ratio", 0.25);
+        context.put("approved", true);
+        context.put("rejected", false);
+        context.put("customer", nested);
+        context.put("items", Arrays.asList(1, "x", Collections.singletonMap("k", "v")));
+
+        WorkflowInstance instance = WorkflowInstance.builder()
+            .id(instanceId)
+            .workflowId("order-approval")
+            .name("订单审批")
+            .status(status)
+            .currentStep("approve", 2)
+            .context(context)
+            .config("timeout", 30)
+            .startUserId("u1")
+            .currentUserId("u2")
+            .businessKey("ORDER-1")
+            .priority(-1)
+            .createTime(CREATED)
+            .startTime(CREATED.plusSeconds(1))
+            .updateTime(CREATED.plusMinutes(5))
+            .errorMessage("上一步超时")
+            .build();
+
+        List<StepExecutionResult> history = Arrays.asList(
+            StepExecutionResult.builder(StepExecutionResult.Status.SUCCESS)
+                .message("done")
+                .outputData("amount", 1200)
+                .nextStepId("approve")
+                .startTime(1_705_300_000_000L)
+                .endTime(1_705_300_000_250L)
+                .executorName("submitExecutor")
+                .build(),
+            StepExecutionResult.builder(StepExecutionResult.Status.FAILED)
+                .errorMessage("timeout")
+                .startTime(1_705_300_001_000L)
+                .endTime(1_705_300_001_000L)
+                .retryCount(2)
+                .build());
+
+        Map<String, Object> taskData = new HashMap<>();
+        taskData.put("comment", "请审批");
+        List<DefaultWorkflowEngine.UserTask> userTasks = Collections.singletonList(
+            new DefaultWorkflowEngine.UserTask("TASK_1", instanceId, "approve", "审批", "经理审批", taskData,
+                                               CREATED.plusSeconds(2), null, "PENDING"));
+
+        return new InstanceRecord(instance, history, userTasks);
+    }
+
+    /**
+     * 只有必填字段的记录
+     */
+    static InstanceRecord minimalRecord(String instanceId) {
+        WorkflowInstance instance = WorkflowInstance.builder()
+            .id(instanceId)
+            .workflowId("order-approval")
+            .startUserId("u1")
+            .build();
+        return new InstanceRecord(instance, Collections.emptyList(), Collections.emptyList());
+    }
+
+    static void assertRecordEquals(InstanceRecord expected, InstanceRecord actual) {
+        WorkflowInstance e = expected.getInstance();
+        WorkflowInstance a = actual.getInstance();
+        assertEquals(e.getId(), a.getId());
+        assertEquals(e.getWorkflowId(), a.getWorkflowId());
+        assertEquals(e.getName(), a.getName());
+        assertEquals(e.getStatus(), a.getStatus());
+        assertEquals(e.getCurrentStepId(), a.getCurrentStepId());
+        assertEquals(e.getCurrentStepOrder(), a.getCurrentStepOrder());
+        assertEquals(e.getContext(), a.getContext());
+        assertEquals(e.getConfig(), a.getConfig());
+        assertEquals(e.getStartUserId(), a.getStartUserId());
+        assertEquals(e.getCurrentUserId(), a.getCurrentUserId());
+        assertEquals(e.getBusinessKey(), a.getBusinessKey());
+        assertEquals(e.getPriority(), a.getPriority());
+        assertEquals(e.getCreateTime(), a.getCreateTime());
+        assertEquals(e.getStartTime(), a.getStartTime());
+        assertEquals(e.getEndTime(), a.getEndTime());
+        assertEquals(e.getUpdateTime(), a.getUpdateTime());
+        assertEquals(e.getErrorMessage(), a.getErrorMessage());
+
+        assertEquals(expected.getHistory(), actual.getHistory());
+
+        assertEquals(expected.getUserTasks().size(), actual.getUserTasks().size());
+        for (int i = 0; i < expected.getUserTasks().size(); i++) {
+            DefaultWorkflowEngine.UserTask et = expected.getUserTasks().get(i);
+            DefaultWorkflowEngine.UserTask at = actual.getUserTasks().get(i);
+            assertEquals(et.getId(), at.getId());
+            assertEquals(et.getInstanceId(), at.getInstanceId());
+            assertEquals(et.getStepId(), at.getStepId());
+            assertEquals(et.getName(), at.getName());
+            assertEquals(et.getDescription(), at.getDescription());
+            assertEquals(et.getData(), at.getData());
+            assertEquals(et.getCreateTime(), at.getCreateTime());
+            assertEquals(et.getCompleteTime(), at.getCompleteTime());
+            assertEquals(et.getStatus(), at.getStatus());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.tao.workflow.engine;
+
+import com.tao.workflow.model.InstanceStatus;
+import com.tao.workflow.model.WorkflowInstance;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 实例二级索引测试
+ *
+ * @author Tao
+ * @version 1.0
+ */
+class InstanceIndexTest {
+
+    private final InstanceIndex index = new InstanceIndex();
+
+    @Test
+    void transitionMovesInstanceBetweenStatusSets() {
+        WorkflowInstance instance = newInstance(InstanceStatus.RUNNING);
+        index.add(instance);
+
+        InstanceStatus previous = instance.transitionTo(InstanceStatus.WAITING);
+        index.updateStatus(instance, previous);
+
+        assertEquals(0, index.countByStatus(InstanceStatus.RUNNING));
+        assertTrue(index.getByStatus(InstanceStatus.WAITING).contains("WF_1"));
+    }
+
+    @Test
+    void interleavedUpdatesLeaveInstanceOnlyInCurrentStatus() {
+        WorkflowInstance instance = newInstance(InstanceStatus.RUNNING);
+        index.add(instance);
+
+        // 两个线程先后完成转换，但后一个转换先更新了索引
+        InstanceStatus first = instance.transitionTo(InstanceStatus.WAITING);
+        InstanceStatus second = instance.transitionTo(InstanceStatus.COMPLETED);
+        index.updateStatus(instance, second);
+        index.updateStatus(instance, first);
+
+        assertOnlyIn(InstanceStatus.COMPLETED);
+    }
+
+    @Test
+    void statusRevisitedByConcurrentTransitionIsKept() {
+        WorkflowInstance instance = newInstance(InstanceStatus.RUNNING);
+        index.add(instance);
+
+        InstanceStatus first = instance.transitionTo(InstanceStatus.WAITING);
+        InstanceStatus second = instance.transitionTo(InstanceStatus.RUNNING);
+        index.updateStatus(instance, second);
+        index.updateStatus(instance, first);
+
+        assertOnlyIn(InstanceStatus.RUNNING);
+    }
+
+    private void assertOnlyIn(InstanceStatus expected) {
+        for (InstanceStatus status : InstanceStatus.values()) {
+            assertEquals(status == expected ? 1 : 0, index.countByStatus(status), status.name());
+        }
+    }
+
+    private static WorkflowInstance newInstance(InstanceStatus status) {
+        return WorkflowInstance.builder()
+            .id("WF_1")
+            .workflowId("order")
+            .name("订单审批")
+            .status(status)
+            .startUserId("tester")
+            .build();
+    }
+}
@@ -0,0 +1,100 @@
+package com.tao.workflow.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 步骤超时看门狗测试
+ *
+ * @author Tao
+ * @version 1.0
+ */
+class StepWatchdogTest {
+
+    private final TimingWheelTimer timer = new TimingWheelTimer(5, 8, Runnable::run);
+    private final StepWatchdog watchdog = new StepWatchdog(timer);
+
+    @AfterEach
+    void stopTimer() {
+        timer.stop();
+    }
+
+    @Test
+    void completedStepCancelsTimeout() throws InterruptedException {
+        AtomicInteger fired = new AtomicInteger();
+        StepWatchdog.Guard guard = watchdog.watch(30L, fired::incrementAndGet);
+
+        assertTrue(guard.enter());
+        assertTrue(guard.complete());
+        guard.exit();
+        Thread.sleep(100);
+
+        assertEquals(0, fired.get());
+        assertFalse(guard.isTimedOut());
+    }
+
+    @Test
+    void stepTimedOutBeforeStartIsSkipped() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        StepWatchdog.Guard guard = watchdog.watch(10L, fired::countDown);
+
+        assertTrue(fired.await(1, TimeUnit.SECONDS));
+
+        assertFalse(guard.enter());
+        assertFalse(guard.complete());
+        assertEquals(1, watchdog.getExpiredCount());
+    }
+
+    @Test
+    void timeoutDuringStepRunsOnStepThreadAfterExit() throws InterruptedException {
+        AtomicReference<Thread> callbackThread = new AtomicReference<>();
+        AtomicInteger stepsRunning = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        StepWatchdog.Guard guard = watchdog.watch(10L, () -> {
+            if (stepsRunning.get() != 0) {
+                overlaps.incrementAndGet();
+            }
+            callbackThread.set(Thread.currentThread());
+        });
+
+        boolean interrupted = false;
+        assertTrue(guard.enter());
+        stepsRunning.incrementAndGet();
+        try {
+            Thread.sleep(1_000);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            stepsRunning.decrementAndGet();
+            assertFalse(guard.complete());
+            assertNull(callbackThread.get());
+            guard.exit();
+        }
+
+        assertTrue(interrupted);
+        assertSame(Thread.currentThread(), callbackThread.get());
+        assertEquals(0, overlaps.get());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    void unwatchedGuardAlwaysCompletes() {
+        StepWatchdog.Guard guard = watchdog.watch(null, () -> { });
+
+        assertSame(StepWatchdog.UNWATCHED, guard);
+        assertTrue(guard.enter());
+        assertTrue(guard.complete());
+        guard.exit();
+    }
+}
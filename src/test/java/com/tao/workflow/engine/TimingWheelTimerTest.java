@@ -0,0 +1,110 @@
+package com.tao.workflow.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分层时间轮定时器测试
+ *
+ * @author Tao
+ * @version 1.0
+ */
+class TimingWheelTimerTest {
+
+    private final TimingWheelTimer timer = new TimingWheelTimer(5, 8, Runnable::run);
+
+    @AfterEach
+    void stopTimer() {
+        timer.stop();
+    }
+
+    @Test
+    void taskNeverFiresBeforeItsDelay() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long[] elapsed = new long[1];
+        long start = System.nanoTime();
+
+        timer.schedule(() -> {
+            elapsed[0] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            fired.countDown();
+        }, 30, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(elapsed[0] >= 30, "fired after " + elapsed[0] + "ms");
+    }
+
+    @Test
+    void delaysBeyondTheFirstWheelCascadeDownAndFireInOrder() throws InterruptedException {
+        // 第0层只覆盖40ms，更长的延迟需要经过上层时间轮降落
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch fired = new CountDownLatch(3);
+        timer.schedule(() -> { order.add(3); fired.countDown(); }, 400, TimeUnit.MILLISECONDS);
+        timer.schedule(() -> { order.add(1); fired.countDown(); }, 20, TimeUnit.MILLISECONDS);
+        timer.schedule(() -> { order.add(2); fired.countDown(); }, 120, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(3, TimeUnit.SECONDS));
+        assertEquals(List.of(1, 2, 3), order);
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    void zeroDelayRunsImmediately() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        timer.schedule(fired::countDown, 0, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancelledTaskDoesNotRun() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        TimingWheelTimer.Timeout timeout = timer.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        Thread.sleep(150);
+
+        assertEquals(0, runs.get());
+        assertFalse(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    void concurrentSchedulingFiresEveryTaskOnce() throws InterruptedException {
+        int threads = 4;
+        int perThread = 2_000;
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch fired = new CountDownLatch(threads * perThread);
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    timer.schedule(() -> {
+                        runs.incrementAndGet();
+                        fired.countDown();
+                    }, i % 200, TimeUnit.MILLISECONDS);
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(threads * perThread, runs.get());
+    }
+}
@@ -0,0 +1,110 @@
+package com.tao.workflow.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 实例状态转换规则测试
+ *
+ * @author Tao
+ * @version 1.0
+ */
+class InstanceStatusTest {
+
+    @Test
+    void everyNonFinalStateCanBeCancelled() {
+        for (InstanceStatus status : InstanceStatus.values()) {
+            if (!status.isFinalState()) {
+                assertTrue(status.canTransitionTo(InstanceStatus.CANCELLED), status + " -> CANCELLED");
+            }
+        }
+    }
+
+    @Test
+    void finalStatesCannotTransition() {
+        for (InstanceStatus from : InstanceStatus.values()) {
+            if (!from.isFinalState()) {
+                continue;
+            }
+            for (InstanceStatus to : InstanceStatus.values()) {
+                assertFalse(from.canTransitionTo(to), from + " -> " + to);
+            }
+        }
+    }
+
+    @Test
+    void waitingInstanceCanCompleteDirectly() {
+        assertTrue(InstanceStatus.WAITING.canTransitionTo(InstanceStatus.COMPLETED));
+    }
+
+    @Test
+    void transitionableStatesMatchTransitionRules() {
+        for (InstanceStatus from : InstanceStatus.values()) {
+            for (InstanceStatus to : InstanceStatus.values()) {
+                boolean listed = Arrays.asList(from.getTransitionableStates()).contains(to);
+                assertEquals(from.canTransitionTo(to), listed, from + " -> " + to);
+            }
+        }
+    }
+
+    @Test
+    void runningInstanceTransitionsToCancelledInPlace() {
+        WorkflowInstance instance = newInstance(InstanceStatus.RUNNING);
+
+        assertEquals(InstanceStatus.RUNNING, instance.transitionTo(InstanceStatus.CANCELLED));
+        assertEquals(InstanceStatus.CANCELLED, instance.getStatus());
+        assertNotNull(instance.getEndTime());
+    }
+
+    @Test
+    void waitingInstanceTransitionsToCompleted() {
+        WorkflowInstance instance = newInstance(InstanceStatus.WAITING);
+
+        assertEquals(InstanceStatus.WAITING, instance.transitionTo(InstanceStatus.COMPLETED));
+        assertEquals(InstanceStatus.COMPLETED, instance.getStatus());
+    }
+
+    @Test
+    void rejectedTransitionLeavesStatusUnchanged() {
+        WorkflowInstance instance = newInstance(InstanceStatus.COMPLETED);
+
+        assertThrows(IllegalStateException.class, () -> instance.transitionTo(InstanceStatus.WAITING));
+        assertEquals(InstanceStatus.COMPLETED, instance.getStatus());
+        assertFalse(instance.compareAndTransition(InstanceStatus.COMPLETED, null, InstanceStatus.WAITING, null, 0));
+    }
+
+    @Test
+    void finalStatusCannotBeEnteredTwice() {
+        WorkflowInstance instance = newInstance(InstanceStatus.RUNNING);
+        instance.transitionTo(InstanceStatus.TERMINATED);
+
+        assertThrows(IllegalStateException.class, () -> instance.transitionTo(InstanceStatus.TERMINATED));
+        assertFalse(instance.compareAndTransition(InstanceStatus.TERMINATED, null, InstanceStatus.TERMINATED, null, 0));
+        assertEquals(InstanceStatus.TERMINATED, instance.getStatus());
+    }
+
+    @Test
+    void nonFinalSelfTransitionIsNoOp() {
+        WorkflowInstance instance = newInstance(InstanceStatus.WAITING);
+
+        assertEquals(InstanceStatus.WAITING, instance.transitionTo(InstanceStatus.WAITING));
+        assertEquals(InstanceStatus.WAITING, instance.getStatus());
+    }
+
+    private static WorkflowInstance newInstance(InstanceStatus status) {
+        return WorkflowInstance.builder()
+            .id("WF_1")
+            .workflowId("order")
+            .name("订单审批")
+            .status(status)
+            .startUserId("tester")
+            .build();
+    }
+}
@@ -0,0 +1,173 @@
+package com.tao.workflow.service;
+
+import com.tao.workflow.entity.WorkflowInstanceEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 基于租约的实例认领工作者测试
+ *
+ * 实例服务用动态代理模拟，只实现租约相关的方法。
+ *
+ * @author tao
+ * @since 2024-01-15
+ */
+class InstanceLeaseWorkerTest {
+
+    private static final Duration LEASE = Duration.ofMillis(300);
+
+    /** 待认领的实例 */
+    private final Queue<WorkflowInstanceEntity> runnable = new ConcurrentLinkedQueue<>();
+
+    /** 实例ID -> 释放时使用的令牌 */
+    private final Map<String, String> released = new ConcurrentHashMap<>();
+
+    /** 续约时仍持有的实例，为null时全部续约成功 */
+    private volatile Set<String> held;
+
+    private final WorkflowInstanceService service = (WorkflowInstanceService) Proxy.newProxyInstance(
+        WorkflowInstanceService.class.getClassLoader(), new Class<?>[] {WorkflowInstanceService.class},
+        (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "claimRunnableInstances":
+                    List<WorkflowInstanceEntity> batch = new ArrayList<>();
+                    WorkflowInstanceEntity next;
+                    while (batch.size() < (int) args[1] && (next = runnable.poll()) != null) {
+                        batch.add(next);
+                    }
+                    return batch;
+                case "renewLeases":
+                    @SuppressWarnings("unchecked")
+                    Map<String, String> tokens = (Map<String, String>) args[1];
+                    return held != null ? held : tokens.keySet();
+                case "releaseLease":
+                    released.put((String) args[1], (String) args[2]);
+                    return true;
+                case "updateUnderLease":
+                    return held == null || held.contains(((WorkflowInstanceEntity) args[0]).getId());
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+    private InstanceLeaseWorker worker;
+
+    @AfterEach
+    void stopWorker() {
+        if (worker != null) {
+            worker.stop(1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void processorReceivesLeaseTokenAndLeaseIsReleasedWithIt() throws InterruptedException {
+        runnable.add(claimed("WF_1", "token-a"));
+        List<String> seen = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        worker = new InstanceLeaseWorker(service, "node-1", (instance, lease) -> {
+            seen.add(lease.getInstanceId() + "/" + lease.getWorkerId() + "/" + lease.getToken());
+            assertTrue(lease.update(new WorkflowInstanceEntity().setStatus("RUNNING")));
+            done.countDown();
+        }, 2, 10, LEASE, 10);
+
+        worker.start();
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        waitUntil(() -> released.containsKey("WF_1"));
+        assertEquals(List.of("WF_1/node-1/token-a"), seen);
+        assertEquals("token-a", released.get("WF_1"));
+        assertEquals(1, worker.getProcessedCount());
+    }
+
+    @Test
+    void lostLeaseInterruptsProcessingAndFencesUpdates() throws InterruptedException {
+        runnable.add(claimed("WF_1", "token-a"));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        boolean[] updateAfterLoss = new boolean[] {true};
+        worker = new InstanceLeaseWorker(service, "node-1", (instance, lease) -> {
+            started.countDown();
+            try {
+                Thread.sleep(5_000);
+            } catch (InterruptedException e) {
+                updateAfterLoss[0] = lease.update(new WorkflowInstanceEntity().setStatus("COMPLETED"));
+                interrupted.countDown();
+                throw e;
+            }
+        }, 1, 10, LEASE, 10);
+
+        worker.start();
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        held = Collections.emptySet();
+
+        assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+        assertFalse(updateAfterLoss[0]);
+        waitUntil(() -> worker.getLeasesLostCount() == 1);
+    }
+
+    @Test
+    void stopKeepsLeaseOfProcessingThatHasNotTerminated() throws InterruptedException {
+        runnable.add(claimed("WF_1", "token-a"));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        worker = new InstanceLeaseWorker(service, "node-1", (instance, lease) -> {
+            started.countDown();
+            // 模拟不响应中断的处理
+            while (true) {
+                try {
+                    finish.await();
+                    return;
+                } catch (InterruptedException ignored) {
+                    // 继续等待
+                }
+            }
+        }, 1, 10, LEASE, 10);
+
+        worker.start();
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        // 模拟的服务没有实现releaseAllLeases，停止时调用会抛出异常
+        worker.stop(50, TimeUnit.MILLISECONDS);
+
+        assertTrue(released.isEmpty());
+        assertEquals(1, worker.getInFlightCount());
+
+        finish.countDown();
+        waitUntil(() -> released.containsKey("WF_1"));
+        assertEquals("token-a", released.get("WF_1"));
+        assertEquals(0, worker.getInFlightCount());
+        worker = null;
+    }
+
+    private static WorkflowInstanceEntity claimed(String id, String token) {
+        return new WorkflowInstanceEntity().setId(id).setLeaseOwner("node-1").setLeaseToken(token);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("condition not met within 2s");
+            }
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.tao.workflow.service.impl;
+
+import com.tao.workflow.entity.WorkflowDefinitionEntity;
+import com.tao.workflow.model.Workflow;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 编译后工作流缓存测试
+ *
+ * @author tao
+ * @since 2024-01-15
+ */
+class CompiledWorkflowCacheTest {
+
+    private static final String DEFINITION_JSON =
+        "{\"steps\": [{\"id\": \"approve\", \"type\": \"TASK\", \"executorClass\": \"com.example.ApproveExecutor\"}]}";
+
+    private final CompiledWorkflowCache cache = new CompiledWorkflowCache(16);
+
+    @Test
+    void latestIsServedFromCacheUntilInvalidated() {
+        CountingLoader v1 = new CountingLoader(definition("WF_1", "order", "1.0"));
+        CountingLoader v2 = new CountingLoader(definition("WF_2", "order", "2.0"));
+
+        assertEquals("1.0", cache.getLatest("order", v1).getVersion());
+        assertEquals("1.0", cache.getLatest("order", v2).getVersion());
+        assertEquals(1, v1.calls.get());
+        assertEquals(0, v2.calls.get());
+
+        // 新增或恢复了更新的版本
+        cache.invalidateLatest("order");
+
+        assertEquals("2.0", cache.getLatest("order", v2).getVersion());
+        assertEquals(1, v2.calls.get());
+    }
+
+    @Test
+    void allLookupsShareOneCompiledWorkflow() {
+        Workflow loaded = cache.getById("WF_1", new CountingLoader(definition("WF_1", "order", "1.0")));
+        CountingLoader unused = new CountingLoader(null);
+
+        assertSame(loaded, cache.getById("WF_1", unused));
+        assertSame(loaded, cache.getByUniqueKey("order:1.0", unused));
+        assertEquals(0, unused.calls.get());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    void refreshReplacesEntryUnderItsNewKey() {
+        cache.getLatest("order", new CountingLoader(definition("WF_1", "order", "1.0")));
+
+        cache.refresh(definition("WF_1", "order", "1.1"));
+
+        assertEquals("1.1", cache.getById("WF_1", new CountingLoader(null)).getVersion());
+        assertEquals("1.1", cache.getByUniqueKey("order:1.1", new CountingLoader(null)).getVersion());
+        CountingLoader reload = new CountingLoader(null);
+        assertNull(cache.getByUniqueKey("order:1.0", reload));
+        assertEquals(1, reload.calls.get());
+        // 最新版本需要重新查询
+        CountingLoader latest = new CountingLoader(definition("WF_1", "order", "1.1"));
+        cache.getLatest("order", latest);
+        assertEquals(1, latest.calls.get());
+    }
+
+    @Test
+    void loadRacingWithInvalidationIsNotCached() {
+        WorkflowDefinitionEntity stale = definition("WF_1", "order", "1.0");
+        Workflow loaded = cache.getLatest("order", () -> {
+            // 加载期间另一个线程恢复了新版本
+            cache.invalidateLatest("order");
+            return stale;
+        });
+
+        assertEquals("1.0", loaded.getVersion());
+        assertEquals(0, cache.size());
+        CountingLoader next = new CountingLoader(definition("WF_2", "order", "2.0"));
+        assertEquals("2.0", cache.getLatest("order", next).getVersion());
+        assertEquals(1, next.calls.get());
+    }
+
+    @Test
+    void evictRemovesEveryIndex() {
+        cache.getLatest("order", new CountingLoader(definition("WF_1", "order", "1.0")));
+
+        cache.evict("WF_1");
+
+        assertEquals(0, cache.size());
+        CountingLoader reload = new CountingLoader(null);
+        assertNull(cache.getById("WF_1", reload));
+        assertNull(cache.getByUniqueKey("order:1.0", reload));
+        assertNull(cache.getLatest("order", reload));
+        assertEquals(3, reload.calls.get());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvictedOverCapacity() {
+        CompiledWorkflowCache small = new CompiledWorkflowCache(2);
+        small.getById("WF_1", new CountingLoader(definition("WF_1", "a", "1.0")));
+        small.getById("WF_2", new CountingLoader(definition("WF_2", "b", "1.0")));
+        small.getById("WF_1", new CountingLoader(null));
+
+        small.getById("WF_3", new CountingLoader(definition("WF_3", "c", "1.0")));
+
+        assertEquals(2, small.size());
+        assertEquals(1, small.getEvictionCount());
+        CountingLoader reload = new CountingLoader(null);
+        small.getById("WF_1", reload);
+        small.getById("WF_2", reload);
+        assertEquals(1, reload.calls.get());
+    }
+
+    @Test
+    void invalidDefinitionIsEvictedAndRejected() {
+        cache.getById("WF_1", new CountingLoader(definition("WF_1", "order", "1.0")));
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> cache.refresh(definition("WF_1", "order", "1.1").setDefinitionJson("{\"steps\": []}")));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new CompiledWorkflowCache(0));
+    }
+
+    private static WorkflowDefinitionEntity definition(String workflowId, String name, String version) {
+        return new WorkflowDefinitionEntity()
+            .setWorkflowId(workflowId)
+            .setName(name)
+            .setVersion(version)
+            .setStatus(WorkflowDefinitionEntity.Status.ACTIVE.getCode())
+            .setDefinitionJson(DEFINITION_JSON);
+    }
+
+    /**
+     * 记录加载次数的加载器
+     */
+    private static final class CountingLoader implements Supplier<WorkflowDefinitionEntity> {
+        private final WorkflowDefinitionEntity definition;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private CountingLoader(WorkflowDefinitionEntity definition) {
+            this.definition = definition;
+        }
+
+        @Override
+        public WorkflowDefinitionEntity get() {
+            calls.incrementAndGet();
+            return definition;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.tao.workflow.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 实例租约语句测试
+ *
+ * @author tao
+ * @since 2024-01-15
+ */
+class WorkflowInstanceServiceImplTest {
+
+    @Test
+    void claimSubqueryPicksUnleasedRunnableRowsAndSkipsLockedOnes() {
+        String sql = WorkflowInstanceServiceImpl.claimCandidatesSql(25);
+
+        assertTrue(sql.startsWith("SELECT id FROM workflow_instance WHERE "), sql);
+        assertTrue(sql.contains("status IN ('CREATED', 'RUNNING')"), sql);
+        assertTrue(sql.contains("(lease_owner IS NULL OR lease_expire_time < now())"), sql);
+        assertTrue(sql.contains("ORDER BY updated_time LIMIT 25"), sql);
+        assertTrue(sql.endsWith("FOR UPDATE SKIP LOCKED"), sql);
+    }
+
+    @Test
+    void leaseExpiryUsesDatabaseClock() {
+        assertEquals("lease_expire_time = now() + interval '30000 milliseconds'",
+                     WorkflowInstanceServiceImpl.leaseExpireSql(Duration.ofSeconds(30)));
+    }
+
+    @Test
+    void leaseDurationMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> WorkflowInstanceServiceImpl.leaseExpireSql(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class,
+                     () -> WorkflowInstanceServiceImpl.leaseExpireSql(Duration.ofMillis(-1)));
+        assertThrows(IllegalArgumentException.class, () -> WorkflowInstanceServiceImpl.leaseExpireSql(null));
+    }
+}